@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.benchmark;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene49.Lucene49Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+import com.sindicetech.siren.analysis.ConciseJsonAnalyzer;
+import com.sindicetech.siren.analysis.DoubleNumericAnalyzer;
+import com.sindicetech.siren.analysis.LongNumericAnalyzer;
+import com.sindicetech.siren.index.codecs.siren10.Siren10AForPostingsFormat;
+import com.sindicetech.siren.index.codecs.siren10.Siren10VIntPostingsFormat;
+import com.sindicetech.siren.util.XSDDatatype;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Helper to create the indexes used by the benchmarks.
+ */
+public class BenchmarkIndex {
+
+  public static final Version VERSION = Version.LUCENE_4_9;
+
+  /** The field indexed with the SIREn postings format */
+  public static final String FIELD = "json";
+
+  /** The postings formats under benchmark */
+  public enum Format {
+
+    AFOR {
+      @Override
+      public PostingsFormat newPostingsFormat() {
+        return new Siren10AForPostingsFormat();
+      }
+    },
+
+    VINT {
+      @Override
+      public PostingsFormat newPostingsFormat() {
+        return new Siren10VIntPostingsFormat();
+      }
+    };
+
+    public abstract PostingsFormat newPostingsFormat();
+
+  }
+
+  private static final FieldType FIELD_TYPE = new FieldType();
+
+  static {
+    FIELD_TYPE.setIndexed(true);
+    FIELD_TYPE.setTokenized(true);
+    FIELD_TYPE.setOmitNorms(true);
+    FIELD_TYPE.setStored(false);
+    FIELD_TYPE.freeze();
+  }
+
+  /**
+   * Returns a new configuration which indexes the {@link #FIELD} with the
+   * given postings format.
+   */
+  public static IndexWriterConfig newConfig(final Format format) {
+    final IndexWriterConfig config = new IndexWriterConfig(VERSION, newAnalyzer());
+    config.setCodec(new BenchmarkCodec(format.newPostingsFormat()));
+    config.setRAMBufferSizeMB(256);
+    config.setUseCompoundFile(false);
+    return config;
+  }
+
+  /**
+   * Returns the analyzer of the {@link #FIELD}
+   */
+  public static Analyzer newAnalyzer() {
+    final ConciseJsonAnalyzer analyzer = new ConciseJsonAnalyzer(
+      new WhitespaceAnalyzer(VERSION), new WhitespaceAnalyzer(VERSION));
+    analyzer.setGenerateTokensWithoutPath(true);
+    analyzer.registerDatatype(XSDDatatype.XSD_LONG.toCharArray(), new LongNumericAnalyzer(8));
+    analyzer.registerDatatype(XSDDatatype.XSD_DOUBLE.toCharArray(), new DoubleNumericAnalyzer(8));
+    return analyzer;
+  }
+
+  /**
+   * Indexes the documents into a new {@link RAMDirectory}, using the given
+   * number of segments. Merges are disabled, so that the number of segments
+   * is controlled by the commits.
+   */
+  public static Directory build(final Format format, final List<String> docs,
+                                final int numSegments)
+  throws IOException {
+    final Directory dir = new RAMDirectory();
+    final IndexWriterConfig config = newConfig(format);
+    config.setMergePolicy(NoMergePolicy.INSTANCE);
+    final IndexWriter writer = new IndexWriter(dir, config);
+    try {
+      final int docsPerSegment = (docs.size() + numSegments - 1) / numSegments;
+      for (int i = 0; i < docs.size(); i++) {
+        addDocument(writer, docs.get(i));
+        if ((i + 1) % docsPerSegment == 0) {
+          writer.commit();
+        }
+      }
+      writer.commit();
+    }
+    finally {
+      writer.close();
+    }
+    return dir;
+  }
+
+  /**
+   * Adds a JSON document to the {@link #FIELD}
+   */
+  public static void addDocument(final IndexWriter writer, final String json)
+  throws IOException {
+    final Document doc = new Document();
+    doc.add(new Field(FIELD, json, FIELD_TYPE));
+    writer.addDocument(doc);
+  }
+
+  /**
+   * A codec which uses the given postings format for the {@link #FIELD}.
+   */
+  private static class BenchmarkCodec extends Lucene49Codec {
+
+    private final PostingsFormat postingsFormat;
+
+    BenchmarkCodec(final PostingsFormat postingsFormat) {
+      this.postingsFormat = postingsFormat;
+    }
+
+    @Override
+    public PostingsFormat getPostingsFormatForField(final String field) {
+      if (field.equals(FIELD)) {
+        return postingsFormat;
+      }
+      return super.getPostingsFormatForField(field);
+    }
+
+  }
+
+}
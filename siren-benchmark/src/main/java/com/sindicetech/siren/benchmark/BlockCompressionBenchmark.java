@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.benchmark;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntsRef;
+import org.openjdk.jmh.annotations.*;
+
+import com.sindicetech.siren.index.codecs.block.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the compression and decompression throughput of the block
+ * compressors, for each bit frame and for synthetic distributions of integers.
+ *
+ * <p>
+ *
+ * The score is the time to compress or decompress one block of
+ * <code>blockSize</code> integers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockCompressionBenchmark {
+
+  public enum Compressor {
+
+    AFOR {
+      @Override
+      BlockCompressor newCompressor() {
+        return new AForBlockCompressor();
+      }
+
+      @Override
+      BlockDecompressor newDecompressor() {
+        return new AForBlockDecompressor();
+      }
+    },
+
+    VINT {
+      @Override
+      BlockCompressor newCompressor() {
+        return new VIntBlockCompressor();
+      }
+
+      @Override
+      BlockDecompressor newDecompressor() {
+        return new VIntBlockDecompressor();
+      }
+    };
+
+    abstract BlockCompressor newCompressor();
+
+    abstract BlockDecompressor newDecompressor();
+
+  }
+
+  public enum Distribution {
+
+    /**
+     * Integers uniformly distributed in [2^(bits-1), 2^bits[, i.e., every
+     * integer requires exactly <code>bits</code> bits.
+     */
+    UNIFORM {
+      @Override
+      int next(final Random random, final int bits) {
+        if (bits == 1) {
+          return random.nextInt(2);
+        }
+        final long min = 1L << (bits - 1);
+        return (int) (min + (long) (random.nextDouble() * min));
+      }
+    },
+
+    /**
+     * Integers following a geometric distribution whose mean is 2^(bits-1),
+     * as the deltas of a postings list: mostly small values with a few large
+     * exceptions.
+     */
+    GEOMETRIC {
+      @Override
+      int next(final Random random, final int bits) {
+        final double p = 1.0 / (1L << (bits - 1));
+        if (p >= 1.0) {
+          return random.nextInt(2);
+        }
+        final double v = Math.log(1.0 - random.nextDouble()) / Math.log(1.0 - p);
+        return (int) Math.min(v, Integer.MAX_VALUE);
+      }
+    };
+
+    abstract int next(Random random, int bits);
+
+  }
+
+  @Param({"AFOR", "VINT"})
+  public Compressor compressor;
+
+  @Param({"UNIFORM", "GEOMETRIC"})
+  public Distribution distribution;
+
+  @Param({"1", "2", "3", "4", "5", "6", "7", "8", "10", "12", "16", "20", "24", "28", "31"})
+  public int bits;
+
+  @Param({"128"})
+  public int blockSize;
+
+  private BlockCompressor blockCompressor;
+  private BlockDecompressor blockDecompressor;
+
+  private IntsRef input;
+  private BytesRef compressed;
+  private int compressedLength;
+  private BytesRef output;
+  private IntsRef decompressed;
+
+  @Setup
+  public void setup() {
+    if (blockSize % 32 != 0) {
+      throw new IllegalArgumentException("blockSize must be a multiple of 32");
+    }
+    blockCompressor = compressor.newCompressor();
+    blockDecompressor = compressor.newDecompressor();
+
+    final Random random = new Random(42);
+    input = new IntsRef(blockSize);
+    for (int i = 0; i < blockSize; i++) {
+      input.ints[i] = distribution.next(random, bits);
+    }
+    input.length = blockSize;
+
+    // compressed block used by the decompression benchmark
+    compressed = new BytesRef(blockCompressor.maxCompressedSize(blockSize));
+    blockCompressor.compress(input, compressed);
+    compressedLength = compressed.length;
+    input.length = blockSize;
+
+    output = new BytesRef(blockCompressor.maxCompressedSize(blockSize));
+    decompressed = new IntsRef(blockSize);
+  }
+
+  @Benchmark
+  public int compress() {
+    input.offset = 0;
+    input.length = blockSize;
+    output.offset = 0;
+    blockCompressor.compress(input, output);
+    return output.length;
+  }
+
+  @Benchmark
+  public int decompress() {
+    compressed.offset = 0;
+    compressed.length = compressedLength;
+    decompressed.offset = 0;
+    blockDecompressor.decompress(compressed, decompressed);
+    return decompressed.ints[decompressed.length - 1];
+  }
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.benchmark;
+
+import org.apache.lucene.store.Directory;
+
+import com.sindicetech.siren.benchmark.BenchmarkIndex.Format;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reports the size of the index of a generated JSON corpus for each SIREn
+ * postings format.
+ *
+ * <p>
+ *
+ * The index size is deterministic for a given number of documents and seed,
+ * and is therefore reported once rather than measured by JMH. The sizes are
+ * given in bytes per file extension, for a single segment index.
+ *
+ * <p>
+ *
+ * Usage: <code>IndexSizeReport [numDocs] [seed]</code>
+ */
+public class IndexSizeReport {
+
+  public static void main(final String[] args) throws IOException {
+    final int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    final long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+
+    final List<String> docs = JsonCorpusGenerator.generate(seed, numDocs);
+    long rawSize = 0;
+    for (final String doc : docs) {
+      rawSize += doc.length();
+    }
+    System.out.printf("Corpus: %d documents, seed %d, %d characters%n", numDocs, seed, rawSize);
+
+    for (final Format format : Format.values()) {
+      final Directory dir = BenchmarkIndex.build(format, docs, 1);
+      try {
+        report(format, dir);
+      }
+      finally {
+        dir.close();
+      }
+    }
+  }
+
+  private static void report(final Format format, final Directory dir) throws IOException {
+    final Map<String, Long> sizes = new TreeMap<String, Long>();
+    long total = 0;
+    for (final String file : dir.listAll()) {
+      final int dot = file.lastIndexOf('.');
+      final String ext = dot == -1 ? file : file.substring(dot + 1);
+      final long length = dir.fileLength(file);
+      final Long size = sizes.get(ext);
+      sizes.put(ext, size == null ? length : size + length);
+      total += length;
+    }
+
+    System.out.printf("%n%s: %d bytes%n", format, total);
+    for (final Map.Entry<String, Long> entry : sizes.entrySet()) {
+      System.out.printf("  %-12s %12d%n", entry.getKey(), entry.getValue());
+    }
+  }
+
+}
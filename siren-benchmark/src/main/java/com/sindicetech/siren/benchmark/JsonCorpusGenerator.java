@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a reproducible corpus of JSON documents.
+ *
+ * <p>
+ *
+ * The documents mimic a product catalog: a few low-cardinality attributes,
+ * free text, nested objects and arrays of variable length. Words are drawn from
+ * a synthetic vocabulary following a Zipf distribution, so that the corpus
+ * contains both very frequent and very rare terms. Two generators created
+ * with the same seed produce the same sequence of documents.
+ */
+public class JsonCorpusGenerator {
+
+  private static final String[] TYPES = {
+    "product", "offer", "review", "person", "organisation", "place", "event", "article"
+  };
+
+  private static final int VOCABULARY_SIZE = 20000;
+
+  private final Random random;
+
+  /** Cumulative probabilities of the vocabulary */
+  private final double[] cumulative;
+
+  private int id = 0;
+
+  public JsonCorpusGenerator(final long seed) {
+    this.random = new Random(seed);
+    this.cumulative = new double[VOCABULARY_SIZE];
+    double sum = 0;
+    for (int i = 0; i < VOCABULARY_SIZE; i++) {
+      sum += 1.0 / (i + 1);
+      cumulative[i] = sum;
+    }
+    for (int i = 0; i < VOCABULARY_SIZE; i++) {
+      cumulative[i] /= sum;
+    }
+  }
+
+  /**
+   * Generates the given number of documents.
+   */
+  public static List<String> generate(final long seed, final int numDocs) {
+    final JsonCorpusGenerator generator = new JsonCorpusGenerator(seed);
+    final List<String> docs = new ArrayList<String>(numDocs);
+    for (int i = 0; i < numDocs; i++) {
+      docs.add(generator.next());
+    }
+    return docs;
+  }
+
+  /**
+   * Returns the next document
+   */
+  public String next() {
+    final StringBuilder builder = new StringBuilder(512);
+    builder.append("{\"id\":").append(id++);
+    builder.append(",\"type\":\"").append(TYPES[this.skewed(TYPES.length)]).append('"');
+    builder.append(",\"name\":\"");
+    this.appendWords(builder, 1 + random.nextInt(3));
+    builder.append('"');
+    builder.append(",\"price\":").append(random.nextInt(100000) / 100.0);
+    builder.append(",\"description\":\"");
+    this.appendWords(builder, 5 + random.nextInt(40));
+    builder.append('"');
+
+    builder.append(",\"tags\":[");
+    final int numTags = random.nextInt(6);
+    for (int i = 0; i < numTags; i++) {
+      if (i > 0) builder.append(',');
+      builder.append('"');
+      this.appendWords(builder, 1);
+      builder.append('"');
+    }
+    builder.append(']');
+
+    builder.append(",\"address\":{\"city\":\"");
+    this.appendWords(builder, 1);
+    builder.append("\",\"zip\":").append(10000 + random.nextInt(90000)).append('}');
+
+    builder.append(",\"reviews\":[");
+    final int numReviews = this.skewed(8);
+    for (int i = 0; i < numReviews; i++) {
+      if (i > 0) builder.append(',');
+      builder.append("{\"rating\":").append(1 + random.nextInt(5));
+      builder.append(",\"author\":{\"name\":\"");
+      this.appendWords(builder, 2);
+      builder.append("\"},\"text\":\"");
+      this.appendWords(builder, 3 + random.nextInt(20));
+      builder.append("\"}");
+    }
+    builder.append("]}");
+    return builder.toString();
+  }
+
+  private void appendWords(final StringBuilder builder, final int numWords) {
+    for (int i = 0; i < numWords; i++) {
+      if (i > 0) builder.append(' ');
+      builder.append('w').append(Integer.toString(this.word(), Character.MAX_RADIX));
+    }
+  }
+
+  /**
+   * Returns the rank of a word drawn from the Zipf distribution
+   */
+  private int word() {
+    final double p = random.nextDouble();
+    int low = 0, high = VOCABULARY_SIZE - 1;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (cumulative[mid] < p) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns a value in [0, n[ biased towards the small values
+   */
+  private int skewed(final int n) {
+    final double r = random.nextDouble();
+    return (int) (r * r * n);
+  }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.benchmark;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.store.Directory;
+import org.openjdk.jmh.annotations.*;
+
+import com.sindicetech.siren.benchmark.BenchmarkIndex.Format;
+import com.sindicetech.siren.search.node.LuceneProxyNodeQuery;
+import com.sindicetech.siren.search.spans.NearSpanQuery;
+import com.sindicetech.siren.search.spans.SpanQuery;
+import com.sindicetech.siren.search.spans.TermSpanQuery;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the evaluation of a {@link NearSpanQuery} with an increasing number
+ * of term clauses, which stresses the alignment of the sub-spans on the same
+ * document and node.
+ *
+ * <p>
+ *
+ * The benchmark uses a single segment index of a generated JSON corpus. The
+ * clauses of {@link #frequentTerms()} are the most frequent words of the
+ * vocabulary, which co-occur in most of the documents. The last clause of
+ * {@link #withRareTerm()} is replaced by a rare word, so that the other
+ * sub-spans are mostly skipped to the documents of the rare word.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NearSpanQueryBenchmark {
+
+  /** The rank in the vocabulary of the rare word of {@link #withRareTerm()} */
+  private static final int RARE_WORD_RANK = 500;
+
+  @Param({"AFOR"})
+  public Format format;
+
+  @Param({"2", "4", "8"})
+  public int numClauses;
+
+  @Param({"true", "false"})
+  public boolean inOrder;
+
+  @Param({"20"})
+  public int slop;
+
+  @Param({"50000"})
+  public int numDocs;
+
+  @Param({"42"})
+  public long seed;
+
+  private Directory dir;
+  private DirectoryReader reader;
+  private IndexSearcher searcher;
+
+  private Query frequentQuery;
+  private Query rareQuery;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    final List<String> docs = JsonCorpusGenerator.generate(seed, numDocs);
+    dir = BenchmarkIndex.build(format, docs, 1);
+    reader = DirectoryReader.open(dir);
+    searcher = new IndexSearcher(reader);
+
+    final SpanQuery[] clauses = new SpanQuery[numClauses];
+    for (int i = 0; i < numClauses; i++) {
+      clauses[i] = this.newTermSpanQuery(i);
+    }
+    frequentQuery = new LuceneProxyNodeQuery(new NearSpanQuery(clauses.clone(), slop, inOrder));
+
+    clauses[numClauses - 1] = this.newTermSpanQuery(RARE_WORD_RANK);
+    rareQuery = new LuceneProxyNodeQuery(new NearSpanQuery(clauses, slop, inOrder));
+  }
+
+  /**
+   * Returns a span query for the word of the given rank, as written by the
+   * {@link JsonCorpusGenerator}.
+   */
+  private TermSpanQuery newTermSpanQuery(final int rank) throws IOException {
+    final Term term = new Term(BenchmarkIndex.FIELD, "w" + Integer.toString(rank, Character.MAX_RADIX));
+    if (reader.docFreq(term) == 0) {
+      throw new IllegalStateException("Term not found: " + term);
+    }
+    return new TermSpanQuery(term);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    reader.close();
+    dir.close();
+  }
+
+  @Benchmark
+  public int frequentTerms() throws IOException {
+    final TotalHitCountCollector collector = new TotalHitCountCollector();
+    searcher.search(frequentQuery, collector);
+    return collector.getTotalHits();
+  }
+
+  @Benchmark
+  public int withRareTerm() throws IOException {
+    final TotalHitCountCollector collector = new TotalHitCountCollector();
+    searcher.search(rareQuery, collector);
+    return collector.getTotalHits();
+  }
+
+}
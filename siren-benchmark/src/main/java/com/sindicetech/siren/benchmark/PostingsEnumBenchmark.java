@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.benchmark;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.openjdk.jmh.annotations.*;
+
+import com.sindicetech.siren.benchmark.BenchmarkIndex.Format;
+import com.sindicetech.siren.index.DocsNodesAndPositionsEnum;
+import com.sindicetech.siren.index.SirenDocsEnum;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the iteration of the postings of a term with the SIREn postings
+ * formats, at the document, node and position levels, and the skipping to
+ * documents.
+ *
+ * <p>
+ *
+ * The benchmark uses a single segment index of a generated JSON corpus. The
+ * term is selected by its document frequency: the most frequent term of the
+ * segment (<code>HIGH</code>), or the term whose document frequency is the
+ * closest to 1% (<code>MEDIUM</code>) or 0.1% (<code>LOW</code>) of the
+ * documents. Each invocation iterates over the whole postings list, either
+ * one document at a time or with the bulk {@link DocsNodesAndPositionsEnum#read(int[], int[])}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PostingsEnumBenchmark {
+
+  public enum TermFrequency {
+
+    HIGH(1.0), MEDIUM(0.01), LOW(0.001);
+
+    final double ratio;
+
+    TermFrequency(final double ratio) {
+      this.ratio = ratio;
+    }
+
+  }
+
+  @Param({"AFOR", "VINT"})
+  public Format format;
+
+  @Param({"HIGH", "MEDIUM", "LOW"})
+  public TermFrequency termFrequency;
+
+  @Param({"50000"})
+  public int numDocs;
+
+  @Param({"42"})
+  public long seed;
+
+  /** The distance in documents between two targets of {@link #skipTo()} */
+  @Param({"64", "1024"})
+  public int skipInterval;
+
+  private Directory dir;
+  private DirectoryReader reader;
+  private TermsEnum termsEnum;
+  private BytesRef term;
+
+  /** The buffers of {@link #read()} */
+  private final int[] docs = new int[128];
+  private final int[] nodeFreqs = new int[128];
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    final List<String> docs = JsonCorpusGenerator.generate(seed, numDocs);
+    dir = BenchmarkIndex.build(format, docs, 1);
+    reader = DirectoryReader.open(dir);
+    final AtomicReader leaf = reader.leaves().get(0).reader();
+    final Terms terms = leaf.terms(BenchmarkIndex.FIELD);
+    termsEnum = terms.iterator(null);
+    term = this.selectTerm(termsEnum, (int) Math.max(1, termFrequency.ratio * leaf.maxDoc()));
+  }
+
+  /**
+   * Returns the term whose document frequency is the closest to the target
+   */
+  private BytesRef selectTerm(final TermsEnum termsEnum, final int targetDocFreq)
+  throws IOException {
+    BytesRef selected = null;
+    int distance = Integer.MAX_VALUE;
+    BytesRef text;
+    while ((text = termsEnum.next()) != null) {
+      final int d = Math.abs(termsEnum.docFreq() - targetDocFreq);
+      if (d < distance) {
+        distance = d;
+        selected = BytesRef.deepCopyOf(text);
+      }
+    }
+    return selected;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    reader.close();
+    dir.close();
+  }
+
+  private DocsNodesAndPositionsEnum getEnum() throws IOException {
+    if (!termsEnum.seekExact(term)) {
+      throw new IllegalStateException("Term not found: " + term.utf8ToString());
+    }
+    return SirenDocsEnum.map(termsEnum.docsAndPositions(null, null));
+  }
+
+  @Benchmark
+  public int nextDocument() throws IOException {
+    final DocsNodesAndPositionsEnum e = this.getEnum();
+    int sum = 0;
+    while (e.nextDocument()) {
+      sum += e.doc();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int read() throws IOException {
+    final DocsNodesAndPositionsEnum e = this.getEnum();
+    int sum = 0;
+    int n;
+    while ((n = e.read(docs, nodeFreqs)) > 0) {
+      for (int i = 0; i < n; i++) {
+        sum += docs[i];
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int nextNode() throws IOException {
+    final DocsNodesAndPositionsEnum e = this.getEnum();
+    int sum = 0;
+    while (e.nextDocument()) {
+      while (e.nextNode()) {
+        sum += e.node().ints[e.node().offset];
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int nextPosition() throws IOException {
+    final DocsNodesAndPositionsEnum e = this.getEnum();
+    int sum = 0;
+    while (e.nextDocument()) {
+      while (e.nextNode()) {
+        while (e.nextPosition()) {
+          sum += e.pos();
+        }
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int skipTo() throws IOException {
+    final DocsNodesAndPositionsEnum e = this.getEnum();
+    int sum = 0;
+    int target = skipInterval;
+    while (e.skipTo(target)) {
+      sum += e.doc();
+      target = e.doc() + skipInterval;
+    }
+    return sum;
+  }
+
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.benchmark;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.*;
+
+import com.sindicetech.siren.benchmark.BenchmarkIndex.Format;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the indexing and merging time of the SIREn postings formats on a
+ * generated JSON corpus.
+ *
+ * <p>
+ *
+ * Each invocation indexes, or merges, the whole corpus. The merge benchmark
+ * starts from an index with <code>numSegments</code> segments, and measures
+ * the time to force merge it into a single segment.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PostingsFormatBenchmark {
+
+  /**
+   * The generated corpus and the postings format under benchmark
+   */
+  @State(Scope.Thread)
+  public static class Corpus {
+
+    @Param({"AFOR", "VINT"})
+    public Format format;
+
+    @Param({"20000"})
+    public int numDocs;
+
+    @Param({"42"})
+    public long seed;
+
+    List<String> docs;
+
+    @Setup(Level.Trial)
+    public void generate() {
+      docs = JsonCorpusGenerator.generate(seed, numDocs);
+    }
+
+  }
+
+  /**
+   * An empty index, recreated before each invocation
+   */
+  @State(Scope.Thread)
+  public static class EmptyIndex {
+
+    Directory dir;
+
+    @Setup(Level.Invocation)
+    public void create() {
+      dir = new RAMDirectory();
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws IOException {
+      dir.close();
+    }
+
+  }
+
+  /**
+   * An index of the corpus with <code>numSegments</code> segments, recreated
+   * before each invocation
+   */
+  @State(Scope.Thread)
+  public static class SegmentedIndex {
+
+    @Param({"10"})
+    public int numSegments;
+
+    Directory dir;
+
+    @Setup(Level.Invocation)
+    public void create(final Corpus corpus) throws IOException {
+      dir = BenchmarkIndex.build(corpus.format, corpus.docs, numSegments);
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws IOException {
+      dir.close();
+    }
+
+  }
+
+  @Benchmark
+  public int index(final Corpus corpus, final EmptyIndex index) throws IOException {
+    final IndexWriter writer = new IndexWriter(index.dir, BenchmarkIndex.newConfig(corpus.format));
+    try {
+      for (final String doc : corpus.docs) {
+        BenchmarkIndex.addDocument(writer, doc);
+      }
+      writer.commit();
+      return writer.maxDoc();
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  @Benchmark
+  public int merge(final Corpus corpus, final SegmentedIndex index) throws IOException {
+    final IndexWriter writer = new IndexWriter(index.dir, BenchmarkIndex.newConfig(corpus.format));
+    try {
+      writer.forceMerge(1);
+      return writer.maxDoc();
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+}
@@ -0,0 +1,5 @@
+/**
+ * This package contains the JMH benchmarks of the SIREn codec.
+ *
+ */
+package com.sindicetech.siren.benchmark;
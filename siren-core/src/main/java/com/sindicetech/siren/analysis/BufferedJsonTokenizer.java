@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.analysis;
+
+import com.sindicetech.siren.analysis.attributes.PathAttribute;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * A JSON tokenizer which replays the tokens recorded in a
+ * {@link JsonTokenBuffer} instead of scanning the JSON document.
+ *
+ * <p>
+ *
+ * The tokens are identical to the ones of the tokenizer which filled the
+ * buffer, and can be consumed by the same token filters. If the buffer has
+ * paths, the tokenizer adds a {@link PathAttribute}, as the
+ * {@link ConciseJsonTokenizer} does.
+ *
+ * <p>
+ *
+ * The tokenizer either replays the buffer given at construction, or the buffer
+ * of its input if the input is a {@link BufferReader}. The latter allows an
+ * {@link org.apache.lucene.analysis.Analyzer} to reuse the tokenizer and its
+ * token filters for each buffer, by passing the buffer as the reader of
+ * {@link org.apache.lucene.analysis.Analyzer#tokenStream(String, Reader)}.
+ * Any other reader is ignored.
+ */
+public class BufferedJsonTokenizer extends AbstractJsonTokenizer {
+
+  private JsonTokenBuffer buffer;
+
+  private PathAttribute pathAtt;
+
+  private int current = 0;
+
+  public BufferedJsonTokenizer(final JsonTokenBuffer buffer) {
+    this(new StringReader(""), buffer.hasPaths());
+    this.buffer = buffer;
+  }
+
+  /**
+   * Creates a tokenizer which replays the buffer of its input, which must be a
+   * {@link BufferReader}.
+   *
+   * @param input The reader of the buffer to replay.
+   * @param hasPaths Whether the replayed buffers have paths.
+   */
+  public BufferedJsonTokenizer(final Reader input, final boolean hasPaths) {
+    super(input);
+    if (hasPaths) {
+      pathAtt = this.addAttribute(PathAttribute.class);
+    }
+  }
+
+  @Override
+  protected boolean nextToken() throws IOException {
+    if (current >= buffer.size()) {
+      return false;
+    }
+    buffer.copyTerm(current, termAtt);
+    // the offsets were already corrected by the original tokenizer
+    offsetAtt.setOffset(buffer.startOffset(current), buffer.endOffset(current));
+    typeAtt.setType(TOKEN_TYPES[buffer.type(current)]);
+    dtypeAtt.setDatatypeURI(buffer.datatypeURI(current));
+    nodeAtt.copyNode(buffer.node(current));
+    if (pathAtt != null) {
+      buffer.copyPath(current, pathAtt);
+    }
+    current++;
+    return true;
+  }
+
+  @Override
+  public void reset() throws IOException {
+    super.reset();
+    if (input instanceof BufferReader) {
+      final JsonTokenBuffer buffer = ((BufferReader) input).getBuffer();
+      if (buffer.hasPaths() != (pathAtt != null)) {
+        throw new IllegalArgumentException("The tokenizer cannot replay a buffer " +
+          (buffer.hasPaths() ? "with" : "without") + " paths");
+      }
+      this.buffer = buffer;
+    }
+    if (buffer == null) {
+      throw new IllegalStateException("The input of the tokenizer must be a BufferReader");
+    }
+    current = 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // do not retain the buffer of the input until the tokenizer is reused
+    if (input instanceof BufferReader) {
+      buffer = null;
+    }
+    super.close();
+  }
+
+  /**
+   * A reader which carries a {@link JsonTokenBuffer} to a
+   * {@link BufferedJsonTokenizer}. It does not have any character.
+   */
+  public static final class BufferReader extends Reader {
+
+    private final JsonTokenBuffer buffer;
+
+    public BufferReader(final JsonTokenBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    public JsonTokenBuffer getBuffer() {
+      return buffer;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) {
+      return -1;
+    }
+
+    @Override
+    public void close() {}
+
+  }
+
+}
@@ -121,7 +121,7 @@ public class ConciseJsonTokenizer extends AbstractJsonTokenizer {
     // Update structural information
     nodeAtt.copyNode(scanner.getNodePath());
     // Update path
-    pathAtt.setPath(scanner.getPath());
+    scanner.copyPath(pathAtt);
   }
 
   @Override
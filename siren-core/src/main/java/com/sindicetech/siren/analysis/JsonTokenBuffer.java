@@ -0,0 +1,328 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.analysis;
+
+import com.sindicetech.siren.analysis.attributes.DatatypeAttribute;
+import com.sindicetech.siren.analysis.attributes.NodeAttribute;
+import com.sindicetech.siren.analysis.attributes.PathAttribute;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact and reusable buffer of the tokens produced by a JSON tokenizer,
+ * i.e., a {@link AbstractJsonTokenizer} such as the
+ * {@link ConciseJsonTokenizer} or the {@link ExtendedJsonTokenizer}.
+ *
+ * <p>
+ *
+ * The buffer is filled with {@link #fill(TokenStream)} by consuming the token
+ * stream once. It records for each token its term, token type, datatype,
+ * offsets, node path and, if the stream provides a {@link PathAttribute}, its
+ * path. The parse of a JSON document can then be shared by several consumers,
+ * e.g., a facet extractor and the analysis of the field with a
+ * {@link BufferedJsonTokenizer}, instead of scanning the document again.
+ *
+ * <p>
+ *
+ * The tokens are stored in a few flat arrays: the terms in a char array, the
+ * node ids in an int array, the path fields in an array of string references,
+ * and a fixed-size record of integers per token. The distinct datatypes are
+ * stored only once.
+ *
+ * <p>
+ *
+ * This class is not thread-safe.
+ */
+public class JsonTokenBuffer {
+
+  /** The fields of the record of a token */
+  private static final int TERM_START = 0;
+  private static final int TERM_LENGTH = 1;
+  private static final int TYPE = 2;
+  private static final int DATATYPE = 3;
+  private static final int START_OFFSET = 4;
+  private static final int END_OFFSET = 5;
+  private static final int NODE_START = 6;
+  private static final int NODE_LENGTH = 7;
+  private static final int PATH_START = 8;
+  private static final int PATH_LENGTH = 9;
+  private static final int RECORD_SIZE = 10;
+
+  private int[] records = new int[16 * RECORD_SIZE];
+  private int size = 0;
+
+  private char[] chars = new char[256];
+  private int charsLength = 0;
+
+  private int[] nodeIds = new int[64];
+  private int nodeIdsLength = 0;
+
+  private String[] pathFields = new String[64];
+  private int pathFieldsLength = 0;
+
+  private final List<char[]> datatypes = new ArrayList<char[]>();
+
+  private boolean hasPaths = false;
+
+  /** Reusable buffers for the accessors */
+  private final IntsRef node = new IntsRef();
+  private String[] path = new String[8];
+
+  /**
+   * Clears the buffer and fills it with the tokens of the given stream. The
+   * stream is reset, consumed until its end, and closed.
+   *
+   * <p>
+   *
+   * The stream must provide a {@link CharTermAttribute}, an
+   * {@link OffsetAttribute}, a {@link TypeAttribute} with one of the
+   * {@link AbstractJsonTokenizer#getTokenTypes() token types} of the JSON
+   * tokenizers, a {@link DatatypeAttribute} and a {@link NodeAttribute}. The
+   * {@link PathAttribute} is optional.
+   */
+  public void fill(final TokenStream stream) throws IOException {
+    this.clear();
+
+    final CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+    final OffsetAttribute offsetAtt = stream.getAttribute(OffsetAttribute.class);
+    final TypeAttribute typeAtt = stream.getAttribute(TypeAttribute.class);
+    final DatatypeAttribute dtypeAtt = stream.getAttribute(DatatypeAttribute.class);
+    final NodeAttribute nodeAtt = stream.getAttribute(NodeAttribute.class);
+    final PathAttribute pathAtt = stream.hasAttribute(PathAttribute.class) ?
+                                  stream.getAttribute(PathAttribute.class) : null;
+    hasPaths = pathAtt != null;
+
+    try {
+      stream.reset();
+      while (stream.incrementToken()) {
+        this.add(termAtt, offsetAtt, typeAtt, dtypeAtt, nodeAtt, pathAtt);
+      }
+      stream.end();
+    }
+    finally {
+      stream.close();
+    }
+  }
+
+  private void add(final CharTermAttribute termAtt, final OffsetAttribute offsetAtt,
+                   final TypeAttribute typeAtt, final DatatypeAttribute dtypeAtt,
+                   final NodeAttribute nodeAtt, final PathAttribute pathAtt) {
+    records = ArrayUtil.grow(records, (size + 1) * RECORD_SIZE);
+    final int r = size * RECORD_SIZE;
+
+    // term
+    chars = ArrayUtil.grow(chars, charsLength + termAtt.length());
+    System.arraycopy(termAtt.buffer(), 0, chars, charsLength, termAtt.length());
+    records[r + TERM_START] = charsLength;
+    records[r + TERM_LENGTH] = termAtt.length();
+    charsLength += termAtt.length();
+
+    records[r + TYPE] = this.toTokenType(typeAtt.type());
+    records[r + DATATYPE] = this.toDatatypeIndex(dtypeAtt.datatypeURI());
+    records[r + START_OFFSET] = offsetAtt.startOffset();
+    records[r + END_OFFSET] = offsetAtt.endOffset();
+
+    // node path
+    final IntsRef n = nodeAtt.node();
+    nodeIds = ArrayUtil.grow(nodeIds, nodeIdsLength + n.length);
+    System.arraycopy(n.ints, n.offset, nodeIds, nodeIdsLength, n.length);
+    records[r + NODE_START] = nodeIdsLength;
+    records[r + NODE_LENGTH] = n.length;
+    nodeIdsLength += n.length;
+
+    // path
+    records[r + PATH_START] = pathFieldsLength;
+    records[r + PATH_LENGTH] = 0;
+    if (pathAtt != null) {
+      final int length = pathAtt.length();
+      if (pathFields.length < pathFieldsLength + length) {
+        pathFields = Arrays.copyOf(pathFields,
+          ArrayUtil.oversize(pathFieldsLength + length, RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+      }
+      for (int i = 0; i < length; i++) {
+        pathFields[pathFieldsLength++] = pathAtt.get(i);
+      }
+      records[r + PATH_LENGTH] = length;
+    }
+
+    size++;
+  }
+
+  private int toTokenType(final String type) {
+    final String[] types = AbstractJsonTokenizer.getTokenTypes();
+    for (int i = 0; i < types.length; i++) {
+      if (types[i].equals(type)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Unknown JSON token type: " + type);
+  }
+
+  /**
+   * Returns the index of the datatype, and registers it if it was not seen
+   * before. The datatypes of the JSON scanners are constants, so the
+   * comparison by reference is usually enough.
+   */
+  private int toDatatypeIndex(final char[] datatypeURI) {
+    for (int i = 0; i < datatypes.size(); i++) {
+      final char[] datatype = datatypes.get(i);
+      if (datatype == datatypeURI || Arrays.equals(datatype, datatypeURI)) {
+        return i;
+      }
+    }
+    datatypes.add(datatypeURI == null ? null : Arrays.copyOf(datatypeURI, datatypeURI.length));
+    return datatypes.size() - 1;
+  }
+
+  /**
+   * Clears the buffer. The allocated arrays are kept for reuse.
+   */
+  public void clear() {
+    size = charsLength = nodeIdsLength = 0;
+    // release the references to the strings
+    Arrays.fill(pathFields, 0, pathFieldsLength, null);
+    pathFieldsLength = 0;
+    datatypes.clear();
+    hasPaths = false;
+  }
+
+  /**
+   * Returns the number of tokens in the buffer.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns true if the tokens of the buffer have a path, i.e., if the stream
+   * which filled the buffer provided a {@link PathAttribute}.
+   */
+  public boolean hasPaths() {
+    return hasPaths;
+  }
+
+  /**
+   * Returns the token type of the i-th token, e.g.,
+   * {@link AbstractJsonTokenizer#LITERAL}.
+   */
+  public int type(final int i) {
+    return records[this.record(i) + TYPE];
+  }
+
+  /**
+   * Returns the term of the i-th token.
+   */
+  public String term(final int i) {
+    final int r = this.record(i);
+    return new String(chars, records[r + TERM_START], records[r + TERM_LENGTH]);
+  }
+
+  /**
+   * Returns the length of the term of the i-th token.
+   */
+  public int termLength(final int i) {
+    return records[this.record(i) + TERM_LENGTH];
+  }
+
+  /**
+   * Copies the term of the i-th token into the given attribute.
+   */
+  public void copyTerm(final int i, final CharTermAttribute termAtt) {
+    final int r = this.record(i);
+    termAtt.copyBuffer(chars, records[r + TERM_START], records[r + TERM_LENGTH]);
+  }
+
+  /**
+   * Returns the datatype URI of the i-th token. The returned array is shared
+   * and must not be modified.
+   */
+  public char[] datatypeURI(final int i) {
+    return datatypes.get(records[this.record(i) + DATATYPE]);
+  }
+
+  public int startOffset(final int i) {
+    return records[this.record(i) + START_OFFSET];
+  }
+
+  public int endOffset(final int i) {
+    return records[this.record(i) + END_OFFSET];
+  }
+
+  /**
+   * Returns the node path of the i-th token. The returned {@link IntsRef} is
+   * reused and is valid until the next call.
+   */
+  public IntsRef node(final int i) {
+    final int r = this.record(i);
+    node.ints = nodeIds;
+    node.offset = records[r + NODE_START];
+    node.length = records[r + NODE_LENGTH];
+    return node;
+  }
+
+  /**
+   * Returns the number of fields of the path of the i-th token.
+   */
+  public int pathLength(final int i) {
+    return records[this.record(i) + PATH_LENGTH];
+  }
+
+  /**
+   * Returns the j-th field of the path of the i-th token.
+   */
+  public String pathField(final int i, final int j) {
+    final int r = this.record(i);
+    if (j >= records[r + PATH_LENGTH]) {
+      throw new ArrayIndexOutOfBoundsException(j);
+    }
+    return pathFields[records[r + PATH_START] + j];
+  }
+
+  /**
+   * Copies the path of the i-th token into the given attribute.
+   */
+  public void copyPath(final int i, final PathAttribute pathAtt) {
+    final int r = this.record(i);
+    final int length = records[r + PATH_LENGTH];
+    if (path.length < length) {
+      path = new String[ArrayUtil.oversize(length, RamUsageEstimator.NUM_BYTES_OBJECT_REF)];
+    }
+    System.arraycopy(pathFields, records[r + PATH_START], path, 0, length);
+    pathAtt.setPath(path, length);
+  }
+
+  private int record(final int i) {
+    if (i < 0 || i >= size) {
+      throw new ArrayIndexOutOfBoundsException(i);
+    }
+    return i * RECORD_SIZE;
+  }
+
+}
@@ -21,10 +21,10 @@ package com.sindicetech.siren.analysis.attributes;
 import java.io.Serializable;
 import java.util.Arrays;
 
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.AttributeImpl;
 import org.apache.lucene.util.IntsRef;
-
-import com.sindicetech.siren.util.ArrayUtils;
+import org.apache.lucene.util.RamUsageEstimator;
 
 /**
  * Implementation of {@link NodeAttribute} for a token coming from the
@@ -46,9 +46,9 @@ implements NodeAttribute, Cloneable, Serializable {
 
   @Override
   public void clear() {
+    Arrays.fill(node.ints, node.offset, node.offset + node.length, 0);
     node.length = 0;
     node.offset = 0;
-    Arrays.fill(node.ints, 0);
   }
 
   @Override
@@ -76,11 +76,18 @@ implements NodeAttribute, Cloneable, Serializable {
     t.copyNode(node);
   }
 
+  /**
+   * Copy the given node path into the reusable buffer of this attribute. The
+   * buffer is only reallocated when the node path is deeper than any node
+   * path copied so far.
+   */
   @Override
   public void copyNode(final IntsRef nodePath) {
-    ArrayUtils.growAndCopy(node, nodePath.length);
-    System.arraycopy(nodePath.ints, nodePath.offset, node.ints, node.offset, nodePath.length);
-    node.offset = nodePath.offset;
+    if (node.ints.length < nodePath.length) {
+      node.ints = new int[ArrayUtil.oversize(nodePath.length, RamUsageEstimator.NUM_BYTES_INT)];
+    }
+    System.arraycopy(nodePath.ints, nodePath.offset, node.ints, 0, nodePath.length);
+    node.offset = 0;
     node.length = nodePath.length;
   }
 
@@ -91,8 +98,11 @@ implements NodeAttribute, Cloneable, Serializable {
 
   @Override
   public void append(final int nodeID) {
-    ArrayUtils.growAndCopy(node, node.length + 1);
-    node.ints[++node.length] = nodeID;
+    final int size = node.offset + node.length + 1;
+    if (node.ints.length < size) {
+      node.ints = ArrayUtil.grow(node.ints, size);
+    }
+    node.ints[node.offset + node.length++] = nodeID;
   }
 
 }
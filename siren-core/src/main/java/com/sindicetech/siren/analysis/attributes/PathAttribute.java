@@ -33,13 +33,35 @@ public interface PathAttribute extends Attribute {
 
   /**
    * Returns the list of fields composing this path.
+   *
+   * <p>
+   *
+   * A new array is allocated at each call. Use {@link #length()} and
+   * {@link #get(int)} to access the path without allocation.
    */
   public String[] path();
 
   /**
-   * Set the path.
+   * Returns the number of fields composing this path.
+   */
+  public int length();
+
+  /**
+   * Returns the field at the given index of the path.
+   */
+  public String get(int index);
+
+  /**
+   * Set the path. The fields are copied into a reusable buffer.
    * @see #path()
    */
   public void setPath(String[] path);
 
+  /**
+   * Set the path to the first <code>length</code> fields of the given array.
+   * The fields are copied into a reusable buffer.
+   * @see #path()
+   */
+  public void setPath(String[] path, int length);
+
 }
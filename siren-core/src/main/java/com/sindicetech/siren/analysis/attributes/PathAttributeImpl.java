@@ -19,9 +19,12 @@
 
 package com.sindicetech.siren.analysis.attributes;
 
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.RamUsageEstimator;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * Default implementation of {@link PathAttribute}.
@@ -29,35 +32,66 @@ import java.io.Serializable;
 public class PathAttributeImpl extends AttributeImpl
 implements PathAttribute, Cloneable, Serializable {
 
-  private String[] path = new String[0];
+  private String[] path = new String[8];
+
+  private int length = 0;
 
   private static final long serialVersionUID = -6117733199775936595L;
 
   @Override
   public String field() {
-    return path.length > 0 ? path[path.length - 1] : "";
+    return length > 0 ? path[length - 1] : "";
   }
 
   @Override
   public String[] path() {
-    return path;
+    return Arrays.copyOf(path, length);
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public String get(final int index) {
+    if (index >= length) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    return path[index];
   }
 
   @Override
   public void setPath(final String[] path) {
-    this.path = path;
+    this.setPath(path, path.length);
+  }
+
+  @Override
+  public void setPath(final String[] path, final int length) {
+    if (this.path.length < length) {
+      this.path = new String[ArrayUtil.oversize(length, RamUsageEstimator.NUM_BYTES_OBJECT_REF)];
+    }
+    System.arraycopy(path, 0, this.path, 0, length);
+    this.length = length;
   }
 
   @Override
   public void clear() {
-    path = new String[0];
+    length = 0;
   }
 
   @Override
   public void copyTo(final AttributeImpl target) {
     final PathAttributeImpl t = (PathAttributeImpl) target;
-    t.clear();
-    t.setPath(path);
+    t.setPath(path, length);
+  }
+
+  @Override
+  public PathAttributeImpl clone() {
+    final PathAttributeImpl t = (PathAttributeImpl) super.clone();
+    // the buffer must not be shared
+    t.path = Arrays.copyOf(path, path.length);
+    return t;
   }
 
 }
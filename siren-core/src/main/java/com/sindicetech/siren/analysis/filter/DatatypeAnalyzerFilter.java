@@ -27,7 +27,9 @@ import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
 import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,6 +75,10 @@ public class DatatypeAnalyzerFilter extends TokenFilter {
 
   private ReusableCharArrayReader reusableCharArray;
 
+  /** Reusable buffers to backup the node and the path of the current token */
+  private final IntsRef nodeBackup = new IntsRef();
+  private String[] pathBackup = new String[8];
+
   public DatatypeAnalyzerFilter(final TokenStream input) {
     super(input);
     // here, we just need to indicate a version > Lucene 3.1 - see CharArrayMap
@@ -191,12 +197,28 @@ public class DatatypeAnalyzerFilter extends TokenFilter {
    * uses an inner stream, therefore it needs to be cleared so that other filters
    * have clean attributes data. Because of that, the attributes datatypeURI and
    * node have to saved in order to be restored after.
+   * <p>
+   * The node and the path are saved into reusable buffers, so that no object is
+   * allocated per token.
    */
   private void copyInnerStreamAttributes() {
     // backup datatype, node identifier and path
-    final IntsRef nodeId = IntsRef.deepCopyOf(nodeAtt.node());
+    final IntsRef node = nodeAtt.node();
+    if (nodeBackup.ints.length < node.length) {
+      nodeBackup.ints = new int[ArrayUtil.oversize(node.length, RamUsageEstimator.NUM_BYTES_INT)];
+    }
+    System.arraycopy(node.ints, node.offset, nodeBackup.ints, 0, node.length);
+    nodeBackup.length = node.length;
+
     final char[] dt = dtypeAtt.datatypeURI();
-    final String[] path = pathAtt.path();
+
+    final int pathLength = pathAtt.length();
+    if (pathBackup.length < pathLength) {
+      pathBackup = new String[ArrayUtil.oversize(pathLength, RamUsageEstimator.NUM_BYTES_OBJECT_REF)];
+    }
+    for (int i = 0; i < pathLength; i++) {
+      pathBackup[i] = pathAtt.get(i);
+    }
 
     // clear attributes
     input.clearAttributes();
@@ -210,9 +232,9 @@ public class DatatypeAnalyzerFilter extends TokenFilter {
     // TupleTokenizer handles the setting of tuple/cell values and the datatype URI
 
     // restore datatype, node and path attributes
-    nodeAtt.copyNode(nodeId);
+    nodeAtt.copyNode(nodeBackup);
     dtypeAtt.setDatatypeURI(dt);
-    pathAtt.setPath(path);
+    pathAtt.setPath(pathBackup, pathLength);
   }
 
   @Override
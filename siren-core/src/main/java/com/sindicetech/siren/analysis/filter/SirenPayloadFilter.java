@@ -32,6 +32,12 @@ import com.sindicetech.siren.analysis.attributes.PositionAttribute;
 /**
  * Filter that encodes the {@link NodeAttribute} and the
  * {@link PositionAttribute} into the {@link PayloadAttribute}.
+ *
+ * <p>
+ *
+ * The payload is encoded into a buffer of the {@link VIntPayloadCodec} which
+ * is reused across tokens. The payload is consumed by the indexing chain
+ * before the next token is produced.
  */
 public class SirenPayloadFilter extends TokenFilter  {
 
@@ -39,7 +45,7 @@ public class SirenPayloadFilter extends TokenFilter  {
   private final PositionAttribute posAtt;
   private final PayloadAttribute payloadAtt;
 
-  VIntPayloadCodec codec = new VIntPayloadCodec();
+  private final VIntPayloadCodec codec = new VIntPayloadCodec();
 
   public SirenPayloadFilter(final TokenStream input) {
     super(input);
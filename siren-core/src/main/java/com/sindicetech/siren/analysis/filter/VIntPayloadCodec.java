@@ -19,9 +19,7 @@
 
 package com.sindicetech.siren.analysis.filter;
 
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
-
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IntsRef;
 
@@ -29,22 +27,38 @@ import com.sindicetech.siren.util.CodecUtils;
 
 /**
  * An implementation of the {@link PayloadCodec} using Variable Int encoding.
+ *
+ * <p>
+ *
+ * The position is encoded first, followed by the node. As the VInt encoding is
+ * canonical, two payloads encode the same node if and only if their bytes
+ * after the position are equal. {@link #decodeIfNewNode(BytesRef)} relies on
+ * this to avoid decoding the node of every position.
  */
 public class VIntPayloadCodec extends PayloadCodec {
 
-  ByteBuffer bb = ByteBuffer.allocate(10);
+  /**
+   * Used in {@link #decode(BytesRef)}
+   */
+  final BytesRef bytes = new BytesRef();
 
   /**
-   * Used in {@link #decode()} and {@link #encode()}
+   * Reusable buffer used in {@link #encode(IntsRef, int)}
    */
-  BytesRef bytes = new BytesRef();
+  final BytesRef encoded = new BytesRef(16);
 
-  IntBuffer ib = IntBuffer.allocate(2);
+  /**
+   * Used in {@link #decode(BytesRef)}
+   */
+  final IntsRef ints = new IntsRef(2);
 
   /**
-   * Used in {@link #decode()} and {@link #encode()}
+   * The encoded bytes of the last node decoded by
+   * {@link #decodeIfNewNode(BytesRef)}
    */
-  IntsRef ints = new IntsRef();
+  final BytesRef lastNode = new BytesRef(16);
+
+  boolean hasLastNode = false;
 
   int pos;
 
@@ -60,51 +74,107 @@ public class VIntPayloadCodec extends PayloadCodec {
 
   @Override
   public void decode(final BytesRef data) {
-    // max case : 1 byte = 1 int
-    this.ensureIntBufferSize(data.length);
-
-    ib.clear();
+    this.setData(data.bytes, data.offset, data.length);
+    // decode position
+    pos = CodecUtils.byteArrayToVInt(bytes);
+    // decode node
+    this.decodeNode(data.offset + data.length);
+  }
 
+  /**
+   * Decode the position, and decode the node only if its encoded bytes are
+   * different from the ones of the previous call. The bytes are compared
+   * without decoding them.
+   *
+   * @return true if the node is different from the node of the previous call,
+   * in which case {@link #getNode()} returns the new node. Otherwise,
+   * {@link #getNode()} still returns the previous node.
+   * @see #resetLastNode()
+   */
+  public boolean decodeIfNewNode(final BytesRef data) {
     this.setData(data.bytes, data.offset, data.length);
+    // decode position
+    pos = CodecUtils.byteArrayToVInt(bytes);
 
-    // decode position and node
-    final int limit = bytes.length - bytes.offset;
-    while (bytes.offset < limit) {
-      ib.put(CodecUtils.byteArrayToVInt(bytes));
+    final int end = data.offset + data.length;
+    final int nodeLength = end - bytes.offset;
+    if (hasLastNode && this.isLastNode(data.bytes, bytes.offset, nodeLength)) {
+      return false;
     }
 
-    ib.flip();
+    // keep a copy of the encoded node for the next comparison
+    if (lastNode.bytes.length < nodeLength) {
+      lastNode.bytes = new byte[ArrayUtil.oversize(nodeLength, 1)];
+    }
+    System.arraycopy(data.bytes, bytes.offset, lastNode.bytes, 0, nodeLength);
+    lastNode.length = nodeLength;
+    hasLastNode = true;
 
-    // set position
-    pos = ib.get();
+    this.decodeNode(end);
+    return true;
+  }
 
-    // set node
-    this.setNode(ib.array(), ib.position(), ib.limit() - ib.position());
+  /**
+   * Forget the last node, so that the next call to
+   * {@link #decodeIfNewNode(BytesRef)} always decodes the node.
+   */
+  public void resetLastNode() {
+    hasLastNode = false;
   }
 
+  private boolean isLastNode(final byte[] data, final int offset, final int length) {
+    if (lastNode.length != length) {
+      return false;
+    }
+    final byte[] last = lastNode.bytes;
+    for (int i = 0; i < length; i++) {
+      if (last[i] != data[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decode the node from the current offset of {@link #bytes} up to the given
+   * end offset.
+   */
+  private void decodeNode(final int end) {
+    // max case : 1 byte = 1 int
+    ints.ints = ArrayUtil.grow(ints.ints, end - bytes.offset);
+    int length = 0;
+    while (bytes.offset < end) {
+      ints.ints[length++] = CodecUtils.byteArrayToVInt(bytes);
+    }
+    ints.offset = 0;
+    ints.length = length;
+  }
+
+  /**
+   * Encode the position and the node into a buffer which is reused across
+   * calls. The returned {@link BytesRef} is only valid until the next call.
+   */
   @Override
   public BytesRef encode(final IntsRef node, final int pos) {
     // max case : 1 int = 5 bytes
-    this.ensureByteBufferSize((node.length + 1) * 5);
-
-    bb.clear();
+    final int size = (node.length + 1) * 5;
+    if (encoded.bytes.length < size) {
+      encoded.bytes = new byte[ArrayUtil.oversize(size, 1)];
+    }
+    encoded.offset = 0;
 
     // encode position
-    CodecUtils.vIntToByteArray(pos, bb);
+    CodecUtils.appendVInt(pos, encoded);
 
     // encode node
-    this.setNode(node.ints, node.offset, node.length);
-
-    final int limit = ints.length - ints.offset;
-    for (int i = ints.offset; i < limit; i++) {
-      CodecUtils.vIntToByteArray(ints.ints[i], bb);
+    final int end = node.offset + node.length;
+    for (int i = node.offset; i < end; i++) {
+      CodecUtils.appendVInt(node.ints[i], encoded);
     }
 
-    bb.flip();
-
-    this.setData(bb.array(), bb.position(), bb.limit());
-
-    return bytes;
+    encoded.length = encoded.offset;
+    encoded.offset = 0;
+    return encoded;
   }
 
   private void setData(final byte[] data, final int offset, final int length) {
@@ -113,22 +183,4 @@ public class VIntPayloadCodec extends PayloadCodec {
     bytes.offset = offset;
   }
 
-  private void setNode(final int[] data, final int offset, final int length) {
-    ints.ints = data;
-    ints.length = length;
-    ints.offset = offset;
-  }
-
-  private void ensureByteBufferSize(final int size) {
-    if (bb.capacity() < size) {
-      bb = ByteBuffer.allocate(size);
-    }
-  }
-
-  private void ensureIntBufferSize(final int size) {
-    if (ib.capacity() < size) {
-      ib = IntBuffer.allocate(size);
-    }
-  }
-
 }
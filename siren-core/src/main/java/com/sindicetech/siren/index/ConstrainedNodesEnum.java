@@ -51,13 +51,70 @@ public abstract class ConstrainedNodesEnum extends DocsNodesAndPositionsEnum {
   }
 
   @Override
-  public abstract boolean nextNode() throws IOException;
+  public boolean nextNode() throws IOException {
+    while (docsEnum.nextNode()) {
+      if (this.isConstraintSatisfied(docsEnum.node())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Delegates to the wrapped enum, which can use its skip data, and then
+   * filters the nodes that do not satisfy the constraints.
+   */
+  @Override
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    if (!docsEnum.skipToNode(target)) {
+      return false;
+    }
+    return this.isConstraintSatisfied(docsEnum.node()) || this.nextNode();
+  }
+
+  /**
+   * Returns true if the node satisfies the constraints.
+   */
+  protected abstract boolean isConstraintSatisfied(IntsRef node);
+
+  /**
+   * Delegates to the wrapped enum. The constraints are not applied, as for
+   * {@link #nextDocument()} and {@link #nodeFreqInDoc()}.
+   */
+  @Override
+  public int read(final int[] docs, final int[] nodeFreqs) throws IOException {
+    return docsEnum.read(docs, nodeFreqs);
+  }
 
   @Override
   public boolean skipTo(final int target) throws IOException {
     return docsEnum.skipTo(target);
   }
 
+  /**
+   * Delegates to the wrapped enum. The impact of the wrapped enum is an upper
+   * bound of the impact of the nodes satisfying the constraints.
+   */
+  @Override
+  public int advanceShallow(final int target) throws IOException {
+    return docsEnum.advanceShallow(target);
+  }
+
+  @Override
+  public int blockMaxNodeFreq() {
+    return docsEnum.blockMaxNodeFreq();
+  }
+
+  @Override
+  public int blockMaxTermFreqInNode() {
+    return docsEnum.blockMaxTermFreqInNode();
+  }
+
+  @Override
+  public int blockMaxTermFreqInDoc() {
+    return docsEnum.blockMaxTermFreqInDoc();
+  }
+
   @Override
   public int doc() {
     return docsEnum.doc();
@@ -68,6 +125,11 @@ public abstract class ConstrainedNodesEnum extends DocsNodesAndPositionsEnum {
     return docsEnum.node();
   }
 
+  @Override
+  public boolean hasPositions() {
+    return docsEnum.hasPositions();
+  }
+
   @Override
   public boolean nextPosition() throws IOException {
     return docsEnum.nextPosition();
@@ -22,6 +22,9 @@ package com.sindicetech.siren.index;
 import java.io.IOException;
 
 import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.IntsRef;
+
+import com.sindicetech.siren.util.NodeUtils;
 
 /**
  * Iterates through documents, node frequencies, nodes, term frequencies and
@@ -54,4 +57,134 @@ public abstract class DocsNodesAndPositionsEnum implements DocsAndNodesIterator,
    **/
   public abstract int nodeFreqInDoc() throws IOException;
 
+  /**
+   * Bulk read of documents and node frequencies.
+   *
+   * <p>
+   *
+   * Fill the given arrays with the next documents and their node frequencies,
+   * and return the number of documents read. Return 0 when there are no more
+   * documents. The node frequencies array must be at least as large as the
+   * documents array.
+   *
+   * <p>
+   *
+   * After this call, the enum is positioned on the last document read, i.e.,
+   * {@link #doc()} returns the last document and {@link #nextNode()} iterates
+   * over its nodes. The nodes and positions of the other documents read
+   * are skipped.
+   *
+   * <p>
+   *
+   * This default implementation iterates over the documents with
+   * {@link #nextDocument()}. Block-based implementations can copy a whole
+   * decoded block at once, and may return less documents than the size of the
+   * arrays, e.g., at the end of a block.
+   */
+  public int read(final int[] docs, final int[] nodeFreqs) throws IOException {
+    int count = 0;
+    while (count < docs.length && this.nextDocument()) {
+      docs[count] = this.doc();
+      nodeFreqs[count] = this.nodeFreqInDoc();
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Skip to the first node of the current document whose label is greater
+   * than or equal to <i>target</i>. Returns false if there are no more nodes
+   * in the current document.
+   *
+   * <p>
+   *
+   * <b>NOTE:</b> when <code>target &le; current</code> implementations must
+   * not advance beyond their current {@link #node()}.
+   *
+   * <p>
+   *
+   * This default implementation scans the nodes with {@link #nextNode()}.
+   * Implementations can use skip data to jump over the nodes lower than the
+   * target, e.g., within the large arrays of a document.
+   */
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    final IntsRef node = this.node();
+    if (NodeUtils.compare(node, NO_MORE_NOD) == 0) {
+      return false;
+    }
+    if (NodeUtils.compare(node, target) >= 0) {
+      return true;
+    }
+    while (this.nextNode()) {
+      if (NodeUtils.compare(this.node(), target) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns false if the positions of the term within a node are not indexed.
+   * {@link #nextPosition()} then throws an {@link IllegalStateException}, and
+   * the enum can only be used by the queries that do not need the positions.
+   *
+   * <p>
+   *
+   * This default implementation returns true.
+   */
+  public boolean hasPositions() {
+    return true;
+  }
+
+  /**
+   * Expert: Move to the block of postings which contains the first document
+   * greater than or equal to <i>target</i>, without decoding it, and return
+   * the last document identifier of this block. The maximum impact of the
+   * block is then accessible with {@link #blockMaxNodeFreq()},
+   * {@link #blockMaxTermFreqInNode()} and {@link #blockMaxTermFreqInDoc()}.
+   *
+   * <p>
+   *
+   * If <code>target &le; current</code>, the block of the current document is
+   * returned. The enum is not positioned on a new document: {@link #doc()} is
+   * unchanged and {@link #skipTo(int)} must be called to read the documents of
+   * the block, as the documents before the block may have been skipped. If
+   * there are no more documents, the enum is exhausted and
+   * {@link #NO_MORE_DOC} is returned.
+   *
+   * <p>
+   *
+   * This default implementation has no block information, it returns
+   * {@link #NO_MORE_DOC} and an unknown impact.
+   */
+  public int advanceShallow(final int target) throws IOException {
+    return NO_MORE_DOC;
+  }
+
+  /**
+   * Expert: Returns the maximum node frequency of a document in the block of
+   * the last call to {@link #advanceShallow(int)}, or 0 if unknown.
+   */
+  public int blockMaxNodeFreq() {
+    return 0;
+  }
+
+  /**
+   * Expert: Returns the maximum term frequency in a node in the block of the
+   * last call to {@link #advanceShallow(int)}. Only valid if
+   * {@link #blockMaxNodeFreq()} is not 0.
+   */
+  public int blockMaxTermFreqInNode() {
+    return 0;
+  }
+
+  /**
+   * Expert: Returns the maximum term frequency in a document in the block of
+   * the last call to {@link #advanceShallow(int)}. Only valid if
+   * {@link #blockMaxNodeFreq()} is not 0.
+   */
+  public int blockMaxTermFreqInDoc() {
+    return 0;
+  }
+
 }
@@ -19,7 +19,7 @@
 
 package com.sindicetech.siren.index;
 
-import java.io.IOException;
+import org.apache.lucene.util.IntsRef;
 
 import com.sindicetech.siren.util.NodeUtils;
 
@@ -40,13 +40,8 @@ public class LevelConstrainedNodesEnum extends ConstrainedNodesEnum {
   }
 
   @Override
-  public boolean nextNode() throws IOException {
-    while (docsEnum.nextNode()) {
-      if (NodeUtils.isConstraintSatisfied(docsEnum.node(), level)) {
-        return true;
-      }
-    }
-    return false;
+  protected boolean isConstraintSatisfied(final IntsRef node) {
+    return NodeUtils.isConstraintSatisfied(node, level);
   }
 
 }
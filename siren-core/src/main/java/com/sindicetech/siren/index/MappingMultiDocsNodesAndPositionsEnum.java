@@ -57,6 +57,21 @@ extends DocsNodesAndPositionsEnum {
     return this;
   }
 
+  /**
+   * Reset the enum to iterate only over the given sub-enum of the
+   * {@link MappingMultiDocsAndPositionsEnum}.
+   */
+  public MappingMultiDocsNodesAndPositionsEnum reset(final MappingMultiDocsAndPositionsEnum postingsEnum,
+                                                     final int sub)
+  throws IOException {
+    assert sub < postingsEnum.getNumSubs();
+    this.numSubs = sub + 1;
+    this.subs = postingsEnum.getSubs();
+    upto = sub - 1;
+    current = null;
+    return this;
+  }
+
   public void setMergeState(final MergeState mergeState) {
     this.mergeState = mergeState;
   }
@@ -101,6 +116,11 @@ extends DocsNodesAndPositionsEnum {
     return current.nextNode();
   }
 
+  @Override
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    return current.skipToNode(target);
+  }
+
   @Override
   public boolean skipTo(final int target) throws IOException {
     throw new UnsupportedOperationException();
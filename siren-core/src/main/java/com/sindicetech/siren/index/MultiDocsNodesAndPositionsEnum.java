@@ -82,6 +82,36 @@ public class MultiDocsNodesAndPositionsEnum extends DocsNodesAndPositionsEnum {
     }
   }
 
+  @Override
+  public int read(final int[] docs, final int[] nodeFreqs) throws IOException {
+    while (true) {
+      if (current == null) {
+        if (upto == numSubs - 1) {
+          this.doc = NO_MORE_DOC;
+          return 0;
+        }
+        else {
+          upto++;
+          current = subs[upto].docsNodesAndPositionsEnum;
+          currentBase = subs[upto].slice.start;
+        }
+      }
+
+      final int count = current.read(docs, nodeFreqs);
+      if (count > 0) {
+        // rebase the documents of the sub-enum
+        for (int i = 0; i < count; i++) {
+          docs[i] += currentBase;
+        }
+        this.doc = docs[count - 1];
+        return count;
+      }
+      else {
+        current = null;
+      }
+    }
+  }
+
   @Override
   public boolean nextNode() throws IOException {
     if (current != null) {
@@ -90,6 +120,24 @@ public class MultiDocsNodesAndPositionsEnum extends DocsNodesAndPositionsEnum {
     return false;
   }
 
+  @Override
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    if (current != null) {
+      return current.skipToNode(target);
+    }
+    return false;
+  }
+
+  @Override
+  public boolean hasPositions() {
+    for (int i = 0; i < numSubs; i++) {
+      if (!subs[i].docsNodesAndPositionsEnum.hasPositions()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public boolean nextPosition() throws IOException {
     if (current != null) {
@@ -126,6 +174,46 @@ public class MultiDocsNodesAndPositionsEnum extends DocsNodesAndPositionsEnum {
     }
   }
 
+  /**
+   * Moves to the sub-enum which contains the target, and delegates to it.
+   * If the sub-enum has no more documents, the end of its slice is returned.
+   */
+  @Override
+  public int advanceShallow(final int target) throws IOException {
+    while (current == null || target >= currentBase + subs[upto].slice.length) {
+      if (upto == numSubs - 1) {
+        current = null;
+        this.doc = NO_MORE_DOC;
+        return NO_MORE_DOC;
+      }
+      upto++;
+      current = subs[upto].docsNodesAndPositionsEnum;
+      currentBase = subs[upto].slice.start;
+    }
+    final int baseTarget = target < currentBase ? 0 : target - currentBase;
+    final int last = current.advanceShallow(baseTarget);
+    if (last != NO_MORE_DOC) {
+      return currentBase + last;
+    }
+    // either the sub-enum is exhausted, or it has no block information
+    return current.doc() == NO_MORE_DOC ? currentBase + subs[upto].slice.length - 1 : NO_MORE_DOC;
+  }
+
+  @Override
+  public int blockMaxNodeFreq() {
+    return current != null ? current.blockMaxNodeFreq() : 0;
+  }
+
+  @Override
+  public int blockMaxTermFreqInNode() {
+    return current != null ? current.blockMaxTermFreqInNode() : 0;
+  }
+
+  @Override
+  public int blockMaxTermFreqInDoc() {
+    return current != null ? current.blockMaxTermFreqInDoc() : 0;
+  }
+
   @Override
   public int doc() {
     return doc;
@@ -158,7 +246,6 @@ public class MultiDocsNodesAndPositionsEnum extends DocsNodesAndPositionsEnum {
     return current.nodeFreqInDoc();
   }
 
-  // TODO: implement bulk read more efficiently than super
   final class SirenEnumWithSlice {
     public DocsNodesAndPositionsEnum docsNodesAndPositionsEnum;
     public ReaderSlice slice;
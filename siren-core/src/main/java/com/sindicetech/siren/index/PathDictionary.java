@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.index;
+
+import java.io.IOException;
+import java.util.Comparator;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.Util;
+
+import com.sindicetech.siren.analysis.filter.PathEncodingFilter;
+
+/**
+ * The dictionary of the paths of a field in a segment, with their document
+ * counts.
+ *
+ * <p>
+ *
+ * The path of a term is the prefix of the term up to the first
+ * {@link PathEncodingFilter#PATH_DELIMITER}, as produced by the
+ * {@link PathEncodingFilter}. A term without delimiter has no path. The
+ * dictionary contains the path of every term of the field, so a term whose
+ * path is not in the dictionary does not occur in the segment.
+ *
+ * <p>
+ *
+ * The document count of a path is the sum of the document frequencies of its
+ * terms, bounded by the number of documents of the segment. It is an upper
+ * bound of the number of documents containing the path.
+ *
+ * <p>
+ *
+ * The dictionary is written alongside the postings by the codec and is
+ * exposed through the {@link Terms} of the field, see
+ * {@link #get(AtomicReader, String)}.
+ */
+public class PathDictionary {
+
+  private final FST<Long> fst;
+
+  public PathDictionary(final FST<Long> fst) {
+    this.fst = fst;
+  }
+
+  /**
+   * Returns the document count of the path, or 0 if the path does not occur
+   * in the segment.
+   */
+  public long docCount(final BytesRef path) throws IOException {
+    final Long count = Util.get(fst, path);
+    return count == null ? 0 : count;
+  }
+
+  /**
+   * Returns the memory usage of the dictionary in bytes.
+   */
+  public long ramBytesUsed() {
+    return fst.ramBytesUsed();
+  }
+
+  /**
+   * Returns the path of the term, or <code>null</code> if the term has no path.
+   * The returned {@link BytesRef} shares the bytes of the term.
+   */
+  public static BytesRef getPath(final BytesRef term) {
+    final int end = term.offset + term.length;
+    for (int i = term.offset; i < end; i++) {
+      if (term.bytes[i] == PathEncodingFilter.PATH_DELIMITER) {
+        return new BytesRef(term.bytes, term.offset, i - term.offset);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the path dictionary of the field in the reader, or
+   * <code>null</code> if the field does not exist or if the reader does not
+   * provide a path dictionary, e.g., a composite reader or a segment written by
+   * another codec.
+   */
+  public static PathDictionary get(final AtomicReader reader, final String field)
+  throws IOException {
+    final Terms terms = reader.terms(field);
+    if (terms instanceof PathTerms) {
+      return ((PathTerms) terms).getPathDictionary();
+    }
+    return null;
+  }
+
+  /**
+   * The {@link Terms} of a field which provide its {@link PathDictionary}. All
+   * the other methods are delegated to the wrapped {@link Terms}.
+   */
+  public static class PathTerms extends Terms {
+
+    private final Terms in;
+    private final PathDictionary dictionary;
+
+    public PathTerms(final Terms in, final PathDictionary dictionary) {
+      this.in = in;
+      this.dictionary = dictionary;
+    }
+
+    public PathDictionary getPathDictionary() {
+      return dictionary;
+    }
+
+    @Override
+    public TermsEnum iterator(final TermsEnum reuse) throws IOException {
+      return in.iterator(reuse);
+    }
+
+    @Override
+    public TermsEnum intersect(final CompiledAutomaton compiled, final BytesRef startTerm)
+    throws IOException {
+      return in.intersect(compiled, startTerm);
+    }
+
+    @Override
+    public Comparator<BytesRef> getComparator() {
+      return in.getComparator();
+    }
+
+    @Override
+    public long size() throws IOException {
+      return in.size();
+    }
+
+    @Override
+    public long getSumTotalTermFreq() throws IOException {
+      return in.getSumTotalTermFreq();
+    }
+
+    @Override
+    public long getSumDocFreq() throws IOException {
+      return in.getSumDocFreq();
+    }
+
+    @Override
+    public int getDocCount() throws IOException {
+      return in.getDocCount();
+    }
+
+    @Override
+    public boolean hasFreqs() {
+      return in.hasFreqs();
+    }
+
+    @Override
+    public boolean hasOffsets() {
+      return in.hasOffsets();
+    }
+
+    @Override
+    public boolean hasPositions() {
+      return in.hasPositions();
+    }
+
+    @Override
+    public boolean hasPayloads() {
+      return in.hasPayloads();
+    }
+
+    @Override
+    public BytesRef getMin() throws IOException {
+      return in.getMin();
+    }
+
+    @Override
+    public BytesRef getMax() throws IOException {
+      return in.getMax();
+    }
+
+  }
+
+}
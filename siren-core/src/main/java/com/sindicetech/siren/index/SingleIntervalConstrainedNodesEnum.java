@@ -19,8 +19,6 @@
 
 package com.sindicetech.siren.index;
 
-import java.io.IOException;
-
 import org.apache.lucene.util.IntsRef;
 
 import com.sindicetech.siren.util.NodeUtils;
@@ -45,13 +43,8 @@ public class SingleIntervalConstrainedNodesEnum extends ConstrainedNodesEnum {
   }
 
   @Override
-  public boolean nextNode() throws IOException {
-    while (docsEnum.nextNode()) {
-      if (NodeUtils.isConstraintSatisfied(docsEnum.node(), level, constraint)) {
-        return true;
-      }
-    }
-    return false;
+  protected boolean isConstraintSatisfied(final IntsRef node) {
+    return NodeUtils.isConstraintSatisfied(node, level, constraint);
   }
 
 }
@@ -22,11 +22,15 @@ package com.sindicetech.siren.index.codecs.block;
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.DataInput;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.IntsRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Abstract API to decode a block-based posting format.
@@ -42,6 +46,10 @@ public abstract class BlockIndexInput implements Closeable {
 
   protected static final Logger logger = LoggerFactory.getLogger(BlockIndexInput.class);
 
+  /** The caches in which the block readers have cached decoded blocks */
+  private final Set<DecodedBlockCache> blockCaches =
+    Collections.newSetFromMap(new ConcurrentHashMap<DecodedBlockCache, Boolean>());
+
   public BlockIndexInput(final IndexInput in) throws IOException {
     this.in = in;
   }
@@ -55,6 +63,9 @@ public abstract class BlockIndexInput implements Closeable {
   }
 
   public void close() throws IOException {
+    for (final DecodedBlockCache blockCache : blockCaches) {
+      blockCache.clear(this);
+    }
     in.close();
   }
 
@@ -126,6 +137,9 @@ public abstract class BlockIndexInput implements Closeable {
     private long pendingFP = 0;
     private long lastBlockFP = -1;
 
+    /** The cache of decoded blocks, or <code>null</code> if blocks are not cached */
+    private DecodedBlockCache blockCache = null;
+
     /**
      * Each block reader should have their own clone of the {@link IndexInput}
      */
@@ -197,6 +211,47 @@ public abstract class BlockIndexInput implements Closeable {
       return false;
     }
 
+    /**
+     * Expert: Set the cache of the decoded blocks, e.g., depending on the
+     * document frequency of the current term, or <code>null</code> to disable
+     * the caching. The entries of the file are removed from the cache when the
+     * {@link BlockIndexInput} is closed.
+     */
+    public void setDecodedBlockCache(final DecodedBlockCache blockCache) {
+      if (blockCache != null && blockCache != this.blockCache) {
+        blockCaches.add(blockCache);
+      }
+      this.blockCache = blockCache;
+    }
+
+    /**
+     * Copy the cached decoded block starting at the given file pointer into
+     * the buffer. Return false if the caching is disabled or if the block is
+     * not cached, in which case the block must be decoded and cached with
+     * {@link #cacheBlock(long, IntsRef, int)}.
+     */
+    protected boolean readCachedBlock(final long fp, final IntsRef buffer) {
+      return blockCache != null && blockCache.get(BlockIndexInput.this, fp, buffer);
+    }
+
+    /**
+     * Cache the first <code>length</code> integers of the buffer as the
+     * decoded block starting at the given file pointer, if the caching is
+     * enabled.
+     */
+    protected void cacheBlock(final long fp, final IntsRef buffer, final int length) {
+      if (blockCache != null) {
+        blockCache.put(BlockIndexInput.this, fp, buffer, length);
+      }
+    }
+
+    /**
+     * Returns true if the decoded blocks are cached.
+     */
+    protected boolean isCachingBlocks() {
+      return blockCache != null;
+    }
+
     /**
      * Compute the minimum size of a buffer based on the required size and
      * the decompression window size.
@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.index.codecs.block;
+
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Expert: A cache of the decoded blocks of the postings files, shared across
+ * queries and segments.
+ *
+ * <p>
+ *
+ * An entry is the array of integers decoded from a compressed data block. It
+ * is keyed by the {@link BlockIndexInput} of the postings file and by the file
+ * pointer of the compressed data block, which identifies a (term, block) pair
+ * of a segment. The entries of a postings file are removed when the file is
+ * closed.
+ *
+ * <p>
+ *
+ * Only the blocks of the hot terms are cached, i.e., the terms whose document
+ * frequency is at least {@link #getMinDocFreq()}. When the total memory usage
+ * of the entries exceeds {@link #getMaxRamBytesUsed()}, entries are evicted
+ * with the CLOCK algorithm, an approximation of the least-recently-used order:
+ * a lookup only marks the entry as referenced, and the eviction sweeps over the
+ * entries, giving a second chance to the referenced ones. The large blocks of
+ * the rarely used terms therefore do not stay in the cache.
+ *
+ * <p>
+ *
+ * The decoded blocks are copied into the buffers of the block readers, which
+ * modify them during decoding. A cached block is therefore never modified.
+ *
+ * <p>
+ *
+ * This class is thread-safe. The lookups and the insertions do not lock, so
+ * that the search threads do not contend on the cache. Only the eviction is
+ * performed by one thread at a time, and the memory usage may exceed the limit
+ * while an eviction is in progress.
+ *
+ * <p>
+ *
+ * The cache is used by the readers wrapped with a
+ * {@link com.sindicetech.siren.index.codecs.siren10.DecodedBlockCacheDirectoryReader}.
+ */
+public class DecodedBlockCache {
+
+  /**
+   * Estimated memory usage of an entry, excluding the array of integers: the
+   * key, the entry and the node of the map.
+   */
+  private static final long ENTRY_OVERHEAD = 3 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER +
+                                             7 * RamUsageEstimator.NUM_BYTES_OBJECT_REF +
+                                             2 * RamUsageEstimator.NUM_BYTES_LONG +
+                                             RamUsageEstimator.NUM_BYTES_INT + 1;
+
+  private final long maxRamBytesUsed;
+  private final int minDocFreq;
+
+  private final ConcurrentHashMap<BlockKey, Entry> cache;
+
+  /** Only one thread evicts entries at a time */
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  /** The hand of the clock, which is only used by the thread holding the eviction lock */
+  private Iterator<Entry> hand;
+
+  private final AtomicLong ramBytesUsed = new AtomicLong();
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * Creates a cache which holds the blocks of the terms whose document
+   * frequency is at least <code>minDocFreq</code>, using at most
+   * <code>maxRamBytesUsed</code> bytes.
+   */
+  public DecodedBlockCache(final long maxRamBytesUsed, final int minDocFreq) {
+    if (maxRamBytesUsed < 1) {
+      throw new IllegalArgumentException("maxRamBytesUsed must be >= 1");
+    }
+    if (minDocFreq < 1) {
+      throw new IllegalArgumentException("minDocFreq must be >= 1");
+    }
+    this.maxRamBytesUsed = maxRamBytesUsed;
+    this.minDocFreq = minDocFreq;
+    this.cache = new ConcurrentHashMap<BlockKey, Entry>();
+  }
+
+  /**
+   * Returns true if the blocks of a term with the given document frequency
+   * must be cached.
+   */
+  public boolean accept(final int docFreq) {
+    return docFreq >= minDocFreq;
+  }
+
+  /**
+   * Copy the cached block of the given postings file starting at the given
+   * file pointer into the buffer, whose array must be large enough. Return
+   * false if the block is not cached.
+   */
+  boolean get(final BlockIndexInput input, final long fp, final IntsRef buffer) {
+    final Entry entry = cache.get(new BlockKey(input, fp));
+    if (entry == null) {
+      missCount.incrementAndGet();
+      return false;
+    }
+    hitCount.incrementAndGet();
+    // avoid a volatile write when the entry is already referenced
+    if (!entry.referenced) {
+      entry.referenced = true;
+    }
+    System.arraycopy(entry.block, 0, buffer.ints, 0, entry.block.length);
+    return true;
+  }
+
+  /**
+   * Cache a copy of the first <code>length</code> integers of the buffer as the
+   * block of the given postings file starting at the given file pointer.
+   */
+  void put(final BlockIndexInput input, final long fp, final IntsRef buffer, final int length) {
+    final int[] block = Arrays.copyOf(buffer.ints, length);
+    final long size = RamUsageEstimator.sizeOf(block) + ENTRY_OVERHEAD;
+    if (size > maxRamBytesUsed) {
+      return;
+    }
+    final BlockKey key = new BlockKey(input, fp);
+    if (cache.putIfAbsent(key, new Entry(key, block, size)) != null) {
+      return;
+    }
+    ramBytesUsed.addAndGet(size);
+    this.evictIfNecessary();
+  }
+
+  /**
+   * Evict entries until the memory usage is below the limit. If another thread
+   * is evicting, it will take into account the memory used by the new entries,
+   * since it checks the memory usage again after releasing the lock.
+   */
+  private void evictIfNecessary() {
+    while (ramBytesUsed.get() > maxRamBytesUsed && evictionLock.tryLock()) {
+      try {
+        while (ramBytesUsed.get() > maxRamBytesUsed) {
+          if (hand == null || !hand.hasNext()) {
+            hand = cache.values().iterator();
+            if (!hand.hasNext()) {
+              break;
+            }
+          }
+          final Entry entry = hand.next();
+          if (entry.referenced) {
+            // second chance
+            entry.referenced = false;
+          }
+          else if (cache.remove(entry.key, entry)) {
+            ramBytesUsed.addAndGet(-entry.size);
+            evictionCount.incrementAndGet();
+          }
+        }
+      }
+      finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Removes all the entries of the given postings file.
+   */
+  void clear(final BlockIndexInput input) {
+    for (final Entry entry : cache.values()) {
+      if (entry.key.input == input && cache.remove(entry.key, entry)) {
+        ramBytesUsed.addAndGet(-entry.size);
+      }
+    }
+  }
+
+  /**
+   * Removes all the entries.
+   */
+  public void clear() {
+    for (final Entry entry : cache.values()) {
+      if (cache.remove(entry.key, entry)) {
+        ramBytesUsed.addAndGet(-entry.size);
+      }
+    }
+  }
+
+  /**
+   * Returns the maximum memory usage in bytes
+   */
+  public long getMaxRamBytesUsed() {
+    return maxRamBytesUsed;
+  }
+
+  /**
+   * Returns the minimum document frequency of the terms whose blocks are
+   * cached
+   */
+  public int getMinDocFreq() {
+    return minDocFreq;
+  }
+
+  /**
+   * Returns the number of cached blocks
+   */
+  public int size() {
+    return cache.size();
+  }
+
+  /**
+   * Returns the memory used by the cached blocks in bytes
+   */
+  public long ramBytesUsed() {
+    return ramBytesUsed.get();
+  }
+
+  /**
+   * Returns the number of lookups which found a block
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Returns the number of lookups which did not find a block
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Returns the number of blocks which have been evicted because of the
+   * memory limit
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * A cached block, with the reference bit of the CLOCK algorithm.
+   */
+  private static final class Entry {
+
+    final BlockKey key;
+    final int[] block;
+    final long size;
+
+    /** Set by the lookups, cleared by the eviction */
+    volatile boolean referenced = false;
+
+    Entry(final BlockKey key, final int[] block, final long size) {
+      this.key = key;
+      this.block = block;
+      this.size = size;
+    }
+
+  }
+
+  /**
+   * The key of a cache entry: the postings file and the file pointer of the
+   * compressed data block.
+   */
+  private static final class BlockKey {
+
+    final BlockIndexInput input;
+    final long fp;
+
+    BlockKey(final BlockIndexInput input, final long fp) {
+      this.input = input;
+      this.fp = fp;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (!(o instanceof BlockKey)) return false;
+      final BlockKey other = (BlockKey) o;
+      return input == other.input && fp == other.fp;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(input) + (int) (fp ^ (fp >>> 32));
+    }
+
+  }
+
+}
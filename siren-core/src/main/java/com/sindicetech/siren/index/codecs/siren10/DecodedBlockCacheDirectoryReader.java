@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.index.codecs.siren10;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+
+import com.sindicetech.siren.index.codecs.block.DecodedBlockCache;
+
+import java.io.IOException;
+
+/**
+ * Expert: A {@link FilterDirectoryReader} which caches the decoded blocks of
+ * the SIREn 1.0 postings in a {@link DecodedBlockCache}.
+ *
+ * <p>
+ *
+ * The postings formats are instantiated by name when a segment is opened, so
+ * the cache is not a configuration of the postings format, but of the reader:
+ * the cache is set on the postings enums created by this reader, and the
+ * segments of readers which are not wrapped do not use any cache. The cache can
+ * be shared by several readers, e.g., by the successive readers of an index:
+ *
+ * <pre>
+ *   DecodedBlockCache cache = new DecodedBlockCache(64 * 1024 * 1024, 1024);
+ *   DirectoryReader reader = DecodedBlockCacheDirectoryReader.wrap(DirectoryReader.open(dir), cache);
+ * </pre>
+ *
+ * The reopened readers are wrapped with the same cache. The postings of the
+ * other postings formats are not affected.
+ */
+public class DecodedBlockCacheDirectoryReader extends FilterDirectoryReader {
+
+  private final DecodedBlockCache blockCache;
+
+  /**
+   * Create a reader which caches the decoded blocks of the given reader in
+   * the given cache.
+   */
+  public DecodedBlockCacheDirectoryReader(final DirectoryReader in,
+                                          final DecodedBlockCache blockCache) {
+    super(in, new SubReaderWrapper() {
+      @Override
+      public AtomicReader wrap(final AtomicReader reader) {
+        return new DecodedBlockCacheAtomicReader(reader, blockCache);
+      }
+    });
+    this.blockCache = blockCache;
+  }
+
+  /**
+   * Wrap the given reader so that the decoded blocks of its postings are
+   * cached in the given cache.
+   */
+  public static DirectoryReader wrap(final DirectoryReader in,
+                                     final DecodedBlockCache blockCache) {
+    return new DecodedBlockCacheDirectoryReader(in, blockCache);
+  }
+
+  /**
+   * Returns the cache of the decoded blocks
+   */
+  public DecodedBlockCache getDecodedBlockCache() {
+    return blockCache;
+  }
+
+  @Override
+  protected DirectoryReader doWrapDirectoryReader(final DirectoryReader in) {
+    return new DecodedBlockCacheDirectoryReader(in, blockCache);
+  }
+
+  /**
+   * A {@link FilterAtomicReader} which sets the cache of the decoded blocks on
+   * the SIREn 1.0 postings enums.
+   * <p>
+   * The content of the reader is unchanged, so the cache keys of the wrapped
+   * reader are reused.
+   */
+  static class DecodedBlockCacheAtomicReader extends FilterAtomicReader {
+
+    private final DecodedBlockCache blockCache;
+
+    DecodedBlockCacheAtomicReader(final AtomicReader in, final DecodedBlockCache blockCache) {
+      super(in);
+      this.blockCache = blockCache;
+    }
+
+    @Override
+    public Fields fields() throws IOException {
+      final Fields fields = super.fields();
+      return fields == null ? null : new DecodedBlockCacheFields(fields, blockCache);
+    }
+
+    @Override
+    public Object getCoreCacheKey() {
+      return in.getCoreCacheKey();
+    }
+
+    @Override
+    public Object getCombinedCoreAndDeletesKey() {
+      return in.getCombinedCoreAndDeletesKey();
+    }
+
+  }
+
+  private static class DecodedBlockCacheFields extends FilterAtomicReader.FilterFields {
+
+    private final DecodedBlockCache blockCache;
+
+    DecodedBlockCacheFields(final Fields in, final DecodedBlockCache blockCache) {
+      super(in);
+      this.blockCache = blockCache;
+    }
+
+    @Override
+    public Terms terms(final String field) throws IOException {
+      final Terms terms = super.terms(field);
+      return terms == null ? null : new DecodedBlockCacheTerms(terms, blockCache);
+    }
+
+  }
+
+  private static class DecodedBlockCacheTerms extends FilterAtomicReader.FilterTerms {
+
+    private final DecodedBlockCache blockCache;
+
+    DecodedBlockCacheTerms(final Terms in, final DecodedBlockCache blockCache) {
+      super(in);
+      this.blockCache = blockCache;
+    }
+
+    @Override
+    public TermsEnum iterator(final TermsEnum reuse) throws IOException {
+      return new DecodedBlockCacheTermsEnum(in.iterator(reuse), blockCache);
+    }
+
+    @Override
+    public TermsEnum intersect(final CompiledAutomaton compiled, final BytesRef startTerm)
+    throws IOException {
+      return new DecodedBlockCacheTermsEnum(in.intersect(compiled, startTerm), blockCache);
+    }
+
+  }
+
+  private static class DecodedBlockCacheTermsEnum extends FilterAtomicReader.FilterTermsEnum {
+
+    private final DecodedBlockCache blockCache;
+
+    DecodedBlockCacheTermsEnum(final TermsEnum in, final DecodedBlockCache blockCache) {
+      super(in);
+      this.blockCache = blockCache;
+    }
+
+    @Override
+    public void seekExact(final BytesRef term, final TermState state) throws IOException {
+      in.seekExact(term, state);
+    }
+
+    @Override
+    public TermState termState() throws IOException {
+      return in.termState();
+    }
+
+    @Override
+    public DocsEnum docs(final Bits liveDocs, final DocsEnum reuse, final int flags)
+    throws IOException {
+      return this.setDecodedBlockCache(in.docs(liveDocs, reuse, flags));
+    }
+
+    @Override
+    public DocsAndPositionsEnum docsAndPositions(final Bits liveDocs,
+                                                 final DocsAndPositionsEnum reuse,
+                                                 final int flags)
+    throws IOException {
+      return this.setDecodedBlockCache(in.docsAndPositions(liveDocs, reuse, flags));
+    }
+
+    private <E extends DocsEnum> E setDecodedBlockCache(final E docsEnum) {
+      if (docsEnum instanceof Siren10PostingsReader.Siren10DocsEnum) {
+        ((Siren10PostingsReader.Siren10DocsEnum) docsEnum).setDecodedBlockCache(blockCache);
+      }
+      return docsEnum;
+    }
+
+  }
+
+}
@@ -21,6 +21,7 @@ package com.sindicetech.siren.index.codecs.siren10;
 
 import java.io.IOException;
 
+import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IntsRef;
@@ -38,6 +39,13 @@ public class DocsFreqBlockIndexInput extends BlockIndexInput {
   protected BlockDecompressor docDecompressor;
   protected BlockDecompressor freqDecompressor;
 
+  /**
+   * Whether the block headers record the maximum impact of the block. This is
+   * false for the postings files written before
+   * {@link Siren10PostingsWriter#VERSION_BLOCK_MAX}.
+   */
+  private boolean hasImpactData = true;
+
   public DocsFreqBlockIndexInput(final IndexInput in,
                                  final BlockDecompressor docDecompressor,
                                  final BlockDecompressor freqDecompressor)
@@ -47,6 +55,14 @@ public class DocsFreqBlockIndexInput extends BlockIndexInput {
     this.freqDecompressor = freqDecompressor;
   }
 
+  /**
+   * Set whether the block headers record the maximum impact of the block.
+   * Must be called before the creation of the block readers.
+   */
+  void setImpactData(final boolean hasImpactData) {
+    this.hasImpactData = hasImpactData;
+  }
+
   @Override
   public DocsFreqBlockReader getBlockReader() {
     // Clone index input. A cloned index input does not need to be closed
@@ -83,6 +99,9 @@ public class DocsFreqBlockIndexInput extends BlockIndexInput {
 
     int firstDocId, lastDocId;
 
+    /** The maximum impact of the block, with a node frequency of 0 if unknown */
+    int maxNodeFreq, maxTermFreqInNode, maxTermFreqInDoc;
+
     long dataBlockOffset = -1;
 
     NodBlockIndexInput.Index nodeBlockIndex;
@@ -107,7 +126,8 @@ public class DocsFreqBlockIndexInput extends BlockIndexInput {
     /**
      * Set the {@link Index} of the {@link PosBlockIndexInput}. The
      * {@link Index} is used to update the current file pointer of the
-     * {@link PosBlockIndexInput} when decoding a block.
+     * {@link PosBlockIndexInput} when decoding a block. It is not set if the
+     * positions are not indexed.
      */
     public void setPosBlockIndex(final PosBlockIndexInput.Index index) throws IOException {
       this.posBlockIndex = index;
@@ -140,9 +160,26 @@ public class DocsFreqBlockIndexInput extends BlockIndexInput {
       firstDocId = in.readVInt();
       lastDocId = firstDocId + in.readVInt();
 
+      // read the maximum impact
+      if (hasImpactData) {
+        maxNodeFreq = in.readVInt();
+        maxTermFreqInNode = in.readVInt();
+        maxTermFreqInDoc = in.readVInt();
+      }
+      else {
+        maxNodeFreq = maxTermFreqInNode = maxTermFreqInDoc = 0;
+      }
+
+      // the block is not exhausted until all its documents have been read,
+      // even if the doc data block has not been decoded yet
+      docBuffer.offset = 0;
+      docBuffer.length = blockSize;
+
       // read node and pos skip data
       nodeBlockIndex.read(in, true);
-      posBlockIndex.read(in, true);
+      if (posBlockIndex != null) {
+        posBlockIndex.read(in, true);
+      }
 
       // record file pointer as data block offset for skipping
       dataBlockOffset = in.getFilePointer();
@@ -160,6 +197,12 @@ public class DocsFreqBlockIndexInput extends BlockIndexInput {
     private void decodeDocs() throws IOException {
       // logger.debug("Decode Doc block: {}", this.hashCode());
 
+      if (this.readCachedBlock(dataBlockOffset, docBuffer)) {
+        docBuffer.length = blockSize;
+        docsReadPending = false;
+        return;
+      }
+
       in.seek(dataBlockOffset); // skip to doc data block
       in.readBytes(docCompressedBuffer.bytes, 0, docCompressedBufferLength);
       docCompressedBuffer.offset = 0;
@@ -169,13 +212,29 @@ public class DocsFreqBlockIndexInput extends BlockIndexInput {
       // large window size can set it larger than the blockSize, e.g., AFor
       docBuffer.length = blockSize;
 
+      // decode the deltas of the whole block at once: the first value is
+      // always equal to 0 and is replaced by the first doc id
+      final int[] docs = docBuffer.ints;
+      docs[0] = firstDocId;
+      for (int i = 1; i < blockSize; i++) {
+        docs[i] += docs[i - 1] + 1;
+      }
+      this.cacheBlock(dataBlockOffset, docBuffer, blockSize);
+
       docsReadPending = false;
     }
 
     private void decodeNodeFreqs() throws IOException {
       // logger.debug("Decode Node Freqs block: {}", this.hashCode());
 
-      in.seek(dataBlockOffset + docCompressedBufferLength); // skip to node freq data block
+      final long fp = dataBlockOffset + docCompressedBufferLength;
+      if (this.readCachedBlock(fp, nodFreqBuffer)) {
+        nodFreqBuffer.length = blockSize;
+        nodFreqsReadPending = false;
+        return;
+      }
+
+      in.seek(fp); // skip to node freq data block
       in.readBytes(nodFreqCompressedBuffer.bytes, 0, nodFreqCompressedBufferLength);
       nodFreqCompressedBuffer.offset = 0;
       nodFreqCompressedBuffer.length = nodFreqCompressedBufferLength;
@@ -184,6 +243,13 @@ public class DocsFreqBlockIndexInput extends BlockIndexInput {
       // large window size can set it larger than the blockSize, e.g., AFor
       nodFreqBuffer.length = blockSize;
 
+      // increment the freqs of the whole block at once
+      final int[] freqs = nodFreqBuffer.ints;
+      for (int i = 0; i < blockSize; i++) {
+        freqs[i]++;
+      }
+      this.cacheBlock(fp, nodFreqBuffer, blockSize);
+
       nodFreqsReadPending = false;
     }
 
@@ -201,25 +267,67 @@ public class DocsFreqBlockIndexInput extends BlockIndexInput {
       return lastDocId;
     }
 
-    private int currentDocId;
+    /**
+     * Return the maximum node frequency in a document of the current block,
+     * or 0 if unknown.
+     */
+    public int getMaxNodeFreq() {
+      return maxNodeFreq;
+    }
+
+    /**
+     * Return the maximum term frequency in a node of the current block. Only
+     * valid if {@link #getMaxNodeFreq()} is not 0.
+     */
+    public int getMaxTermFreqInNode() {
+      return maxTermFreqInNode;
+    }
+
+    /**
+     * Return the maximum term frequency in a document of the current block.
+     * Only valid if {@link #getMaxNodeFreq()} is not 0.
+     */
+    public int getMaxTermFreqInDoc() {
+      return maxTermFreqInDoc;
+    }
+
+    /**
+     * Return the number of documents of the current block that have not been
+     * read yet.
+     */
+    public int getRemainingDocuments() {
+      return docBuffer.length - docBuffer.offset;
+    }
+
+    /**
+     * Skip the remaining documents of the current block without decoding the
+     * doc and node frequency data blocks. The reader is exhausted afterwards,
+     * and {@link #nextBlock()} must be called to move to the next block.
+     */
+    public void skipBlock() {
+      docBuffer.offset = docBuffer.length;
+    }
+
+    /**
+     * Expert: Copy the compressed doc and node frequency data blocks of the
+     * current block to the given output, without decoding them.
+     * <p>
+     * This is used by {@link Siren10PostingsWriter} to copy raw blocks during
+     * merge.
+     */
+    void copyData(final DataOutput out) throws IOException {
+      in.seek(dataBlockOffset); // skip to doc data block
+      out.copyBytes(in, docCompressedBufferLength + nodFreqCompressedBufferLength);
+    }
 
     /**
      * Decode and return the next document identifier of the current block.
      */
     public int nextDocument() throws IOException {
-      if (!docsReadPending) {
-        // decode delta and increment by one
-        currentDocId += docBuffer.ints[docBuffer.offset++] + 1;
-        return currentDocId;
+      if (docsReadPending) {
+        this.decodeDocs();
       }
-
-      // if new block, first value is always equal to 0, no delta decoding
-      this.decodeDocs();
-      // set current doc with first doc
-      currentDocId = firstDocId;
-      // increment doc buffer offset to skip first value (== 0)
-      docBuffer.offset++;
-      return currentDocId;
+      return docBuffer.ints[docBuffer.offset++];
     }
 
     /**
@@ -229,8 +337,44 @@ public class DocsFreqBlockIndexInput extends BlockIndexInput {
       if (nodFreqsReadPending) {
         this.decodeNodeFreqs();
       }
-      // Increment freq
-      return nodFreqBuffer.ints[nodFreqBuffer.offset++] + 1;
+      return nodFreqBuffer.ints[nodFreqBuffer.offset++];
+    }
+
+    /**
+     * Bulk read of the next document identifiers and node frequencies of the
+     * current block.
+     *
+     * <p>
+     *
+     * Copy at most <code>max</code> documents and their node frequencies into
+     * the given arrays, and return the number of documents copied. The
+     * document and node frequency buffers must be aligned, i.e., the node
+     * frequencies of all the documents read so far must have been read.
+     */
+    public int read(final int[] docs, final int[] nodeFreqs, final int max) throws IOException {
+      assert docBuffer.offset == nodFreqBuffer.offset;
+      if (docsReadPending) {
+        this.decodeDocs();
+      }
+      if (nodFreqsReadPending) {
+        this.decodeNodeFreqs();
+      }
+      final int n = Math.min(max, docBuffer.length - docBuffer.offset);
+      System.arraycopy(docBuffer.ints, docBuffer.offset, docs, 0, n);
+      System.arraycopy(nodFreqBuffer.ints, nodFreqBuffer.offset, nodeFreqs, 0, n);
+      docBuffer.offset += n;
+      nodFreqBuffer.offset += n;
+      return n;
+    }
+
+    /**
+     * Expert: Move the reader back by the given number of documents, which
+     * must have been returned by the last call to
+     * {@link #read(int[], int[], int)}.
+     */
+    void unread(final int n) {
+      docBuffer.offset -= n;
+      nodFreqBuffer.offset -= n;
     }
 
     @Override
@@ -70,6 +70,14 @@ public class DocsFreqBlockIndexOutput extends BlockIndexOutput {
    * This class must be associated to the {@link Index}s of the
    * {@link NodBlockWriter} and {@link PosBlockWriter} using
    * {@link #setNodeBlockIndex(Index)} and {@link #setPosBlockIndex(Index)}.
+   *
+   * <p>
+   *
+   * The block header also records the maximum impact of the term in the
+   * documents of the block: the maximum node frequency, the maximum term
+   * frequency in a node and the maximum term frequency in a document. They are
+   * used to compute an upper bound of the score of the block without decoding
+   * it. A maximum node frequency of 0 means that the impact is unknown.
    */
   public class DocsFreqBlockWriter extends BlockWriter {
 
@@ -77,6 +85,7 @@ public class DocsFreqBlockIndexOutput extends BlockIndexOutput {
     IntsRef nodFreqBuffer;
 
     int firstDocId, lastDocId = 0;
+    int maxNodeFreq, maxTermFreqInNode, maxTermFreqInDoc;
     NodBlockIndexOutput.Index nodeBlockIndex;
     PosBlockIndexOutput.Index posBlockIndex;
 
@@ -116,7 +125,8 @@ public class DocsFreqBlockIndexOutput extends BlockIndexOutput {
     /**
      * Set the {@link Index} of the {@link PosBlockIndexOutput}. The
      * {@link Index} is used to read the current file pointer of the
-     * {@link PosBlockIndexOutput} when flushing a block.
+     * {@link PosBlockIndexOutput} when flushing a block. It is not set if the
+     * positions are not indexed.
      */
     public void setPosBlockIndex(final PosBlockIndexOutput.Index index) throws IOException {
       this.posBlockIndex = index;
@@ -152,6 +162,19 @@ public class DocsFreqBlockIndexOutput extends BlockIndexOutput {
     public void writeNodeFreq(final int nodeFreqInDoc) {
       // decrement freq by one
       nodFreqBuffer.ints[nodFreqBuffer.offset++] = nodeFreqInDoc - 1;
+      maxNodeFreq = Math.max(maxNodeFreq, nodeFreqInDoc);
+    }
+
+    /**
+     * Add the term frequencies of the current document to the maximum impact
+     * of the block.
+     *
+     * @param maxTermFreqInNode The maximum term frequency in a node of the document
+     * @param termFreqInDoc The term frequency in the document
+     */
+    public void writeTermFreqs(final int maxTermFreqInNode, final int termFreqInDoc) {
+      this.maxTermFreqInNode = Math.max(this.maxTermFreqInNode, maxTermFreqInNode);
+      this.maxTermFreqInDoc = Math.max(this.maxTermFreqInDoc, termFreqInDoc);
     }
 
     @Override
@@ -194,12 +217,58 @@ public class DocsFreqBlockIndexOutput extends BlockIndexOutput {
       out.writeVInt(lastDocId - firstDocId);
       // logger.debug("firstDocId: {}, lastDocId: {}", firstDocId, lastDocId);
 
+      // write the maximum impact
+      this.writeImpact(maxNodeFreq, maxTermFreqInNode, maxTermFreqInDoc);
+
       // write node and pos skip data
       // logger.debug("Write node and pos skip data");
       nodeBlockIndex.mark();
       nodeBlockIndex.write(out, true);
-      posBlockIndex.mark();
-      posBlockIndex.write(out, true);
+      if (posBlockIndex != null) {
+        posBlockIndex.mark();
+        posBlockIndex.write(out, true);
+      }
+    }
+
+    /**
+     * Expert: Write the current block of the given reader as a new block,
+     * without decoding and encoding its data blocks. Only the first and last
+     * doc ids, which are shifted by <code>docBase</code>, and the pointers to
+     * the .nod and .pos blocks are updated in the block header. The maximum
+     * impact of the block is copied, or is unknown if the reader has none.
+     * <p>
+     * The pending block must be empty. The associated blocks of the .nod and
+     * .pos files must be written right after this call.
+     */
+    void copyBlock(final DocsFreqBlockIndexInput.DocsFreqBlockReader reader, final int docBase)
+    throws IOException {
+      assert this.isEmpty();
+
+      firstDocId = docBase + reader.firstDocId;
+      lastDocId = docBase + reader.lastDocId;
+
+      out.writeVInt(reader.blockSize);
+      out.writeVInt(reader.docCompressedBufferLength);
+      out.writeVInt(reader.nodFreqCompressedBufferLength);
+      out.writeVInt(firstDocId);
+      out.writeVInt(lastDocId - firstDocId);
+      this.writeImpact(reader.maxNodeFreq, reader.maxTermFreqInNode, reader.maxTermFreqInDoc);
+      nodeBlockIndex.mark();
+      nodeBlockIndex.write(out, true);
+      if (posBlockIndex != null) {
+        posBlockIndex.mark();
+        posBlockIndex.write(out, true);
+      }
+
+      reader.copyData(out);
+    }
+
+    private void writeImpact(final int maxNodeFreq, final int maxTermFreqInNode,
+                             final int maxTermFreqInDoc)
+    throws IOException {
+      out.writeVInt(maxNodeFreq);
+      out.writeVInt(maxTermFreqInNode);
+      out.writeVInt(maxTermFreqInDoc);
     }
 
     @Override
@@ -212,6 +281,7 @@ public class DocsFreqBlockIndexOutput extends BlockIndexOutput {
     protected void initBlock() {
       docBuffer.offset = 0;
       nodFreqBuffer.offset = 0;
+      maxNodeFreq = maxTermFreqInNode = maxTermFreqInDoc = 0;
     }
 
   }
@@ -19,13 +19,17 @@
 
 package com.sindicetech.siren.index.codecs.siren10;
 
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IntsRef;
 
 import com.sindicetech.siren.index.codecs.block.BlockDecompressor;
 import com.sindicetech.siren.index.codecs.block.BlockIndexInput;
 import com.sindicetech.siren.util.ArrayUtils;
+import com.sindicetech.siren.util.NodeUtils;
 
 import java.io.IOException;
 
@@ -37,12 +41,27 @@ public class NodBlockIndexInput extends BlockIndexInput {
 
   protected BlockDecompressor nodDecompressor;
 
+  /**
+   * Whether the blocks have a node skip data section. This is false for the
+   * postings files written before
+   * {@link Siren10PostingsWriter#VERSION_NODE_SKIP}.
+   */
+  private boolean hasNodeSkipData = false;
+
   public NodBlockIndexInput(final IndexInput in, final BlockDecompressor nodDecompressor)
   throws IOException {
     super(in);
     this.nodDecompressor = nodDecompressor;
   }
 
+  /**
+   * Set whether the blocks have a node skip data section. Must be called before
+   * the creation of the block readers.
+   */
+  void setNodeSkipData(final boolean hasNodeSkipData) {
+    this.hasNodeSkipData = hasNodeSkipData;
+  }
+
   @Override
   public NodBlockReader getBlockReader() {
     // Clone index input. A cloned index input does not need to be closed
@@ -57,6 +76,12 @@ public class NodBlockIndexInput extends BlockIndexInput {
    * <p>
    *
    * Read and decode blocks containing the the node labels and term frequencies.
+   *
+   * <p>
+   *
+   * The node skip data of a block is read with the node lengths, but its skip
+   * points are only decoded on the first call to
+   * {@link #skipToNode(IntsRef, int)}.
    */
   protected class NodBlockReader extends BlockReader {
 
@@ -84,6 +109,22 @@ public class NodBlockIndexInput extends BlockIndexInput {
     int termFreqCompressedBufferLength;
     BytesRef termFreqCompressedBuffer = new BytesRef();
 
+    int nodSkipBufferLength;
+    BytesRef nodSkipBuffer = new BytesRef();
+    boolean nodSkipDecodePending = true;
+
+    /**
+     * The decoded skip points of the block: the index of the node of each skip
+     * point, and the offset of the label of its previous node in the pool.
+     */
+    int[] skipNodes = new int[8];
+    int[] skipLabelOffsets = new int[9];
+    int[] skipLabelPool = new int[32];
+    int numSkipPoints;
+    /** The index of the next skip point to consider */
+    int skipPointer;
+    private final ByteArrayDataInput nodSkipIn = new ByteArrayDataInput();
+
     private NodBlockReader(final IndexInput in) {
       super(in);
       // ensure that the output buffers has the minimum size required
@@ -129,6 +170,11 @@ public class NodBlockIndexInput extends BlockIndexInput {
       termFreqCompressedBuffer = ArrayUtils.grow(termFreqCompressedBuffer, termFreqCompressedBufferLength);
       termFreqReadPending = true;
 
+      nodSkipBufferLength = hasNodeSkipData ? in.readVInt() : 0;
+      nodSkipBuffer = ArrayUtils.grow(nodSkipBuffer, nodSkipBufferLength);
+      nodSkipDecodePending = true;
+      numSkipPoints = skipPointer = 0;
+
       // copy reference of node buffer
       currentNode.ints = nodBuffer.ints;
     }
@@ -137,7 +183,7 @@ public class NodBlockIndexInput extends BlockIndexInput {
     protected void skipData() throws IOException {
       long size = 0;
       if (nodLenReadPending) {
-        size += nodLenCompressedBufferLength;
+        size += nodLenCompressedBufferLength + nodSkipBufferLength;
       }
       if (nodReadPending) {
         size += nodCompressedBufferLength;
@@ -152,24 +198,70 @@ public class NodBlockIndexInput extends BlockIndexInput {
     private void decodeNodeLengths() throws IOException {
       // logger.debug("Decode Nodes Length: {}", this.hashCode());
       // logger.debug("Decode Nodes Length at {}", in.getFilePointer());
-      in.readBytes(nodLenCompressedBuffer.bytes, 0, nodLenCompressedBufferLength);
-      nodLenCompressedBuffer.offset = 0;
-      nodLenCompressedBuffer.length = nodLenCompressedBufferLength;
-      nodDecompressor.decompress(nodLenCompressedBuffer, nodLenBuffer);
+      final long fp = in.getFilePointer();
+      if (this.readCachedBlock(fp, nodLenBuffer)) {
+        // move to the node skip data as if the data block was read
+        in.seek(fp + nodLenCompressedBufferLength);
+      }
+      else {
+        in.readBytes(nodLenCompressedBuffer.bytes, 0, nodLenCompressedBufferLength);
+        nodLenCompressedBuffer.offset = 0;
+        nodLenCompressedBuffer.length = nodLenCompressedBufferLength;
+        nodDecompressor.decompress(nodLenCompressedBuffer, nodLenBuffer);
+        this.cacheBlock(fp, nodLenBuffer, nodLenBlockSize);
+      }
       // set length limit based on block size, as certain decompressor with
       // large window size can set it larger than the blockSize, e.g., AFor
       nodLenBuffer.length = nodLenBlockSize;
 
+      // read the node skip data which follows the node lengths
+      in.readBytes(nodSkipBuffer.bytes, 0, nodSkipBufferLength);
+
       nodLenReadPending = false;
     }
 
+    /**
+     * Decode the skip points of the node skip data.
+     */
+    private void decodeSkipPoints() {
+      nodSkipIn.reset(nodSkipBuffer.bytes, 0, nodSkipBufferLength);
+      int node = 0;
+      int poolUpto = 0;
+      numSkipPoints = 0;
+      while (!nodSkipIn.eof()) {
+        if (numSkipPoints == skipNodes.length) {
+          skipNodes = ArrayUtil.grow(skipNodes, numSkipPoints + 1);
+          skipLabelOffsets = ArrayUtil.grow(skipLabelOffsets, skipNodes.length + 1);
+        }
+        node += nodSkipIn.readVInt();
+        final int length = nodSkipIn.readVInt();
+        skipLabelPool = ArrayUtil.grow(skipLabelPool, poolUpto + length);
+        for (int i = 0; i < length; i++) {
+          skipLabelPool[poolUpto++] = nodSkipIn.readVInt();
+        }
+        skipNodes[numSkipPoints] = node;
+        skipLabelOffsets[++numSkipPoints] = poolUpto;
+      }
+      skipPointer = 0;
+      nodSkipDecodePending = false;
+    }
+
     private void decodeNodes() throws IOException {
       // logger.debug("Decode Nodes: {}", this.hashCode());
       // logger.debug("Decode Nodes at {}", in.getFilePointer());
-      in.readBytes(nodCompressedBuffer.bytes, 0, nodCompressedBufferLength);
-      nodCompressedBuffer.offset = 0;
-      nodCompressedBuffer.length = nodCompressedBufferLength;
-      nodDecompressor.decompress(nodCompressedBuffer, nodBuffer);
+      final long fp = in.getFilePointer();
+      if (this.readCachedBlock(fp, nodBuffer)) {
+        // move to the term frequencies as if the data block was read
+        in.seek(fp + nodCompressedBufferLength);
+      }
+      else {
+        in.readBytes(nodCompressedBuffer.bytes, 0, nodCompressedBufferLength);
+        nodCompressedBuffer.offset = 0;
+        nodCompressedBuffer.length = nodCompressedBufferLength;
+        nodDecompressor.decompress(nodCompressedBuffer, nodBuffer);
+        // cache the node ids before their delta decoding
+        this.cacheBlock(fp, nodBuffer, nodBlockSize);
+      }
       // set length limit based on block size, as certain decompressor with
       // large window size can set it larger than the blockSize, e.g., AFor
       nodBuffer.length = nodBlockSize;
@@ -179,6 +271,11 @@ public class NodBlockIndexInput extends BlockIndexInput {
 
 
     private int skipAndDecodeNodes(int nNodes) throws IOException {
+      if (this.isCachingBlocks()) {
+        // the whole block is decoded to be cached
+        this.decodeNodes();
+        return 0;
+      }
       // logger.debug("Decode Nodes: {}", this.hashCode());
       // logger.debug("Decode Nodes at {}", in.getFilePointer());
       in.readBytes(nodCompressedBuffer.bytes, 0, nodCompressedBufferLength);
@@ -198,10 +295,18 @@ public class NodBlockIndexInput extends BlockIndexInput {
     private void decodeTermFreqs() throws IOException {
       // logger.debug("Decode Term Freq in Node: {}", this.hashCode());
       // logger.debug("Decode Term Freq in Node at {}", in.getFilePointer());
-      in.readBytes(termFreqCompressedBuffer.bytes, 0, termFreqCompressedBufferLength);
-      termFreqCompressedBuffer.offset = 0;
-      termFreqCompressedBuffer.length = termFreqCompressedBufferLength;
-      nodDecompressor.decompress(termFreqCompressedBuffer, termFreqBuffer);
+      final long fp = in.getFilePointer();
+      if (this.readCachedBlock(fp, termFreqBuffer)) {
+        // move to the end of the data block as if it was read
+        in.seek(fp + termFreqCompressedBufferLength);
+      }
+      else {
+        in.readBytes(termFreqCompressedBuffer.bytes, 0, termFreqCompressedBufferLength);
+        termFreqCompressedBuffer.offset = 0;
+        termFreqCompressedBuffer.length = termFreqCompressedBufferLength;
+        nodDecompressor.decompress(termFreqCompressedBuffer, termFreqBuffer);
+        this.cacheBlock(fp, termFreqBuffer, termFreqBlockSize);
+      }
       // set length limit based on block size, as certain decompressor with
       // large window size can set it larger than the blockSize, e.g., AFor
       termFreqBuffer.length = termFreqBlockSize;
@@ -271,6 +376,87 @@ public class NodBlockIndexInput extends BlockIndexInput {
       nodBuffer.offset += lenAccumulator;
     }
 
+    /**
+     * Expert: Skip the nodes of the current document whose label is lower than
+     * the target, based on the node skip data of the block. Return the number
+     * of nodes skipped, which is 0 if there is no skip point between the
+     * current node and the target.
+     *
+     * <p>
+     *
+     * After the skip, the current node is the node preceding the skip point,
+     * so that the delta decoding of the next node can resume. The nodes which
+     * are not skipped must be read with {@link #nextNode()}.
+     *
+     * <p>
+     *
+     * The term frequencies of the skipped nodes are not skipped, they must be
+     * read, and their positions skipped, by the caller.
+     *
+     * @param target The target node
+     * @param remaining The number of nodes of the current document which have
+     *                  not been read yet
+     */
+    int skipToNode(final IntsRef target, final int remaining) throws IOException {
+      if (nodSkipBufferLength == 0 || remaining <= 1) {
+        return 0;
+      }
+      // ensure that node lengths and node ids are decoded
+      if (nodLenReadPending) {
+        this.decodeNodeLengths();
+      }
+      if (nodReadPending) {
+        this.decodeNodes();
+      }
+      if (nodSkipDecodePending) {
+        this.decodeSkipPoints();
+      }
+
+      final int current = nodLenBuffer.offset;
+      final int end = current + remaining;
+
+      // the skip points are sorted by node, move to the first one after the current node
+      while (skipPointer < numSkipPoints && skipNodes[skipPointer] <= current) {
+        skipPointer++;
+      }
+
+      // find the last skip point whose previous node is lower than the target
+      int skip = -1;
+      while (skipPointer < numSkipPoints && skipNodes[skipPointer] < end &&
+             this.compareSkipLabel(skipPointer, target) < 0) {
+        skip = skipPointer++;
+      }
+      if (skip == -1) {
+        return 0;
+      }
+
+      // move to the previous node of the skip point
+      final int previous = skipNodes[skip] - 1;
+      int lenAccumulator = 0;
+      for (int i = current; i < previous; i++) {
+        // increment length by one
+        lenAccumulator += nodLenBuffer.ints[i] + 1;
+      }
+      final int labelOffset = nodBuffer.offset + lenAccumulator;
+      final int labelLength = nodLenBuffer.ints[previous] + 1;
+      assert labelLength == skipLabelOffsets[skip + 1] - skipLabelOffsets[skip];
+
+      // restore the label of the previous node for the delta decoding of the next node
+      System.arraycopy(skipLabelPool, skipLabelOffsets[skip], nodBuffer.ints, labelOffset, labelLength);
+      currentNode.offset = labelOffset;
+      currentNode.length = labelLength;
+      nodBuffer.offset = labelOffset + labelLength;
+      nodLenBuffer.offset = previous + 1;
+
+      return previous + 1 - current;
+    }
+
+    private int compareSkipLabel(final int skip, final IntsRef target) {
+      final int offset = skipLabelOffsets[skip];
+      return NodeUtils.compare(skipLabelPool, offset, skipLabelOffsets[skip + 1] - offset,
+        target.ints, target.offset, target.length);
+    }
+
     /**
      * Decode delta of the node.
      * <p>
@@ -306,6 +492,52 @@ public class NodBlockIndexInput extends BlockIndexInput {
       currentNode.length = nodLength;
     }
 
+    /**
+     * Expert: Copy the compressed data blocks of the current block to the
+     * given output, without decoding them. The data blocks must not have been
+     * decoded.
+     * <p>
+     * This is used by {@link Siren10PostingsWriter} to copy raw blocks during
+     * merge.
+     */
+    void copyData(final DataOutput out) throws IOException {
+      assert nodLenReadPending && nodReadPending && termFreqReadPending;
+      out.copyBytes(in, nodLenCompressedBufferLength + nodSkipBufferLength +
+                        nodCompressedBufferLength + termFreqCompressedBufferLength);
+      // data blocks have been consumed
+      nodLenReadPending = nodReadPending = termFreqReadPending = false;
+    }
+
+    /**
+     * Copy the data blocks as {@link #copyData(DataOutput)}, and return the
+     * sum of the term frequencies of the block. Only the term frequencies are
+     * decoded.
+     * <p>
+     * This is used by {@link Siren10PostingsWriter} to copy raw blocks during
+     * merge when the positions are not indexed.
+     */
+    long copyDataAndSumTermFreqs(final DataOutput out) throws IOException {
+      assert nodLenReadPending && nodReadPending && termFreqReadPending;
+      out.copyBytes(in, nodLenCompressedBufferLength + nodSkipBufferLength +
+                        nodCompressedBufferLength);
+      nodLenReadPending = nodReadPending = false;
+      // the term frequencies follow the nodes in the data blocks, they are
+      // decoded without the block cache as their compressed bytes are copied
+      in.readBytes(termFreqCompressedBuffer.bytes, 0, termFreqCompressedBufferLength);
+      out.writeBytes(termFreqCompressedBuffer.bytes, 0, termFreqCompressedBufferLength);
+      termFreqCompressedBuffer.offset = 0;
+      termFreqCompressedBuffer.length = termFreqCompressedBufferLength;
+      nodDecompressor.decompress(termFreqCompressedBuffer, termFreqBuffer);
+      termFreqReadPending = false;
+
+      long sum = 0;
+      for (int i = 0; i < termFreqBlockSize; i++) {
+        // term freqs are encoded minus one
+        sum += termFreqBuffer.ints[i] + 1;
+      }
+      return sum;
+    }
+
     /**
      * Decode and return the next term frequency of the current block.
      */
@@ -336,6 +568,10 @@ public class NodBlockIndexInput extends BlockIndexInput {
       nodLenCompressedBufferLength = 0;
       nodCompressedBufferLength = 0;
       termFreqCompressedBufferLength = 0;
+
+      nodSkipBufferLength = 0;
+      nodSkipDecodePending = true;
+      numSkipPoints = skipPointer = 0;
     }
 
     public void resetCurrentNode() {
@@ -22,6 +22,7 @@ package com.sindicetech.siren.index.codecs.siren10;
 import java.io.IOException;
 
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IntsRef;
 
@@ -60,6 +61,15 @@ public class NodBlockIndexOutput extends BlockIndexOutput {
    *
    * <p>
    *
+   * If a node skip interval is set, the writer records a skip point every
+   * <code>nodeSkipInterval</code> nodes of a document. A skip point stores the
+   * index of the node in the block and the label of the node preceding it,
+   * which is required to resume the delta decoding of the node labels. Only
+   * the documents with more than <code>nodeSkipInterval</code> nodes have skip
+   * points. The skip points are written uncompressed after the node lengths.
+   *
+   * <p>
+   *
    * TODO: Can we try to reduce the number of test conditions for buffer size by
    * using term frequency information ? At each new document, nodBlockWriter is
    * informed of the term frequency, and check buffer size appropriately.
@@ -75,6 +85,21 @@ public class NodBlockIndexOutput extends BlockIndexOutput {
 
     BytesRef termFreqCompressedBuffer;
 
+    /**
+     * The number of nodes between two skip points of a document, or 0 to
+     * disable the node skip data.
+     */
+    private int nodeSkipInterval = 0;
+
+    /** The index of the first node of the current document in the block */
+    private int docNodeStart = 0;
+
+    /** The index of the node of the last skip point in the block */
+    private int lastSkipNode = 0;
+
+    byte[] nodSkipBuffer = new byte[64];
+    int nodSkipLength = 0;
+
     public NodBlockWriter() {
       // ensure that the input buffers has the minimum size required
       // maxBlockSize is just use as a minimum initial capacity for the buffers
@@ -88,6 +113,14 @@ public class NodBlockIndexOutput extends BlockIndexOutput {
       termFreqCompressedBuffer = new BytesRef();
     }
 
+    /**
+     * Set the number of nodes between two skip points of a document. A value
+     * of 0 disables the node skip data.
+     */
+    public void setNodeSkipInterval(final int nodeSkipInterval) {
+      this.nodeSkipInterval = nodeSkipInterval;
+    }
+
     /**
      * Add a node label to the buffer.
      */
@@ -98,6 +131,13 @@ public class NodBlockIndexOutput extends BlockIndexOutput {
 
       assert nodeLength > 0;
 
+      // record a skip point before the node if needed, while the node cache
+      // still holds the label of the previous node
+      final int nodesInDoc = nodLenBuffer.offset - docNodeStart;
+      if (nodeSkipInterval > 0 && nodesInDoc > 0 && nodesInDoc % nodeSkipInterval == 0) {
+        this.writeSkipPoint(nodLenBuffer.offset);
+      }
+
       /*
        * write node
        */
@@ -143,6 +183,37 @@ public class NodBlockIndexOutput extends BlockIndexOutput {
       nodLenBufferInts[nodLenBuffer.offset++] = nodeLength - 1;
     }
 
+    /**
+     * Write a skip point for the node at the given index of the block. The
+     * skip point stores the label of the previous node, i.e., the label in
+     * the node cache.
+     */
+    private void writeSkipPoint(final int nodeIndex) {
+      // ensure that the buffer can hold the skip point: each vint takes at most 5 bytes
+      final int maxSize = nodSkipLength + 5 * (nodeCache.length + 2);
+      if (maxSize > nodSkipBuffer.length) {
+        nodSkipBuffer = ArrayUtil.grow(nodSkipBuffer, maxSize);
+      }
+      this.writeSkipVInt(nodeIndex - lastSkipNode);
+      this.writeSkipVInt(nodeCache.length);
+      for (int i = 0; i < nodeCache.length; i++) {
+        this.writeSkipVInt(nodeCache.ints[nodeCache.offset + i]);
+      }
+      lastSkipNode = nodeIndex;
+    }
+
+    /**
+     * Write a vint into the skip buffer, using the encoding of
+     * {@link org.apache.lucene.store.DataOutput#writeVInt(int)}.
+     */
+    private void writeSkipVInt(int i) {
+      while ((i & ~0x7F) != 0) {
+        nodSkipBuffer[nodSkipLength++] = (byte) ((i & 0x7F) | 0x80);
+        i >>>= 7;
+      }
+      nodSkipBuffer[nodSkipLength++] = (byte) i;
+    }
+
     /**
      * Node cache used for computing the delta of a node label.
      */
@@ -252,6 +323,9 @@ public class NodBlockIndexOutput extends BlockIndexOutput {
       out.writeVInt(nodLenCompressedBuffer.length);
       out.writeVInt(nodCompressedBuffer.length);
       out.writeVInt(termFreqCompressedBuffer.length);
+
+      // write size of the node skip data
+      out.writeVInt(nodSkipLength);
     }
 
     @Override
@@ -282,11 +356,48 @@ public class NodBlockIndexOutput extends BlockIndexOutput {
       nodCompressor.compress(termFreqBuffer, termFreqCompressedBuffer);
     }
 
+    /**
+     * Expert: Write the current block of the given reader as a new block,
+     * without decoding and encoding its data blocks. The pending block must be
+     * empty.
+     */
+    void copyBlock(final NodBlockIndexInput.NodBlockReader reader) throws IOException {
+      this.copyHeader(reader);
+      reader.copyData(out);
+    }
+
+    /**
+     * Expert: Write the current block of the given reader as a new block, as
+     * {@link #copyBlock(NodBlockIndexInput.NodBlockReader)}, and return the
+     * sum of the term frequencies of the block. Only the term frequencies are
+     * decoded.
+     */
+    long copyBlockAndSumTermFreqs(final NodBlockIndexInput.NodBlockReader reader)
+    throws IOException {
+      this.copyHeader(reader);
+      return reader.copyDataAndSumTermFreqs(out);
+    }
+
+    private void copyHeader(final NodBlockIndexInput.NodBlockReader reader)
+    throws IOException {
+      assert this.isEmpty();
+
+      out.writeVInt(reader.nodLenBlockSize);
+      out.writeVInt(reader.nodBlockSize);
+      out.writeVInt(reader.termFreqBlockSize);
+      out.writeVInt(reader.nodLenCompressedBufferLength);
+      out.writeVInt(reader.nodCompressedBufferLength);
+      out.writeVInt(reader.termFreqCompressedBufferLength);
+      out.writeVInt(reader.nodSkipBufferLength);
+    }
+
     @Override
     protected void writeData() throws IOException {
       // logger.debug("Write Node data: {}", this.hashCode());
       // logger.debug("Write Node Length at {}", out.getFilePointer());
       out.writeBytes(nodLenCompressedBuffer.bytes, nodLenCompressedBuffer.length);
+      // logger.debug("Write Node Skip Data at {}", out.getFilePointer());
+      out.writeBytes(nodSkipBuffer, nodSkipLength);
       // logger.debug("Write Node at {}", out.getFilePointer());
       out.writeBytes(nodCompressedBuffer.bytes, nodCompressedBuffer.length);
       // logger.debug("Write Term Freq in Node at {}", out.getFilePointer());
@@ -298,12 +409,18 @@ public class NodBlockIndexOutput extends BlockIndexOutput {
       nodLenBuffer.offset = nodLenBuffer.length = 0;
       nodBuffer.offset = nodBuffer.length = 0;
       termFreqBuffer.offset = termFreqBuffer.length = 0;
+      nodSkipLength = 0;
+      lastSkipNode = 0;
       this.resetCurrentNode();
     }
 
+    /**
+     * Reset the current node at the start of a new document.
+     */
     protected void resetCurrentNode() {
       nodeCache.offset = 0;
       nodeCache.length = 0;
+      docNodeStart = nodLenBuffer.offset;
     }
 
   }
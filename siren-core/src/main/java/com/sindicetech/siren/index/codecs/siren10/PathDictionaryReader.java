@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.index.codecs.siren10;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.FieldsProducer;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+
+import com.sindicetech.siren.index.PathDictionary;
+
+/**
+ * A {@link FieldsProducer} decorator that loads the {@link PathDictionary} of
+ * each field from the .pth file, and exposes it through the {@link Terms} of
+ * the field.
+ *
+ * <p>
+ *
+ * The segments written before the introduction of the path dictionary do not
+ * have a .pth file, their {@link Terms} are returned as is.
+ *
+ * @see PathDictionaryWriter
+ */
+class PathDictionaryReader extends FieldsProducer {
+
+  private final FieldsProducer in;
+
+  private final Map<String, PathDictionary> dictionaries = new HashMap<String, PathDictionary>();
+
+  PathDictionaryReader(final FieldsProducer in, final SegmentReadState state)
+  throws IOException {
+    this.in = in;
+
+    final String pathFileName = IndexFileNames.segmentFileName(state.segmentInfo.name,
+      state.segmentSuffix, Siren10PostingsFormat.PATH_EXTENSION);
+    if (!state.directory.fileExists(pathFileName)) {
+      return;
+    }
+
+    final ChecksumIndexInput input = state.directory.openChecksumInput(pathFileName, state.context);
+    boolean success = false;
+    try {
+      CodecUtil.checkHeader(input, PathDictionaryWriter.CODEC,
+        PathDictionaryWriter.VERSION_START, PathDictionaryWriter.VERSION_CURRENT);
+      final int numFields = input.readVInt();
+      for (int i = 0; i < numFields; i++) {
+        final String field = state.fieldInfos.fieldInfo(input.readVInt()).name;
+        final FST<Long> fst = new FST<Long>(input, PositiveIntOutputs.getSingleton());
+        dictionaries.put(field, new PathDictionary(fst));
+      }
+      CodecUtil.checkFooter(input);
+      success = true;
+    }
+    finally {
+      if (success) {
+        IOUtils.close(input);
+      }
+      else {
+        IOUtils.closeWhileHandlingException(input);
+      }
+    }
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return in.iterator();
+  }
+
+  @Override
+  public Terms terms(final String field) throws IOException {
+    final Terms terms = in.terms(field);
+    final PathDictionary dictionary = dictionaries.get(field);
+    if (terms == null || dictionary == null) {
+      return terms;
+    }
+    return new PathDictionary.PathTerms(terms, dictionary);
+  }
+
+  @Override
+  public int size() {
+    return in.size();
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    long size = in.ramBytesUsed();
+    for (final PathDictionary dictionary : dictionaries.values()) {
+      size += dictionary.ramBytesUsed();
+    }
+    return size;
+  }
+
+  @Override
+  public void checkIntegrity() throws IOException {
+    // the checksum of the .pth file is verified when it is loaded
+    in.checkIntegrity();
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+}
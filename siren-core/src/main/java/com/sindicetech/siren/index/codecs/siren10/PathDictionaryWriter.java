@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.index.codecs.siren10;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.FieldsConsumer;
+import org.apache.lucene.codecs.PostingsConsumer;
+import org.apache.lucene.codecs.TermStats;
+import org.apache.lucene.codecs.TermsConsumer;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+
+import com.sindicetech.siren.index.PathDictionary;
+
+/**
+ * A {@link FieldsConsumer} decorator that builds the {@link PathDictionary} of
+ * each field from the terms written by the wrapped {@link FieldsConsumer}.
+ *
+ * <p>
+ *
+ * The dictionaries are written in the .pth file when the consumer is closed.
+ * The file format is:
+ * <ul>
+ * <li>PathFile (.pth) --&gt; Header, NumFields, &lt;FieldNumber, PathFST&gt;<sup>NumFields</sup>, Footer
+ * <li>NumFields, FieldNumber --&gt; VInt
+ * <li>PathFST --&gt; an {@link FST} mapping a path to its document count
+ * </ul>
+ *
+ * @see PathDictionaryReader
+ */
+class PathDictionaryWriter extends FieldsConsumer {
+
+  final static String CODEC = "Siren10PathDictionary";
+
+  // Increment version to change it:
+  final static int VERSION_START = 0;
+  final static int VERSION_CURRENT = VERSION_START;
+
+  private final FieldsConsumer in;
+  private final SegmentWriteState state;
+
+  private final List<FieldInfo> fields = new ArrayList<FieldInfo>();
+  private final List<FST<Long>> fsts = new ArrayList<FST<Long>>();
+
+  PathDictionaryWriter(final FieldsConsumer in, final SegmentWriteState state) {
+    this.in = in;
+    this.state = state;
+  }
+
+  @Override
+  public TermsConsumer addField(final FieldInfo field) throws IOException {
+    return new PathTermsConsumer(field, in.addField(field));
+  }
+
+  @Override
+  public void close() throws IOException {
+    IndexOutput out = null;
+    boolean success = false;
+    try {
+      in.close();
+
+      final String pathFileName = IndexFileNames.segmentFileName(state.segmentInfo.name,
+        state.segmentSuffix, Siren10PostingsFormat.PATH_EXTENSION);
+      out = state.directory.createOutput(pathFileName, state.context);
+      CodecUtil.writeHeader(out, CODEC, VERSION_CURRENT);
+      out.writeVInt(fields.size());
+      for (int i = 0; i < fields.size(); i++) {
+        out.writeVInt(fields.get(i).number);
+        fsts.get(i).save(out);
+      }
+      CodecUtil.writeFooter(out);
+      success = true;
+    }
+    finally {
+      if (success) {
+        IOUtils.close(out);
+      }
+      else {
+        IOUtils.closeWhileHandlingException(out);
+      }
+    }
+  }
+
+  /**
+   * Accumulates the document frequencies of the terms of a field by path.
+   * The terms of a path are contiguous, but the paths are not visited in
+   * order, e.g., <code>a.b:</code> sorts before <code>a:</code>, so they are
+   * sorted before building the {@link FST}.
+   */
+  private class PathTermsConsumer extends TermsConsumer {
+
+    private final FieldInfo field;
+    private final TermsConsumer in;
+
+    private final Map<BytesRef, Long> paths = new TreeMap<BytesRef, Long>();
+
+    private BytesRef lastPath = null;
+    private long lastDocCount = 0;
+
+    PathTermsConsumer(final FieldInfo field, final TermsConsumer in) {
+      this.field = field;
+      this.in = in;
+    }
+
+    @Override
+    public PostingsConsumer startTerm(final BytesRef text) throws IOException {
+      return in.startTerm(text);
+    }
+
+    @Override
+    public void finishTerm(final BytesRef text, final TermStats stats) throws IOException {
+      in.finishTerm(text, stats);
+
+      final BytesRef path = PathDictionary.getPath(text);
+      if (path == null) {
+        return;
+      }
+      if (lastPath != null && lastPath.bytesEquals(path)) {
+        lastDocCount += stats.docFreq;
+      }
+      else {
+        this.flushPath();
+        lastPath = BytesRef.deepCopyOf(path);
+        lastDocCount = stats.docFreq;
+      }
+    }
+
+    private void flushPath() {
+      if (lastPath != null) {
+        final Long count = paths.get(lastPath);
+        paths.put(lastPath, count == null ? lastDocCount : count + lastDocCount);
+      }
+    }
+
+    @Override
+    public void finish(final long sumTotalTermFreq, final long sumDocFreq, final int docCount)
+    throws IOException {
+      in.finish(sumTotalTermFreq, sumDocFreq, docCount);
+
+      this.flushPath();
+      if (paths.isEmpty()) {
+        return;
+      }
+
+      final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+      final Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE1, outputs);
+      final IntsRef scratch = new IntsRef();
+      for (final Map.Entry<BytesRef, Long> entry : paths.entrySet()) {
+        // the sum of the document frequencies may exceed the number of documents
+        final long count = Math.min(entry.getValue(), docCount);
+        builder.add(Util.toIntsRef(entry.getKey(), scratch), count);
+      }
+      fields.add(field);
+      fsts.add(builder.finish());
+    }
+
+    @Override
+    public Comparator<BytesRef> getComparator() throws IOException {
+      return in.getComparator();
+    }
+
+  }
+
+}
@@ -19,6 +19,7 @@
 
 package com.sindicetech.siren.index.codecs.siren10;
 
+import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IntsRef;
@@ -115,9 +116,32 @@ public class PosBlockIndexInput extends BlockIndexInput {
       return currentPos = posBuffer.ints[posBuffer.offset++] + currentPos;
     }
 
+    /**
+     * Expert: Copy the compressed data block of the current block to the given
+     * output, without decoding it. The data block must not have been decoded.
+     * <p>
+     * This is used by {@link Siren10PostingsWriter} to copy raw blocks during
+     * merge.
+     */
+    void copyData(final DataOutput out) throws IOException {
+      assert posReadPending;
+      out.copyBytes(in, posCompressedBufferLength);
+      // data block has been consumed
+      posReadPending = false;
+    }
+
     private void decodePositions() throws IOException {
       // logger.debug("Decode Pos: {}", this.hashCode());
 
+      final long fp = in.getFilePointer();
+      if (this.readCachedBlock(fp, posBuffer)) {
+        // move to the end of the data block as if it was read
+        in.seek(fp + posCompressedBufferLength);
+        posBuffer.length = posBlockSize;
+        posReadPending = false;
+        return;
+      }
+
       in.readBytes(posCompressedBuffer.bytes, 0, posCompressedBufferLength);
       posCompressedBuffer.offset = 0;
       posCompressedBuffer.length = posCompressedBufferLength;
@@ -125,6 +149,7 @@ public class PosBlockIndexInput extends BlockIndexInput {
       // set length limit based on block size, as certain decompressor with
       // large window size can set it larger than the blockSize, e.g., AFor
       posBuffer.length = posBlockSize;
+      this.cacheBlock(fp, posBuffer, posBlockSize);
 
       posReadPending = false;
     }
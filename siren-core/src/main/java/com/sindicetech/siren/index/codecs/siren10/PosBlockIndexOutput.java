@@ -96,6 +96,23 @@ public class PosBlockIndexOutput extends BlockIndexOutput {
       posCompressor.compress(posBuffer, posCompressedBuffer);
     }
 
+    /**
+     * Expert: Write the current block of the given reader as a new block,
+     * without decoding and encoding its data block. The pending block must be
+     * empty.
+     *
+     * @return the number of positions in the block
+     */
+    int copyBlock(final PosBlockIndexInput.PosBlockReader reader) throws IOException {
+      assert this.isEmpty();
+
+      out.writeVInt(reader.posBlockSize);
+      out.writeVInt(reader.posCompressedBufferLength);
+
+      reader.copyData(out);
+      return reader.posBlockSize;
+    }
+
     @Override
     protected void writeData() throws IOException {
       // logger.debug("Write Pos data: {}", this.hashCode());
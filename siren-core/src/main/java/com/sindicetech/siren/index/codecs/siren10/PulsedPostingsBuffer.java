@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.index.codecs.siren10;
+
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.RAMOutputStream;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntsRef;
+
+import java.io.IOException;
+
+/**
+ * Buffers in memory the postings of a low-frequency term, in the format of
+ * the pulsed postings which are inlined in the term dictionary.
+ *
+ * <p>
+ *
+ * The format of the pulsed postings follows the schema:
+ * <pre>
+ *   PulsedPostings = [DeltaDocId, NodeFreq, [NodeLength, [LabelInt], TermFreq, [DeltaTermPos]]]
+ * </pre>
+ * All the values are encoded as VInts. The first document identifier is
+ * absolute, as well as the first position of a node. The positions are
+ * omitted if they are not indexed.
+ *
+ * @see Siren10PulsedDocsNodesAndPositionsEnum
+ */
+class PulsedPostingsBuffer {
+
+  private final RAMOutputStream out = new RAMOutputStream();
+
+  /** The nodes, term frequencies and positions of the current document */
+  private final RAMOutputStream docOut = new RAMOutputStream();
+
+  private int docFreq;
+  private int lastDoc;
+  private int nodeFreq;
+
+  /** The current node and its positions */
+  private final IntsRef node = new IntsRef(new int[1], 0, 1);
+  private int[] positions = new int[8];
+  private int termFreq;
+
+  private final boolean hasPositions;
+
+  PulsedPostingsBuffer(final boolean hasPositions) {
+    this.hasPositions = hasPositions;
+  }
+
+  void reset() {
+    out.reset();
+    docOut.reset();
+    docFreq = 0;
+    lastDoc = 0;
+    nodeFreq = 0;
+    termFreq = 0;
+  }
+
+  /**
+   * Returns the number of documents buffered.
+   */
+  int getDocFreq() {
+    return docFreq;
+  }
+
+  void startDoc(final int doc) throws IOException {
+    out.writeVInt(doc - lastDoc);
+    lastDoc = doc;
+    docFreq++;
+  }
+
+  void startNode(final IntsRef label) throws IOException {
+    if (nodeFreq > 0) {
+      this.writeNode();
+    }
+    node.ints = ArrayUtil.grow(node.ints, label.length);
+    System.arraycopy(label.ints, label.offset, node.ints, 0, label.length);
+    node.length = label.length;
+    nodeFreq++;
+  }
+
+  void addPosition(final int position) {
+    if (hasPositions) {
+      positions = ArrayUtil.grow(positions, termFreq + 1);
+      positions[termFreq] = position;
+    }
+    termFreq++;
+  }
+
+  /**
+   * Adds the term frequency of the current node, if the positions are not
+   * indexed.
+   */
+  void addTermFreq(final int freq) {
+    assert !hasPositions;
+    termFreq += freq;
+  }
+
+  void finishDoc() throws IOException {
+    if (nodeFreq > 0) {
+      this.writeNode();
+    }
+    out.writeVInt(nodeFreq);
+    docOut.writeTo(out);
+    docOut.reset();
+    nodeFreq = 0;
+  }
+
+  private void writeNode() throws IOException {
+    docOut.writeVInt(node.length);
+    for (int i = 0; i < node.length; i++) {
+      docOut.writeVInt(node.ints[i]);
+    }
+    docOut.writeVInt(termFreq);
+    if (hasPositions) {
+      int lastPosition = 0;
+      for (int i = 0; i < termFreq; i++) {
+        docOut.writeVInt(positions[i] - lastPosition);
+        lastPosition = positions[i];
+      }
+    }
+    termFreq = 0;
+  }
+
+  /**
+   * Returns a copy of the postings buffered.
+   */
+  byte[] getBytes() throws IOException {
+    final byte[] bytes = new byte[(int) out.getFilePointer()];
+    out.writeTo(bytes, 0);
+    return bytes;
+  }
+
+  /**
+   * Writes the postings buffered, prefixed by their length.
+   */
+  static void write(final byte[] postings, final DataOutput out) throws IOException {
+    out.writeVInt(postings.length);
+    out.writeBytes(postings, postings.length);
+  }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.index.codecs.siren10;
+
+/**
+ * Implementation of the {@link Siren10PostingsFormat} based on AFOR, which
+ * does not index the positions of the terms.
+ *
+ * <p>
+ *
+ * Only the documents, the nodes and the term frequencies within a node are
+ * indexed, and the .pos file is not written. This is suited to the fields which
+ * are never searched with phrase or span queries, e.g., identifiers or numbers.
+ */
+public class Siren10AForNodesPostingsFormat extends Siren10AForPostingsFormat {
+
+  public static final String NAME = "Siren10AForNodes";
+
+  public Siren10AForNodesPostingsFormat() {
+    super(NAME, DEFAULT_POSTINGS_BLOCK_SIZE, DEFAULT_PULSE_THRESHOLD, false);
+  }
+
+}
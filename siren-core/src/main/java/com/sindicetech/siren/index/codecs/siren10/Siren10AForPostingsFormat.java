@@ -42,6 +42,35 @@ public class Siren10AForPostingsFormat extends Siren10PostingsFormat {
     super(NAME, blockSize);
   }
 
+  /**
+   * Create a SIREn 1.0 posting format with AFOR codec, which inlines the
+   * postings of the terms whose document frequency is lower than or equal to
+   * the pulse threshold.
+   * <p>
+   * The block size and pulse threshold parameters are used only during
+   * indexing.
+   */
+  public Siren10AForPostingsFormat(final int blockSize, final int pulseThreshold) {
+    super(NAME, blockSize, pulseThreshold);
+  }
+
+  /**
+   * Create a SIREn 1.0 posting format with AFOR codec, which indexes the
+   * positions of the terms only if <code>indexPositions</code> is true.
+   * <p>
+   * The block size, pulse threshold and index positions parameters are used
+   * only during indexing.
+   */
+  public Siren10AForPostingsFormat(final int blockSize, final int pulseThreshold,
+                                   final boolean indexPositions) {
+    this(NAME, blockSize, pulseThreshold, indexPositions);
+  }
+
+  protected Siren10AForPostingsFormat(final String name, final int blockSize,
+                                      final int pulseThreshold, final boolean indexPositions) {
+    super(name, blockSize, pulseThreshold, indexPositions);
+  }
+
   @Override
   protected Siren10BlockStreamFactory getFactory() {
     final Siren10BlockStreamFactory factory = new Siren10BlockStreamFactory(blockSize);
@@ -82,6 +82,26 @@ public class Siren10BlockStreamFactory {
     this.posBlockDecompressor = decompressor;
   }
 
+  /**
+   * Return true if the blocks decoded by the given factory can be copied as
+   * raw bytes into the blocks encoded by this factory, i.e., if both
+   * factories use the same compression algorithms.
+   */
+  boolean isRawCopyCompatible(final Siren10BlockStreamFactory other) {
+    return isSameClass(docsBlockCompressor, other.docsBlockCompressor) &&
+           isSameClass(docsBlockDecompressor, other.docsBlockDecompressor) &&
+           isSameClass(freqBlockCompressor, other.freqBlockCompressor) &&
+           isSameClass(freqBlockDecompressor, other.freqBlockDecompressor) &&
+           isSameClass(nodBlockCompressor, other.nodBlockCompressor) &&
+           isSameClass(nodBlockDecompressor, other.nodBlockDecompressor) &&
+           isSameClass(posBlockCompressor, other.posBlockCompressor) &&
+           isSameClass(posBlockDecompressor, other.posBlockDecompressor);
+  }
+
+  private static boolean isSameClass(final Object a, final Object b) {
+    return a != null && b != null && a.getClass() == b.getClass();
+  }
+
   public DocsFreqBlockIndexOutput createDocsFreqOutput(final Directory dir,
                                                        final String fileName,
                                                        final IOContext context)
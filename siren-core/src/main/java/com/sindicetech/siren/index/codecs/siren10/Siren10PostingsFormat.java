@@ -24,6 +24,7 @@ import org.apache.lucene.codecs.blocktree.BlockTreeTermsReader;
 import org.apache.lucene.codecs.blocktree.BlockTreeTermsWriter;
 import org.apache.lucene.index.SegmentReadState;
 import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.util.IOUtils;
 
 import java.io.IOException;
 
@@ -48,7 +49,8 @@ public abstract class Siren10PostingsFormat extends PostingsFormat {
   public static final String NOD_EXTENSION = "nod";
 
   /**
-   * Filename extension for positions.
+   * Filename extension for positions, which is not written if the positions
+   * are not indexed.
    */
   public static final String POS_EXTENSION = "pos";
 
@@ -57,14 +59,29 @@ public abstract class Siren10PostingsFormat extends PostingsFormat {
    */
   public static final String SKIP_EXTENSION = "skp";
 
+  /**
+   * Filename extension for the path dictionaries.
+   */
+  public static final String PATH_EXTENSION = "pth";
+
   /**
    * Fixed block size, number of document identifiers encoded in
    * a single compressed block.
    */
   static final int DEFAULT_POSTINGS_BLOCK_SIZE = 32;
 
+  /**
+   * Maximum document frequency of a term whose postings are inlined in the
+   * term dictionary.
+   */
+  static final int DEFAULT_PULSE_THRESHOLD = 1;
+
   protected final int blockSize;
 
+  protected final int pulseThreshold;
+
+  protected final boolean indexPositions;
+
   public Siren10PostingsFormat(final String name) {
     this(name, DEFAULT_POSTINGS_BLOCK_SIZE);
   }
@@ -75,8 +92,46 @@ public abstract class Siren10PostingsFormat extends PostingsFormat {
    * The block size parameter is used only during indexing.
    */
   public Siren10PostingsFormat(final String name, final int blockSize) {
+    this(name, blockSize, DEFAULT_PULSE_THRESHOLD);
+  }
+
+  /**
+   * Create a SIREn 1.0 posting format.
+   * <p>
+   * The postings of the terms whose document frequency is lower than or equal
+   * to the pulse threshold are inlined in the term dictionary, so that they
+   * are read without seeking in the postings files. A threshold of 0 disables
+   * pulsing.
+   * <p>
+   * The block size and pulse threshold parameters are used only during
+   * indexing.
+   */
+  public Siren10PostingsFormat(final String name, final int blockSize, final int pulseThreshold) {
+    this(name, blockSize, pulseThreshold, true);
+  }
+
+  /**
+   * Create a SIREn 1.0 posting format.
+   * <p>
+   * If <code>indexPositions</code> is false, the positions of the terms
+   * within a node are not indexed and the .pos file is not written. The nodes
+   * and the term frequencies within a node are still indexed, which is enough
+   * for the node, boolean and twig queries, but not for the phrase and span
+   * queries, which throw an {@link IllegalStateException} on such a field:
+   * see {@link com.sindicetech.siren.index.DocsNodesAndPositionsEnum#hasPositions()}.
+   * <p>
+   * The block size, pulse threshold and index positions parameters are used
+   * only during indexing.
+   */
+  public Siren10PostingsFormat(final String name, final int blockSize,
+                               final int pulseThreshold, final boolean indexPositions) {
     super(name);
+    if (pulseThreshold < 0) {
+      throw new IllegalArgumentException("pulseThreshold must be >= 0, got " + pulseThreshold);
+    }
     this.blockSize = blockSize;
+    this.pulseThreshold = pulseThreshold;
+    this.indexPositions = indexPositions;
   }
 
   protected abstract Siren10BlockStreamFactory getFactory();
@@ -85,13 +140,15 @@ public abstract class Siren10PostingsFormat extends PostingsFormat {
   public FieldsConsumer fieldsConsumer(final SegmentWriteState state)
   throws IOException {
     final PostingsWriterBase postingsWriter = new Siren10PostingsWriter(state,
-      this.getFactory());
+      Siren10PostingsWriter.DEFAULT_BLOCK_SKIP_INTERVAL,
+      Siren10PostingsWriter.DEFAULT_NODE_SKIP_INTERVAL,
+      pulseThreshold, indexPositions, this.getFactory());
 
     boolean success = false;
     try {
-      final FieldsConsumer ret = new BlockTreeTermsWriter(state, postingsWriter,
+      final FieldsConsumer ret = new PathDictionaryWriter(new BlockTreeTermsWriter(state, postingsWriter,
         BlockTreeTermsWriter.DEFAULT_MIN_BLOCK_SIZE,
-        BlockTreeTermsWriter.DEFAULT_MAX_BLOCK_SIZE);
+        BlockTreeTermsWriter.DEFAULT_MAX_BLOCK_SIZE), state);
       success = true;
       return ret;
     }
@@ -109,21 +166,29 @@ public abstract class Siren10PostingsFormat extends PostingsFormat {
       state.segmentInfo, state.context, state.segmentSuffix,
       this.getFactory());
 
+    FieldsProducer termsReader = null;
     boolean success = false;
     try {
-      final FieldsProducer ret = new BlockTreeTermsReader(state.directory,
-                                                    state.fieldInfos,
-                                                    state.segmentInfo,
-                                                    postingsReader,
-                                                    state.context,
-                                                    state.segmentSuffix,
-                                                    state.termsIndexDivisor);
+      termsReader = new BlockTreeTermsReader(state.directory,
+                                             state.fieldInfos,
+                                             state.segmentInfo,
+                                             postingsReader,
+                                             state.context,
+                                             state.segmentSuffix,
+                                             state.termsIndexDivisor);
+      final FieldsProducer ret = new PathDictionaryReader(termsReader, state);
       success = true;
       return ret;
     }
     finally {
       if (!success) {
-        postingsReader.close();
+        if (termsReader != null) {
+          // also closes the postings reader
+          IOUtils.closeWhileHandlingException(termsReader);
+        }
+        else {
+          postingsReader.close();
+        }
       }
     }
   }
@@ -28,6 +28,7 @@ import org.apache.lucene.store.DataInput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IntsRef;
@@ -37,7 +38,9 @@ import org.slf4j.LoggerFactory;
 import com.sindicetech.siren.index.DocsNodesAndPositionsEnum;
 import com.sindicetech.siren.index.SirenDocsEnum;
 import com.sindicetech.siren.index.codecs.block.BlockIndexInput;
+import com.sindicetech.siren.index.codecs.block.DecodedBlockCache;
 import com.sindicetech.siren.search.node.NodeScorer;
+import com.sindicetech.siren.util.NodeUtils;
 
 import java.io.IOException;
 import java.util.LinkedList;
@@ -45,19 +48,30 @@ import java.util.LinkedList;
 /**
  * Reads the document identifiers, node frequencies, node labels, term
  * frequencies, term positions and block skip data.
+ *
+ * <p>
+ *
+ * The postings of the terms whose document frequency is lower than or equal
+ * to the pulse threshold are read from the term dictionary with a
+ * {@link Siren10PulsedDocsNodesAndPositionsEnum}.
  */
 public class Siren10PostingsReader extends PostingsReaderBase {
 
   final DocsFreqBlockIndexInput docIn;
   final NodBlockIndexInput nodIn;
-  final PosBlockIndexInput posIn;
+  /** The .pos file, or <code>null</code> if the positions are not indexed */
+  PosBlockIndexInput posIn;
 
   final IndexInput skipIn;
 
+  final Siren10BlockStreamFactory factory;
+
   int blockSkipInterval;
   int maxSkipLevels;
   int blockSkipMinimum;
   int maxBlockSize;
+  int nodeSkipInterval = 0;
+  int pulseThreshold = 0;
 
   protected static final Logger logger = LoggerFactory.getLogger(Siren10PostingsReader.class);
 
@@ -65,6 +79,7 @@ public class Siren10PostingsReader extends PostingsReaderBase {
                                final IOContext context, final String segmentSuffix,
                                final Siren10BlockStreamFactory factory)
   throws IOException {
+    this.factory = factory;
     boolean success = false;
     try {
       final String docFileName = IndexFileNames.segmentFileName(segmentInfo.name,
@@ -77,8 +92,12 @@ public class Siren10PostingsReader extends PostingsReaderBase {
       skipIn = dir.openInput(IndexFileNames.segmentFileName(segmentInfo.name,
         segmentSuffix, Siren10PostingsFormat.SKIP_EXTENSION), context);
 
-      posIn = factory.openPosInput(dir, IndexFileNames.segmentFileName(segmentInfo.name,
-        segmentSuffix, Siren10PostingsFormat.POS_EXTENSION), context);
+      final String posFileName = IndexFileNames.segmentFileName(segmentInfo.name,
+        segmentSuffix, Siren10PostingsFormat.POS_EXTENSION);
+      // the .pos file is not written if the positions are not indexed
+      if (dir.fileExists(posFileName)) {
+        posIn = factory.openPosInput(dir, posFileName, context);
+      }
 
       success = true;
     }
@@ -92,12 +111,26 @@ public class Siren10PostingsReader extends PostingsReaderBase {
   @Override
   public void init(final IndexInput termsIn) throws IOException {
     // Make sure we are talking to the matching past writer
-    CodecUtil.checkHeader(termsIn, Siren10PostingsWriter.CODEC,
+    final int version = CodecUtil.checkHeader(termsIn, Siren10PostingsWriter.CODEC,
       Siren10PostingsWriter.VERSION_START, Siren10PostingsWriter.VERSION_CURRENT);
     blockSkipInterval = termsIn.readInt();
     maxSkipLevels = termsIn.readInt();
     blockSkipMinimum = termsIn.readInt();
     maxBlockSize = termsIn.readInt();
+    if (version >= Siren10PostingsWriter.VERSION_NODE_SKIP) {
+      nodeSkipInterval = termsIn.readInt();
+      nodIn.setNodeSkipData(true);
+    }
+    docIn.setImpactData(version >= Siren10PostingsWriter.VERSION_BLOCK_MAX);
+    if (version >= Siren10PostingsWriter.VERSION_PULSING) {
+      pulseThreshold = termsIn.readInt();
+    }
+    final boolean indexPositions = version < Siren10PostingsWriter.VERSION_POSITIONS_OPTION ||
+                                   termsIn.readByte() == 1;
+    if (indexPositions != (posIn != null)) {
+      throw new CorruptIndexException("the .pos file " + (indexPositions ? "is missing" : "is unexpected") +
+        " (resource: " + termsIn + ")");
+    }
   }
 
   @Override
@@ -131,6 +164,10 @@ public class Siren10PostingsReader extends PostingsReaderBase {
     long skipFP;
     int blockCount;
 
+    // The inlined postings, if docFreq <= pulseThreshold
+    byte[] pulsedPostings;
+    int pulsedLength;
+
     // Only used for "primary" term state; these are never
     // copied on clone:
 
@@ -156,6 +193,14 @@ public class Siren10PostingsReader extends PostingsReaderBase {
       }
 
       skipFP = other.skipFP;
+
+      pulsedLength = other.pulsedLength;
+      if (pulsedLength > 0) {
+        if (pulsedPostings == null || pulsedPostings.length < pulsedLength) {
+          pulsedPostings = new byte[ArrayUtil.oversize(pulsedLength, 1)];
+        }
+        System.arraycopy(other.pulsedPostings, 0, pulsedPostings, 0, pulsedLength);
+      }
     }
 
     @Override
@@ -192,6 +237,17 @@ public class Siren10PostingsReader extends PostingsReaderBase {
     else if (absolute) {
       termState.skipFP = 0;
     }
+
+    if (termState.docFreq <= pulseThreshold) {
+      termState.pulsedLength = in.readVInt();
+      if (termState.pulsedPostings == null || termState.pulsedPostings.length < termState.pulsedLength) {
+        termState.pulsedPostings = new byte[ArrayUtil.oversize(termState.pulsedLength, 1)];
+      }
+      in.readBytes(termState.pulsedPostings, 0, termState.pulsedLength);
+    }
+    else {
+      termState.pulsedLength = 0;
+    }
   }
 
   @Override
@@ -215,9 +271,9 @@ public class Siren10PostingsReader extends PostingsReaderBase {
       // If you are using ParallelReader, and pass in a
       // reused DocsEnum, it could have come from another
       // reader also using standard codec
-      if (docsEnum.getDocsNodesAndPositionsEnum().startDocIn == docIn) {
+      if (docsEnum.getPostingsReader() == this) {
         // we only reuse if the the actual the incoming enum has the same liveDocs as the given liveDocs
-        return liveDocs == docsEnum.getDocsNodesAndPositionsEnum().liveDocs;
+        return liveDocs == docsEnum.liveDocs;
       }
     }
     return false;
@@ -269,22 +325,57 @@ public class Siren10PostingsReader extends PostingsReaderBase {
    */
   class Siren10DocsEnum extends SirenDocsEnum {
 
-    private final Siren10DocsNodesAndPositionsEnum docEnum;
+    /** The enums over the blocks and over the pulsed postings, created lazily */
+    private Siren10DocsNodesAndPositionsEnum blockEnum;
+    private Siren10PulsedDocsNodesAndPositionsEnum pulsedEnum;
 
-    private final LinkedList<Integer> positions = new LinkedList<Integer>();
+    private DocsNodesAndPositionsEnum docEnum;
+    private int docFreq;
+    private Bits liveDocs;
 
-    Siren10DocsEnum() throws IOException {
-      docEnum = new Siren10DocsNodesAndPositionsEnum();
-    }
+    private final LinkedList<Integer> positions = new LinkedList<Integer>();
 
     Siren10DocsEnum init(final FieldInfo fieldInfo, final Siren10TermState termState, final Bits liveDocs)
     throws IOException {
-      docEnum.init(fieldInfo, termState, liveDocs);
+      this.liveDocs = liveDocs;
+      this.docFreq = termState.docFreq;
+      if (termState.pulsedLength > 0) {
+        if (pulsedEnum == null) {
+          pulsedEnum = new Siren10PulsedDocsNodesAndPositionsEnum(posIn != null);
+        }
+        docEnum = pulsedEnum.init(termState.pulsedPostings, termState.pulsedLength, termState.docFreq, liveDocs);
+      }
+      else {
+        if (blockEnum == null) {
+          blockEnum = new Siren10DocsNodesAndPositionsEnum();
+        }
+        docEnum = blockEnum.init(fieldInfo, termState, liveDocs);
+      }
       return this;
     }
 
+    Siren10PostingsReader getPostingsReader() {
+      return Siren10PostingsReader.this;
+    }
+
+    /**
+     * Set the cache of the decoded blocks of the postings, which is not used
+     * for the pulsed postings. Must be called after {@link #init} and before
+     * iterating over the postings.
+     */
+    void setDecodedBlockCache(final DecodedBlockCache blockCache) {
+      if (docEnum == blockEnum) {
+        blockEnum.setDecodedBlockCache(blockCache);
+      }
+    }
+
+    /**
+     * Returns a {@link Siren10DocsNodesAndPositionsEnum} over the blocks of
+     * the postings, or a {@link Siren10PulsedDocsNodesAndPositionsEnum} over
+     * the pulsed postings of a low-frequency term.
+     */
     @Override
-    public Siren10DocsNodesAndPositionsEnum getDocsNodesAndPositionsEnum() {
+    public DocsNodesAndPositionsEnum getDocsNodesAndPositionsEnum() {
       return docEnum;
     }
 
@@ -308,6 +399,16 @@ public class Siren10PostingsReader extends PostingsReaderBase {
         // scale up hash node based on hash increment
         hash += inc;
 
+        if (posIn == null) {
+          // positions are not indexed, emulate one position per occurrence
+          final int termFreqInNode = docEnum.termFreqInNode();
+          for (int i = 0; i < termFreqInNode; i++) {
+            freq++;
+            positions.add(hash + i);
+          }
+          continue;
+        }
+
         while (docEnum.nextPosition()) {
           freq++;
           // cache position
@@ -351,7 +452,7 @@ public class Siren10PostingsReader extends PostingsReaderBase {
 
     @Override
     public long cost() {
-      return docEnum.docLimit;
+      return docFreq;
     }
 
   }
@@ -385,34 +486,37 @@ public class Siren10PostingsReader extends PostingsReaderBase {
     private int pendingPosNodCount;
 
     private Bits liveDocs;
-    private final DocsFreqBlockIndexInput.DocsFreqBlockReader docReader;
-    private final NodBlockIndexInput.NodBlockReader nodReader;
-    private final PosBlockIndexInput.PosBlockReader posReader;
+    final DocsFreqBlockIndexInput.DocsFreqBlockReader docReader;
+    final NodBlockIndexInput.NodBlockReader nodReader;
+    final PosBlockIndexInput.PosBlockReader posReader;
     private long skipFP;
 
     private final BlockIndexInput.Index docIndex;
     private final BlockIndexInput.Index nodIndex;
     private final BlockIndexInput.Index posIndex;
-    private final DocsFreqBlockIndexInput startDocIn;
 
     boolean skipped;
     Siren10SkipListReader skipper;
 
     Siren10DocsNodesAndPositionsEnum() throws IOException {
-      startDocIn = docIn;
-
       docReader = docIn.getBlockReader();
       docIndex = docIn.index();
 
       nodReader = nodIn.getBlockReader();
       nodIndex = nodIn.index();
 
-      posReader = posIn.getBlockReader();
-      posIndex = posIn.index();
-
       // register node and pos index in the doc reader
       docReader.setNodeBlockIndex(nodIndex);
-      docReader.setPosBlockIndex(posIndex);
+
+      if (posIn != null) {
+        posReader = posIn.getBlockReader();
+        posIndex = posIn.index();
+        docReader.setPosBlockIndex(posIndex);
+      }
+      else {
+        posReader = null;
+        posIndex = null;
+      }
     }
 
     Siren10DocsNodesAndPositionsEnum init(final FieldInfo fieldInfo,
@@ -425,7 +529,12 @@ public class Siren10PostingsReader extends PostingsReaderBase {
       // Init readers
       docReader.init();
       nodReader.init();
-      posReader.init();
+      if (posReader != null) {
+        posReader.init();
+      }
+
+      // the blocks are not cached unless a cache is set after the init
+      this.setDecodedBlockCache(null);
 
       // TODO: can't we only do this if consumer
       // skipped consuming the previous docs?
@@ -451,6 +560,23 @@ public class Siren10PostingsReader extends PostingsReaderBase {
       return this;
     }
 
+    /**
+     * Set the cache of the decoded blocks. The blocks are cached only if the
+     * term is accepted by the cache. Must be called before the first block is
+     * read.
+     */
+    void setDecodedBlockCache(DecodedBlockCache blockCache) {
+      // cache the decoded blocks of the hot terms only
+      if (blockCache != null && !blockCache.accept(docLimit)) {
+        blockCache = null;
+      }
+      docReader.setDecodedBlockCache(blockCache);
+      nodReader.setDecodedBlockCache(blockCache);
+      if (posReader != null) {
+        posReader.setDecodedBlockCache(blockCache);
+      }
+    }
+
     private void resetPendingCounters() {
       pendingNodFreqCount = 0;
       pendingNodCount = 0;
@@ -492,8 +618,7 @@ public class Siren10PostingsReader extends PostingsReaderBase {
           docReader.nextBlock();
           nodIndex.seek(nodReader); // move node reader to next block
           nodReader.nextBlock(); // doc and node blocks are synchronised
-          posIndex.seek(posReader); // move node reader to next block
-          posReader.nextBlock(); // doc and pos blocks are synchronised
+          this.nextPosBlock(); // doc and pos blocks are synchronised
           this.resetPendingCounters(); // reset counters as we move to next block
         }
         // decode next doc
@@ -507,6 +632,90 @@ public class Siren10PostingsReader extends PostingsReaderBase {
       return true;
     }
 
+    /**
+     * Copy the remaining documents and node frequencies of the current block,
+     * which are decoded and delta-decoded block-wise by the
+     * {@link DocsFreqBlockIndexInput.DocsFreqBlockReader}.
+     * <p>
+     * The node frequencies read are added to the pending counters, so that the
+     * nodes and positions of the documents before the last one are skipped
+     * lazily, as in {@link #nextDocument()}.
+     */
+    @Override
+    public int read(final int[] docs, final int[] nodeFreqs) throws IOException {
+      if (doc == NO_MORE_DOC || docs.length == 0) {
+        return 0;
+      }
+      // align the node freqs with the docs of the current block
+      this.readPendingNodeFreqs();
+
+      while (true) {
+        if (docCount == docLimit) {
+          doc = NO_MORE_DOC;
+          node = NO_MORE_NOD;
+          pos = NO_MORE_POS;
+          this.resetPendingCounters();
+          return 0;
+        }
+
+        // If block exhausted, decode next block
+        if (docReader.isExhausted()) {
+          docReader.nextBlock();
+          nodIndex.seek(nodReader); // move node reader to next block
+          nodReader.nextBlock(); // doc and node blocks are synchronised
+          this.nextPosBlock(); // doc and pos blocks are synchronised
+          this.resetPendingCounters(); // reset counters as we move to next block
+        }
+
+        int n = docReader.read(docs, nodeFreqs, Math.min(docs.length, docLimit - docCount));
+        // the number of nodes of the docs read
+        int nodCount = 0;
+        int count = 0;
+
+        if (liveDocs == null) {
+          for (int i = 0; i < n; i++) {
+            nodCount += nodeFreqs[i];
+          }
+          count = n;
+        }
+        else {
+          // filter the deleted docs, their nodes are skipped as well
+          int last = -1;
+          for (int i = 0; i < n; i++) {
+            nodCount += nodeFreqs[i];
+            if (liveDocs.get(docs[i])) {
+              docs[count] = docs[i];
+              nodeFreqs[count] = nodeFreqs[i];
+              count++;
+              last = i;
+            }
+          }
+          if (count > 0) {
+            // move the reader back after the last live doc, so that the enum
+            // is positioned on it. The trailing entries have not been
+            // overwritten by the compaction.
+            for (int i = last + 1; i < n; i++) {
+              nodCount -= nodeFreqs[i];
+            }
+            docReader.unread(n - last - 1);
+            n = last + 1;
+          }
+        }
+
+        docCount += n;
+        pendingNodCount += nodCount;
+        pendingTermFreqInNodeCount += nodCount;
+
+        if (count > 0) {
+          doc = docs[count - 1];
+          this.resetFreqNodAndPos();
+          nodFreq = nodeFreqs[count - 1];
+          termFreqInNodeReadPending = false;
+          return count;
+        }
+      }
+    }
+
     @Override
     public boolean nextNode() throws IOException {
       termFreqInNode = 0; // lazy load of freq
@@ -535,8 +744,60 @@ public class Siren10PostingsReader extends PostingsReaderBase {
       return false;
     }
 
+    /**
+     * Skip the nodes of the current document based on the node skip data of
+     * the block, then scan linearly for the remaining nodes.
+     * <p>
+     * The term frequencies and positions of the skipped nodes are skipped
+     * lazily, as for the nodes ignored during document iteration.
+     */
+    @Override
+    public boolean skipToNode(final IntsRef target) throws IOException {
+      if (node == NO_MORE_NOD) {
+        return false;
+      }
+      if (node != UNSET_NODE && NodeUtils.compare(node, target) >= 0) {
+        return true;
+      }
+
+      final int nodeFreqInDoc = this.nodeFreqInDoc(); // load node freq
+      if (pendingNodCount > nodeFreqInDoc) {
+        nodReader.skipNodes(pendingNodCount - nodeFreqInDoc);
+        pendingNodCount = nodeFreqInDoc;
+      }
+      if (pendingNodCount == nodeFreqInDoc) { // start of the new doc
+        // reset current node for delta computation
+        nodReader.resetCurrentNode();
+      }
+      pendingNodCount -= nodReader.skipToNode(target, pendingNodCount);
+
+      while (this.nextNode()) {
+        if (NodeUtils.compare(node, target) >= 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     @Override
     public boolean skipTo(final int target) throws IOException {
+      this.skipToBlock(target);
+
+      // Now, linear scan for the rest:
+      do {
+        if (!this.nextDocument()) {
+          return false;
+        }
+      } while (target > doc);
+
+      return true;
+    }
+
+    /**
+     * Move to the block which may contain the target, using the skip list
+     * first, then the block headers.
+     */
+    private void skipToBlock(final int target) throws IOException {
       if ((target - (blockSkipInterval * maxBlockSize)) >= doc &&
           docLimit >= (blockSkipMinimum * maxBlockSize)) {
 
@@ -569,14 +830,136 @@ public class Siren10PostingsReader extends PostingsReaderBase {
         }
       }
 
-      // Now, linear scan for the rest:
-      // TODO: Implement linear block skipping based on first and last doc ids
-      do {
-        if (!this.nextDocument()) {
-          return false;
+      // Skip the blocks that cannot contain the target
+      this.skipBlocks(target);
+    }
+
+    /**
+     * Move to the block which may contain the target based on the skip list
+     * and the block headers. Only the block headers are read.
+     */
+    @Override
+    public int advanceShallow(final int target) throws IOException {
+      if (doc == NO_MORE_DOC) {
+        return NO_MORE_DOC;
+      }
+      if (target > doc) {
+        this.skipToBlock(target);
+        if (docCount == docLimit && docReader.isExhausted()) {
+          // no more blocks: exhaust the enum
+          this.nextDocument();
+          return NO_MORE_DOC;
         }
-      } while (target > doc);
+      }
+      return docReader.getLastDocId();
+    }
 
+    @Override
+    public int blockMaxNodeFreq() {
+      return docReader.getMaxNodeFreq();
+    }
+
+    @Override
+    public int blockMaxTermFreqInNode() {
+      return docReader.getMaxTermFreqInNode();
+    }
+
+    @Override
+    public int blockMaxTermFreqInDoc() {
+      return docReader.getMaxTermFreqInDoc();
+    }
+
+    /**
+     * Skip the blocks whose last document identifier is lower than the target,
+     * based on the first and last doc ids stored in the block headers.
+     * <p>
+     * Only the block headers are read. The doc, node frequency, node and
+     * position data blocks of the skipped blocks are never decoded. The node
+     * and position readers are only moved to the block where the skipping
+     * stops.
+     */
+    private void skipBlocks(final int target) throws IOException {
+      if (docReader.isExhausted()) {
+        // the header of the next block has not been read yet
+        if (docCount == docLimit) {
+          return;
+        }
+      }
+      else if (target <= docReader.getLastDocId()) {
+        // the target is in the current block
+        return;
+      }
+      else {
+        // skip the remaining docs of the current block
+        docCount += docReader.getRemainingDocuments();
+        docReader.skipBlock();
+      }
+
+      while (docCount < docLimit) {
+        docReader.nextBlock(); // read only the block header
+        if (target <= docReader.getLastDocId()) {
+          // move node and pos readers to the block containing the target
+          nodIndex.seek(nodReader);
+          nodReader.nextBlock(); // doc and node blocks are synchronised
+          this.nextPosBlock(); // doc and pos blocks are synchronised
+          this.resetPendingCounters(); // reset counters as we move to next block
+          return;
+        }
+        docCount += docReader.getRemainingDocuments();
+        docReader.skipBlock();
+      }
+    }
+
+    /**
+     * Expert: Return true if the blocks of this enum can be copied as raw bytes
+     * into a postings file written with the given block size, factory and
+     * index positions option.
+     */
+    boolean isRawCopyCompatible(final int blockSize, final Siren10BlockStreamFactory factory,
+                                final boolean indexPositions) {
+      return maxBlockSize == blockSize && indexPositions == (posIn != null) &&
+        factory.isRawCopyCompatible(Siren10PostingsReader.this.factory);
+    }
+
+    /**
+     * Move the position reader to the next block, if the positions are
+     * indexed.
+     */
+    private void nextPosBlock() throws IOException {
+      if (posReader != null) {
+        posIndex.seek(posReader);
+        posReader.nextBlock();
+      }
+    }
+
+    /**
+     * Expert: Move the block readers to the header of the next full block,
+     * without decoding it. Return false if the remaining documents do not fill
+     * a full block. The remaining documents can then be read with
+     * {@link #nextDocument()}.
+     * <p>
+     * The data blocks of the current block are accessible through the
+     * {@link #docReader}, {@link #nodReader} and {@link #posReader} until the
+     * next call. This must be called before any other iteration method.
+     * <p>
+     * This is used by {@link Siren10PostingsWriter} to copy raw blocks during
+     * merge.
+     */
+    boolean nextFullBlock() throws IOException {
+      // the previous full block has been consumed by the caller
+      docReader.skipBlock();
+
+      // all the blocks are full, except the last one
+      if (docLimit - docCount < maxBlockSize) {
+        return false;
+      }
+
+      docReader.nextBlock();
+      assert docReader.getRemainingDocuments() == maxBlockSize;
+      nodIndex.seek(nodReader);
+      nodReader.nextBlock(); // doc and node blocks are synchronised
+      this.nextPosBlock(); // doc and pos blocks are synchronised
+      docCount += maxBlockSize;
       return true;
     }
 
@@ -590,8 +973,16 @@ public class Siren10PostingsReader extends PostingsReaderBase {
       return node;
     }
 
+    @Override
+    public boolean hasPositions() {
+      return posReader != null;
+    }
+
     @Override
     public boolean nextPosition() throws IOException {
+      if (posReader == null) {
+        throw new IllegalStateException("The positions are not indexed");
+      }
       final int termFreqInNode = this.termFreqInNode(); // load term freq
       // scan over any positions that were ignored during doc iteration
       while (pendingPosNodCount > termFreqInNode) {
@@ -626,17 +1017,23 @@ public class Siren10PostingsReader extends PostingsReaderBase {
     @Override
     public int nodeFreqInDoc() throws IOException {
       if (nodFreq == 0) {
-        // scan over any freqs that were ignored during doc iteration
-        while (pendingNodFreqCount > 0) {
-          nodFreq = docReader.nextNodeFreq();
-          pendingNodFreqCount--;
-          pendingNodCount += nodFreq;
-          pendingTermFreqInNodeCount += nodFreq;
-        }
+        this.readPendingNodeFreqs();
       }
       return nodFreq;
     }
 
+    /**
+     * Scan over any freqs that were ignored during doc iteration
+     */
+    private void readPendingNodeFreqs() throws IOException {
+      while (pendingNodFreqCount > 0) {
+        nodFreq = docReader.nextNodeFreq();
+        pendingNodFreqCount--;
+        pendingNodCount += nodFreq;
+        pendingTermFreqInNodeCount += nodFreq;
+      }
+    }
+
     @Override
     public int termFreqInNode() throws IOException {
       // nextNode should be called first
@@ -32,15 +32,30 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.sindicetech.siren.analysis.filter.VIntPayloadCodec;
+import com.sindicetech.siren.index.DocsNodesAndPositionsEnum;
 import com.sindicetech.siren.index.MappingMultiDocsNodesAndPositionsEnum;
+import com.sindicetech.siren.index.SirenDocsEnum;
 import com.sindicetech.siren.index.codecs.block.BlockIndexOutput;
+import com.sindicetech.siren.index.codecs.siren10.Siren10PostingsReader.Siren10DocsNodesAndPositionsEnum;
 
 import java.io.IOException;
 import java.util.List;
 
 /**
  * Writes the document identifiers, node frequencies, node labels, term
- * frequencies, term positions and block skip data.
+ * frequencies, term positions, block skip data and node skip data.
+ *
+ * <p>
+ *
+ * If the positions are not indexed, the .pos file is not written and the
+ * blocks of the .doc file do not record any pointer to it.
+ *
+ * <p>
+ *
+ * The postings of the terms whose document frequency is lower than or equal
+ * to the pulse threshold are inlined in the term dictionary instead. They are
+ * buffered until the threshold is exceeded, and are then written to the
+ * block files.
  */
 public class Siren10PostingsWriter extends PostingsWriterBase {
 
@@ -50,7 +65,11 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
   final static int VERSION_START = 0;
   final static int VERSION_META_ARRAY = 1;
   final static int VERSION_CHECKSUM = 2;
-  final static int VERSION_CURRENT = VERSION_CHECKSUM;
+  final static int VERSION_NODE_SKIP = 3;
+  final static int VERSION_BLOCK_MAX = 4;
+  final static int VERSION_PULSING = 5;
+  final static int VERSION_POSITIONS_OPTION = 6;
+  final static int VERSION_CURRENT = VERSION_POSITIONS_OPTION;
 
   DocsFreqBlockIndexOutput                     docOut;
   DocsFreqBlockIndexOutput.DocsFreqBlockWriter docWriter;
@@ -68,6 +87,8 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
 
   final Siren10SkipListWriter skipWriter;
 
+  final Siren10BlockStreamFactory factory;
+
   /**
    * Expert: The fraction of blocks stored in skip tables,
    * used to accelerate {@link DocsEnum#advance(int)}.  Larger values result in
@@ -94,6 +115,35 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
    */
   final int maxSkipLevels = 10;
 
+  /**
+   * Expert: The number of nodes between two skip points within a document,
+   * used to accelerate {@link DocsNodesAndPositionsEnum#skipToNode(IntsRef)}.
+   * Only the documents with more nodes than this interval have node skip data.
+   */
+  final int nodeSkipInterval;
+  static final int DEFAULT_NODE_SKIP_INTERVAL = 64;
+
+  /**
+   * Expert: The maximum document frequency of a term whose postings are
+   * inlined in the term dictionary, or 0 to disable pulsing. Larger values
+   * avoid more seeks in the .doc, .nod and .pos files, but result in a bigger
+   * term dictionary.
+   */
+  final int pulseThreshold;
+
+  /**
+   * The postings of the current term, as long as its document frequency does
+   * not exceed the pulse threshold.
+   */
+  private final PulsedPostingsBuffer pulsedBuffer;
+  private boolean pulsing;
+
+  /**
+   * Expert: Whether the positions of the terms within a node are indexed.
+   * Without positions, the phrase and span queries cannot be used.
+   */
+  final boolean indexPositions;
+
   final int totalNumDocs;
 
   IndexOptions indexOptions;
@@ -110,13 +160,18 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
   public Siren10PostingsWriter(final SegmentWriteState state,
                                final Siren10BlockStreamFactory factory)
   throws IOException {
-    this(state, DEFAULT_BLOCK_SKIP_INTERVAL, factory);
+    this(state, DEFAULT_BLOCK_SKIP_INTERVAL, DEFAULT_NODE_SKIP_INTERVAL,
+      Siren10PostingsFormat.DEFAULT_PULSE_THRESHOLD, true, factory);
   }
 
   public Siren10PostingsWriter(final SegmentWriteState state,
                                final int blockSkipInterval,
+                               final int nodeSkipInterval,
+                               final int pulseThreshold,
+                               final boolean indexPositions,
                                final Siren10BlockStreamFactory factory)
   throws IOException {
+    this.factory = factory;
     nodOut = null;
     nodIndex = null;
     posOut = null;
@@ -126,6 +181,10 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
     try {
       this.blockSkipInterval = blockSkipInterval;
       this.blockSkipMinimum = blockSkipInterval; /* set to the same for now */
+      this.nodeSkipInterval = nodeSkipInterval;
+      this.pulseThreshold = pulseThreshold;
+      this.indexPositions = indexPositions;
+      this.pulsedBuffer = new PulsedPostingsBuffer(indexPositions);
 
       final String docFileName = IndexFileNames.segmentFileName(state.segmentInfo.name,
         state.segmentSuffix, Siren10PostingsFormat.DOC_EXTENSION);
@@ -139,13 +198,16 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
         state.segmentSuffix, Siren10PostingsFormat.NOD_EXTENSION);
       nodOut = factory.createNodOutput(state.directory, nodFileName, state.context);
       nodWriter = nodOut.getBlockWriter();
+      nodWriter.setNodeSkipInterval(nodeSkipInterval);
       nodIndex = nodOut.index();
 
-      final String posFileName = IndexFileNames.segmentFileName(state.segmentInfo.name,
-        state.segmentSuffix, Siren10PostingsFormat.POS_EXTENSION);
-      posOut = factory.createPosOutput(state.directory, posFileName, state.context);
-      posWriter = posOut.getBlockWriter();
-      posIndex = posOut.index();
+      if (indexPositions) {
+        final String posFileName = IndexFileNames.segmentFileName(state.segmentInfo.name,
+          state.segmentSuffix, Siren10PostingsFormat.POS_EXTENSION);
+        posOut = factory.createPosOutput(state.directory, posFileName, state.context);
+        posWriter = posOut.getBlockWriter();
+        posIndex = posOut.index();
+      }
 
       final String skipFileName = IndexFileNames.segmentFileName(state.segmentInfo.name,
         state.segmentSuffix, Siren10PostingsFormat.SKIP_EXTENSION);
@@ -158,7 +220,9 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
       skipWriter = new Siren10SkipListWriter(blockSkipInterval, maxSkipLevels,
         numBlocks, docOut);
       docWriter.setNodeBlockIndex(nodIndex);
-      docWriter.setPosBlockIndex(posIndex);
+      if (indexPositions) {
+        docWriter.setPosBlockIndex(posIndex);
+      }
 
       success = true;
     }
@@ -176,6 +240,9 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
     termsOut.writeInt(maxSkipLevels);               // write maxSkipLevels
     termsOut.writeInt(blockSkipMinimum);                 // write skipMinimum
     termsOut.writeInt(maxBlockSize);                 // write maxBlockSize
+    termsOut.writeInt(nodeSkipInterval);             // write nodeSkipInterval
+    termsOut.writeInt(pulseThreshold);               // write pulseThreshold
+    termsOut.writeByte((byte) (indexPositions ? 1 : 0)); // write indexPositions
   }
 
   @Override
@@ -187,9 +254,14 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
   public void startTerm() throws IOException {
     docIndex.mark();
     nodIndex.mark();
-    posIndex.mark();
+    if (indexPositions) {
+      posIndex.mark();
+    }
 
     skipWriter.resetSkip(docIndex);
+
+    pulsing = pulseThreshold > 0;
+    pulsedBuffer.reset();
   }
 
   // Currently, this instance is re-used across fields, so
@@ -228,6 +300,16 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
       throw new CorruptIndexException("docs out of order (" + docID + ") (docOut: " + docOut + ")");
     }
 
+    if (pulsing) {
+      if (pulsedBuffer.getDocFreq() < pulseThreshold) {
+        pulsedBuffer.startDoc(docID);
+        sirenPayload.resetLastNode();
+        return;
+      }
+      // the threshold is exceeded, move the buffered postings to the blocks
+      this.flushPulsedPostings();
+    }
+
     if (docWriter.isFull()) {
       if ((++blockCount % blockSkipInterval) == 0) {
         skipWriter.setSkipData(docWriter.getFirstDocId());
@@ -235,7 +317,9 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
       }
       docWriter.flush();
       nodWriter.flush(); // flush node block to synchronise it with doc block
-      posWriter.flush(); // flush pos block to synchronise it with doc block
+      if (indexPositions) {
+        posWriter.flush(); // flush pos block to synchronise it with doc block
+      }
     }
 
     docWriter.write(docID);
@@ -243,88 +327,132 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
     // reset current node for delta computation
     nodWriter.resetCurrentNode();
 
-    // reset payload hash to sentinel value
-    lastNodeHash = Long.MAX_VALUE;
+    // the first payload of the document always starts a new node
+    sirenPayload.resetLastNode();
   }
 
   /**
-   * Sentinel value {@link Long#MAX_VALUE} is necessary in order to avoid
-   * equality with nodes composed of '0' values.
-   * <p>
-   * Use long to avoid collision between sentinel value and payload hashcode.
-   * <p>
-   * Using payload hashcode seems to be the fastest way for testing node
-   * equality. See micro-benchmark {@link NodeEqualityBenchmark}.
+   * Decodes the payloads. The node of a payload is compared as raw bytes with
+   * the node of the previous payload, and is decoded only if it is a new node.
    */
-  private long lastNodeHash = Long.MAX_VALUE;
-
   private final VIntPayloadCodec sirenPayload = new VIntPayloadCodec();
 
   private int nodeFreqInDoc = 0;
   private int termFreqInNode = 0;
+  private int maxTermFreqInNode = 0;
+  private int termFreqInDoc = 0;
 
   @Override
   public void addPosition(final int position, final BytesRef payload,
                           final int startOffset, final int endOffset)
   throws IOException {
     assert indexOptions == IndexOptions.DOCS_AND_FREQS_AND_POSITIONS;
-    // we always receive node ids in the payload
+    // we always receive node ids in the payload, even if the positions are
+    // not indexed
     assert payload != null;
 
-    // decode payload
-    sirenPayload.decode(payload);
-    final IntsRef node = sirenPayload.getNode();
+    // decode the position, and the node only if we received a different node
+    final boolean isNewNode = sirenPayload.decodeIfNewNode(payload);
 
-    // check if we received the same node
-    // TODO: we pay the cost of decoding the node before testing the equality
-    // we could instead directly compute the node hash based on the byte array
-    final int nodeHash = node.hashCode();
-    if (lastNodeHash != nodeHash) { // if different node
+    if (pulsing) {
+      if (isNewNode) {
+        pulsedBuffer.startNode(sirenPayload.getNode());
+      }
+      pulsedBuffer.addPosition(sirenPayload.getPosition());
+      return;
+    }
+
+    if (isNewNode) {
       // add term freq for previous node if not first payload.
-      if (lastNodeHash != Long.MAX_VALUE) {
+      if (nodeFreqInDoc > 0) {
         this.addTermFreqInNode();
       }
       // add new node
-      this.addNode(node);
+      this.addNode(sirenPayload.getNode());
     }
-    lastNodeHash = nodeHash;
 
     // add position
     this.addPosition(sirenPayload.getPosition());
   }
 
+  /**
+   * Write the buffered postings of the current term to the blocks, and stop
+   * pulsing.
+   */
+  private void flushPulsedPostings() throws IOException {
+    pulsing = false;
+    final byte[] postings = pulsedBuffer.getBytes();
+    final Siren10PulsedDocsNodesAndPositionsEnum e = new Siren10PulsedDocsNodesAndPositionsEnum(indexPositions);
+    e.init(postings, postings.length, pulsedBuffer.getDocFreq(), null);
+
+    while (e.nextDocument()) {
+      this.startDoc(e.doc(), -1);
+      while (e.nextNode()) {
+        if (nodeFreqInDoc > 0) {
+          this.addTermFreqInNode();
+        }
+        this.addNode(e.node());
+        if (indexPositions) {
+          while (e.nextPosition()) {
+            this.addPosition(e.pos());
+          }
+        }
+        else {
+          termFreqInNode = e.termFreqInNode();
+        }
+      }
+      this.finishDoc();
+    }
+  }
+
   private void addNode(final IntsRef node) {
     nodWriter.write(node);
     nodeFreqInDoc++;
-    // reset current position for delta computation
-    posWriter.resetCurrentPosition();
+    if (indexPositions) {
+      // reset current position for delta computation
+      posWriter.resetCurrentPosition();
+    }
   }
 
   private void addPosition(final int position) {
-    posWriter.write(position);
+    if (indexPositions) {
+      posWriter.write(position);
+    }
     termFreqInNode++;
   }
 
   private void addNodeFreqInDoc() {
     docWriter.writeNodeFreq(nodeFreqInDoc);
+    docWriter.writeTermFreqs(maxTermFreqInNode, termFreqInDoc);
     nodeFreqInDoc = 0;
+    maxTermFreqInNode = 0;
+    termFreqInDoc = 0;
   }
 
   private void addTermFreqInNode() {
     nodWriter.writeTermFreq(termFreqInNode);
+    maxTermFreqInNode = Math.max(maxTermFreqInNode, termFreqInNode);
+    termFreqInDoc += termFreqInNode;
     termFreqInNode = 0;
   }
 
   @Override
-  public void finishDoc() {
-    this.addNodeFreqInDoc();
+  public void finishDoc() throws IOException {
+    if (pulsing) {
+      pulsedBuffer.finishDoc();
+      return;
+    }
+    // the term freq of the last node is part of the impact of the document
     this.addTermFreqInNode();
+    this.addNodeFreqInDoc();
   }
 
   private static class Siren10TermState extends BlockTermState {
     public BlockIndexOutput.Index docIndex;
     public long skipFP;
     public int blockCount;
+    /** The inlined postings, or null */
+    public byte[] pulsedPostings;
   }
 
   /**
@@ -334,6 +462,18 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
   public void finishTerm(final BlockTermState _state) throws IOException {
     Siren10TermState state = (Siren10TermState) _state;
     assert state.docFreq > 0;
+    assert pulsing == (state.docFreq <= pulseThreshold);
+
+    if (pulsing) {
+      // nothing was written in the blocks, the doc index only keeps the
+      // delta encoding of the term dictionary consistent
+      state.pulsedPostings = pulsedBuffer.getBytes();
+      state.docIndex = docOut.index();
+      state.docIndex.copyFrom(docIndex, false);
+      state.skipFP = -1;
+      state.blockCount = 0;
+      return;
+    }
 
     // if block flush pending, write last skip data
     if (!docWriter.isEmpty() && (++blockCount % blockSkipInterval) == 0) {
@@ -350,7 +490,9 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
     nodWriter.flush();
 
     // flush pos block
-    posWriter.flush();
+    if (indexPositions) {
+      posWriter.flush();
+    }
 
     // Write skip data to the output file
     if (blockCount >= blockSkipMinimum) {
@@ -393,6 +535,10 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
       }
       lastSkipFP = state.skipFP;
     }
+
+    if (state.pulsedPostings != null) {
+      PulsedPostingsBuffer.write(state.pulsedPostings, out);
+    }
   }
 
   @Override
@@ -436,9 +582,23 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
    * Bypass the {@link org.apache.lucene.codecs.PostingsConsumer#merge(org.apache.lucene.index.MergeState, org.apache.lucene.index.FieldInfo.IndexOptions, org.apache.lucene.index.DocsEnum, org.apache.lucene.util.FixedBitSet)}
    * methods and work directly with the BlockWriters for maximum efficiency.
    * <p>
-   * TODO - Optimisation: If document blocks match the block size, and no
-   * document deleted, then it would be possible to copy block directly as byte
-   * array, avoiding decoding and encoding.
+   * If a sub-segment has no deleted documents, its document identifiers are
+   * only shifted by the segment doc base. In this case, and if the pending
+   * block is empty, the full blocks of the sub-segment are copied as raw bytes
+   * with {@link #copyBlocks(Siren10DocsNodesAndPositionsEnum, int, FixedBitSet)},
+   * avoiding decoding and encoding. The remaining documents are appended one
+   * by one.
+   * <p>
+   * The raw copy is limited to sub-segments which start on a block boundary
+   * of the merged postings. All the blocks of a term, except the last one,
+   * must be full, since the skip list derives the document counts from the
+   * number of blocks. Therefore, once a sub-segment leaves a partial block,
+   * the full blocks of the next sub-segments of the term are not aligned
+   * with the merged blocks, and are decoded and encoded again. The alignment
+   * is recovered only when the appended documents happen to complete a
+   * block. In a merge of N sub-segments, the raw copy then mostly benefits
+   * the first sub-segment of each term, and the terms whose sub-segments
+   * have a multiple of the block size documents.
    **/
   @Override
   public TermStats merge(final MergeState mergeState, final IndexOptions indexOptions,
@@ -447,35 +607,139 @@ public class Siren10PostingsWriter extends PostingsWriterBase {
     int df = 0;
     long totTF = 0;
 
+    final MappingMultiDocsAndPositionsEnum mappingEnum = (MappingMultiDocsAndPositionsEnum) postings;
+    final MultiDocsAndPositionsEnum.EnumWithSlice[] subs = mappingEnum.getSubs();
     postingsEnum.setMergeState(mergeState);
-    postingsEnum.reset((MappingMultiDocsAndPositionsEnum) postings);
 
-    while (postingsEnum.nextDocument()) {
-      final int doc = postingsEnum.doc();
-      visitedDocs.set(doc);
+    for (int i = 0; i < mappingEnum.getNumSubs(); i++) {
+      final int readerIndex = subs[i].slice.readerIndex;
+      final DocsNodesAndPositionsEnum subEnum = ((SirenDocsEnum) subs[i].docsAndPositionsEnum).getDocsNodesAndPositionsEnum();
+
+      // copy the full blocks if doc ids are shifted by a constant offset. A
+      // full block exceeds the pulse threshold, but no document must have
+      // been buffered: a partial block cannot be flushed before the last block
+      // of the term, and the blocks of the sub-segment would not be aligned.
+      if (docWriter.isEmpty() && !mergeState.docMaps[readerIndex].hasDeletions() &&
+          (!pulsing || (pulsedBuffer.getDocFreq() == 0 && pulseThreshold < maxBlockSize)) &&
+          subEnum instanceof Siren10DocsNodesAndPositionsEnum &&
+          ((Siren10DocsNodesAndPositionsEnum) subEnum).isRawCopyCompatible(maxBlockSize, factory, indexPositions)) {
+        final int docBase = mergeState.docBase[readerIndex];
+        final TermStats stats = this.copyBlocks((Siren10DocsNodesAndPositionsEnum) subEnum, docBase, visitedDocs);
+        df += stats.docFreq;
+        totTF += stats.totalTermFreq;
+      }
 
-      this.startDoc(doc, -1);
+      // append the remaining documents
+      postingsEnum.reset(mappingEnum, i);
+
+      while (postingsEnum.nextDocument()) {
+        final int doc = postingsEnum.doc();
+        visitedDocs.set(doc);
+
+        this.startDoc(doc, -1);
+
+        if (pulsing) {
+          while (postingsEnum.nextNode()) {
+            pulsedBuffer.startNode(postingsEnum.node());
+            if (indexPositions) {
+              while (postingsEnum.nextPosition()) {
+                pulsedBuffer.addPosition(postingsEnum.pos());
+                totTF++;
+              }
+            }
+            else {
+              final int termFreqInNode = postingsEnum.termFreqInNode();
+              pulsedBuffer.addTermFreq(termFreqInNode);
+              totTF += termFreqInNode;
+            }
+          }
+          pulsedBuffer.finishDoc();
+          df++;
+          continue;
+        }
 
-      final int nodeFreq = postingsEnum.nodeFreqInDoc();
-      docWriter.writeNodeFreq(nodeFreq);
+        final int nodeFreq = postingsEnum.nodeFreqInDoc();
+        docWriter.writeNodeFreq(nodeFreq);
+
+        int maxTermFreqInNode = 0;
+        int termFreqInDoc = 0;
+        while (postingsEnum.nextNode()) {
+          final IntsRef node = postingsEnum.node();
+          nodWriter.write(node);
+
+          final int termFreqInNode = postingsEnum.termFreqInNode();
+          nodWriter.writeTermFreq(termFreqInNode);
+          maxTermFreqInNode = Math.max(maxTermFreqInNode, termFreqInNode);
+          termFreqInDoc += termFreqInNode;
+
+          if (!indexPositions) {
+            totTF += termFreqInNode;
+            continue;
+          }
+
+          // reset current position for delta computation
+          posWriter.resetCurrentPosition();
+
+          while (postingsEnum.nextPosition()) {
+            final int position = postingsEnum.pos();
+            posWriter.write(position);
+            totTF++;
+          }
+        }
+        docWriter.writeTermFreqs(maxTermFreqInNode, termFreqInDoc);
+        df++;
+      }
+    }
 
-      while (postingsEnum.nextNode()) {
-        final IntsRef node = postingsEnum.node();
-        nodWriter.write(node);
+    return new TermStats(df, totTF);
+  }
+
+  /**
+   * Copy the full blocks of the given enum as raw bytes. The doc ids of the
+   * block headers and of the skip data are shifted by <code>docBase</code>.
+   * The last block, if not full, is left in the enum.
+   */
+  private TermStats copyBlocks(final Siren10DocsNodesAndPositionsEnum e, final int docBase,
+                               final FixedBitSet visitedDocs)
+  throws IOException {
+    int df = 0;
+    long totTF = 0;
+
+    while (e.nextFullBlock()) {
+      // a full block exceeds the pulse threshold
+      pulsing = false;
 
-        final int termFreqInNode = postingsEnum.termFreqInNode();
-        nodWriter.writeTermFreq(termFreqInNode);
+      final int firstDocId = docBase + e.docReader.getFirstDocId();
+      final int lastDocId = docBase + e.docReader.getLastDocId();
 
-        // reset current position for delta computation
-        posWriter.resetCurrentPosition();
+      // buffer skip data before writing the block, as in #startDoc
+      if ((++blockCount % blockSkipInterval) == 0) {
+        skipWriter.setSkipData(firstDocId);
+        skipWriter.bufferSkip(blockCount);
+      }
 
-        while (postingsEnum.nextPosition()) {
-          final int position = postingsEnum.pos();
-          posWriter.write(position);
-          totTF++;
+      // doc block must be written first, as it records the file pointers of
+      // the node and pos blocks
+      docWriter.copyBlock(e.docReader, docBase);
+      if (indexPositions) {
+        nodWriter.copyBlock(e.nodReader);
+        totTF += posWriter.copyBlock(e.posReader);
+      }
+      else {
+        // without positions, the term frequencies are summed from the node block
+        totTF += nodWriter.copyBlockAndSumTermFreqs(e.nodReader);
+      }
+
+      if (lastDocId - firstDocId + 1 == maxBlockSize) {
+        // dense block, no need to decode doc ids
+        visitedDocs.set(firstDocId, lastDocId + 1);
+      }
+      else {
+        for (int i = 0; i < maxBlockSize; i++) {
+          visitedDocs.set(docBase + e.docReader.nextDocument());
         }
       }
-      df++;
+      df += maxBlockSize;
     }
 
     return new TermStats(df, totTF);
@@ -0,0 +1,318 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.index.codecs.siren10;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.IntsRef;
+
+import com.sindicetech.siren.index.DocsNodesAndPositionsEnum;
+
+import java.io.IOException;
+
+/**
+ * Implementation of {@link DocsNodesAndPositionsEnum} for the pulsed postings
+ * of the SIREn 1.0 postings format, i.e., the postings of the low-frequency
+ * terms which are inlined in the term dictionary.
+ *
+ * <p>
+ *
+ * The postings are decoded sequentially from the byte array of the term
+ * metadata, without accessing the .doc, .nod and .pos files. The nodes and
+ * positions which are not requested are skipped. If the positions are not
+ * indexed, {@link #nextPosition()} throws an {@link IllegalStateException}.
+ *
+ * @see PulsedPostingsBuffer
+ */
+class Siren10PulsedDocsNodesAndPositionsEnum extends DocsNodesAndPositionsEnum {
+
+  private final ByteArrayDataInput in = new ByteArrayDataInput();
+
+  /**
+   * A copy of the postings, as the term state of the terms enum is reused when
+   * seeking to another term.
+   */
+  private byte[] postings = new byte[0];
+
+  private Bits liveDocs;
+
+  private final boolean hasPositions;
+
+  int docLimit;
+  private int docCount;
+  private int doc;
+  private int nodeFreq;
+  private int termFreqInNode;
+  private int pos;
+
+  /** The number of nodes of the current document not read yet */
+  private int pendingNodeCount;
+  /** The number of positions of the current node not read yet */
+  private int pendingPosCount;
+
+  private final IntsRef UNSET_NODE = new IntsRef(new int[] { -1 }, 0, 1);
+  private final IntsRef currentNode = new IntsRef(new int[1], 0, 1);
+  private IntsRef node;
+
+  /** The last document and the maximum impact, computed on demand */
+  private int lastDoc;
+  private int maxNodeFreq;
+  private int maxTermFreqInNode;
+  private int maxTermFreqInDoc;
+
+  Siren10PulsedDocsNodesAndPositionsEnum(final boolean hasPositions) {
+    this.hasPositions = hasPositions;
+  }
+
+  Siren10PulsedDocsNodesAndPositionsEnum init(final byte[] postings, final int length,
+                                              final int docFreq, final Bits liveDocs) {
+    if (this.postings.length < length) {
+      this.postings = new byte[ArrayUtil.oversize(length, 1)];
+    }
+    System.arraycopy(postings, 0, this.postings, 0, length);
+    in.reset(this.postings, 0, length);
+    this.liveDocs = liveDocs;
+    docLimit = docFreq;
+    docCount = 0;
+    doc = -1;
+    nodeFreq = termFreqInNode = 0;
+    pendingNodeCount = pendingPosCount = 0;
+    node = UNSET_NODE;
+    pos = -1;
+    lastDoc = -1;
+    return this;
+  }
+
+  @Override
+  public boolean nextDocument() throws IOException {
+    do {
+      // skip the nodes and positions of the previous document
+      this.skipPendingNodes();
+
+      if (docCount == docLimit) {
+        doc = NO_MORE_DOC;
+        node = NO_MORE_NOD;
+        pos = NO_MORE_POS;
+        return false;
+      }
+      docCount++;
+
+      doc = docCount == 1 ? in.readVInt() : doc + in.readVInt();
+      nodeFreq = in.readVInt();
+      pendingNodeCount = nodeFreq;
+      termFreqInNode = 0;
+      node = UNSET_NODE;
+      pos = -1;
+    } while (liveDocs != null && !liveDocs.get(doc));
+
+    return true;
+  }
+
+  /**
+   * Reads the documents with {@link #nextDocument()}. The state of the enum
+   * is restored on the last document read if there are no more documents, so
+   * that its nodes can still be read.
+   */
+  @Override
+  public int read(final int[] docs, final int[] nodeFreqs) throws IOException {
+    int count = 0;
+    while (count < docs.length) {
+      // the nodes of the last document read are not read yet
+      final int position = in.getPosition();
+      final int lastDoc = doc, lastDocCount = docCount, lastNodeFreq = nodeFreq;
+      if (!this.nextDocument()) {
+        if (count > 0) {
+          in.setPosition(position);
+          doc = lastDoc;
+          docCount = lastDocCount;
+          nodeFreq = pendingNodeCount = lastNodeFreq;
+          termFreqInNode = 0;
+          node = UNSET_NODE;
+          pos = -1;
+        }
+        break;
+      }
+      docs[count] = doc;
+      nodeFreqs[count] = nodeFreq;
+      count++;
+    }
+    return count;
+  }
+
+  @Override
+  public boolean skipTo(final int target) throws IOException {
+    do {
+      if (!this.nextDocument()) {
+        return false;
+      }
+    } while (target > doc);
+    return true;
+  }
+
+  /**
+   * The postings of the term form a single block.
+   */
+  @Override
+  public int advanceShallow(final int target) throws IOException {
+    if (doc == NO_MORE_DOC) {
+      return NO_MORE_DOC;
+    }
+    if (lastDoc == -1) {
+      this.computeImpact();
+    }
+    if (target > lastDoc) {
+      // exhaust the enum
+      docCount = docLimit;
+      this.nextDocument();
+      return NO_MORE_DOC;
+    }
+    return lastDoc;
+  }
+
+  @Override
+  public int blockMaxNodeFreq() {
+    return maxNodeFreq;
+  }
+
+  @Override
+  public int blockMaxTermFreqInNode() {
+    return maxTermFreqInNode;
+  }
+
+  @Override
+  public int blockMaxTermFreqInDoc() {
+    return maxTermFreqInDoc;
+  }
+
+  /**
+   * Scan all the postings to compute the last document and the maximum impact.
+   * The position of the input is restored.
+   */
+  private void computeImpact() throws IOException {
+    final int position = in.getPosition();
+    in.rewind();
+    maxNodeFreq = maxTermFreqInNode = maxTermFreqInDoc = 0;
+    int d = 0;
+    for (int i = 0; i < docLimit; i++) {
+      d += in.readVInt();
+      final int nodes = in.readVInt();
+      int termFreqInDoc = 0;
+      for (int j = 0; j < nodes; j++) {
+        final int labelLength = in.readVInt();
+        for (int k = 0; k < labelLength; k++) {
+          in.readVInt();
+        }
+        final int termFreq = in.readVInt();
+        if (hasPositions) {
+          for (int k = 0; k < termFreq; k++) {
+            in.readVInt();
+          }
+        }
+        maxTermFreqInNode = Math.max(maxTermFreqInNode, termFreq);
+        termFreqInDoc += termFreq;
+      }
+      maxNodeFreq = Math.max(maxNodeFreq, nodes);
+      maxTermFreqInDoc = Math.max(maxTermFreqInDoc, termFreqInDoc);
+    }
+    lastDoc = d;
+    in.setPosition(position);
+  }
+
+  @Override
+  public boolean nextNode() throws IOException {
+    // skip the positions of the previous node
+    while (pendingPosCount > 0) {
+      in.readVInt();
+      pendingPosCount--;
+    }
+    if (pendingNodeCount == 0) {
+      node = NO_MORE_NOD;
+      return false;
+    }
+    pendingNodeCount--;
+
+    final int labelLength = in.readVInt();
+    currentNode.ints = ArrayUtil.grow(currentNode.ints, labelLength);
+    for (int i = 0; i < labelLength; i++) {
+      currentNode.ints[i] = in.readVInt();
+    }
+    currentNode.length = labelLength;
+    node = currentNode;
+
+    termFreqInNode = in.readVInt();
+    pendingPosCount = hasPositions ? termFreqInNode : 0;
+    pos = -1;
+    return true;
+  }
+
+  @Override
+  public boolean hasPositions() {
+    return hasPositions;
+  }
+
+  @Override
+  public boolean nextPosition() throws IOException {
+    if (!hasPositions) {
+      throw new IllegalStateException("The positions are not indexed");
+    }
+    if (pendingPosCount == 0) {
+      pos = NO_MORE_POS;
+      return false;
+    }
+    pendingPosCount--;
+    // positions are encoded as delta within a node
+    pos = pos == -1 ? in.readVInt() : pos + in.readVInt();
+    return true;
+  }
+
+  private void skipPendingNodes() throws IOException {
+    while (this.nextNode()) {
+      // skip
+    }
+    pendingPosCount = 0;
+  }
+
+  @Override
+  public int doc() {
+    return doc;
+  }
+
+  @Override
+  public IntsRef node() {
+    return node;
+  }
+
+  @Override
+  public int pos() {
+    return pos;
+  }
+
+  @Override
+  public int nodeFreqInDoc() throws IOException {
+    return nodeFreq;
+  }
+
+  @Override
+  public int termFreqInNode() throws IOException {
+    return termFreqInNode;
+  }
+
+}
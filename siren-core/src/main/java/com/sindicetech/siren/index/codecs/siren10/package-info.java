@@ -11,12 +11,13 @@
  *
  * <h2>SIREn 1.0 Postings Format</h2>
  *
- * The SIREn 1.0 postings format is organised around four files:
+ * The SIREn 1.0 postings format is organised around five files:
  * <ul>
  *   <li> The .doc file contains the document identifiers and node frequencies;
  *   <li> The .nod file contains the node labels and the term frequencies;
  *   <li> The .pos file contains the term positions;
- *   <li> The .skp file contains the skip data.
+ *   <li> The .skp file contains the skip data;
+ *   <li> The .pth file contains the path dictionaries.
  * </ul>
  *
  * The SIREn 1.0 postings format is divided into multiple blocks. The default
@@ -49,6 +50,7 @@
  *   Header = BlockSize,
  *            CompressedDocSize, CompressedNodeFreqSize,
  *            FirstDocId, LastDocId,
+ *            MaxNodeFreq, MaxTermFreqInNode, MaxTermFreqInDoc,
  *            NodeBlockPointer, PosBlockPointer
  *   CompressedDoc      = [DeltaDocId]
  *   CompressedNodeFreq = [NodeFreq]
@@ -67,6 +69,15 @@
  * of the block. This information is used by the skip list algorithm. The
  * LastDocId is encoded as delta between the FirstDocId.
  * <p>
+ * <b>MaxNodeFreq</b>, <b>MaxTermFreqInNode</b> and <b>MaxTermFreqInDoc</b>
+ * record the maximum impact of the term in the block: the maximum node
+ * frequency of a document, the maximum term frequency in a node and the
+ * maximum term frequency in a document. They are used to compute an upper
+ * bound of the score of the documents of the block without decoding it. A
+ * MaxNodeFreq of 0 means that the impact is unknown. They are absent from the
+ * blocks written before the version
+ * {@link com.sindicetech.siren.index.codecs.siren10.Siren10PostingsWriter#VERSION_BLOCK_MAX}.
+ * <p>
  * <b>NodeBlockPointer</b> records the pointer of the node block in the .nod file that
  * is associated to this block.
  * <p>
@@ -102,10 +113,12 @@
  *
  * The block format follows the schema:
  * <pre>
- *   Block  = Header, CompressedNodeLength, CompressedNode, CompressedTermFreq
+ *   Block  = Header, CompressedNodeLength, NodeSkipData, CompressedNode, CompressedTermFreq
  *   Header = NodeLengthBlockSize, NodeBlockSize, TermFreqBlockSize,
- *            CompressedNodeLengthSize, CompressedNodeSize, CompressedTermFreqSize
+ *            CompressedNodeLengthSize, CompressedNodeSize, CompressedTermFreqSize,
+ *            NodeSkipDataSize
  *   CompressedNodeLength = [NodeLength]
+ *   NodeSkipData         = [NodeIndexDelta, LabelLength, [LabelInt]]
  *   CompressedNode       = [DeltaNode]
  *   CompressedTermFreq   = [TermFreq]
  * </pre>
@@ -128,6 +141,10 @@
  * <b>CompressedTermFreqSize</b> records the size (in bytes) of the compressed
  * byte array CompressedTermFreq.
  * <p>
+ * <b>NodeSkipDataSize</b> records the size (in bytes) of the byte array
+ * NodeSkipData. It is absent from the blocks written before the version
+ * {@link com.sindicetech.siren.index.codecs.siren10.Siren10PostingsWriter#VERSION_NODE_SKIP}.
+ * <p>
  * <b>CompressedNodeLength</b> is the compressed list of node lengths. Since
  * each node label can have a different length, the node length records the
  * number of integers that composes a node label. This list
@@ -139,6 +156,13 @@
  * compressed using the AFOR algorithm. The node labels relative to a document
  * are encoded as delta.
  * <p>
+ * <b>NodeSkipData</b> is the list of intra-document skip points, encoded as
+ * VInts. A skip point is recorded every <code>nodeSkipInterval</code> nodes of
+ * a document, the interval being written in the header of the terms file. It
+ * stores the index of the node in the block, as a delta with the previous skip
+ * point of the block, and the absolute label of the preceding node, from which
+ * the delta decoding of the node labels can resume.
+ * <p>
  * <b>CompressedTermFreq</b> is the compressed list of term frequencies. This list is
  * compressed using the AFOR algorithm. There is one term frequency per node
  * label. The node frequency is encoded with a decrement of 1 to optimise
@@ -147,7 +171,10 @@
  * <h3>Term Positions</h3>
  *
  * The .pos file contains the list of term positions within nodes. The term
- * positions are ordered by increasing number.
+ * positions are ordered by increasing number. The .pos file is not
+ * written if the positions are not indexed, see
+ * {@link com.sindicetech.siren.index.codecs.siren10.Siren10AForNodesPostingsFormat}.
+ * In this case, the PosBlockPointer and the position block index are omitted.
  *
  * <p>
  *
@@ -180,6 +207,29 @@
  * with the term frequency information. The term positions relative to a node
  * are encoded as delta.
  *
+ * <h3>Pulsed Postings</h3>
+ *
+ * The postings of the terms whose document frequency is lower than or equal
+ * to the pulse threshold, written in the header of the terms file, are not
+ * written in the .doc, .nod and .pos files. They are inlined in the term
+ * metadata of the term dictionary, after the pointer to the .doc file, so
+ * that a lookup of a low-frequency term, e.g., an identifier, does not seek
+ * in the postings files. The default pulse threshold is defined by
+ * {@link com.sindicetech.siren.index.codecs.siren10.Siren10PostingsFormat#DEFAULT_PULSE_THRESHOLD}.
+ *
+ * <p>
+ *
+ * The pulsed postings follow the schema:
+ * <pre>
+ *   PulsedPostings = PulsedPostingsSize, [DeltaDocId, NodeFreq, [NodeLength, [LabelInt], TermFreq, [DeltaTermPos]]]
+ * </pre>
+ *
+ * All the values are encoded as VInts. <b>PulsedPostingsSize</b> records the
+ * size (in bytes) of the pulsed postings. The first document identifier and
+ * the first position of a node are absolute. The pulsed postings are absent
+ * from the term dictionaries written before the version
+ * {@link com.sindicetech.siren.index.codecs.siren10.Siren10PostingsWriter#VERSION_PULSING}.
+ *
  * <h3>Skip Lists</h3>
  *
  * The .skp file contains the skip data. The structure of the skip table
@@ -203,6 +253,18 @@
  * to the publication <a href="http://dx.doi.org/10.1007/978-3-642-20161-5_55">
  * SkipBlock: Self-indexing for Block-Based Inverted List</a>.
  *
+ * <h3>Path Dictionaries</h3>
+ *
+ * The .pth file contains, for each field, the dictionary of the paths of its
+ * terms, i.e., the prefixes produced by the
+ * {@link com.sindicetech.siren.analysis.filter.PathEncodingFilter}, with their
+ * document counts. A dictionary is encoded as an FST and is loaded in memory
+ * when the segment is opened. It is used by the twig and node boolean queries
+ * to discard a segment without creating any scorer when a required path does
+ * not occur in it, see {@link com.sindicetech.siren.index.PathDictionary}. The
+ * segments written before the introduction of the .pth file have no path
+ * dictionary.
+ *
  * <h2>Interaction with the Postings List</h2>
  *
  * The reading of the SIREn 1.0 postings format relies on the lazy-loading
@@ -34,7 +34,7 @@ import java.io.IOException;
  */
 class AncestorFilterQuery extends NodeQuery {
 
-  private final NodeQuery q;
+  private NodeQuery q;
   private final int ancestorLevel;
 
   /**
@@ -56,6 +56,13 @@ class AncestorFilterQuery extends NodeQuery {
     return new AncestorFilterWeight(searcher);
   }
 
+  @Override
+  public Query clone() {
+    final AncestorFilterQuery clone = (AncestorFilterQuery) super.clone();
+    clone.q = (NodeQuery) q.clone();
+    return clone;
+  }
+
   @Override
   public String toString(final String field) {
     return q.toString();
@@ -21,6 +21,7 @@ package com.sindicetech.siren.search.node;
 import org.apache.lucene.util.IntsRef;
 
 import com.sindicetech.siren.index.DocsAndNodesIterator;
+import com.sindicetech.siren.util.NodeUtils;
 
 import java.io.IOException;
 
@@ -58,6 +59,11 @@ class AncestorFilterScorer extends NodeScorer {
     return scorer.scoreInNode();
   }
 
+  @Override
+  public long cost() {
+    return scorer.cost();
+  }
+
   @Override
   public String toString() {
     return "AncestorFilterScorer(" + weight + "," + this.doc() + "," +
@@ -74,6 +80,25 @@ class AncestorFilterScorer extends NodeScorer {
     return scorer.nextNode();
   }
 
+  /**
+   * Delegates to the filtered scorer. The ancestor of the first node of the
+   * filtered scorer greater than or equal to the target is itself greater than
+   * or equal to the target, unless the target is deeper than the ancestor
+   * level. In this case, the remaining nodes are scanned.
+   */
+  @Override
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    if (!scorer.skipToNode(target)) {
+      return false;
+    }
+    while (NodeUtils.compare(this.node(), target) < 0) {
+      if (!scorer.nextNode()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public boolean skipToCandidate(final int target) throws IOException {
     return scorer.skipToCandidate(target);
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+
+import com.sindicetech.siren.search.node.LuceneProxyNodeQuery.LuceneProxyNodeWeight;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A {@link BooleanQuery} which scores a disjunction of
+ * {@link LuceneProxyNodeQuery}s over {@link NodeTermQuery}s with the
+ * Block-Max WAND algorithm.
+ *
+ * <p>
+ *
+ * When the query is made only of at least two SHOULD clauses, each one being a
+ * {@link LuceneProxyNodeQuery} wrapping a {@link NodeTermQuery}, and is used
+ * with a {@link BlockMaxCollector}, such as a
+ * {@link BlockMaxTopScoreDocCollector}, the non-competitive documents are
+ * skipped and the total number of hits is a lower bound. The scores are the
+ * ones of a {@link BooleanQuery}, including the coordination factor. In any
+ * other case, the query behaves as a {@link BooleanQuery}.
+ */
+public class BlockMaxBooleanQuery extends BooleanQuery {
+
+  public BlockMaxBooleanQuery() {
+    super();
+  }
+
+  public BlockMaxBooleanQuery(final boolean disableCoord) {
+    super(disableCoord);
+  }
+
+  @Override
+  public Weight createWeight(final IndexSearcher searcher) throws IOException {
+    return new BlockMaxBooleanWeight(searcher, this.isCoordDisabled());
+  }
+
+  protected class BlockMaxBooleanWeight extends BooleanWeight {
+
+    public BlockMaxBooleanWeight(final IndexSearcher searcher, final boolean disableCoord)
+    throws IOException {
+      super(searcher, disableCoord);
+    }
+
+    @Override
+    public BulkScorer bulkScorer(final AtomicReaderContext context,
+                                 final boolean scoreDocsInOrder,
+                                 final Bits acceptDocs)
+    throws IOException {
+      final Weight[] termWeights = this.getTermWeights();
+      if (termWeights == null) {
+        return super.bulkScorer(context, scoreDocsInOrder, acceptDocs);
+      }
+
+      final float[] coords = new float[termWeights.length + 1];
+      for (int i = 0; i < coords.length; i++) {
+        coords[i] = this.coord(i, maxCoord);
+      }
+      return new NodeBlockMaxDisjunctionScorer(this, termWeights, coords, context, acceptDocs) {
+
+        @Override
+        protected BulkScorer defaultBulkScorer() throws IOException {
+          return BlockMaxBooleanWeight.super.bulkScorer(context, scoreDocsInOrder, acceptDocs);
+        }
+
+      };
+    }
+
+    /**
+     * Returns the weights of the {@link NodeTermQuery}s if the query is a
+     * disjunction of at least two of them, or null otherwise.
+     */
+    private Weight[] getTermWeights() {
+      final List<BooleanClause> clauses = BlockMaxBooleanQuery.this.clauses();
+      if (clauses.size() < 2 || BlockMaxBooleanQuery.this.getMinimumNumberShouldMatch() > 0) {
+        return null;
+      }
+
+      final Weight[] termWeights = new Weight[clauses.size()];
+      for (int i = 0; i < termWeights.length; i++) {
+        final BooleanClause clause = clauses.get(i);
+        final Query query = clause.getQuery();
+        if (clause.getOccur() != BooleanClause.Occur.SHOULD ||
+            !(query instanceof LuceneProxyNodeQuery) ||
+            !(((LuceneProxyNodeQuery) query).getNodeQuery() instanceof NodeTermQuery)) {
+          return null;
+        }
+        termWeights[i] = ((LuceneProxyNodeWeight) weights.get(i)).getNodeWeight();
+      }
+      return termWeights;
+    }
+
+  }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import org.apache.lucene.search.Collector;
+
+/**
+ * Implemented by the {@link Collector}s which let the block-max scorers skip
+ * the documents that they would not keep, such as
+ * {@link BlockMaxTopScoreDocCollector}.
+ *
+ * <p>
+ *
+ * The block-max scorers check whether the collector given to the search
+ * implements this interface. A collector wrapping another one, e.g., to limit
+ * the search time or to collect into several collectors, must therefore
+ * implement it to keep the skipping enabled, by forwarding
+ * {@link #minCompetitiveScore()} to the wrapped collector, or by returning
+ * the minimum of the scores of its collectors. A wrapper which must see every
+ * matching document, e.g., to count or to facet them, must not implement it.
+ *
+ * <p>
+ *
+ * <b>NOTE:</b> The skipped documents are not collected, and the number of
+ * collected documents, such as
+ * {@link org.apache.lucene.search.TopDocsCollector#getTotalHits()}, is then a
+ * lower bound of the number of matching documents.
+ */
+public interface BlockMaxCollector {
+
+  /**
+   * Returns the score that a document must exceed to be kept by the
+   * collector, or {@link Float#NEGATIVE_INFINITY} if every document is kept.
+   * The score must never decrease during the search.
+   */
+  float minCompetitiveScore();
+
+}
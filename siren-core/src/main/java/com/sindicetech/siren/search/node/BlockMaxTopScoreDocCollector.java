@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.PriorityQueue;
+
+import java.io.IOException;
+
+/**
+ * A {@link TopDocsCollector} which collects the top-scoring documents, sorted
+ * by score, and which exposes its current minimum competitive score.
+ *
+ * <p>
+ *
+ * When the query is a {@link LuceneProxyNodeQuery} wrapping a disjunction of
+ * {@link NodeTermQuery}s, or a {@link BlockMaxBooleanQuery} of
+ * {@link LuceneProxyNodeQuery}s over {@link NodeTermQuery}s as built by the
+ * keyword query parser, the documents whose score cannot exceed
+ * {@link #minCompetitiveScore()} are skipped block by block, based on the
+ * maximum impact recorded in the postings (Block-Max WAND). With any other
+ * query, it behaves like a {@link TopScoreDocCollector}.
+ *
+ * <p>
+ *
+ * <b>NOTE:</b> The skipped documents are not counted, and
+ * {@link #getTotalHits()}, as well as the <code>totalHits</code> of the
+ * returned {@link TopDocs}, is then a lower bound of the number of matching
+ * documents. A search which must report the exact number of hits must use a
+ * {@link TopScoreDocCollector} instead. A collector wrapping this one keeps
+ * the skipping enabled only if it implements {@link BlockMaxCollector}.
+ */
+public class BlockMaxTopScoreDocCollector extends TopDocsCollector<ScoreDoc>
+implements BlockMaxCollector {
+
+  private final int numHits;
+
+  private ScoreDoc pqTop;
+  private int docBase = 0;
+  private Scorer scorer;
+
+  /**
+   * Creates a new {@link BlockMaxTopScoreDocCollector} which collects the
+   * <code>numHits</code> top-scoring documents.
+   */
+  public static BlockMaxTopScoreDocCollector create(final int numHits) {
+    if (numHits <= 0) {
+      throw new IllegalArgumentException("numHits must be > 0; please use TotalHitCountCollector if you just need the total hit count");
+    }
+    return new BlockMaxTopScoreDocCollector(numHits);
+  }
+
+  private BlockMaxTopScoreDocCollector(final int numHits) {
+    super(new ScoreDocQueue(numHits));
+    this.numHits = numHits;
+  }
+
+  /**
+   * Returns the score that a document must exceed to enter the top hits, or
+   * {@link Float#NEGATIVE_INFINITY} if less than <code>numHits</code>
+   * documents were collected.
+   */
+  @Override
+  public float minCompetitiveScore() {
+    return pq.size() < numHits ? Float.NEGATIVE_INFINITY : pqTop.score;
+  }
+
+  @Override
+  public void setScorer(final Scorer scorer) throws IOException {
+    this.scorer = scorer;
+  }
+
+  @Override
+  public void collect(final int doc) throws IOException {
+    final float score = scorer.score();
+    totalHits++;
+    if (pq.size() < numHits) {
+      pqTop = pq.add(new ScoreDoc(doc + docBase, score));
+    }
+    else if (score > pqTop.score) {
+      // documents are collected in order, a tie is not competitive
+      pqTop.doc = doc + docBase;
+      pqTop.score = score;
+      pqTop = pq.updateTop();
+    }
+  }
+
+  @Override
+  public void setNextReader(final AtomicReaderContext context) throws IOException {
+    this.docBase = context.docBase;
+  }
+
+  @Override
+  public boolean acceptsDocsOutOfOrder() {
+    return false;
+  }
+
+  @Override
+  protected TopDocs newTopDocs(final ScoreDoc[] results, final int start) {
+    if (results == null) {
+      return EMPTY_TOPDOCS;
+    }
+
+    // the max score is either the first result or the last document popped
+    // from the queue, as in TopScoreDocCollector
+    float maxScore = Float.NaN;
+    if (start == 0) {
+      maxScore = results[0].score;
+    }
+    else {
+      for (int i = pq.size(); i > 1; i--) {
+        pq.pop();
+      }
+      maxScore = pq.pop().score;
+    }
+    return new TopDocs(totalHits, results, maxScore);
+  }
+
+  /**
+   * Orders the documents by increasing score, and by decreasing document
+   * identifier for equal scores, as the {@link HitQueue}.
+   */
+  private static class ScoreDocQueue extends PriorityQueue<ScoreDoc> {
+
+    ScoreDocQueue(final int size) {
+      super(size);
+    }
+
+    @Override
+    protected boolean lessThan(final ScoreDoc hitA, final ScoreDoc hitB) {
+      if (hitA.score == hitB.score) {
+        return hitA.doc > hitB.doc;
+      }
+      return hitA.score < hitB.score;
+    }
+
+  }
+
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.IntroSorter;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import com.sindicetech.siren.util.NodeUtils;
+
+/**
+ * Expert: An immutable and compact set of (document, node) pairs of a single
+ * segment.
+ *
+ * <p>
+ *
+ * Documents are sorted by increasing identifier, and the nodes of a document
+ * are sorted in node order without duplicates. All the node paths are stored
+ * in a single int pool, which makes the set cheap to iterate and to keep in
+ * memory.
+ *
+ * <p>
+ *
+ * Instances are created with a {@link Builder}, and iterated with a
+ * {@link NodeScorer} returned by {@link #scorer(Weight, float, Bits)}.
+ */
+public final class DocNodeSet {
+
+  /** The distinct document identifiers in increasing order */
+  final int[] docs;
+
+  /** For each document, the index of its first node, plus a final sentinel */
+  final int[] docNodeStarts;
+
+  /** For each node, its offset in the pool, plus a final sentinel */
+  final int[] nodeOffsets;
+
+  /** The node paths */
+  final int[] pool;
+
+  /** An empty set */
+  public static final DocNodeSet EMPTY = new DocNodeSet(new int[0], new int[] { 0 }, new int[] { 0 }, new int[0]);
+
+  private DocNodeSet(final int[] docs, final int[] docNodeStarts,
+                     final int[] nodeOffsets, final int[] pool) {
+    this.docs = docs;
+    this.docNodeStarts = docNodeStarts;
+    this.nodeOffsets = nodeOffsets;
+    this.pool = pool;
+  }
+
+  /**
+   * Returns the number of distinct documents in the set
+   */
+  public int numDocs() {
+    return docs.length;
+  }
+
+  /**
+   * Returns the number of (document, node) pairs in the set
+   */
+  public int numNodes() {
+    return nodeOffsets.length - 1;
+  }
+
+  /**
+   * Returns true if the set does not contain any document
+   */
+  public boolean isEmpty() {
+    return docs.length == 0;
+  }
+
+  /**
+   * Returns an estimation of the memory used by this set in bytes
+   */
+  public long ramBytesUsed() {
+    return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 4 * RamUsageEstimator.NUM_BYTES_OBJECT_REF
+         + RamUsageEstimator.sizeOf(docs) + RamUsageEstimator.sizeOf(docNodeStarts)
+         + RamUsageEstimator.sizeOf(nodeOffsets) + RamUsageEstimator.sizeOf(pool);
+  }
+
+  /**
+   * Returns a {@link NodeScorer} over this set which assigns the given
+   * constant score to every matching node.
+   */
+  public NodeScorer scorer(final Weight weight, final float score) {
+    return this.scorer(weight, score, null);
+  }
+
+  /**
+   * Returns a {@link NodeScorer} over this set which assigns the given
+   * constant score to every matching node, and which skips the documents
+   * that are not accepted.
+   *
+   * @param acceptDocs the accepted documents, or <code>null</code> if all
+   *                   the documents are accepted
+   */
+  public NodeScorer scorer(final Weight weight, final float score, final Bits acceptDocs) {
+    return new DocNodeSetScorer(weight, this, score, acceptDocs);
+  }
+
+  /**
+   * Builder of {@link DocNodeSet}.
+   *
+   * <p>
+   *
+   * The pairs can be added in any order, and may contain duplicates. The
+   * builder is not thread-safe and must not be reused after
+   * {@link #build()} has been called.
+   */
+  public static final class Builder {
+
+    private int[] docs = new int[16];
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private int[] pool = new int[64];
+
+    private int size = 0;
+    private int poolUpto = 0;
+
+    /**
+     * Adds a (document, node) pair. The node is copied.
+     */
+    public void add(final int doc, final IntsRef node) {
+      if (size == docs.length) {
+        docs = ArrayUtil.grow(docs, size + 1);
+        offsets = ArrayUtil.grow(offsets, size + 1);
+        lengths = ArrayUtil.grow(lengths, size + 1);
+      }
+      if (poolUpto + node.length > pool.length) {
+        pool = ArrayUtil.grow(pool, poolUpto + node.length);
+      }
+      System.arraycopy(node.ints, node.offset, pool, poolUpto, node.length);
+      docs[size] = doc;
+      offsets[size] = poolUpto;
+      lengths[size] = node.length;
+      poolUpto += node.length;
+      size++;
+    }
+
+    /**
+     * Returns the number of pairs added so far, duplicates included
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Sorts and deduplicates the pairs, and creates the {@link DocNodeSet}.
+     */
+    public DocNodeSet build() {
+      if (size == 0) {
+        return EMPTY;
+      }
+
+      final int[] ords = new int[size];
+      for (int i = 0; i < size; i++) {
+        ords[i] = i;
+      }
+      new IntroSorter() {
+
+        private int pivot;
+
+        @Override
+        protected void swap(final int i, final int j) {
+          final int tmp = ords[i];
+          ords[i] = ords[j];
+          ords[j] = tmp;
+        }
+
+        @Override
+        protected int compare(final int i, final int j) {
+          return Builder.this.compare(ords[i], ords[j]);
+        }
+
+        @Override
+        protected void setPivot(final int i) {
+          pivot = ords[i];
+        }
+
+        @Override
+        protected int comparePivot(final int j) {
+          return Builder.this.compare(pivot, ords[j]);
+        }
+
+      }.sort(0, size);
+
+      // count distinct pairs and documents
+      int numDocs = 0, numNodes = 0, poolSize = 0;
+      for (int i = 0; i < size; i++) {
+        if (i == 0 || this.compare(ords[i - 1], ords[i]) != 0) {
+          if (i == 0 || docs[ords[i - 1]] != docs[ords[i]]) {
+            numDocs++;
+          }
+          numNodes++;
+          poolSize += lengths[ords[i]];
+        }
+      }
+
+      final int[] setDocs = new int[numDocs];
+      final int[] setDocNodeStarts = new int[numDocs + 1];
+      final int[] setNodeOffsets = new int[numNodes + 1];
+      final int[] setPool = new int[poolSize];
+
+      int docUpto = 0, nodeUpto = 0, setPoolUpto = 0;
+      for (int i = 0; i < size; i++) {
+        final int ord = ords[i];
+        if (i > 0 && this.compare(ords[i - 1], ord) == 0) {
+          continue; // duplicate
+        }
+        if (i == 0 || docs[ords[i - 1]] != docs[ord]) {
+          setDocs[docUpto] = docs[ord];
+          setDocNodeStarts[docUpto++] = nodeUpto;
+        }
+        setNodeOffsets[nodeUpto++] = setPoolUpto;
+        System.arraycopy(pool, offsets[ord], setPool, setPoolUpto, lengths[ord]);
+        setPoolUpto += lengths[ord];
+      }
+      setDocNodeStarts[numDocs] = numNodes;
+      setNodeOffsets[numNodes] = poolSize;
+
+      return new DocNodeSet(setDocs, setDocNodeStarts, setNodeOffsets, setPool);
+    }
+
+    private int compare(final int ord1, final int ord2) {
+      if (docs[ord1] != docs[ord2]) {
+        return docs[ord1] < docs[ord2] ? -1 : 1;
+      }
+      return NodeUtils.compare(pool, offsets[ord1], lengths[ord1], pool, offsets[ord2], lengths[ord2]);
+    }
+
+  }
+
+}
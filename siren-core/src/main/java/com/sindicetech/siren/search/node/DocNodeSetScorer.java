@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.IntsRef;
+
+import com.sindicetech.siren.index.DocsAndNodesIterator;
+
+import java.io.IOException;
+
+/**
+ * A {@link NodeScorer} over the (document, node) pairs of a
+ * {@link DocNodeSet}. Every matching node receives the same constant score.
+ * Documents which are not accepted are skipped.
+ */
+class DocNodeSetScorer extends NodeScorer {
+
+  private final DocNodeSet set;
+
+  private final float score;
+
+  /** The index of the current document in the set */
+  private int docIndex = -1;
+
+  /** The index of the current node, and the index of the first node of the next document */
+  private int nodeIndex, nodeLimit;
+
+  private int doc = -1;
+
+  private final IntsRef node;
+
+  private final Bits acceptDocs;
+
+  protected DocNodeSetScorer(final Weight weight, final DocNodeSet set,
+                             final float score, final Bits acceptDocs) {
+    super(weight);
+    this.set = set;
+    this.score = score;
+    this.acceptDocs = acceptDocs;
+    this.node = new IntsRef(set.pool, 0, 0);
+  }
+
+  @Override
+  public boolean nextCandidateDocument() throws IOException {
+    return this.setDocument(docIndex + 1);
+  }
+
+  @Override
+  public boolean skipToCandidate(final int target) throws IOException {
+    if (target <= doc) {
+      return doc != DocsAndNodesIterator.NO_MORE_DOC;
+    }
+    // binary search over the remaining documents
+    int low = docIndex + 1;
+    int high = set.docs.length - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (set.docs[mid] < target) {
+        low = mid + 1;
+      }
+      else {
+        high = mid - 1;
+      }
+    }
+    return this.setDocument(low);
+  }
+
+  private boolean setDocument(int index) {
+    if (acceptDocs != null) {
+      while (index < set.docs.length && !acceptDocs.get(set.docs[index])) {
+        index++;
+      }
+    }
+    docIndex = index;
+    if (docIndex >= set.docs.length) {
+      docIndex = set.docs.length;
+      doc = DocsAndNodesIterator.NO_MORE_DOC;
+      nodeIndex = nodeLimit = 0;
+      return false;
+    }
+    doc = set.docs[docIndex];
+    nodeIndex = set.docNodeStarts[docIndex] - 1;
+    nodeLimit = set.docNodeStarts[docIndex + 1];
+    return true;
+  }
+
+  @Override
+  public boolean nextNode() throws IOException {
+    if (++nodeIndex >= nodeLimit) {
+      nodeIndex = nodeLimit;
+      return false;
+    }
+    node.offset = set.nodeOffsets[nodeIndex];
+    node.length = set.nodeOffsets[nodeIndex + 1] - node.offset;
+    return true;
+  }
+
+  @Override
+  public int doc() {
+    return doc;
+  }
+
+  @Override
+  public IntsRef node() {
+    if (doc == -1) {
+      return DocsAndNodesIterator.NULL_NODE;
+    }
+    if (doc == DocsAndNodesIterator.NO_MORE_DOC || nodeIndex >= nodeLimit) {
+      return DocsAndNodesIterator.NO_MORE_NOD;
+    }
+    if (nodeIndex < set.docNodeStarts[docIndex]) { // nextNode not called yet
+      return DocsAndNodesIterator.NULL_NODE;
+    }
+    return node;
+  }
+
+  @Override
+  public int freqInNode() throws IOException {
+    return 1;
+  }
+
+  @Override
+  public float scoreInNode() throws IOException {
+    return score;
+  }
+
+  @Override
+  public long cost() {
+    return set.numDocs();
+  }
+
+  @Override
+  public String toString() {
+    return "DocNodeSetScorer(" + weight + "," + this.doc() + "," + this.node() + ")";
+  }
+
+}
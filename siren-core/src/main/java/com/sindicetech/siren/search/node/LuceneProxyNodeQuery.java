@@ -25,6 +25,8 @@ import org.apache.lucene.search.*;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ToStringUtils;
 
+import com.sindicetech.siren.search.node.NodeBooleanQuery.NodeBooleanWeight;
+
 import java.io.IOException;
 import java.util.Set;
 
@@ -83,6 +85,39 @@ public class LuceneProxyNodeQuery extends Query {
                                 : new LuceneProxyNodeScorer(nodeScorer);
     }
 
+    /**
+     * Returns a {@link NodeBlockMaxDisjunctionScorer} for a disjunction of
+     * {@link NodeTermQuery}s, which can skip the non-competitive documents
+     * when used with a {@link BlockMaxCollector}.
+     */
+    @Override
+    public BulkScorer bulkScorer(final AtomicReaderContext context,
+                                 final boolean scoreDocsInOrder,
+                                 final Bits acceptDocs)
+    throws IOException {
+      final Weight[] termWeights = weight instanceof NodeBooleanWeight ?
+        NodeBlockMaxDisjunctionScorer.getTermWeights((NodeBooleanWeight) weight) : null;
+      if (termWeights == null) {
+        return super.bulkScorer(context, scoreDocsInOrder, acceptDocs);
+      }
+      return new NodeBlockMaxDisjunctionScorer(this, termWeights,
+        NodeBlockMaxDisjunctionScorer.noCoords(termWeights.length), context, acceptDocs) {
+
+        @Override
+        protected BulkScorer defaultBulkScorer() throws IOException {
+          return LuceneProxyNodeWeight.super.bulkScorer(context, scoreDocsInOrder, acceptDocs);
+        }
+
+      };
+    }
+
+    /**
+     * Returns the weight of the wrapped {@link NodeQuery}.
+     */
+    Weight getNodeWeight() {
+      return weight;
+    }
+
   }
 
   public LuceneProxyNodeQuery(final NodeQuery nq) {
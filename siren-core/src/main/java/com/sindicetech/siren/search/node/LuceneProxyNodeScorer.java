@@ -110,8 +110,7 @@ class LuceneProxyNodeScorer extends Scorer {
 
   @Override
   public long cost() {
-    // TODO: hardcoded value for the moment, until #265 is solved
-    return 1;
+    return scorer.cost();
   }
 
 }
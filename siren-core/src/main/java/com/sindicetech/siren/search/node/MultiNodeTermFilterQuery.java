@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ToStringUtils;
+
+import com.sindicetech.siren.index.DocsNodesAndPositionsEnum;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * A {@link NodeQuery} that matches the union of the nodes of all the terms
+ * enumerated by a {@link MultiNodeTermQuery}.
+ *
+ * <p>
+ *
+ * For each segment, the postings of every matching term are visited once,
+ * and the matching (document, node) pairs are collected into a
+ * {@link DocNodeSet}. The set is then iterated by a {@link NodeScorer} which
+ * assigns a constant score to every node. Contrary to the boolean rewrite
+ * methods, the cost does not depend on the number of clauses of a
+ * {@link NodeBooleanQuery}, and it never hits
+ * {@link NodeBooleanQuery.TooManyClauses}.
+ *
+ * <p>
+ *
+ * The level, node and ancestor constraints are copied from the wrapped query
+ * on creation, and are applied to the postings of every term.
+ *
+ * <p>
+ *
+ * This query is the node counterpart of Lucene's
+ * {@link MultiTermQueryWrapperFilter}, and is created by
+ * {@link MultiNodeTermQuery#CONSTANT_SCORE_FILTER_REWRITE}.
+ */
+public class MultiNodeTermFilterQuery extends DatatypedNodeQuery {
+
+  protected final MultiNodeTermQuery query;
+
+  /**
+   * Wraps a {@link MultiNodeTermQuery} as a node filter.
+   */
+  public MultiNodeTermFilterQuery(final MultiNodeTermQuery query) {
+    this.query = query;
+    // copy constraints
+    this.setLevelConstraint(query.getLevelConstraint());
+    this.setNodeConstraint(query.getNodeConstraint()[0], query.getNodeConstraint()[1]);
+    this.setAncestorPointer(query.getAncestorPointer());
+    this.setDatatype(query.getDatatype());
+  }
+
+  /**
+   * Returns the wrapped query
+   */
+  public MultiNodeTermQuery getQuery() {
+    return query;
+  }
+
+  /**
+   * Returns the field name of the wrapped query
+   */
+  public final String getField() {
+    return query.getField();
+  }
+
+  /**
+   * Expert: Visits the postings of all the terms matching the wrapped query
+   * in the given segment, and returns the set of matching (document, node)
+   * pairs.
+   */
+  protected DocNodeSet getDocNodeSet(final AtomicReaderContext context, final Bits acceptDocs)
+  throws IOException {
+    final Fields fields = context.reader().fields();
+    if (fields == null) {
+      // reader has no fields
+      return DocNodeSet.EMPTY;
+    }
+
+    final Terms terms = fields.terms(query.field);
+    if (terms == null) {
+      // field does not exist
+      return DocNodeSet.EMPTY;
+    }
+
+    final TermsEnum termsEnum = query.getTermsEnum(terms);
+    assert termsEnum != null;
+
+    final DocNodeSet.Builder builder = new DocNodeSet.Builder();
+    DocsAndPositionsEnum docsEnum = null;
+    while (termsEnum.next() != null) {
+      docsEnum = termsEnum.docsAndPositions(acceptDocs, docsEnum);
+      final DocsNodesAndPositionsEnum nodesEnum = this.getDocsNodesAndPositionsEnum(docsEnum);
+      while (nodesEnum.nextDocument()) {
+        while (nodesEnum.nextNode()) {
+          builder.add(nodesEnum.doc(), nodesEnum.node());
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  protected class MultiNodeTermFilterWeight extends Weight {
+
+    private float queryNorm;
+    private float queryWeight;
+
+    @Override
+    public Query getQuery() {
+      return MultiNodeTermFilterQuery.this;
+    }
+
+    @Override
+    public float getValueForNormalization() throws IOException {
+      queryWeight = MultiNodeTermFilterQuery.this.getBoost();
+      return queryWeight * queryWeight;
+    }
+
+    @Override
+    public void normalize(final float norm, final float topLevelBoost) {
+      this.queryNorm = norm * topLevelBoost;
+      queryWeight *= this.queryNorm;
+    }
+
+    @Override
+    public Scorer scorer(final AtomicReaderContext context, final Bits acceptDocs)
+    throws IOException {
+      final DocNodeSet set = MultiNodeTermFilterQuery.this.getDocNodeSet(context, acceptDocs);
+      if (set.isEmpty()) {
+        return null;
+      }
+      return set.scorer(this, queryWeight);
+    }
+
+    @Override
+    public Explanation explain(final AtomicReaderContext context, final int doc)
+    throws IOException {
+      final NodeScorer cs = (NodeScorer) this.scorer(context, context.reader().getLiveDocs());
+      final boolean exists = (cs != null &&
+                              cs.skipToCandidate(doc) &&
+                              cs.doc() == doc &&
+                              cs.nextNode());
+
+      final ComplexExplanation result = new ComplexExplanation();
+      if (exists) {
+        result.setDescription(MultiNodeTermFilterQuery.this.toString() + ", product of:");
+        result.setValue(queryWeight);
+        result.setMatch(Boolean.TRUE);
+        result.addDetail(new Explanation(MultiNodeTermFilterQuery.this.getBoost(), "boost"));
+        result.addDetail(new Explanation(queryNorm, "queryNorm"));
+      } else {
+        result.setDescription(MultiNodeTermFilterQuery.this.toString() + " doesn't match id " + doc);
+        result.setValue(0);
+        result.setMatch(Boolean.FALSE);
+      }
+      return result;
+    }
+
+  }
+
+  @Override
+  public Weight createWeight(final IndexSearcher searcher) throws IOException {
+    return new MultiNodeTermFilterWeight();
+  }
+
+  @Override
+  public void extractTerms(final Set<Term> terms) {
+    // no terms are extracted, as for Lucene's filters
+  }
+
+  @Override
+  public String toString(final String field) {
+    return new StringBuilder("MultiNodeTermFilter(")
+      .append(query.toString(field))
+      .append(')')
+      .append(ToStringUtils.boost(this.getBoost()))
+      .toString();
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || this.getClass() != o.getClass()) return false;
+    final MultiNodeTermFilterQuery other = (MultiNodeTermFilterQuery) o;
+    return this.getBoost() == other.getBoost() &&
+           this.query.equals(other.query) &&
+           this.levelConstraint == other.levelConstraint &&
+           this.lowerBound == other.lowerBound &&
+           this.upperBound == other.upperBound;
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = Float.floatToIntBits(this.getBoost());
+    result = prime * result + query.hashCode();
+    result = prime * result + lowerBound;
+    result = prime * result + upperBound;
+    result = prime * result + levelConstraint;
+    return result;
+  }
+
+}
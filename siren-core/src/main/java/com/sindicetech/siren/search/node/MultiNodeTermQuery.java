@@ -40,13 +40,14 @@ import java.io.IOException;
  * FilteredTermsEnum} that iterates through the terms to be
  * matched.
  *
- * <p><b>NOTE</b>: since {@link #CONSTANT_SCORE_FILTER_REWRITE} is deactivated
- * in SIREn, the {@link #setRewriteMethod} will always be either
+ * <p><b>NOTE</b>: if {@link #setRewriteMethod} is either
  * {@link #CONSTANT_SCORE_BOOLEAN_QUERY_REWRITE} or {@link
- * #SCORING_BOOLEAN_QUERY_REWRITE}. Therefore, you may encounter a
+ * #SCORING_BOOLEAN_QUERY_REWRITE}, you may encounter a
  * {@link NodeBooleanQuery.TooManyClauses} exception during
  * searching, which happens when the number of terms to be
  * searched exceeds {@link NodeBooleanQuery#getMaxClauseCount()}.
+ * Setting {@link #setRewriteMethod} to {@link #CONSTANT_SCORE_FILTER_REWRITE}
+ * prevents this.
  *
  * <p>The recommended rewrite method is {@link
  * #CONSTANT_SCORE_AUTO_REWRITE_DEFAULT}: it doesn't spend CPU
@@ -90,11 +91,9 @@ public abstract class MultiNodeTermQuery extends DatatypedNodeQuery {
   }
 
   /**
-   * Rewrite method currently deactivated in SIREn.
-   *
-   * <p> A rewrite method that first creates a private Filter,
-   * by visiting each term in sequence and marking all docs
-   * for that term.  Matching documents are assigned a
+   * A rewrite method that first creates a private node filter,
+   * by visiting each term in sequence and collecting all the
+   * matching nodes for that term. Matching nodes are assigned a
    * constant score equal to the query's boost.
    *
    * <p> This method is faster than the BooleanQuery
@@ -103,22 +102,16 @@ public abstract class MultiNodeTermQuery extends DatatypedNodeQuery {
    * hit an errant {@link NodeBooleanQuery.TooManyClauses}
    * exception.
    *
-   *  @see #setRewriteMethod
+   * @see MultiNodeTermFilterQuery
+   * @see #setRewriteMethod
    **/
   public static final RewriteMethod CONSTANT_SCORE_FILTER_REWRITE = new RewriteMethod() {
 
     @Override
     public Query rewrite(final IndexReader reader, final MultiNodeTermQuery query) {
-
-      // TODO: Reactivate filter-based approach when a correct implementation of
-      // SirenMultiTermQueryWrapperFilter is found.
-
-//      Query result = new ConstantScoreQuery(new SirenMultiTermQueryWrapperFilter<MultiTermQuery>(query));
-//      result.setBoost(query.getBoost());
-//      return result;
-
-      throw new UnsupportedOperationException("Filter-based rewrite method " +
-      		"is currently deactivated");
+      final NodeQuery result = new NodeConstantScoreQuery(new MultiNodeTermFilterQuery(query));
+      result.setBoost(query.getBoost());
+      return result;
     }
 
   };
@@ -263,9 +256,6 @@ public abstract class MultiNodeTermQuery extends DatatypedNodeQuery {
    * #CONSTANT_SCORE_BOOLEAN_QUERY_REWRITE} is used.
    * Otherwise, {@link #CONSTANT_SCORE_FILTER_REWRITE} is
    * used.
-   *
-   * <p> The {@link #CONSTANT_SCORE_FILTER_REWRITE} method is currently
-   * deactivated in SIREn.
    */
   static class NodeConstantScoreAutoRewrite extends com.sindicetech.siren.search.node.NodeConstantScoreAutoRewrite {}
 
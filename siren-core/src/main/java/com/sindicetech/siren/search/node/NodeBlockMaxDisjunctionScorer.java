@@ -0,0 +1,377 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+
+import com.sindicetech.siren.index.DocsAndNodesIterator;
+import com.sindicetech.siren.search.node.NodeBooleanClause.Occur;
+import com.sindicetech.siren.search.node.NodeBooleanQuery.NodeBooleanWeight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link BulkScorer} for a disjunction of {@link NodeTermQuery}s, based on
+ * the Block-Max WAND algorithm. The disjunction is either a
+ * {@link NodeBooleanQuery} wrapped by a {@link LuceneProxyNodeQuery}, or a
+ * {@link BlockMaxBooleanQuery} of {@link LuceneProxyNodeQuery}s.
+ *
+ * <p>
+ *
+ * When the collector implements {@link BlockMaxCollector}, e.g., a
+ * {@link BlockMaxTopScoreDocCollector} or a collector wrapping it, the maximum
+ * score of each term in its current block of postings is used to skip the
+ * windows of documents, and then the documents, whose score cannot exceed the
+ * minimum competitive score of the collector. The other documents are scored
+ * exactly, as the sum of the scores of their nodes multiplied by the
+ * coordination factor of the number of matching terms. The skipped documents
+ * are not collected, so that the number of hits counted by the collector is a
+ * lower bound of the number of matching documents.
+ *
+ * <p>
+ *
+ * With any other collector, all the matching documents are scored by the
+ * {@link BulkScorer} returned by {@link #defaultBulkScorer()}.
+ */
+abstract class NodeBlockMaxDisjunctionScorer extends BulkScorer {
+
+  /**
+   * Relative slack applied to the upper bounds, as the exact score and the
+   * bounds may be summed in a different order.
+   */
+  private static final double SLACK = 1e-6;
+
+  private final Weight weight;
+  private final Weight[] termWeights;
+  private final float[] coords;
+  private final float maxCoord;
+  private final AtomicReaderContext context;
+  private final Bits acceptDocs;
+
+  /** The scorer of the collectors which do not implement {@link BlockMaxCollector} */
+  private BulkScorer defaultScorer;
+  private boolean initialised = false;
+
+  /** The term scorers, null until the first call with a block-max collector */
+  private NodeTermScorer[] scorers;
+  private float[] maxScores;
+  private int[] order;
+
+  /** The next document to evaluate */
+  private int target = 0;
+
+  /**
+   * @param weight The weight of the disjunction
+   * @param termWeights The weights of the {@link NodeTermQuery}s
+   * @param coords The coordination factor of a document for each number of
+   *               matching terms, from 0 to <code>termWeights.length</code>
+   */
+  NodeBlockMaxDisjunctionScorer(final Weight weight,
+                                final Weight[] termWeights,
+                                final float[] coords,
+                                final AtomicReaderContext context,
+                                final Bits acceptDocs) {
+    this.weight = weight;
+    this.termWeights = termWeights;
+    this.coords = coords;
+    float max = 0;
+    for (final float coord : coords) {
+      max = Math.max(max, coord);
+    }
+    this.maxCoord = max;
+    this.context = context;
+    this.acceptDocs = acceptDocs;
+  }
+
+  /**
+   * Returns the weights of the {@link NodeTermQuery}s if the weight is the
+   * weight of a disjunction of at least two {@link NodeTermQuery}s, or null
+   * otherwise.
+   */
+  static Weight[] getTermWeights(final NodeBooleanWeight weight) {
+    final NodeBooleanClause[] clauses = ((NodeBooleanQuery) weight.getQuery()).getClauses();
+    if (clauses.length < 2) {
+      return null;
+    }
+    for (final NodeBooleanClause clause : clauses) {
+      if (clause.getOccur() != Occur.SHOULD || !(clause.getQuery() instanceof NodeTermQuery)) {
+        return null;
+      }
+    }
+    return weight.getWeights().toArray(new Weight[clauses.length]);
+  }
+
+  /**
+   * Returns the coordination factors of a disjunction of <code>n</code> terms
+   * which does not apply any coordination factor.
+   */
+  static float[] noCoords(final int n) {
+    final float[] coords = new float[n + 1];
+    Arrays.fill(coords, 1f);
+    return coords;
+  }
+
+  /**
+   * Returns the {@link BulkScorer} used with the collectors which do not
+   * implement {@link BlockMaxCollector}, or null if no document matches.
+   */
+  protected abstract BulkScorer defaultBulkScorer() throws IOException;
+
+  @Override
+  public boolean score(final Collector collector, final int max) throws IOException {
+    if (!initialised) {
+      initialised = true;
+      if (!(collector instanceof BlockMaxCollector) || !this.initTermScorers()) {
+        defaultScorer = this.defaultBulkScorer();
+        if (defaultScorer == null) { // no match
+          target = DocsAndNodesIterator.NO_MORE_DOC;
+        }
+      }
+    }
+    if (defaultScorer != null) {
+      return defaultScorer.score(collector, max);
+    }
+    if (target == DocsAndNodesIterator.NO_MORE_DOC) {
+      return false;
+    }
+    return this.scoreBlockMax(collector, (BlockMaxCollector) collector, max);
+  }
+
+  /**
+   * Creates the term scorers. Returns false if one of them does not support
+   * the computation of its maximum score.
+   */
+  private boolean initTermScorers() throws IOException {
+    final List<NodeTermScorer> termScorers = new ArrayList<NodeTermScorer>();
+    for (final Weight w : termWeights) {
+      final Scorer s = w.scorer(context, acceptDocs);
+      if (s == null) { // the term does not occur in this segment
+        continue;
+      }
+      if (!(s instanceof NodeTermScorer)) {
+        return false;
+      }
+      termScorers.add((NodeTermScorer) s);
+    }
+    scorers = termScorers.toArray(new NodeTermScorer[termScorers.size()]);
+    maxScores = new float[scorers.length];
+    order = new int[scorers.length];
+    return true;
+  }
+
+  private boolean scoreBlockMax(final Collector collector,
+                                final BlockMaxCollector blockMaxCollector,
+                                final int max)
+  throws IOException {
+    final BlockMaxScorer blockMaxScorer = new BlockMaxScorer(weight);
+    collector.setScorer(blockMaxScorer);
+
+    while (target < max) {
+      // move each term to the block of the target, and compute the end and
+      // the maximum score of the window shared by all the blocks
+      int upTo = DocsAndNodesIterator.NO_MORE_DOC;
+      double windowMaxScore = 0;
+      boolean exhausted = true;
+      for (int i = 0; i < scorers.length; i++) {
+        maxScores[i] = 0;
+        if (scorers[i].doc() == DocsAndNodesIterator.NO_MORE_DOC) {
+          continue;
+        }
+        final int blockEnd = scorers[i].advanceShallow(target);
+        if (blockEnd == DocsAndNodesIterator.NO_MORE_DOC && scorers[i].doc() == DocsAndNodesIterator.NO_MORE_DOC) {
+          continue;
+        }
+        exhausted = false;
+        maxScores[i] = scorers[i].maxScoreInBlock();
+        upTo = Math.min(upTo, blockEnd);
+        windowMaxScore += maxScores[i];
+      }
+      if (exhausted) {
+        target = DocsAndNodesIterator.NO_MORE_DOC;
+        return false;
+      }
+
+      final int windowEnd = Math.min(upTo, max - 1);
+      if (this.isCompetitive(windowMaxScore, blockMaxCollector)) {
+        this.scoreWindow(collector, blockMaxCollector, blockMaxScorer, windowEnd);
+      }
+      if (windowEnd == DocsAndNodesIterator.NO_MORE_DOC - 1) {
+        target = DocsAndNodesIterator.NO_MORE_DOC;
+        return false;
+      }
+      target = windowEnd + 1;
+    }
+    return true;
+  }
+
+  /**
+   * Scores the competitive documents of the window between the target and
+   * <code>windowEnd</code>, based on the maximum scores of the current blocks.
+   */
+  private void scoreWindow(final Collector collector,
+                           final BlockMaxCollector blockMaxCollector,
+                           final BlockMaxScorer blockMaxScorer,
+                           final int windowEnd)
+  throws IOException {
+    while (target <= windowEnd) {
+      // sort the terms by their next possible document: a term behind the
+      // target can match the target
+      for (int i = 0; i < scorers.length; i++) {
+        order[i] = i;
+      }
+      for (int i = 1; i < order.length; i++) {
+        final int t = order[i];
+        int j = i - 1;
+        while (j >= 0 && this.nextPossibleDoc(order[j]) > this.nextPossibleDoc(t)) {
+          order[j + 1] = order[j];
+          j--;
+        }
+        order[j + 1] = t;
+      }
+
+      // find the pivot: the first document whose score can be competitive
+      int pivotDoc = DocsAndNodesIterator.NO_MORE_DOC;
+      double sum = 0;
+      for (final int i : order) {
+        if (scorers[i].doc() == DocsAndNodesIterator.NO_MORE_DOC) {
+          break;
+        }
+        sum += maxScores[i];
+        if (this.isCompetitive(sum, blockMaxCollector)) {
+          pivotDoc = this.nextPossibleDoc(i);
+          break;
+        }
+      }
+      if (pivotDoc > windowEnd) {
+        return;
+      }
+
+      // move the terms behind the pivot to the pivot
+      double pivotMaxScore = 0;
+      for (int i = 0; i < scorers.length; i++) {
+        if (scorers[i].doc() < pivotDoc) {
+          scorers[i].skipToCandidate(pivotDoc);
+        }
+        if (scorers[i].doc() == pivotDoc) {
+          pivotMaxScore += maxScores[i];
+        }
+      }
+      if (this.isCompetitive(pivotMaxScore, blockMaxCollector)) {
+        this.scoreDocument(collector, blockMaxScorer, pivotDoc);
+      }
+      target = pivotDoc + 1;
+    }
+  }
+
+  private int nextPossibleDoc(final int i) {
+    return Math.max(scorers[i].doc(), target);
+  }
+
+  private boolean isCompetitive(final double maxScore, final BlockMaxCollector collector) {
+    return maxScore * maxCoord * (1 + SLACK) > collector.minCompetitiveScore();
+  }
+
+  /**
+   * Computes the score of the document as the sum of the scores of the nodes
+   * of each term, multiplied by the coordination factor of the number of
+   * matching terms, and collects it if at least one node matches.
+   */
+  private void scoreDocument(final Collector collector,
+                             final BlockMaxScorer blockMaxScorer,
+                             final int doc)
+  throws IOException {
+    float score = 0;
+    int freq = 0;
+    int matchingTerms = 0;
+    for (final NodeTermScorer scorer : scorers) {
+      if (scorer.doc() == doc) {
+        boolean matches = false;
+        while (scorer.nextNode()) {
+          score += scorer.scoreInNode();
+          freq += scorer.freqInNode();
+          matches = true;
+        }
+        if (matches) {
+          matchingTerms++;
+        }
+      }
+    }
+    if (freq > 0) {
+      blockMaxScorer.doc = doc;
+      blockMaxScorer.score = score * coords[matchingTerms];
+      blockMaxScorer.freq = freq;
+      collector.collect(doc);
+    }
+  }
+
+  /**
+   * Exposes the score of the collected document.
+   */
+  private static class BlockMaxScorer extends Scorer {
+
+    int doc = -1;
+    float score;
+    int freq;
+
+    BlockMaxScorer(final Weight weight) {
+      super(weight);
+    }
+
+    @Override
+    public float score() {
+      return score;
+    }
+
+    @Override
+    public int freq() {
+      return freq;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int advance(final int target) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long cost() {
+      return 1;
+    }
+
+  }
+
+}
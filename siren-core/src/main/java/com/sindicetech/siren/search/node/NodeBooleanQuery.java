@@ -19,6 +19,7 @@
 
 package com.sindicetech.siren.search.node;
 
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
@@ -174,6 +175,26 @@ public class NodeBooleanQuery extends NodeQuery {
 
     protected abstract void initWeights(final IndexSearcher searcher) throws IOException;
 
+    /**
+     * Returns the path document counts of the clauses in the segment, see
+     * {@link NodeQuery#pathDocCount(AtomicReader)}, or <code>null</code> if a
+     * required clause does not match any document of the segment. The scorers
+     * of the clauses with a count of 0 do not need to be created.
+     */
+    protected static long[] pathDocCounts(final AtomicReader reader,
+                                          final List<NodeBooleanClause> clauses)
+    throws IOException {
+      final long[] counts = new long[clauses.size()];
+      for (int i = 0; i < counts.length; i++) {
+        final NodeBooleanClause c = clauses.get(i);
+        counts[i] = c.getQuery().pathDocCount(reader);
+        if (counts[i] == 0 && c.isRequired()) {
+          return null;
+        }
+      }
+      return counts;
+    }
+
   }
 
   /**
@@ -302,13 +323,21 @@ public class NodeBooleanQuery extends NodeQuery {
     @Override
     public Scorer scorer(final AtomicReaderContext context, final Bits acceptDocs)
     throws IOException {
+      // check the paths of all the clauses before creating any scorer
+      final long[] counts = pathDocCounts(context.reader(), clauses);
+      if (counts == null) {
+        return null;
+      }
+
       final List<NodeScorer> required = new ArrayList<NodeScorer>();
       final List<NodeScorer> prohibited = new ArrayList<NodeScorer>();
       final List<NodeScorer> optional = new ArrayList<NodeScorer>();
       final Iterator<NodeBooleanClause> cIter = clauses.iterator();
-      for (final Weight w  : weights) {
+      for (int i = 0; i < weights.size(); i++) {
+        final Weight w = weights.get(i);
         final NodeBooleanClause c =  cIter.next();
-        final NodeScorer subScorer = (NodeScorer) w.scorer(context, acceptDocs);
+        final NodeScorer subScorer = counts[i] == 0 ? null :
+          (NodeScorer) w.scorer(context, acceptDocs);
         if (subScorer == null) {
           if (c.isRequired()) {
             return null;
@@ -332,6 +361,53 @@ public class NodeBooleanQuery extends NodeQuery {
 
   }
 
+  /**
+   * A conjunction matches at most the documents of its most selective
+   * required clause. A disjunction matches at most the sum of the documents of
+   * its clauses.
+   */
+  @Override
+  long pathDocCount(final AtomicReader reader) throws IOException {
+    return pathDocCount(reader, clauses);
+  }
+
+  /**
+   * Returns the path document count of a boolean combination of clauses, see
+   * {@link NodeQuery#pathDocCount(AtomicReader)}.
+   */
+  static long pathDocCount(final AtomicReader reader, final List<NodeBooleanClause> clauses)
+  throws IOException {
+    long required = -1;
+    long optional = 0;
+    boolean hasRequired = false, hasOptional = false, isOptionalKnown = true;
+    for (final NodeBooleanClause c : clauses) {
+      if (c.isProhibited()) {
+        continue;
+      }
+      final long count = c.getQuery().pathDocCount(reader);
+      if (c.isRequired()) {
+        if (count == 0) {
+          return 0;
+        }
+        hasRequired = true;
+        required = minPathDocCount(required, count);
+      }
+      else {
+        hasOptional = true;
+        if (count == -1) {
+          isOptionalKnown = false;
+        }
+        else {
+          optional += count;
+        }
+      }
+    }
+    if (hasRequired) {
+      return required;
+    }
+    return hasOptional && isOptionalKnown ? optional : -1;
+  }
+
   @Override
   public Weight createWeight(final IndexSearcher searcher) throws IOException {
     return new NodeBooleanWeight(searcher);
@@ -398,10 +474,17 @@ public class NodeBooleanQuery extends NodeQuery {
     }
   }
 
-  @Override @SuppressWarnings("unchecked")
+  /**
+   * Returns a deep copy of the query. The clauses are cloned, as their
+   * constraints are modified in place by the weights of their ancestors.
+   */
+  @Override
   public Query clone() {
     final NodeBooleanQuery clone = (NodeBooleanQuery) super.clone();
-    clone.clauses = (ArrayList<NodeBooleanClause>) this.clauses.clone();
+    clone.clauses = new ArrayList<NodeBooleanClause>(clauses.size());
+    for (final NodeBooleanClause clause : clauses) {
+      clone.clauses.add(new NodeBooleanClause((NodeQuery) clause.getQuery().clone(), clause.getOccur()));
+    }
     return clone;
   }
 
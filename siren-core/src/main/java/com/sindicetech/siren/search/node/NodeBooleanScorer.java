@@ -217,11 +217,21 @@ class NodeBooleanScorer extends NodeScorer {
     return sum * coordinator.coordFactors[coordinator.nrMatchers];
   }
 
+  @Override
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    return countingSumScorer.skipToNode(target);
+  }
+
   @Override
   public boolean skipToCandidate(final int target) throws IOException {
     return countingSumScorer.skipToCandidate(target);
   }
 
+  @Override
+  public long cost() {
+    return countingSumScorer.cost();
+  }
+
   @Override
   public Collection<ChildScorer> getChildren() {
     final ArrayList<ChildScorer> children = new ArrayList<ChildScorer>();
@@ -303,11 +313,21 @@ class NodeBooleanScorer extends NodeScorer {
       return scorer.nextNode();
     }
 
+    @Override
+    public boolean skipToNode(final IntsRef target) throws IOException {
+      return scorer.skipToNode(target);
+    }
+
     @Override
     public boolean skipToCandidate(final int target) throws IOException {
       return scorer.skipToCandidate(target);
     }
 
+    @Override
+    public long cost() {
+      return scorer.cost();
+    }
+
     @Override
     public String toString() {
       return "SingleMatchScorer(" + weight + "," + this.doc() + "," +
@@ -72,6 +72,23 @@ class NodeConjunctionScorer extends NodeScorer {
   }
 
   private void init() throws IOException {
+    // Sort the scorers by increasing cost, and use the least costly one, i.e.,
+    // the most selective, to lead the leapfrog. The lead is kept at the end of
+    // the array, as it is the one advanced by nextCandidateDocument() and
+    // skipToCandidate(int). The other scorers are then aligned in order of
+    // increasing cost, so that the scorers which are the most likely to skip
+    // far ahead are tried first.
+    // We use timSort to be stable, so that the order of scorers with the same
+    // cost is preserved.
+    ArrayUtil.timSort(scorers, new Comparator<NodeScorer>() {
+      public int compare(final NodeScorer o1, final NodeScorer o2) {
+        return Long.compare(o1.cost(), o2.cost());
+      }
+    });
+    final NodeScorer lead = scorers[0];
+    System.arraycopy(scorers, 1, scorers, 0, scorers.length - 1);
+    scorers[scorers.length - 1] = lead;
+
     for (final NodeScorer scorer : scorers) {
       if (!scorer.nextCandidateDocument()) {
         // If even one of the sub-scorers does not have any documents, this
@@ -82,66 +99,45 @@ class NodeConjunctionScorer extends NodeScorer {
       }
     }
 
-    // Sort the array the first time...
-    // We don't need to sort the array in any future calls because we know
-    // it will already start off sorted (all scorers on same candidate doc).
-
-    // Note that this comparator is not consistent with equals!
-    // Also we use mergeSort here to be stable (so order of Scorers that
-    // match on first document keeps preserved):
-    ArrayUtil.timSort(scorers, new Comparator<NodeScorer>() { // sort the array
-      public int compare(final NodeScorer o1, final NodeScorer o2) {
-        return o1.doc() - o2.doc();
-      }
-    });
-
-    // NOTE: doNext() must be called before the re-sorting of the array later on.
-    // The reason is this: assume there are 5 scorers, whose first docs are 1,
-    // 2, 3, 5, 5 respectively. Sorting (above) leaves the array as is. Calling
-    // doNext() here advances all the first scorers to 5 (or a larger doc ID
-    // they all agree on).
-    // However, if we re-sort before doNext() is called, the order will be 5, 3,
-    // 2, 1, 5 and then doNext() will stop immediately, since the first scorer's
-    // docs equals the last one. So the invariant that after calling doNext()
-    // all scorers are on the same doc ID is broken.
     if (!this.doNext()) {
       // The scorers did not agree on any document.
       lastDocument = DocsAndNodesIterator.NO_MORE_DOC;
       lastNode = DocsAndNodesIterator.NO_MORE_NOD;
-      return;
-    }
-
-    // If first-time skip distance is any predictor of
-    // scorer sparseness, then we should always try to skip first on
-    // those scorers.
-    // Keep last scorer in it's last place (it will be the first
-    // to be skipped on), but reverse all of the others so that
-    // they will be skipped on in order of original high skip.
-    final int end = (scorers.length - 1);
-    for (int i = 0; i < (end >> 1); i++) {
-      final NodeScorer tmp = scorers[i];
-      scorers[i] = scorers[end - i - 1];
-      scorers[end - i - 1] = tmp;
     }
   }
 
   /**
-   * Perform a next without initial increment
+   * Perform a next without initial increment: align all the scorers on the
+   * first candidate document of the lead scorer that all of them agree on.
    */
   private boolean doNext() throws IOException {
-    int first = 0;
-    int doc = scorers[scorers.length - 1].doc();
-    NodeScorer firstScorer = scorers[first];
-    boolean more = true;
+    final NodeScorer lead = scorers[scorers.length - 1];
+    int doc = lead.doc();
+    int i = 0;
 
-    while (firstScorer.doc() < doc) {
-      more = firstScorer.skipToCandidate(doc);
-      doc = firstScorer.doc();
-      first = first == scorers.length - 1 ? 0 : first + 1;
-      firstScorer = scorers[first];
+    while (i < scorers.length - 1) {
+      if (doc == DocsAndNodesIterator.NO_MORE_DOC) {
+        return false;
+      }
+      final NodeScorer scorer = scorers[i];
+      if (scorer.doc() < doc && !scorer.skipToCandidate(doc)) {
+        return false;
+      }
+      if (scorer.doc() > doc) {
+        // the scorer skipped beyond the candidate: advance the lead and start
+        // again from the first scorer
+        if (!lead.skipToCandidate(scorer.doc())) {
+          return false;
+        }
+        doc = lead.doc();
+        i = 0;
+      }
+      else {
+        i++;
+      }
     }
 
-    return more;
+    return doc != DocsAndNodesIterator.NO_MORE_DOC;
   }
 
   @Override
@@ -152,10 +148,7 @@ class NodeConjunctionScorer extends NodeScorer {
     else if (scorers[(scorers.length - 1)].doc() < target) {
       scorers[(scorers.length - 1)].skipToCandidate(target);
     }
-    final boolean more = this.doNext();
-    lastDocument = scorers[scorers.length - 1].doc();
-    lastNode = scorers[scorers.length - 1].node();
-    return more;
+    return this.updateCurrentDocument(this.doNext());
   }
 
   @Override
@@ -180,31 +173,54 @@ class NodeConjunctionScorer extends NodeScorer {
     }
     // advance the last scorer to the next candidate document
     scorers[(scorers.length - 1)].nextCandidateDocument();
-    final boolean more = this.doNext();
-    lastDocument = scorers[scorers.length - 1].doc();
-    lastNode = scorers[scorers.length - 1].node();
+    return this.updateCurrentDocument(this.doNext());
+  }
+
+  private boolean updateCurrentDocument(final boolean more) {
+    if (more) {
+      lastDocument = scorers[scorers.length - 1].doc();
+      lastNode = scorers[scorers.length - 1].node();
+    }
+    else {
+      lastDocument = DocsAndNodesIterator.NO_MORE_DOC;
+      lastNode = DocsAndNodesIterator.NO_MORE_NOD;
+    }
     return more;
   }
 
   @Override
   public boolean nextNode() throws IOException {
-    int first = 0;
-    NodeScorer lastScorer = scorers[scorers.length - 1];
-    NodeScorer firstScorer = scorers[first];
-
     // scan forward in last
-    if (lastNode == DocsAndNodesIterator.NO_MORE_NOD || !lastScorer.nextNode()) {
+    if (lastNode == DocsAndNodesIterator.NO_MORE_NOD || !scorers[scorers.length - 1].nextNode()) {
       lastNode = DocsAndNodesIterator.NO_MORE_NOD;
       return false;
     }
+    return this.doNextNode();
+  }
+
+  @Override
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    if (lastNode == DocsAndNodesIterator.NO_MORE_NOD || !scorers[scorers.length - 1].skipToNode(target)) {
+      lastNode = DocsAndNodesIterator.NO_MORE_NOD;
+      return false;
+    }
+    return this.doNextNode();
+  }
+
+  /**
+   * Align the scorers on the first node they agree on, starting from the node
+   * of the last scorer. Each scorer skips to the node of the previous one.
+   */
+  private boolean doNextNode() throws IOException {
+    int first = 0;
+    NodeScorer lastScorer = scorers[scorers.length - 1];
+    NodeScorer firstScorer = scorers[first];
 
     while (NodeUtils.compare(firstScorer.node(), lastScorer.node()) < 0) {
-      do {
-        if (!firstScorer.nextNode()) {  // scan forward in first
-          lastNode = DocsAndNodesIterator.NO_MORE_NOD;
-          return false;
-        }
-      } while (NodeUtils.compare(firstScorer.node(), lastScorer.node()) < 0);
+      if (!firstScorer.skipToNode(lastScorer.node())) {  // skip forward in first
+        lastNode = DocsAndNodesIterator.NO_MORE_NOD;
+        return false;
+      }
       lastScorer = firstScorer;
       first = (first == (scorers.length - 1)) ? 0 : first + 1;
       firstScorer = scorers[first];
@@ -230,6 +246,12 @@ class NodeConjunctionScorer extends NodeScorer {
     return curNodeScore * coord;
   }
 
+  @Override
+  public long cost() {
+    // the conjunction cannot match more documents than its least costly scorer
+    return scorers[scorers.length - 1].cost();
+  }
+
   @Override
   public String toString() {
     return "NodeConjunctionScorer(" + weight + "," + lastDocument + "," + lastNode + ")";
@@ -43,27 +43,25 @@ import com.sindicetech.siren.search.node.NodeBooleanClause.Occur;
  *
  * <p>
  *
- * Term and document cutoffs are deactivated to disable {@link
- * MultiNodeTermQuery#CONSTANT_SCORE_FILTER_REWRITE}.
- *
- * <p>
- *
  * Code taken from {@link ConstantScoreAutoRewrite} and adapted for SIREn.
  */
 class NodeConstantScoreAutoRewrite extends NodeTermCollectingRewrite<NodeBooleanQuery> {
 
-  // Term cutoff deactivated until a efficient filter-based approach is found
-  public static int DEFAULT_TERM_COUNT_CUTOFF = Integer.MAX_VALUE;
+  // Defaults derived from rough tests with a 20.0 million
+  // doc Wikipedia index.  With more than 350 terms in the
+  // query, the filter method is fastest:
+  public static int DEFAULT_TERM_COUNT_CUTOFF = 350;
 
-  // Document cutoff deactivated until a efficient filter-based approach is found
-  public static double DEFAULT_DOC_COUNT_PERCENT = Integer.MAX_VALUE;
+  // If the query will hit more than 1 in 1000 of the docs
+  // in the index (0.1%), the filter method is fastest:
+  public static double DEFAULT_DOC_COUNT_PERCENT = 0.1;
 
   private int termCountCutoff = DEFAULT_TERM_COUNT_CUTOFF;
   private double docCountPercent = DEFAULT_DOC_COUNT_PERCENT;
 
   /** If the number of terms in this query is equal to or
    *  larger than this setting then {@link
-   *  #CONSTANT_SCORE_FILTER_REWRITE} is used. */
+   *  MultiNodeTermQuery#CONSTANT_SCORE_FILTER_REWRITE} is used. */
   public void setTermCountCutoff(final int count) {
     termCountCutoff = count;
   }
@@ -76,7 +74,7 @@ class NodeConstantScoreAutoRewrite extends NodeTermCollectingRewrite<NodeBoolean
   /** If the number of documents to be visited in the
    *  postings exceeds this specified percentage of the
    *  maxDoc() for the index, then {@link
-   *  #CONSTANT_SCORE_FILTER_REWRITE} is used.
+   *  MultiNodeTermQuery#CONSTANT_SCORE_FILTER_REWRITE} is used.
    *  @param percent 0.0 to 100.0 */
   public void setDocCountPercent(final double percent) {
     docCountPercent = percent;
@@ -108,9 +106,12 @@ class NodeConstantScoreAutoRewrite extends NodeTermCollectingRewrite<NodeBoolean
   @Override
   public Query rewrite(final IndexReader reader, final MultiNodeTermQuery query) throws IOException {
 
-    // Disabled cutoffs
-    final int docCountCutoff = Integer.MAX_VALUE;
-    final int termCountLimit = Integer.MAX_VALUE;
+    // Get the enum and start visiting terms.  If we
+    // exhaust the enum before hitting either of the
+    // cutoffs, we use ConstantBooleanQueryRewrite; else,
+    // ConstantFilterRewrite:
+    final int docCountCutoff = (int) ((docCountPercent / 100.) * reader.maxDoc());
+    final int termCountLimit = Math.min(NodeBooleanQuery.getMaxClauseCount(), termCountCutoff);
 
     final CutOffTermCollector col = new CutOffTermCollector(docCountCutoff, termCountLimit);
     this.collectTerms(reader, query, col);
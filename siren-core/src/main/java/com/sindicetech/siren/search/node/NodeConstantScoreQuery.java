@@ -32,9 +32,10 @@ import java.io.IOException;
 import java.util.Set;
 
 /**
- * A query that wraps another query or a filter and simply returns a constant
- * score equal to the query boost for every nodes that matches the filter or query.
- * For queries it therefore simply strips of all scores and returns a constant one.
+ * A query that wraps another query and simply returns a constant score equal
+ * to the query boost for every nodes that matches the query. It therefore
+ * simply strips of all scores and returns a constant one. The matches of the
+ * query can be restricted to the documents of a document-level {@link Filter}.
  *
  * <p>
  *
@@ -44,7 +45,7 @@ import java.util.Set;
 public class NodeConstantScoreQuery extends DatatypedNodeQuery {
 
   protected final Filter filter;
-  protected final NodeQuery query;
+  protected NodeQuery query;
 
   /**
    * Strips off scores from the passed in Query. The hits will get a constant
@@ -57,27 +58,58 @@ public class NodeConstantScoreQuery extends DatatypedNodeQuery {
     this.query = query;
   }
 
-// TODO: Activate filters when Siren will support filters.
-//  /** Wraps a Filter as a Query. The hits will get a constant score
-//   * dependent on the boost factor of this query.
-//   * If you simply want to strip off scores from a Query, no longer use
-//   * {@code new ConstantScoreQuery(new QueryWrapperFilter(query))}, instead
-//   * use {@link #ConstantScoreQuery(Query)}!
-//   */
-//  public SirenConstantScoreQuery(final SirenFilter filter) {
-//    if (filter == null)
-//      throw new NullPointerException("Filter may not be null");
-//    this.filter = filter;
-//    this.query = null;
-//  }
-//
-//  /** Returns the encapsulated filter, returns {@code null} if a query is wrapped. */
-//  public SirenFilter getFilter() {
-//    return filter;
-//  }
+  /**
+   * Strips off scores from the passed in Query, and restricts its matches to
+   * the documents accepted by a document-level filter, e.g., a tenant or a date
+   * range filter. The hits will get a constant score dependent on the boost
+   * factor of this query.
+   *
+   * <p>
+   *
+   * The filter is applied on the candidate documents, before the nodes of the
+   * query are decoded, which is much cheaper than filtering the matches of the
+   * query afterwards when the filter is selective.
+   */
+  public NodeConstantScoreQuery(final NodeQuery query, final Filter filter) {
+    if (query == null)
+      throw new NullPointerException("Query may not be null");
+    if (filter == null)
+      throw new NullPointerException("Filter may not be null");
+    this.filter = filter;
+    this.query = query;
+  }
 
   /**
-   * Returns the encapsulated query, returns {@code null} if a filter is wrapped.
+   * Returns the document-level filter, returns {@code null} if the matches of
+   * the query are not filtered.
+   */
+  public Filter getFilter() {
+    return filter;
+  }
+
+  /**
+   * The cache of node matches, or <code>null</code> if matches are not cached
+   */
+  protected NodeQueryCache queryCache;
+
+  /**
+   * Expert: Sets the cache used to store and retrieve the node matches of the
+   * encapsulated query. By default, no cache is used.
+   */
+  public void setNodeQueryCache(final NodeQueryCache queryCache) {
+    this.queryCache = queryCache;
+  }
+
+  /**
+   * Expert: Returns the cache of node matches, or <code>null</code> if none
+   * is used.
+   */
+  public NodeQueryCache getNodeQueryCache() {
+    return queryCache;
+  }
+
+  /**
+   * Returns the encapsulated query.
    */
   public NodeQuery getQuery() {
     return query;
@@ -107,24 +139,33 @@ public class NodeConstantScoreQuery extends DatatypedNodeQuery {
   @Override
   public NodeQuery rewrite(final IndexReader reader) throws IOException {
     if (query != null) {
-      NodeQuery rewritten = (NodeQuery) query.rewrite(reader);
+      final NodeQuery rewritten = (NodeQuery) query.rewrite(reader);
       if (rewritten != query) {
-        rewritten = new NodeConstantScoreQuery(rewritten);
-        rewritten.setBoost(this.getBoost());
-        return rewritten;
+        final NodeConstantScoreQuery result = filter == null ? new NodeConstantScoreQuery(rewritten)
+                                                             : new NodeConstantScoreQuery(rewritten, filter);
+        result.setBoost(this.getBoost());
+        result.setNodeQueryCache(queryCache);
+        return result;
       }
     }
     return this;
   }
 
+  /**
+   * Returns a deep copy of the query. The encapsulated query is cloned, as its
+   * constraints are kept synchronised with the ones of this query.
+   */
+  @Override
+  public Query clone() {
+    final NodeConstantScoreQuery clone = (NodeConstantScoreQuery) super.clone();
+    clone.query = (NodeQuery) query.clone();
+    return clone;
+  }
+
   @Override
   public void extractTerms(final Set<Term> terms) {
-    // TODO: OK to not add any terms when wrapped a filter
-    // and used with MultiSearcher, but may not be OK for
-    // highlighting.
-    // If a query was wrapped, we delegate to query.
-    if (query != null)
-      query.extractTerms(terms);
+    // the terms of the filter are not extracted
+    query.extractTerms(terms);
   }
 
   protected class NodeConstantWeight extends Weight {
@@ -134,7 +175,7 @@ public class NodeConstantScoreQuery extends DatatypedNodeQuery {
     private float queryWeight;
 
     public NodeConstantWeight(final IndexSearcher searcher) throws IOException {
-      this.innerWeight = (query == null) ? null : query.createWeight(searcher);
+      this.innerWeight = query.createWeight(searcher);
     }
 
     @Override
@@ -162,55 +203,55 @@ public class NodeConstantScoreQuery extends DatatypedNodeQuery {
     public BulkScorer bulkScorer(AtomicReaderContext context, boolean scoreDocsInOrder, Bits acceptDocs)
     throws IOException {
 
-      // TODO: Activate filters when Siren will support filters.
-
-//      final DocIdSetIterator disi;
-//      if (filter != null) {
-//        assert query == null;
-//        return super.bulkScorer(context, scoreDocsInOrder, acceptDocs);
-//      } else {
+      if (filter != null) {
+        // the filter is applied by the scorer
+        return super.bulkScorer(context, scoreDocsInOrder, acceptDocs);
+      }
 
-      assert query != null && innerWeight != null;
-      BulkScorer bulkScorer = innerWeight.bulkScorer(context, scoreDocsInOrder, acceptDocs);
+      final BulkScorer bulkScorer = innerWeight.bulkScorer(context, scoreDocsInOrder, acceptDocs);
 
       if (bulkScorer == null) {
         return null;
       }
 
       return new NodeConstantBulkScorer(bulkScorer, this, queryWeight);
-
-//      }
     }
 
     @Override
     public Scorer scorer(final AtomicReaderContext context, final Bits acceptDocs)
     throws IOException {
 
-      // TODO: Activate filters when Siren will support filters.
-
-//      if (filter != null) {
-//        assert query == null;
-//        final DocIdSet dis = filter.getDocIdSet(reader);
-//        if (dis == null)
-//          return null;
-//        disi = dis.iterator();
-//      } else {
-
-      assert query != null && innerWeight != null;
-      final NodeScorer scorer = (NodeScorer) innerWeight.scorer(context, acceptDocs);
-
-//      }
+      DocIdSetIterator filterIterator = null;
+      if (filter != null) {
+        // the filter is checked first, as it is usually cheaper than the query
+        final DocIdSet set = filter.getDocIdSet(context, acceptDocs);
+        if (set == null || (filterIterator = set.iterator()) == null) {
+          return null;
+        }
+      }
 
-      if (scorer == null) {
-        return null;
+      NodeScorer scorer;
+      if (queryCache != null) {
+        final DocNodeSet set = queryCache.getDocNodeSet(context, query, innerWeight);
+        if (set.isEmpty()) {
+          return null;
+        }
+        scorer = set.scorer(this, queryWeight, acceptDocs);
+      }
+      else {
+        scorer = (NodeScorer) innerWeight.scorer(context, acceptDocs);
+        if (scorer == null) {
+          return null;
+        }
+        scorer = new NodeConstantScorer(scorer, this, queryWeight);
       }
 
-      return new NodeConstantScorer(scorer, this, queryWeight);
+      return filterIterator == null ? scorer : new NodeFilteredScorer(scorer, filterIterator);
     }
 
     @Override
     public boolean scoresDocsOutOfOrder() {
-      return (innerWeight != null) ? innerWeight.scoresDocsOutOfOrder() : false;
+      return filter == null && innerWeight.scoresDocsOutOfOrder();
     }
 
     @Override
@@ -330,11 +371,21 @@ public class NodeConstantScoreQuery extends DatatypedNodeQuery {
       return scorer.freqInNode();
     }
 
+    @Override
+    public boolean skipToNode(final IntsRef target) throws IOException {
+      return scorer.skipToNode(target);
+    }
+
     @Override
     public boolean skipToCandidate(final int target) throws IOException {
       return scorer.skipToCandidate(target);
     }
 
+    @Override
+    public long cost() {
+      return scorer.cost();
+    }
+
   }
 
   @Override
@@ -344,9 +395,12 @@ public class NodeConstantScoreQuery extends DatatypedNodeQuery {
 
   @Override
   public String toString(final String field) {
-    return new StringBuilder("NodeConstantScore(")
-      .append((query == null) ? filter.toString() : query.toString(field))
-      .append(')')
+    final StringBuilder builder = new StringBuilder("NodeConstantScore(")
+      .append(query.toString(field));
+    if (filter != null) {
+      builder.append(", ").append(filter);
+    }
+    return builder.append(')')
       .append(ToStringUtils.boost(this.getBoost()))
       .toString();
   }
@@ -373,7 +427,8 @@ public class NodeConstantScoreQuery extends DatatypedNodeQuery {
   public int hashCode() {
     final int prime = 31;
     int result = super.hashCode();
-    result = prime * result + ((query == null) ? filter : query).hashCode();
+    result = prime * result + query.hashCode();
+    result = prime * result + ((filter == null) ? 0 : filter.hashCode());
     result = prime * result + lowerBound;
     result = prime * result + upperBound;
     result = prime * result + levelConstraint;
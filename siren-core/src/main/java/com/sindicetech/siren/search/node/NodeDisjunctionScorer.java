@@ -163,6 +163,15 @@ class NodeDisjunctionScorer extends NodeScorer {
     return currentNode;
   }
 
+  @Override
+  public long cost() {
+    long cost = 0;
+    for (final NodeScorer scorer : scorers) {
+      cost += scorer.cost();
+    }
+    return cost;
+  }
+
   @Override
   public String toString() {
     return "NodeDisjunctionScorer(" + weight + "," + this.doc() + "," +
@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.IntsRef;
+
+import com.sindicetech.siren.index.DocsAndNodesIterator;
+
+import java.io.IOException;
+
+/**
+ * A {@link NodeScorer} that restricts the candidate documents of another
+ * {@link NodeScorer} to the documents of a filter.
+ *
+ * <p>
+ *
+ * The scorer and the {@link DocIdSetIterator} of the filter are advanced in
+ * leapfrog on the document identifiers. The nodes and positions of the scorer
+ * are therefore never decoded for the documents rejected by the filter.
+ */
+class NodeFilteredScorer extends NodeScorer {
+
+  private final NodeScorer scorer;
+  private final DocIdSetIterator filterIterator;
+
+  private boolean exhausted = false;
+
+  NodeFilteredScorer(final NodeScorer scorer, final DocIdSetIterator filterIterator) {
+    super(scorer.getWeight());
+    this.scorer = scorer;
+    this.filterIterator = filterIterator;
+  }
+
+  @Override
+  public boolean nextCandidateDocument() throws IOException {
+    return this.skipToCandidate(scorer.doc() + 1);
+  }
+
+  /**
+   * The filter leads the leapfrog, as it is usually more selective and cheaper
+   * to advance than the scorer.
+   */
+  @Override
+  public boolean skipToCandidate(final int target) throws IOException {
+    if (exhausted) {
+      return false;
+    }
+    int filterDoc = filterIterator.docID();
+    while (true) {
+      if (filterDoc < target) {
+        filterDoc = filterIterator.advance(target);
+      }
+      if (filterDoc == DocIdSetIterator.NO_MORE_DOCS || !scorer.skipToCandidate(filterDoc)) {
+        return this.exhaust();
+      }
+      if (scorer.doc() == filterDoc) {
+        return true;
+      }
+      // the scorer went beyond the filter, advance the filter to the scorer
+      filterDoc = filterIterator.advance(scorer.doc());
+      if (filterDoc == scorer.doc()) {
+        return true;
+      }
+      if (filterDoc == DocIdSetIterator.NO_MORE_DOCS) {
+        return this.exhaust();
+      }
+    }
+  }
+
+  private boolean exhaust() {
+    exhausted = true;
+    return false;
+  }
+
+  @Override
+  public boolean nextNode() throws IOException {
+    return !exhausted && scorer.nextNode();
+  }
+
+  @Override
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    return !exhausted && scorer.skipToNode(target);
+  }
+
+  @Override
+  public int doc() {
+    return exhausted ? DocsAndNodesIterator.NO_MORE_DOC : scorer.doc();
+  }
+
+  @Override
+  public IntsRef node() {
+    return exhausted ? DocsAndNodesIterator.NO_MORE_NOD : scorer.node();
+  }
+
+  @Override
+  public int freqInNode() throws IOException {
+    return scorer.freqInNode();
+  }
+
+  @Override
+  public float scoreInNode() throws IOException {
+    return scorer.scoreInNode();
+  }
+
+  @Override
+  public long cost() {
+    return Math.min(scorer.cost(), filterIterator.cost());
+  }
+
+  @Override
+  public String toString() {
+    return "NodeFilteredScorer(" + scorer + ")";
+  }
+
+}
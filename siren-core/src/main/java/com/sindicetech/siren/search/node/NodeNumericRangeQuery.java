@@ -74,13 +74,11 @@ import java.util.LinkedList;
  * details.
  *
  * <p>This query defaults to {@linkplain
- * MultiNodeTermQuery#CONSTANT_SCORE_AUTO_REWRITE_DEFAULT} and never relies on
- * uses {@linkplain MultiNodeTermQuery#CONSTANT_SCORE_FILTER_REWRITE}. Good
- * performance is expected for
- * 32 bit (int/float) ranges with precisionStep &le;8 and 64
- * bit (long/double) ranges with precisionStep &le;6.
- * In the other cases, bad performance has to be expected as the
- * number of terms is likely to be high.
+ * MultiNodeTermQuery#CONSTANT_SCORE_AUTO_REWRITE_DEFAULT}, except for
+ * 32 bit (int/float) ranges with precisionStep &gt;8 and 64
+ * bit (long/double) ranges with precisionStep &gt;6. In the latter
+ * case, it uses {@linkplain MultiNodeTermQuery#CONSTANT_SCORE_FILTER_REWRITE}
+ * as the number of terms is likely to be high.
  *
  * <p> See {@link NumericRangeQuery} for more information on how it works.
  *
@@ -113,21 +111,17 @@ public class NodeNumericRangeQuery<T extends Number> extends MultiNodeTermQuery
     switch (dataType) {
       case LONG:
       case DOUBLE:
-        // TODO: to uncomment when filter-based rewrite method is implemented
-//        this.setRewriteMethod( (precisionStep > 6) ?
-//          CONSTANT_SCORE_FILTER_REWRITE :
-//          CONSTANT_SCORE_AUTO_REWRITE_DEFAULT
-//        );
-        this.setRewriteMethod(CONSTANT_SCORE_AUTO_REWRITE_DEFAULT);
+        this.setRewriteMethod( (precisionStep > 6) ?
+          CONSTANT_SCORE_FILTER_REWRITE :
+          CONSTANT_SCORE_AUTO_REWRITE_DEFAULT
+        );
         break;
       case INT:
       case FLOAT:
-        // TODO: to uncomment when filter-based rewrite method is implemented
-//        this.setRewriteMethod( (precisionStep > 8) ?
-//          CONSTANT_SCORE_FILTER_REWRITE :
-//          CONSTANT_SCORE_AUTO_REWRITE_DEFAULT
-//        );
-        this.setRewriteMethod(CONSTANT_SCORE_AUTO_REWRITE_DEFAULT);
+        this.setRewriteMethod( (precisionStep > 8) ?
+          CONSTANT_SCORE_FILTER_REWRITE :
+          CONSTANT_SCORE_AUTO_REWRITE_DEFAULT
+        );
         break;
       default:
         // should never happen
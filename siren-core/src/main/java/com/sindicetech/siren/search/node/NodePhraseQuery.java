@@ -191,15 +191,16 @@ public class NodePhraseQuery extends DatatypedNodeQuery {
 
         final DocsNodesAndPositionsEnum postingsEnum = NodePhraseQuery.this.getDocsNodesAndPositionsEnum(te.docsAndPositions(liveDocs, null));
 
-        // PhraseQuery on a field that did not index positions (maybe not a siren field)
-        if (postingsEnum == null) {
+        // PhraseQuery on a field that did not index positions (maybe not a siren
+        // field, or a field indexed with the nodes only)
+        if (postingsEnum == null || !postingsEnum.hasPositions()) {
           assert te.seekExact(t.bytes()) : "termstate found but no term exists in reader";
           // term does exist, but has no positions
           throw new IllegalStateException("field \"" + t.field() + "\" was " +
           		"indexed without position data; cannot run NodePhraseQuery " +
           		"(term=" + t.text() + ")");
         }
-        postings[i] = new PostingsAndPosition(postingsEnum, positions.get(i).intValue());
+        postings[i] = new PostingsAndPosition(postingsEnum, te.docFreq(), positions.get(i).intValue());
       }
 
       return new NodeExactPhraseScorer(this, postings, similarity.simScorer(stats, context));
@@ -241,6 +242,15 @@ public class NodePhraseQuery extends DatatypedNodeQuery {
 
   }
 
+  @Override
+  long pathDocCount(final AtomicReader reader) throws IOException {
+    long count = -1;
+    for (final Term term : terms) {
+      count = minPathDocCount(count, pathDocCount(reader, term));
+    }
+    return count;
+  }
+
   @Override
   public Weight createWeight(final IndexSearcher searcher)
   throws IOException {
@@ -337,10 +347,13 @@ public class NodePhraseQuery extends DatatypedNodeQuery {
   static class PostingsAndPosition {
 
     final DocsNodesAndPositionsEnum postings;
+    final long cost;
     final int position;
 
-    public PostingsAndPosition(final DocsNodesAndPositionsEnum postings, final int position) {
+    public PostingsAndPosition(final DocsNodesAndPositionsEnum postings, final long cost,
+                               final int position) {
       this.postings = postings;
+      this.cost = cost;
       this.position = position;
     }
 
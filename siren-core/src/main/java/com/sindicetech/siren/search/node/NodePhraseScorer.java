@@ -70,7 +70,7 @@ abstract class NodePhraseScorer extends NodeScorer {
     // create node conjunction scorer
     final NodeScorer[] scorers = new NodeScorer[postings.length];
     for (int i = 0; i < postings.length; i++) {
-      scorers[i] = new NodeTermScorer(weight, postings[i].postings, this.simScorer);
+      scorers[i] = new NodeTermScorer(weight, postings[i].postings, postings[i].cost, this.simScorer);
     }
     conjunctionScorer = new NodeConjunctionScorer(weight, 1.0f, scorers);
   }
@@ -130,4 +130,10 @@ abstract class NodePhraseScorer extends NodeScorer {
     return conjunctionScorer.scoreInNode();
   }
 
+  @Override
+  public long cost() {
+    // a phrase cannot match more documents than its rarest term
+    return conjunctionScorer.cost();
+  }
+
 }
@@ -18,11 +18,15 @@
  */
 package com.sindicetech.siren.search.node;
 
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
 
 import com.sindicetech.siren.index.*;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.TreeMap;
 
@@ -195,6 +199,70 @@ public abstract class NodeQuery extends Query {
 
   }
 
+  /**
+   * Expert: Returns the interval constraints inherited from the ancestors of
+   * this query, as a flat array of (level, lower bound, upper bound) triples
+   * ordered by level.
+   */
+  int[] getAncestorConstraints() {
+    final ConstraintStack stack = new ConstraintStack();
+    this.retrieveConstraint(this.ancestor, stack);
+
+    final int[] levels = stack.getLevelIndex();
+    final int[][] constraints = stack.getConstraints();
+    final int[] result = new int[levels.length * 3];
+    for (int i = 0; i < levels.length; i++) {
+      result[i * 3] = levels[i];
+      result[i * 3 + 1] = constraints[i][0];
+      result[i * 3 + 2] = constraints[i][1];
+    }
+    return result;
+  }
+
+  /**
+   * Expert: Returns an upper bound of the number of documents of the segment
+   * that this query can match, computed from the {@link PathDictionary} of the
+   * segment, or -1 if unknown. If 0 is returned, the query does not match any
+   * document of the segment and its scorer does not need to be created.
+   * <p>
+   * This default implementation returns -1.
+   */
+  long pathDocCount(final AtomicReader reader) throws IOException {
+    return -1;
+  }
+
+  /**
+   * Returns the document count of the path of the term in the
+   * {@link PathDictionary} of the segment, or -1 if the term has no path or if
+   * the segment has no path dictionary.
+   */
+  static long pathDocCount(final AtomicReader reader, final Term term)
+  throws IOException {
+    final BytesRef path = PathDictionary.getPath(term.bytes());
+    if (path == null) {
+      return -1;
+    }
+    final PathDictionary dictionary = PathDictionary.get(reader, term.field());
+    if (dictionary == null) {
+      return -1;
+    }
+    return dictionary.docCount(path);
+  }
+
+  /**
+   * Returns the minimum of two path document counts, ignoring the unknown
+   * counts.
+   */
+  static long minPathDocCount(final long count1, final long count2) {
+    if (count1 == -1) {
+      return count2;
+    }
+    if (count2 == -1) {
+      return count1;
+    }
+    return Math.min(count1, count2);
+  }
+
   private void retrieveConstraint(final NodeQuery query, final ConstraintStack stack) {
     if (query == null) {
       return;
@@ -0,0 +1,334 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Expert: A cache of the (document, node) matches of {@link NodeQuery}s,
+ * shared across queries.
+ *
+ * <p>
+ *
+ * Entries are computed per segment, and are keyed by the core of the segment
+ * and by a normalised form of the node query: the boost is ignored, and the
+ * interval constraints inherited from the ancestors of the query are part of
+ * the key. The matches are stored in a compact {@link DocNodeSet}, computed
+ * without deleted documents, so that an entry stays valid when documents of
+ * the segment are deleted. Deleted documents are filtered at search time.
+ *
+ * <p>
+ *
+ * Entries are evicted in least-recently-used order when the number of entries
+ * exceeds {@link #getMaxSize()} or when their total memory usage exceeds
+ * {@link #getMaxRamBytesUsed()}. All the entries of a segment are removed
+ * when its core is closed.
+ *
+ * <p>
+ *
+ * Only the matches are cached, not the scores. The cache is therefore used
+ * by queries for which the score does not depend on the matches, such as
+ * {@link NodeConstantScoreQuery} and the prohibited clauses of a
+ * {@link TwigQuery}.
+ *
+ * <p>
+ *
+ * This class is thread-safe.
+ */
+public class NodeQueryCache {
+
+  private final int maxSize;
+  private final long maxRamBytesUsed;
+
+  /** The entries in access order */
+  private final LinkedHashMap<CacheKey, DocNodeSet> cache;
+
+  /** The keys of the cached entries for each segment core */
+  private final Map<Object, Set<CacheKey>> keysByCore;
+
+  private final AtomicReader.CoreClosedListener closedListener = new AtomicReader.CoreClosedListener() {
+
+    @Override
+    public void onClose(final Object ownerCoreCacheKey) {
+      NodeQueryCache.this.clearCoreCacheKey(ownerCoreCacheKey);
+    }
+
+  };
+
+  private long ramBytesUsed = 0;
+
+  private long hitCount = 0, missCount = 0, evictionCount = 0;
+
+  /**
+   * Creates a cache which holds at most <code>maxSize</code> entries, using
+   * at most <code>maxRamBytesUsed</code> bytes.
+   */
+  public NodeQueryCache(final int maxSize, final long maxRamBytesUsed) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be >= 1");
+    }
+    if (maxRamBytesUsed < 1) {
+      throw new IllegalArgumentException("maxRamBytesUsed must be >= 1");
+    }
+    this.maxSize = maxSize;
+    this.maxRamBytesUsed = maxRamBytesUsed;
+    this.cache = new LinkedHashMap<CacheKey, DocNodeSet>(16, 0.75f, true);
+    this.keysByCore = new HashMap<Object, Set<CacheKey>>();
+  }
+
+  /**
+   * Returns the set of (document, node) pairs matching the query in the given
+   * segment, ignoring deleted documents.
+   *
+   * <p>
+   *
+   * If the set is not cached, it is computed by iterating the
+   * {@link NodeScorer} of the given weight, and it is added to the cache.
+   *
+   * @param context the segment
+   * @param query the node query
+   * @param weight the weight of the node query
+   */
+  public DocNodeSet getDocNodeSet(final AtomicReaderContext context,
+                                  final NodeQuery query, final Weight weight)
+  throws IOException {
+    final Object coreKey = context.reader().getCoreCacheKey();
+    final CacheKey key = new CacheKey(coreKey, query);
+
+    synchronized (this) {
+      final DocNodeSet set = cache.get(key);
+      if (set != null) {
+        hitCount++;
+        return set;
+      }
+      missCount++;
+    }
+
+    // compute the set outside of the lock
+    final DocNodeSet set = this.computeDocNodeSet(context, weight);
+
+    synchronized (this) {
+      if (!cache.containsKey(key)) {
+        Set<CacheKey> keys = keysByCore.get(coreKey);
+        if (keys == null) {
+          keys = new HashSet<CacheKey>();
+          keysByCore.put(coreKey, keys);
+          // first entry for this segment, register the listener for invalidation
+          context.reader().addCoreClosedListener(closedListener);
+        }
+        // the key of the entry must not share the query of the caller
+        final CacheKey entryKey = key.snapshot();
+        keys.add(entryKey);
+        cache.put(entryKey, set);
+        ramBytesUsed += set.ramBytesUsed();
+        this.evictIfNecessary();
+      }
+    }
+    return set;
+  }
+
+  private DocNodeSet computeDocNodeSet(final AtomicReaderContext context, final Weight weight)
+  throws IOException {
+    final NodeScorer scorer = (NodeScorer) weight.scorer(context, null);
+    if (scorer == null) {
+      return DocNodeSet.EMPTY;
+    }
+    final DocNodeSet.Builder builder = new DocNodeSet.Builder();
+    while (scorer.nextCandidateDocument()) {
+      while (scorer.nextNode()) {
+        builder.add(scorer.doc(), scorer.node());
+      }
+    }
+    return builder.build();
+  }
+
+  private void evictIfNecessary() {
+    final Iterator<Map.Entry<CacheKey, DocNodeSet>> it = cache.entrySet().iterator();
+    while (it.hasNext() && (cache.size() > maxSize || ramBytesUsed > maxRamBytesUsed)) {
+      final Map.Entry<CacheKey, DocNodeSet> entry = it.next();
+      it.remove();
+      this.onEviction(entry.getKey(), entry.getValue());
+      evictionCount++;
+    }
+  }
+
+  private void onEviction(final CacheKey key, final DocNodeSet set) {
+    ramBytesUsed -= set.ramBytesUsed();
+    final Set<CacheKey> keys = keysByCore.get(key.coreKey);
+    if (keys != null) {
+      keys.remove(key);
+      // the listener stays registered on the core, which is harmless
+    }
+  }
+
+  /**
+   * Removes all the entries of the segment core with the given key.
+   */
+  public synchronized void clearCoreCacheKey(final Object coreKey) {
+    final Set<CacheKey> keys = keysByCore.remove(coreKey);
+    if (keys != null) {
+      for (final CacheKey key : keys) {
+        final DocNodeSet set = cache.remove(key);
+        if (set != null) {
+          ramBytesUsed -= set.ramBytesUsed();
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all the entries.
+   */
+  public synchronized void clear() {
+    cache.clear();
+    keysByCore.clear();
+    ramBytesUsed = 0;
+  }
+
+  /**
+   * Returns the maximum number of entries
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Returns the maximum memory usage in bytes
+   */
+  public long getMaxRamBytesUsed() {
+    return maxRamBytesUsed;
+  }
+
+  /**
+   * Returns the number of cached entries
+   */
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  /**
+   * Returns the memory used by the cached entries in bytes
+   */
+  public synchronized long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  /**
+   * Returns the number of lookups which found an entry
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the number of lookups which did not find an entry
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the number of entries which have been evicted because of the
+   * size or memory limits
+   */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * The key of a cache entry: the core of the segment, the node query with
+   * a neutral boost, and the interval constraints inherited from its
+   * ancestors.
+   *
+   * <p>
+   *
+   * The constraints of a node query, which take part in its equality, are
+   * modified in place by the weights of its ancestors. The key used for a
+   * lookup can refer to the query of the caller, but the key of an entry
+   * must be a {@link #snapshot()}, otherwise its hash code would change while
+   * it is in the map.
+   */
+  private static final class CacheKey {
+
+    final Object coreKey;
+    final NodeQuery query;
+    final int[] ancestorConstraints;
+    final int hashCode;
+
+    CacheKey(final Object coreKey, final NodeQuery query) {
+      this(coreKey, query.getBoost() != 1.0f ? withNeutralBoost(query) : query,
+        query.getAncestorConstraints());
+    }
+
+    private CacheKey(final Object coreKey, final NodeQuery query, final int[] ancestorConstraints) {
+      this.coreKey = coreKey;
+      this.query = query;
+      this.ancestorConstraints = ancestorConstraints;
+      this.hashCode = this.computeHashCode();
+    }
+
+    /**
+     * The boost does not change the matches
+     */
+    private static NodeQuery withNeutralBoost(final NodeQuery query) {
+      final NodeQuery clone = (NodeQuery) query.clone();
+      clone.setBoost(1.0f);
+      return clone;
+    }
+
+    /**
+     * Returns a key which holds a deep copy of the query.
+     */
+    CacheKey snapshot() {
+      return new CacheKey(coreKey, (NodeQuery) query.clone(), ancestorConstraints);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (!(o instanceof CacheKey)) return false;
+      final CacheKey other = (CacheKey) o;
+      return coreKey == other.coreKey &&
+             hashCode == other.hashCode &&
+             query.equals(other.query) &&
+             Arrays.equals(ancestorConstraints, other.ancestorConstraints);
+    }
+
+    private int computeHashCode() {
+      final int prime = 31;
+      int result = System.identityHashCode(coreKey);
+      result = prime * result + query.hashCode();
+      result = prime * result + Arrays.hashCode(ancestorConstraints);
+      return result;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+  }
+
+}
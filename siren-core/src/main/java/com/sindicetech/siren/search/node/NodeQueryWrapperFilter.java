@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.QueryWrapperFilter;
+
+/**
+ * A {@link Filter} that accepts the documents matching a {@link NodeQuery}.
+ *
+ * <p>
+ *
+ * This is the equivalent of a {@link QueryWrapperFilter} for node queries. It
+ * can be wrapped into a {@link CachingWrapperFilter} to cache the matching
+ * documents of each segment, e.g., to reuse a node query which is used only for
+ * filtering across requests, or to push it down into another node query with
+ * {@link NodeConstantScoreQuery#NodeConstantScoreQuery(NodeQuery, Filter)}.
+ */
+public class NodeQueryWrapperFilter extends QueryWrapperFilter {
+
+  public NodeQueryWrapperFilter(final NodeQuery query) {
+    super(new LuceneProxyNodeQuery(query));
+  }
+
+  /**
+   * Returns the encapsulated node query.
+   */
+  public NodeQuery getNodeQuery() {
+    return ((LuceneProxyNodeQuery) this.getQuery()).getNodeQuery();
+  }
+
+}
@@ -129,6 +129,19 @@ class NodeReqExclScorer extends NodeScorer {
     return this.toNonExcludedNode();
   }
 
+  @Override
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    if (!reqScorer.skipToNode(target)) {
+      return false;
+    }
+
+    if (exclScorer == null || exclScorer.doc() != reqScorer.doc()) {
+      return true;
+    }
+
+    return this.toNonExcludedNode();
+  }
+
   /**
    * Advance to a non excluded node. <br>
    * On entry:
@@ -156,8 +169,9 @@ class NodeReqExclScorer extends NodeScorer {
         return false;
       }
 
-      // if node equal or excluded node ancestor, advance to next node
-      if (!exclScorer.nextNode()) {
+      // if node equal or excluded node ancestor, advance the excluded scorer
+      // to the required node
+      if (!exclScorer.skipToNode(reqScorer.node())) {
         return true;
       }
 
@@ -203,6 +217,11 @@ class NodeReqExclScorer extends NodeScorer {
     return this.toNonExcludedCandidateDocument();
   }
 
+  @Override
+  public long cost() {
+    return reqScorer.cost();
+  }
+
   @Override
   public String toString() {
     return "NodeReqExclScorer(" + weight + "," + this.doc() + "," +
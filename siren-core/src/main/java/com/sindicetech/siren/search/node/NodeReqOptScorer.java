@@ -72,6 +72,11 @@ class NodeReqOptScorer extends NodeScorer {
     return reqScorer.nextNode();
   }
 
+  @Override
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    return reqScorer.skipToNode(target);
+  }
+
   @Override
   public boolean skipToCandidate(final int target) throws IOException {
     return reqScorer.skipToCandidate(target);
@@ -107,12 +112,10 @@ class NodeReqOptScorer extends NodeScorer {
      * the optional scorer can be in a node that is before the one where
      * the required scorer is in.
      */
-    int cmp = 1;
-    while ((cmp = NodeUtils.compare(optScorer.node(), reqNode)) < 0) {
-      if (!optScorer.nextNode()) {
-        return reqFreq;
-      }
+    if (!optScorer.skipToNode(reqNode)) {
+      return reqFreq;
     }
+    final int cmp = NodeUtils.compare(optScorer.node(), reqNode);
     // If the optional scorer matches the same node, increase the freq
     return (optScorer.doc() == doc && cmp == 0)
            ? reqFreq + optScorer.freqInNode()
@@ -137,18 +140,21 @@ class NodeReqOptScorer extends NodeScorer {
      * the optional scorer can be in a node that is before the one where
      * the required scorer is in.
      */
-    int cmp = 1;
-    while ((cmp = NodeUtils.compare(optScorer.node(), reqNode)) < 0) {
-      if (!optScorer.nextNode()) {
-        return reqScore;
-      }
+    if (!optScorer.skipToNode(reqNode)) {
+      return reqScore;
     }
+    final int cmp = NodeUtils.compare(optScorer.node(), reqNode);
     // If the optional scorer matches the same node, increase the score
     return (optScorer.doc() == doc && cmp == 0)
            ? reqScore + optScorer.scoreInNode()
            : reqScore;
   }
 
+  @Override
+  public long cost() {
+    return reqScorer.cost();
+  }
+
   @Override
   public String toString() {
     return "NodeReqOptScorer(" + weight + "," +
@@ -23,6 +23,9 @@ import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.IntsRef;
 
+import com.sindicetech.siren.index.DocsAndNodesIterator;
+import com.sindicetech.siren.util.NodeUtils;
+
 import java.io.IOException;
 
 /**
@@ -77,6 +80,34 @@ public abstract class NodeScorer extends Scorer {
    */
   public abstract boolean skipToCandidate(int target) throws IOException;
 
+  /**
+   * Skip to the first matching node of the current candidate document whose
+   * label is greater than or equal to <i>target</i>. Returns false if there
+   * are no more nodes in the current document.
+   * <p>
+   * <b>NOTE:</b> when <code> target &le; current</code> implementations must
+   * not advance beyond their current {@link #node()}.
+   * <p>
+   * This default implementation scans the nodes with {@link #nextNode()}.
+   * Subclasses should delegate to their sub-scorers, so that the skip data of
+   * the postings can be used to jump over the nodes lower than the target.
+   */
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    final IntsRef node = this.node();
+    if (NodeUtils.compare(node, DocsAndNodesIterator.NO_MORE_NOD) == 0) {
+      return false;
+    }
+    if (NodeUtils.compare(node, target) >= 0) {
+      return true;
+    }
+    while (this.nextNode()) {
+      if (NodeUtils.compare(this.node(), target) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Returns the following:
    * <ul>
@@ -111,6 +142,17 @@ public abstract class NodeScorer extends Scorer {
    */
   public abstract float scoreInNode() throws IOException;
 
+  /**
+   * Returns the estimated cost of this scorer.
+   * <p>
+   * This is an upper bound of the number of candidate documents this scorer
+   * might return, generally derived from the document frequency of the terms
+   * of the query. It is used to order the sub-scorers of a conjunction, so
+   * that the leapfrog is driven by the most selective one.
+   */
+  @Override
+  public abstract long cost();
+
   /**
    * Methods implemented in {@link LuceneProxyNodeScorer}
    */
@@ -140,10 +182,4 @@ public abstract class NodeScorer extends Scorer {
     throw new UnsupportedOperationException();
   }
 
-  // TODO: new cost API introduced in LUCENE-4607
-  @Override
-  public long cost() {
-    throw new UnsupportedOperationException();
-  }
-
 }
@@ -22,6 +22,8 @@ package com.sindicetech.siren.search.node;
 import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.*;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ToStringUtils;
@@ -96,7 +98,19 @@ public class NodeTermQuery extends DatatypedNodeQuery {
 
       final DocsAndPositionsEnum docsEnum = termsEnum.docsAndPositions(acceptDocs, null);
       final DocsNodesAndPositionsEnum sirenDocsEnum = NodeTermQuery.this.getDocsNodesAndPositionsEnum(docsEnum);
-      return new NodeTermScorer(this, sirenDocsEnum, similarity.simScorer(stats, context));
+      return new NodeTermScorer(this, sirenDocsEnum, termsEnum.docFreq(),
+        similarity.simScorer(stats, context), this.hasMaxScore(context));
+    }
+
+    /**
+     * Returns true if the score of a node can be bounded based on the term
+     * frequency only: the field must have no norms, and the similarity must
+     * be a {@link DefaultSimilarity} or a {@link BM25Similarity}, whose term
+     * frequency functions are concave.
+     */
+    private boolean hasMaxScore(final AtomicReaderContext context) throws IOException {
+      return (similarity instanceof DefaultSimilarity || similarity instanceof BM25Similarity) &&
+             context.reader().getNormValues(term.field()) == null;
     }
 
     /**
@@ -179,6 +193,11 @@ public class NodeTermQuery extends DatatypedNodeQuery {
     return term;
   }
 
+  @Override
+  long pathDocCount(final AtomicReader reader) throws IOException {
+    return pathDocCount(reader, term);
+  }
+
   @Override
   public Weight createWeight(final IndexSearcher searcher) throws IOException {
     final IndexReaderContext context = searcher.getTopReaderContext();
@@ -34,8 +34,16 @@ class NodeTermScorer extends NodePositionScorer {
 
   private final DocsNodesAndPositionsEnum docsEnum;
 
+  private final long cost;
+
   private final Similarity.SimScorer docScorer;
 
+  /**
+   * Whether the score of a node only depends on the term frequency in the
+   * node, which enables the computation of {@link #maxScoreInBlock()}.
+   */
+  private final boolean hasMaxScore;
+
   /**
    * Construct a <code>NodeTermScorer</code>.
    *
@@ -44,6 +52,8 @@ class NodeTermScorer extends NodePositionScorer {
    * @param docsEnum
    *          An iterator over the documents and the positions matching the
    *          <code>Term</code>.
+   * @param cost
+   *          The document frequency of the <code>Term</code>.
    * @param similarity
    *          The </code>Similarity</code> implementation to be used for score
    *          computations.
@@ -53,11 +63,33 @@ class NodeTermScorer extends NodePositionScorer {
    */
   protected NodeTermScorer(final Weight weight,
                            final DocsNodesAndPositionsEnum docsEnum,
+                           final long cost,
                            final Similarity.SimScorer docScorer)
+  throws IOException {
+    this(weight, docsEnum, cost, docScorer, false);
+  }
+
+  /**
+   * Construct a <code>NodeTermScorer</code> which can compute an upper bound
+   * of the score of the documents of a block with {@link #maxScoreInBlock()}.
+   *
+   * @param hasMaxScore
+   *          True if the score of a node only depends on the term frequency
+   *          in the node, i.e., the field has no norms, and if the score is a
+   *          monotonic and concave function of the term frequency which is
+   *          null for a null frequency.
+   */
+  protected NodeTermScorer(final Weight weight,
+                           final DocsNodesAndPositionsEnum docsEnum,
+                           final long cost,
+                           final Similarity.SimScorer docScorer,
+                           final boolean hasMaxScore)
   throws IOException {
     super(weight);
     this.docScorer = docScorer;
     this.docsEnum = docsEnum;
+    this.cost = cost;
+    this.hasMaxScore = hasMaxScore;
   }
 
   @Override
@@ -91,6 +123,11 @@ class NodeTermScorer extends NodePositionScorer {
     return docsEnum.nextNode();
   }
 
+  @Override
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    return docsEnum.skipToNode(target);
+  }
+
   @Override
   public boolean nextPosition() throws IOException {
     return docsEnum.nextPosition();
@@ -108,6 +145,45 @@ class NodeTermScorer extends NodePositionScorer {
     return docsEnum.skipTo(target);
   }
 
+  @Override
+  public long cost() {
+    return cost;
+  }
+
+  /**
+   * Expert: Move to the block of postings which contains the first document
+   * greater than or equal to the target, without decoding it, and return the
+   * last document of the block.
+   *
+   * @see DocsNodesAndPositionsEnum#advanceShallow(int)
+   */
+  int advanceShallow(final int target) throws IOException {
+    return docsEnum.advanceShallow(target);
+  }
+
+  /**
+   * Expert: Returns an upper bound of the score of a document in the block of
+   * the last call to {@link #advanceShallow(int)}, or
+   * {@link Float#POSITIVE_INFINITY} if it is unknown.
+   *
+   * <p>
+   *
+   * The score of a document is the sum of the scores of its nodes. It is
+   * bounded by the maximum node frequency times the score of the maximum term
+   * frequency in a node, and, as the score is concave, by the maximum term
+   * frequency in a document times the score of a single occurrence.
+   */
+  float maxScoreInBlock() {
+    final int maxNodeFreq = docsEnum.blockMaxNodeFreq();
+    if (!hasMaxScore || maxNodeFreq == 0) {
+      return Float.POSITIVE_INFINITY;
+    }
+    // the field has no norms, the document is ignored by the doc scorer
+    final float maxNodeScore = docScorer.score(0, docsEnum.blockMaxTermFreqInNode());
+    final float unitScore = docScorer.score(0, 1);
+    return Math.min(maxNodeFreq * maxNodeScore, docsEnum.blockMaxTermFreqInDoc() * unitScore);
+  }
+
   @Override
   public String toString() {
     return "NodeTermScorer(" + weight + "," + this.doc() + "," + this.node() + ")";
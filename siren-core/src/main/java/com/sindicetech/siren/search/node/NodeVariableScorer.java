@@ -81,4 +81,10 @@ public class NodeVariableScorer extends NodeScorer {
         return 0;
     }
 
+    @Override
+    public long cost() {
+        throwException();
+        return 0;
+    }
+
 }
@@ -81,14 +81,13 @@ class TwigConjunctionScorer extends NodeConjunctionScorer {
   root: // label statement for the beginning of the loop
     while (root.nextNode()) {
       for (int i = 0; i < descendants.length; i++) {
-        int c;
-        while ((c = NodeUtils.compareAncestor(root.node(), descendants[i].node())) > 0) {
-          if (!descendants[i].nextNode()) {
-            lastNode = DocsAndNodesIterator.NO_MORE_NOD;
-            return false;
-          }
+        // the descendants of the root node follow it in the node order
+        if (NodeUtils.compareAncestor(root.node(), descendants[i].node()) > 0 &&
+            !descendants[i].skipToNode(root.node())) {
+          lastNode = DocsAndNodesIterator.NO_MORE_NOD;
+          return false;
         }
-        if (c < 0) { // root node behind
+        if (NodeUtils.compareAncestor(root.node(), descendants[i].node()) < 0) { // root node behind
           // continue to the label statement and move to the next root's node
           continue root;
         }
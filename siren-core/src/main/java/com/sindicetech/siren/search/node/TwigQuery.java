@@ -19,6 +19,7 @@
 
 package com.sindicetech.siren.search.node;
 
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
@@ -74,6 +75,12 @@ public class TwigQuery extends NodeQuery {
 
   protected ArrayList<NodeBooleanClause> clauses = new ArrayList<NodeBooleanClause>();
 
+  /**
+   * The cache of node matches for the prohibited clauses, or <code>null</code>
+   * if matches are not cached
+   */
+  protected NodeQueryCache queryCache;
+
   /**
    * Constructs an empty twig query at a given level
    */
@@ -108,6 +115,26 @@ public class TwigQuery extends NodeQuery {
     root.setAncestorPointer(ancestor);
   }
 
+  /**
+   * Expert: Sets the cache used to store and retrieve the node matches of the
+   * prohibited clauses. The scores of prohibited clauses are never used, so
+   * their matches can be shared across queries. By default, no cache is used.
+   * <p>
+   * Constant score clauses can be cached with
+   * {@link NodeConstantScoreQuery#setNodeQueryCache(NodeQueryCache)}.
+   */
+  public void setNodeQueryCache(final NodeQueryCache queryCache) {
+    this.queryCache = queryCache;
+  }
+
+  /**
+   * Expert: Returns the cache of node matches, or <code>null</code> if none
+   * is used.
+   */
+  public NodeQueryCache getNodeQueryCache() {
+    return queryCache;
+  }
+
   /**
    * Adds a clause to a twig query.
    *
@@ -343,14 +370,55 @@ public class TwigQuery extends NodeQuery {
     @Override
     public Scorer scorer(final AtomicReaderContext context, final Bits acceptDocs)
     throws IOException {
+      if (!this.isNestedConjunction()) {
+        return this.twigScorer(context, acceptDocs);
+      }
+      // choose between the join and the pairwise evaluation of the tree from
+      // the costs of its scorers, which are created only once
+      final TwigStackScorer.Twig twig = this.twig(context, acceptDocs);
+      if (twig == null) {
+        return null;
+      }
+      return twig.isJoinCheaper() ? new TwigStackScorer(this, twig) : twig.twigScorer();
+    }
+
+    /**
+     * Creates a {@link TwigScorer} for the twig. The nested twigs are also
+     * evaluated by a {@link TwigScorer}.
+     */
+    NodeScorer twigScorer(final AtomicReaderContext context, final Bits acceptDocs)
+    throws IOException {
+      // check the paths of the root and of all the clauses before creating
+      // any scorer
+      if (root.pathDocCount(context.reader()) == 0) {
+        return null;
+      }
+      final long[] counts = pathDocCounts(context.reader(), clauses);
+      if (counts == null) {
+        return null;
+      }
+
       final NodeScorer rootScorer = (NodeScorer) rootWeight.scorer(context, acceptDocs);
       final List<NodeScorer> required = new ArrayList<NodeScorer>();
       final List<NodeScorer> prohibited = new ArrayList<NodeScorer>();
       final List<NodeScorer> optional = new ArrayList<NodeScorer>();
       final Iterator<NodeBooleanClause> cIter = clauses.iterator();
-      for (final Weight w  : weights) {
+      for (int i = 0; i < weights.size(); i++) {
+        final Weight w = weights.get(i);
         final NodeBooleanClause c =  cIter.next();
-        final NodeScorer subScorer = (NodeScorer) w.scorer(context, acceptDocs);
+        final NodeScorer subScorer;
+        if (counts[i] == 0) {
+          subScorer = null;
+        }
+        else if (queryCache != null && c.isProhibited()) {
+          subScorer = this.cachedScorer(context, acceptDocs, c.getQuery(), w);
+        }
+        else if (w instanceof TwigWeight) {
+          subScorer = ((TwigWeight) w).twigScorer(context, acceptDocs);
+        }
+        else {
+          subScorer = (NodeScorer) w.scorer(context, acceptDocs);
+        }
         if (subScorer == null) {
           if (c.isRequired()) {
             return null;
@@ -379,6 +447,93 @@ public class TwigQuery extends NodeQuery {
       }
     }
 
+    /**
+     * Returns true if the twig has at least one nested twig, and if all the
+     * clauses of the tree of twigs are required. The root nodes of such a tree
+     * may be matched in one pass by a {@link TwigStackScorer}.
+     */
+    private boolean isNestedConjunction() {
+      for (final Weight w : weights) {
+        if (w instanceof TwigWeight) {
+          return this.isConjunction();
+        }
+      }
+      return false;
+    }
+
+    private boolean isConjunction() {
+      if (clauses.isEmpty()) {
+        return false;
+      }
+      for (int i = 0; i < weights.size(); i++) {
+        if (!clauses.get(i).isRequired()) {
+          return false;
+        }
+        if (weights.get(i) instanceof TwigWeight &&
+            !((TwigWeight) weights.get(i)).isConjunction()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Creates the twig of a {@link TwigStackScorer} with the scorers of the
+     * root and of the clauses, or returns <code>null</code> if one of them
+     * does not match any document.
+     */
+    private TwigStackScorer.Twig twig(final AtomicReaderContext context,
+                                      final Bits acceptDocs)
+    throws IOException {
+      // check the paths of the root and of all the clauses before creating
+      // any scorer
+      if (root.pathDocCount(context.reader()) == 0 ||
+          pathDocCounts(context.reader(), clauses) == null) {
+        return null;
+      }
+      NodeScorer rootScorer = null;
+      if (!(root instanceof EmptyRootQuery)) {
+        if ((rootScorer = (NodeScorer) rootWeight.scorer(context, acceptDocs)) == null) {
+          return null;
+        }
+      }
+      final List<NodeScorer> scorers = new ArrayList<NodeScorer>();
+      final List<TwigStackScorer.Twig> twigs = new ArrayList<TwigStackScorer.Twig>();
+      for (final Weight w : weights) {
+        if (w instanceof TwigWeight) {
+          final TwigStackScorer.Twig twig = ((TwigWeight) w).twig(context, acceptDocs);
+          if (twig == null) {
+            return null;
+          }
+          twigs.add(twig);
+        }
+        else {
+          final NodeScorer scorer = (NodeScorer) w.scorer(context, acceptDocs);
+          if (scorer == null) {
+            return null;
+          }
+          scorers.add(scorer);
+        }
+      }
+      return new TwigStackScorer.Twig(this, rootScorer, levelConstraint, scorers, twigs);
+    }
+
+    /**
+     * Returns a scorer over the cached node matches of the clause, or
+     * <code>null</code> if the clause does not match any node.
+     */
+    private NodeScorer cachedScorer(final AtomicReaderContext context,
+                                    final Bits acceptDocs,
+                                    final NodeQuery query, final Weight w)
+    throws IOException {
+      final DocNodeSet set = queryCache.getDocNodeSet(context, query, w);
+      if (set.isEmpty()) {
+        return null;
+      }
+      // scores of prohibited clauses are ignored
+      return set.scorer(w, 0, acceptDocs);
+    }
+
     @Override
     public Query getQuery() {
       return TwigQuery.this;
@@ -391,6 +546,28 @@ public class TwigQuery extends NodeQuery {
 
   }
 
+  /**
+   * A twig with a root matches at most the documents of its most selective
+   * required clause or root. A twig with an empty root is a node boolean
+   * combination of its clauses.
+   */
+  @Override
+  long pathDocCount(final AtomicReader reader) throws IOException {
+    if (root instanceof EmptyRootQuery) {
+      return NodeBooleanQuery.pathDocCount(reader, clauses);
+    }
+    long count = root.pathDocCount(reader);
+    for (final NodeBooleanClause c : clauses) {
+      if (count == 0) {
+        break;
+      }
+      if (c.isRequired()) {
+        count = minPathDocCount(count, c.getQuery().pathDocCount(reader));
+      }
+    }
+    return count;
+  }
+
   @Override
   public Weight createWeight(final IndexSearcher searcher) throws IOException {
     return new TwigWeight(searcher);
@@ -536,11 +713,21 @@ public class TwigQuery extends NodeQuery {
     }
   }
 
-  @Override @SuppressWarnings("unchecked")
+  /**
+   * Returns a deep copy of the query. The root and the clauses are cloned, as
+   * their constraints are modified in place by the weights of their ancestors.
+   */
+  @Override
   public Query clone() {
     final TwigQuery clone = (TwigQuery) super.clone();
-    clone.clauses = (ArrayList<NodeBooleanClause>) this.clauses.clone();
     clone.root = (NodeQuery) this.root.clone();
+    clone.clauses = new ArrayList<NodeBooleanClause>(clauses.size());
+    for (final NodeBooleanClause clause : clauses) {
+      final NodeQuery query = (NodeQuery) clause.getQuery().clone();
+      // the clauses point to the root of the clone
+      query.setAncestorPointer(clone.root);
+      clone.clauses.add(new NodeBooleanClause(query, clause.getOccur()));
+    }
     return clone;
   }
 
@@ -728,6 +915,11 @@ public class TwigQuery extends NodeQuery {
           throw new UnsupportedOperationException("EmptyRootScorer#scoreInNode should not be called");
         }
 
+        @Override
+        public long cost() {
+          throw new UnsupportedOperationException("EmptyRootScorer#cost should not be called");
+        }
+
       }
 
     }
@@ -0,0 +1,474 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntsRef;
+
+import com.sindicetech.siren.index.DocsAndNodesIterator;
+import com.sindicetech.siren.util.NodeUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A {@link NodeScorer} that matches a whole tree of nested twigs in one pass
+ * over the node-ordered postings of its scorers, in the spirit of the holistic
+ * TwigStack join.
+ *
+ * <p>
+ *
+ * The {@link TwigScorer} evaluates each twig as a conjunction of its root with
+ * its clauses filtered by an {@link AncestorFilterScorer}, and the nested twigs
+ * are evaluated independently of each other. The scorers of a nested twig may
+ * then look for matches under ancestors that were already discarded.
+ * This scorer instead keeps, for each twig of the tree, the ancestor node it
+ * is currently positioned on, and drives all the scorers of the tree with the
+ * same target: a twig only advances its descendants to the subtree of its
+ * candidate ancestor, and jumps to the ancestor of the first descendant as
+ * soon as one of them leaves this subtree.
+ *
+ * <p>
+ *
+ * Each matching root node is returned once. Its score and its frequency are
+ * the sums of the scores and of the frequencies of the root and of all the
+ * matching descendant nodes of its subtree, which are collected from the
+ * scorers of the tree when the root node is scored.
+ *
+ * <p>
+ *
+ * As the level of each twig is fixed, the stack of candidate ancestors of the
+ * TwigStack algorithm reduces to a single node per twig. This scorer only
+ * supports twigs whose clauses are all required, at any depth of the tree.
+ *
+ * @see TwigQuery.TwigWeight#scorer(org.apache.lucene.index.AtomicReaderContext, org.apache.lucene.util.Bits)
+ */
+class TwigStackScorer extends NodeScorer {
+
+  private final Twig twig;
+
+  /**
+   * The conjunction of all the scorers of the tree, used to find the candidate
+   * documents
+   */
+  private final NodeConjunctionScorer conjunction;
+
+  private final IntsRef UNSET_NODE = new IntsRef(new int[] { -1 }, 0, 1);
+
+  private IntsRef node = UNSET_NODE;
+
+  /** The node following the subtree of the current node */
+  private final IntsRef next = new IntsRef();
+
+  /** Whether the current node has been scored */
+  private boolean scored = false;
+
+  /**
+   * Creates a scorer over the given tree of twigs.
+   *
+   * @param weight
+   *          The weight of the top twig.
+   * @param twig
+   *          The top twig.
+   */
+  public TwigStackScorer(final Weight weight, final Twig twig) throws IOException {
+    super(weight);
+    this.twig = twig;
+    final List<NodeScorer> scorers = new ArrayList<NodeScorer>();
+    twig.collectScorers(scorers);
+    this.conjunction = new NodeConjunctionScorer(weight, 1.0f, scorers);
+  }
+
+  @Override
+  public boolean nextCandidateDocument() throws IOException {
+    return this.updateCurrentDocument(conjunction.nextCandidateDocument());
+  }
+
+  @Override
+  public boolean skipToCandidate(final int target) throws IOException {
+    return this.updateCurrentDocument(conjunction.skipToCandidate(target));
+  }
+
+  private boolean updateCurrentDocument(final boolean more) {
+    twig.reset();
+    node = more ? UNSET_NODE : DocsAndNodesIterator.NO_MORE_NOD;
+    return more;
+  }
+
+  @Override
+  public boolean nextNode() throws IOException {
+    if (node == DocsAndNodesIterator.NO_MORE_NOD) {
+      return false;
+    }
+    if (node == UNSET_NODE) {
+      return this.advance(UNSET_NODE);
+    }
+    // the next root node follows the subtree of the current one
+    next.copyInts(node);
+    next.ints[next.length - 1]++;
+    return this.advance(next);
+  }
+
+  @Override
+  public boolean skipToNode(final IntsRef target) throws IOException {
+    if (node == DocsAndNodesIterator.NO_MORE_NOD) {
+      return false;
+    }
+    if (node != UNSET_NODE && NodeUtils.compare(node, target) >= 0) {
+      return true;
+    }
+    return this.advance(target);
+  }
+
+  /**
+   * Positions the twig on the first matching root node greater than or equal
+   * to the target.
+   */
+  private boolean advance(final IntsRef target) throws IOException {
+    scored = false;
+    if (twig.advanceTo(target)) {
+      node = twig.current;
+      return true;
+    }
+    node = DocsAndNodesIterator.NO_MORE_NOD;
+    return false;
+  }
+
+  @Override
+  public int doc() {
+    return conjunction.doc();
+  }
+
+  @Override
+  public IntsRef node() {
+    return node;
+  }
+
+  @Override
+  public int freqInNode() throws IOException {
+    this.scoreCurrentNode();
+    return twig.freq;
+  }
+
+  @Override
+  public float scoreInNode() throws IOException {
+    this.scoreCurrentNode();
+    return twig.score;
+  }
+
+  /**
+   * Scores the current root node. The scorers of the tree are moved past the
+   * descendants of the root node, so it is scored only once.
+   */
+  private void scoreCurrentNode() throws IOException {
+    if (!scored) {
+      twig.score();
+      scored = true;
+    }
+  }
+
+  @Override
+  public long cost() {
+    // the tree cannot match more documents than its least costly scorer
+    return conjunction.cost();
+  }
+
+  @Override
+  public String toString() {
+    return "TwigStackScorer(" + weight + "," + this.doc() + "," +
+      this.node() + ")";
+  }
+
+  /**
+   * A twig of the tree, with its root scorer, the scorers of its clauses and
+   * its nested twigs.
+   */
+  static class Twig {
+
+    private final TwigQuery.TwigWeight weight;
+
+    /** The scorer of the root, or <code>null</code> if the root is empty */
+    private final NodeScorer root;
+
+    private final int level;
+
+    private final NodeScorer[] scorers;
+
+    private final Twig[] twigs;
+
+    /** The ancestor node the twig is positioned on */
+    private final IntsRef current = new IntsRef();
+
+    private boolean positioned = false;
+
+    /** The candidate ancestor node */
+    private final IntsRef candidate = new IntsRef();
+
+    /** The node following the subtree of the current ancestor node */
+    private final IntsRef next = new IntsRef();
+
+    /** The score of the current ancestor node */
+    private float score;
+
+    /** The frequency of the current ancestor node */
+    private int freq;
+
+    /**
+     * Creates a twig. The scorers of the clauses are tried in order of
+     * increasing cost, as the least costly ones are the most likely to skip to
+     * another ancestor.
+     *
+     * @param weight
+     *          The weight of the twig.
+     * @param root
+     *          The scorer of the root, or <code>null</code> if the root is empty.
+     * @param level
+     *          The level of the twig root.
+     * @param scorers
+     *          The scorers of the clauses which are not twigs.
+     * @param twigs
+     *          The nested twigs.
+     */
+    Twig(final TwigQuery.TwigWeight weight, final NodeScorer root, final int level,
+         final List<NodeScorer> scorers, final List<Twig> twigs) {
+      if (root == null && scorers.isEmpty() && twigs.isEmpty()) {
+        throw new IllegalArgumentException("A twig with an empty root must have at least one clause");
+      }
+      this.weight = weight;
+      this.root = root;
+      this.level = level;
+      this.scorers = scorers.toArray(new NodeScorer[scorers.size()]);
+      ArrayUtil.timSort(this.scorers, new Comparator<NodeScorer>() {
+        public int compare(final NodeScorer o1, final NodeScorer o2) {
+          return Long.compare(o1.cost(), o2.cost());
+        }
+      });
+      this.twigs = twigs.toArray(new Twig[twigs.size()]);
+    }
+
+    /**
+     * Returns true if the tree is cheaper to evaluate with a
+     * {@link TwigStackScorer} than with a {@link TwigScorer}.
+     *
+     * <p>
+     *
+     * The join pays off when the ancestors are at least as selective as the
+     * nested twigs: the scorers of the nested twigs are then only advanced
+     * within the subtrees of the candidate ancestors, instead of being
+     * evaluated over the whole document. When a nested twig is more selective
+     * than the root and the other clauses, it drives the conjunction of the
+     * {@link TwigScorer} anyway, and the bookkeeping of the join does not pay
+     * off. A twig with an empty root and without any other clause is joined
+     * only if its nested twigs can restrict each other.
+     */
+    boolean isJoinCheaper() {
+      long ancestorCost = Long.MAX_VALUE;
+      if (root != null) {
+        ancestorCost = root.cost();
+      }
+      for (final NodeScorer scorer : scorers) {
+        ancestorCost = Math.min(ancestorCost, scorer.cost());
+      }
+      if (ancestorCost == Long.MAX_VALUE) {
+        return twigs.length > 1;
+      }
+      long descendantCost = Long.MAX_VALUE;
+      for (final Twig twig : twigs) {
+        descendantCost = Math.min(descendantCost, twig.cost());
+      }
+      return ancestorCost <= descendantCost;
+    }
+
+    /**
+     * Returns the cost of the least costly scorer of the twig
+     */
+    private long cost() {
+      long cost = root == null ? Long.MAX_VALUE : root.cost();
+      for (final NodeScorer scorer : scorers) {
+        cost = Math.min(cost, scorer.cost());
+      }
+      for (final Twig twig : twigs) {
+        cost = Math.min(cost, twig.cost());
+      }
+      return cost;
+    }
+
+    /**
+     * Creates a {@link TwigScorer} over the scorers of the twig, for the
+     * pairwise evaluation of the tree.
+     */
+    NodeScorer twigScorer() throws IOException {
+      final List<NodeScorer> required = new ArrayList<NodeScorer>();
+      for (final NodeScorer scorer : scorers) {
+        required.add(scorer);
+      }
+      for (final Twig twig : twigs) {
+        required.add(twig.twigScorer());
+      }
+      final List<NodeScorer> prohibited = new ArrayList<NodeScorer>();
+      final List<NodeScorer> optional = new ArrayList<NodeScorer>();
+      if (root == null) {
+        return new TwigScorer(weight, level, required, prohibited, optional);
+      }
+      return new TwigScorer(weight, root, level, required, prohibited, optional);
+    }
+
+    private void collectScorers(final List<NodeScorer> list) {
+      if (root != null) {
+        list.add(root);
+      }
+      for (final NodeScorer scorer : scorers) {
+        list.add(scorer);
+      }
+      for (final Twig twig : twigs) {
+        twig.collectScorers(list);
+      }
+    }
+
+    private void reset() {
+      positioned = false;
+      for (final Twig twig : twigs) {
+        twig.reset();
+      }
+    }
+
+    /**
+     * Positions the twig on its first matching ancestor node greater than or
+     * equal to the target. The targets must be increasing within a document.
+     */
+    private boolean advanceTo(final IntsRef target) throws IOException {
+      if (positioned && NodeUtils.compare(current, target) >= 0) {
+        return true;
+      }
+
+      IntsRef t = target;
+      while (true) {
+        // find the next candidate ancestor
+        if (root != null) {
+          if (!root.skipToNode(t)) {
+            return false;
+          }
+          candidate.copyInts(root.node());
+        }
+        else {
+          if (!this.advanceDescendant(0, t)) {
+            return false;
+          }
+          this.copyAncestor(this.descendantNode(0));
+          if (NodeUtils.compare(candidate, t) < 0) {
+            // the target is a descendant of the ancestor: move to the next one
+            candidate.ints[candidate.length - 1]++;
+            t = candidate;
+            continue;
+          }
+        }
+
+        t = null;
+        // check that each clause has a descendant of the candidate ancestor
+        for (int i = 0; i < scorers.length + twigs.length; i++) {
+          if (!this.advanceDescendant(i, candidate)) {
+            return false;
+          }
+          final IntsRef descendant = this.descendantNode(i);
+          if (NodeUtils.compareAncestor(candidate, descendant) != 0) {
+            // the descendant is beyond the subtree of the candidate: move to
+            // its own ancestor
+            this.copyAncestor(descendant);
+            t = candidate;
+            break;
+          }
+        }
+
+        if (t == null) {
+          // all the clauses match
+          current.copyInts(candidate);
+          positioned = true;
+          return true;
+        }
+      }
+    }
+
+    /**
+     * Computes the score and the frequency of the current ancestor node, by
+     * summing the ones of the root and of the matching descendant nodes of its
+     * subtree. The scorers of the clauses and the nested twigs are moved past
+     * the subtree.
+     */
+    private void score() throws IOException {
+      score = 0;
+      freq = 0;
+      if (root != null) {
+        score += root.scoreInNode();
+        freq += root.freqInNode();
+      }
+      for (final NodeScorer scorer : scorers) {
+        do {
+          score += scorer.scoreInNode();
+          freq += scorer.freqInNode();
+        } while (scorer.nextNode() &&
+                 NodeUtils.compareAncestor(current, scorer.node()) == 0);
+      }
+      for (final Twig twig : twigs) {
+        do {
+          twig.score();
+          score += twig.score;
+          freq += twig.freq;
+        } while (twig.advanceToNext() &&
+                 NodeUtils.compareAncestor(current, twig.current) == 0);
+      }
+    }
+
+    /**
+     * Positions the twig on its first matching ancestor node following the
+     * subtree of the current one.
+     */
+    private boolean advanceToNext() throws IOException {
+      next.copyInts(current);
+      next.ints[next.length - 1]++;
+      return this.advanceTo(next);
+    }
+
+    private boolean advanceDescendant(final int i, final IntsRef target)
+    throws IOException {
+      return i < scorers.length ? scorers[i].skipToNode(target)
+                                : twigs[i - scorers.length].advanceTo(target);
+    }
+
+    private IntsRef descendantNode(final int i) {
+      return i < scorers.length ? scorers[i].node()
+                                : twigs[i - scorers.length].current;
+    }
+
+    /**
+     * Copies the ancestor of the given descendant node at the level of the twig
+     * into the candidate node.
+     */
+    private void copyAncestor(final IntsRef descendant) {
+      assert descendant.length > level;
+      candidate.copyInts(descendant);
+      candidate.length = level;
+    }
+
+  }
+
+}
@@ -191,6 +191,11 @@ class BooleanSpans extends Spans {
     return parentSpans.getSlop();
   }
 
+  @Override
+  public long cost() {
+    return parentSpans.cost();
+  }
+
   @Override
   public boolean skipToCandidate(final int target) throws IOException {
     return parentSpans.skipToCandidate(target);
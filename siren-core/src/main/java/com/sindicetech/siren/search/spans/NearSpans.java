@@ -18,9 +18,8 @@
  */
 package com.sindicetech.siren.search.spans;
 
-import org.apache.lucene.util.ArrayUtil;
-import org.apache.lucene.util.InPlaceMergeSorter;
 import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.PriorityQueue;
 
 import com.sindicetech.siren.index.DocsAndNodesIterator;
 import com.sindicetech.siren.util.NodeUtils;
@@ -44,48 +43,23 @@ abstract class NearSpans extends Spans {
   protected final Spans[] subSpans;
 
   /**
-   * The spans array that will be used for the sorting. This is necessary as we do not want to lose the order of
-   * spans in {@link #subSpans}.
+   * The spans partially ordered by document. The spans are aligned on the same
+   * document by skipping the minimum of the queue to the maximum document, so
+   * that a spans which is already on the maximum document is never advanced.
    */
-  private final Spans[] subSpansSort;
+  private final DocQueue docQueue;
+
+  /**
+   * The spans partially ordered by node and start position, used to align the
+   * spans on the same node of the current document.
+   */
+  private final NodeQueue nodeQueue;
 
   private int matchDoc = -1;
   private IntsRef matchNode = DocsAndNodesIterator.NULL_NODE;
   protected int matchStart = -1;
   protected int matchEnd = -1;
 
-  // Even though the array is probably almost sorted, InPlaceMergeSorter will likely
-  // perform better since it has a lower overhead than TimSorter for small arrays
-  // TODO: Investigate if a priority queue will not be more performant than multiple sorters
-
-  /**
-   * A spans array sorter based on the document identifier
-   */
-  private final InPlaceMergeSorter docSorter = new InPlaceMergeSorter() {
-    @Override
-    protected void swap(final int i, final int j) {
-      ArrayUtil.swap(subSpansSort, i, j);
-    }
-    @Override
-    protected int compare(final int i, final int j) {
-      return subSpansSort[i].doc() - subSpansSort[j].doc();
-    }
-  };
-
-  /**
-   * A spans array sorter based on the node
-   */
-  private final InPlaceMergeSorter nodeSorter = new InPlaceMergeSorter() {
-    @Override
-    protected void swap(final int i, final int j) {
-      ArrayUtil.swap(subSpansSort, i, j);
-    }
-    @Override
-    protected int compare(int i, int j) {
-      return NodeUtils.compare(subSpansSort[i].node(), subSpansSort[j].node());
-    }
-  };
-
   public NearSpans(final List<Spans> spans, final int slop) throws IOException {
     if (spans.size() < 2) {
       throw new IllegalArgumentException("Less than 2 spans clauses");
@@ -94,10 +68,11 @@ abstract class NearSpans extends Spans {
     allowedSlop = slop;
 
     subSpans = new Spans[spans.size()];
-    subSpansSort = new Spans[spans.size()];
+    docQueue = new DocQueue(spans.size());
+    nodeQueue = new NodeQueue(spans.size());
     for (int i = 0; i < spans.size(); i++) {
       subSpans[i] = spans.get(i);
-      subSpansSort[i] = subSpans[i]; // used in toSameDoc()
+      docQueue.add(subSpans[i]);
     }
   }
 
@@ -126,22 +101,27 @@ abstract class NearSpans extends Spans {
     return minCost;
   }
 
+  /**
+   * All the spans are on the same document, the current match or the initial
+   * one. Only the minimum of the queue is advanced, the other spans are then
+   * skipped directly to its document.
+   */
   @Override
   public boolean nextCandidateDocument() throws IOException {
     // reset matchNode, matchStart and matchEnd
     this.resetMatchNode();
     this.resetStartAndEnd();
 
-    // Advance all the spans to their next candidate
-    for (int i = 0; i < subSpans.length; i++) {
-      if (!subSpans[i].nextCandidateDocument()) {
-        matchDoc = DocsAndNodesIterator.NO_MORE_DOC;
-        return false;
-      }
+    final Spans top = docQueue.top();
+    if (!top.nextCandidateDocument()) {
+      matchDoc = DocsAndNodesIterator.NO_MORE_DOC;
+      return false;
     }
+    final int maxDoc = top.doc();
+    docQueue.updateTop();
 
     // Ensure that all the spans are on the same candidate
-    return toSameCandidateDocument();
+    return this.toSameCandidateDocument(maxDoc);
   }
 
   @Override
@@ -150,95 +130,106 @@ abstract class NearSpans extends Spans {
     this.resetMatchNode();
     this.resetStartAndEnd();
 
-    // Advance all the spans to or after the target
-    for (int i = 0; i < subSpans.length; i++) {
-      if (!subSpans[i].skipToCandidate(target)) {
-        matchDoc = DocsAndNodesIterator.NO_MORE_DOC;
-        return false;
-      }
+    // Advance the minimum to or after the target, the other spans will be skipped to its document
+    final Spans top = docQueue.top();
+    if (!top.skipToCandidate(target)) {
+      matchDoc = DocsAndNodesIterator.NO_MORE_DOC;
+      return false;
     }
+    final int maxDoc = top.doc();
+    docQueue.updateTop();
 
     // Ensure that all the spans are on the same candidate
-    return toSameCandidateDocument();
+    return this.toSameCandidateDocument(maxDoc);
   }
 
   /**
-   * Advance the spans to the same candidate document
+   * Advance the spans to the same candidate document by skipping the minimum
+   * of the queue to the maximum document, until the minimum is on the maximum
+   * document.
    */
-  private boolean toSameCandidateDocument() throws IOException {
-    docSorter.sort(0, subSpansSort.length);
-    int firstIndex = 0;
-    int maxDoc = subSpansSort[subSpansSort.length - 1].doc();
+  private boolean toSameCandidateDocument(int maxDoc) throws IOException {
+    Spans top = docQueue.top();
 
-    while (subSpansSort[firstIndex].doc() != maxDoc) {
-      if (!subSpansSort[firstIndex].skipToCandidate(maxDoc)) {
+    while (top.doc() != maxDoc) {
+      if (!top.skipToCandidate(maxDoc)) {
         matchDoc = DocsAndNodesIterator.NO_MORE_DOC;
         return false;
       }
-      maxDoc = subSpansSort[firstIndex].doc();
-      if (++firstIndex == subSpansSort.length) {
-        firstIndex = 0;
-      }
+      maxDoc = top.doc();
+      top = docQueue.updateTop();
     }
 
     // assert doc - loop will be removed by jit if assert is disabled
-    for (int i = 0; i < subSpansSort.length; i++) {
-      assert (subSpansSort[i].doc() == maxDoc)
-              : " NearSpansOrdered.toSameCandidateDocument() spans " + subSpansSort[0]
-              + "\n at doc " + subSpansSort[i].doc()
+    for (int i = 0; i < subSpans.length; i++) {
+      assert (subSpans[i].doc() == maxDoc)
+              : " NearSpans.toSameCandidateDocument() spans " + subSpans[0]
+              + "\n at doc " + subSpans[i].doc()
               + ", but should be at " + maxDoc;
     }
 
-    matchDoc = subSpans[0].doc();
+    matchDoc = maxDoc;
     return true;
   }
 
+  /**
+   * Every spans must be moved to its next node, as the iteration over the
+   * positions of a spans might have already moved it to its next node.
+   * The queue of nodes is rebuilt from there, and only its minimum is advanced
+   * afterwards.
+   */
   @Override
   public boolean nextNode() throws IOException {
     // reset matchStart and matchEnd
     this.resetStartAndEnd();
 
-    // Advance all the spans to their next node
+    nodeQueue.clear();
+    IntsRef maxNode = null;
     for (int i = 0; i < subSpans.length; i++) {
       if (!subSpans[i].nextNode()) {
         matchNode = DocsAndNodesIterator.NO_MORE_NOD;
         return false;
       }
+      if (maxNode == null || NodeUtils.compare(subSpans[i].node(), maxNode) > 0) {
+        maxNode = subSpans[i].node();
+      }
+      nodeQueue.add(subSpans[i]);
     }
 
     // Ensure that all the spans are on the same node
-    return toSameNode();
+    return this.toSameNode(maxNode);
   }
 
   /**
-   * Advance the spans to the same node
+   * Advance the spans to the same node by advancing the minimum of the queue
+   * to or after the maximum node, until the minimum is on the maximum node.
+   * <p>
+   * The reference to the maximum node is safe, as the spans holding it is not
+   * advanced until it becomes the minimum of the queue, i.e., until all the
+   * spans are on the same node.
    */
-  private boolean toSameNode() throws IOException {
-    nodeSorter.sort(0, subSpansSort.length);
-    int firstIndex = 0;
-    IntsRef maxNode = subSpansSort[subSpansSort.length - 1].node();
+  private boolean toSameNode(IntsRef maxNode) throws IOException {
+    Spans top = nodeQueue.top();
 
-    while (NodeUtils.compare(subSpansSort[firstIndex].node(), maxNode) != 0) {
-      // Advance the first span to or after the max node
+    while (NodeUtils.compare(top.node(), maxNode) != 0) {
+      // Advance the minimum to or after the max node
       do {
-        if (!subSpansSort[firstIndex].nextNode()) {
+        if (!top.nextNode()) {
           matchNode = DocsAndNodesIterator.NO_MORE_NOD;
           return false;
         }
       // ensure that we have advanced to or after the max node
-      } while (NodeUtils.compare(subSpansSort[firstIndex].node(), maxNode) < 0);
+      } while (NodeUtils.compare(top.node(), maxNode) < 0);
 
-      maxNode = subSpansSort[firstIndex].node();
-      if (++firstIndex == subSpansSort.length) {
-        firstIndex = 0;
-      }
+      maxNode = top.node();
+      top = nodeQueue.updateTop();
     }
 
     // assert node - loop will be removed by jit if assert is disabled
-    for (int i = 0; i < subSpansSort.length; i++) {
-      assert (subSpansSort[i].node().equals(maxNode))
-              : " NearSpansOrdered.toSameNode() spans " + subSpansSort[0]
-              + "\n at node " + subSpansSort[i].node()
+    for (int i = 0; i < subSpans.length; i++) {
+      assert (subSpans[i].node().equals(maxNode))
+              : " NearSpans.toSameNode() spans " + subSpans[0]
+              + "\n at node " + subSpans[i].node()
               + ", but should be at " + maxNode;
     }
 
@@ -297,5 +288,40 @@ abstract class NearSpans extends Spans {
       (doc == -1 ? "START" : (doc == DocsAndNodesIterator.NO_MORE_DOC) ? "END" : doc + "-" + node + "-" + start + "-" + end);
   }
 
-}
+  /**
+   * A queue of spans ordered by document.
+   */
+  private static final class DocQueue extends PriorityQueue<Spans> {
+
+    DocQueue(final int size) {
+      super(size);
+    }
+
+    @Override
+    protected boolean lessThan(final Spans spans1, final Spans spans2) {
+      return spans1.doc() < spans2.doc();
+    }
 
+  }
+
+  /**
+   * A queue of spans of the same document ordered by node and start position.
+   */
+  private static final class NodeQueue extends PriorityQueue<Spans> {
+
+    NodeQueue(final int size) {
+      super(size);
+    }
+
+    @Override
+    protected boolean lessThan(final Spans spans1, final Spans spans2) {
+      final int nodeComparison = NodeUtils.compare(spans1.node(), spans2.node());
+      if (nodeComparison != 0) {
+        return nodeComparison < 0;
+      }
+      return spans1.start() < spans2.start();
+    }
+
+  }
+
+}
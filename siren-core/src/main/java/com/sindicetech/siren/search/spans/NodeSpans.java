@@ -257,6 +257,11 @@ class NodeSpans extends Spans {
     return 0;
   }
 
+  @Override
+  public long cost() {
+    return scorer.cost();
+  }
+
   /**
    * Reset the {@link #currentNode} to {@link DocsAndNodesIterator#NULL_NODE}
    */
@@ -334,6 +339,11 @@ class NodeSpans extends Spans {
       return 0;
     }
 
+    @Override
+    public long cost() {
+      return 0;
+    }
+
   }
 
   public static final NodeSpans EMPTY_NODE_SPANS = new EmptyNodeSpans();
@@ -146,6 +146,11 @@ class NotSpans extends Spans {
     return includeSpans.getSlop();
   }
 
+  @Override
+  public long cost() {
+    return includeSpans.cost();
+  }
+
   @Override
   public int doc() {
     return includeSpans.doc();
@@ -116,6 +116,15 @@ class OrSpans extends Spans {
     return top().getSlop();
   }
 
+  @Override
+  public long cost() {
+    long cost = 0;
+    for (final Spans spans : subSpans) {
+      cost += spans.cost();
+    }
+    return cost;
+  }
+
   @Override
   public int doc() {
     if (top() == null) {
@@ -171,6 +171,11 @@ class ReqOptSpans extends Spans {
     return requiredSpans.getSlop();
   }
 
+  @Override
+  public long cost() {
+    return requiredSpans.cost();
+  }
+
   @Override
   public int doc() {
     return requiredSpans.doc();
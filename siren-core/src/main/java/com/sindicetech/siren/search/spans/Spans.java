@@ -137,10 +137,7 @@ abstract class Spans {
    * might match, but may be a rough heuristic, hardcoded value, or otherwise
    * completely inaccurate.
    */
-  // TODO: new cost API introduced in LUCENE-4607
-  public long cost() {
-    throw new UnsupportedOperationException();
-  }
+  public abstract long cost();
 
   /**
    * Computes a weight based on a slop. The weight will decrease as the slop becomes large.
@@ -124,7 +124,13 @@ public class TermSpanQuery extends DatatypedSpanQuery {
 
       final DocsAndPositionsEnum docsEnum = termsEnum.docsAndPositions(acceptDocs, null);
       final DocsNodesAndPositionsEnum sirenDocsEnum = TermSpanQuery.this.getDocsNodesAndPositionsEnum(docsEnum);
-      TermSpans spans = new TermSpans(sirenDocsEnum, term, similarity.simScorer(stats, context));
+      // span query on a field indexed with the nodes only
+      if (!sirenDocsEnum.hasPositions()) {
+        throw new IllegalStateException("field \"" + term.field() + "\" was " +
+          "indexed without position data; cannot run TermSpanQuery " +
+          "(term=" + term.text() + ")");
+      }
+      TermSpans spans = new TermSpans(sirenDocsEnum, term, termsEnum.docFreq(), similarity.simScorer(stats, context));
       return new SpanScorer(this, spans);
     }
 
@@ -40,11 +40,15 @@ class TermSpans extends Spans {
 
   private final Term term;
 
+  private final long cost;
+
   private final Similarity.SimScorer docScorer;
 
-  public TermSpans(final DocsNodesAndPositionsEnum postings, final Term term, final Similarity.SimScorer docScorer) {
+  public TermSpans(final DocsNodesAndPositionsEnum postings, final Term term, final long cost,
+                   final Similarity.SimScorer docScorer) {
     this.postings = postings;
     this.term = term;
+    this.cost = cost;
     this.docScorer = docScorer;
   }
 
@@ -52,6 +56,7 @@ class TermSpans extends Spans {
   TermSpans() {
     term = null;
     postings = null;
+    cost = 0;
     this.docScorer = null;
   }
 
@@ -129,6 +134,11 @@ class TermSpans extends Spans {
     return 0;
   }
 
+  @Override
+  public long cost() {
+    return cost;
+  }
+
   @Override
   public String toString() {
     int doc = this.doc();
@@ -34,7 +34,13 @@ public class NodeUtils {
     return compare(n1.ints, n1.offset, n1.length, n2.ints, n2.offset, n2.length);
   }
 
-  private static final int compare(final int[] n1, final int n1Offset, final int n1Len,
+  /**
+   * Compares the first node with the second node for order, where the nodes
+   * are given as slices of int arrays.
+   *
+   * @see #compare(IntsRef, IntsRef)
+   */
+  public static final int compare(final int[] n1, final int n1Offset, final int n1Len,
                                    final int[] n2, final int n2Offset, final int n2Len) {
     final int n1Limit = n1Len + n1Offset;
     final int n2Limit = n2Len + n2Offset;
@@ -60,14 +66,20 @@ public class NodeUtils {
    * </ul>
    */
   public static final int compareAncestor(final IntsRef n1, final IntsRef n2) {
-    return compareAncestor(n1.ints, n1.length, n2.ints, n2.length);
+    return compareAncestor(n1.ints, n1.offset, n1.length, n2.ints, n2.offset, n2.length);
   }
 
-  public static final int compareAncestor(final int[] n1, final int n1Len,
-                                          final int[] n2, final int n2Len) {
+  /**
+   * Compares the first node with the second node for ancestor order, where
+   * the nodes are given as slices of int arrays.
+   *
+   * @see #compareAncestor(IntsRef, IntsRef)
+   */
+  public static final int compareAncestor(final int[] n1, final int n1Offset, final int n1Len,
+                                          final int[] n2, final int n2Offset, final int n2Len) {
     for (int i = 0; i < n1Len && i < n2Len; i++) {
-      if (n1[i] != n2[i]) {
-        return n1[i] - n2[i];
+      if (n1[n1Offset + i] != n2[n2Offset + i]) {
+        return n1[n1Offset + i] - n2[n2Offset + i];
       }
     }
     // exception, if node path is equal, check node path length
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.util;
+
+import java.io.Reader;
+
+/**
+ * A {@link Reader} which decodes UTF-8 bytes on the fly, without copying the
+ * input into an intermediate {@link String} or char array.
+ *
+ * <p>
+ *
+ * The chars are decoded directly into the buffer of the caller, e.g., the
+ * buffer of the JFlex scanner of a JSON tokenizer. Malformed sequences are
+ * replaced by the replacement character U+FFFD, one per maximal subpart of an
+ * ill-formed sequence as recommended by the Unicode standard.
+ */
+public class UTF8ByteArrayReader extends Reader {
+
+  private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+  private byte[] buf;
+  private int pos;
+  private int end;
+
+  /** The low surrogate of a supplementary character not returned yet, or 0 */
+  private char pendingLowSurrogate;
+
+  public UTF8ByteArrayReader(final byte[] buf) {
+    this(buf, 0, buf.length);
+  }
+
+  public UTF8ByteArrayReader(final byte[] buf, final int offset, final int length) {
+    this.reset(buf, offset, length);
+  }
+
+  public void reset(final byte[] toReset) {
+    this.reset(toReset, 0, toReset.length);
+  }
+
+  public void reset(final byte[] toReset, final int offset, final int len) {
+    this.buf = toReset;
+    this.pos = offset;
+    this.end = offset + len;
+    this.pendingLowSurrogate = 0;
+  }
+
+  @Override
+  public int read(final char[] cbuf, final int off, final int len) {
+    if (len == 0) {
+      return 0;
+    }
+    int n = 0;
+    if (pendingLowSurrogate != 0) {
+      cbuf[off + n++] = pendingLowSurrogate;
+      pendingLowSurrogate = 0;
+    }
+
+    while (n < len && pos < end) {
+      final int b = buf[pos];
+      // fast path for ASCII
+      if (b >= 0) {
+        cbuf[off + n++] = (char) b;
+        pos++;
+        continue;
+      }
+
+      final int lead = b & 0xFF;
+      final int size;
+      int cp;
+      // bounds of the second byte, which exclude the overlong encodings and the surrogates
+      int min = 0x80, max = 0xBF;
+      if (lead >= 0xC2 && lead <= 0xDF) {
+        size = 2;
+        cp = lead & 0x1F;
+      }
+      else if (lead >= 0xE0 && lead <= 0xEF) {
+        size = 3;
+        cp = lead & 0x0F;
+        if (lead == 0xE0) {
+          min = 0xA0;
+        }
+        else if (lead == 0xED) {
+          max = 0x9F;
+        }
+      }
+      else if (lead >= 0xF0 && lead <= 0xF4) {
+        size = 4;
+        cp = lead & 0x07;
+        if (lead == 0xF0) {
+          min = 0x90;
+        }
+        else if (lead == 0xF4) {
+          max = 0x8F;
+        }
+      }
+      else {
+        cbuf[off + n++] = REPLACEMENT_CHAR;
+        pos++;
+        continue;
+      }
+
+      int i = 1;
+      for (; i < size && pos + i < end; i++) {
+        final int c = buf[pos + i] & 0xFF;
+        if (c < min || c > max) {
+          break;
+        }
+        cp = (cp << 6) | (c & 0x3F);
+        min = 0x80;
+        max = 0xBF;
+      }
+      if (i < size) {
+        // malformed or truncated sequence: replace the valid prefix
+        cbuf[off + n++] = REPLACEMENT_CHAR;
+        pos += i;
+        continue;
+      }
+      pos += size;
+
+      if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+        cbuf[off + n++] = (char) cp;
+      }
+      else {
+        cbuf[off + n++] = Character.highSurrogate(cp);
+        if (n < len) {
+          cbuf[off + n++] = Character.lowSurrogate(cp);
+        }
+        else {
+          pendingLowSurrogate = Character.lowSurrogate(cp);
+        }
+      }
+    }
+
+    return n == 0 ? -1 : n;
+  }
+
+  @Override
+  public void close() {}
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.analysis;
+
+import com.sindicetech.siren.analysis.attributes.DatatypeAttribute;
+import com.sindicetech.siren.analysis.attributes.NodeAttribute;
+import com.sindicetech.siren.analysis.attributes.PathAttribute;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestBufferedJsonTokenizer extends LuceneTestCase {
+
+  private static final String[] DOCS = new String[] {
+    "{ \"a\" : \"b\" }",
+    "{ \"a\" : [1, 2.5, true, false, null] }",
+    "{ \"a\" : { \"b\" : \"c\", \"d\" : [ { \"e\" : \"f\" }, { \"g\" : 12.3e-9 } ] } }",
+    "{ \"a\" : { \"_datatype_\" : \"lower\", \"_value_\" : \"BlA bLa\" }, \"b\" : [] }",
+    "{ \"a\" : [ [ \"b\", \"c\" ], { } ], \"d\" : \"\" }"
+  };
+
+  @Test
+  public void testConcise() throws Exception {
+    for (final String doc : DOCS) {
+      this.assertReplays(new ConciseJsonTokenizer(new StringReader(doc)),
+                         new ConciseJsonTokenizer(new StringReader(doc)));
+    }
+  }
+
+  @Test
+  public void testExtended() throws Exception {
+    for (final String doc : DOCS) {
+      this.assertReplays(new ExtendedJsonTokenizer(new StringReader(doc)),
+                         new ExtendedJsonTokenizer(new StringReader(doc)));
+    }
+  }
+
+  @Test
+  public void testPaths() throws Exception {
+    final JsonTokenBuffer buffer = new JsonTokenBuffer();
+    buffer.fill(new ConciseJsonTokenizer(new StringReader("{ \"a\" : { \"b\" : \"c\" } }")));
+    assertTrue(buffer.hasPaths());
+    assertEquals(2, buffer.size());
+    assertEquals(1, buffer.pathLength(0));
+    assertEquals("a", buffer.pathField(0, 0));
+    assertEquals(2, buffer.pathLength(1));
+    assertEquals("a", buffer.pathField(1, 0));
+    assertEquals("b", buffer.pathField(1, 1));
+    assertEquals("c", buffer.term(1));
+
+    buffer.fill(new ExtendedJsonTokenizer(new StringReader("{ \"a\" : \"b\" }")));
+    assertFalse(buffer.hasPaths());
+    assertEquals(0, buffer.pathLength(0));
+    assertFalse(new BufferedJsonTokenizer(buffer).hasAttribute(PathAttribute.class));
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    final JsonTokenBuffer buffer = new JsonTokenBuffer();
+    for (final String doc : DOCS) {
+      buffer.fill(new ConciseJsonTokenizer(new StringReader(doc)));
+      final List<String> expected = this.consume(new ConciseJsonTokenizer(new StringReader(doc)));
+      final BufferedJsonTokenizer tokenizer = new BufferedJsonTokenizer(buffer);
+      // the tokens can be replayed more than once
+      assertEquals(expected, this.consume(tokenizer));
+      tokenizer.setReader(new StringReader(""));
+      assertEquals(expected, this.consume(tokenizer));
+    }
+    buffer.clear();
+    assertEquals(0, buffer.size());
+  }
+
+  @Test
+  public void testAnalyzerReuse() throws Exception {
+    final Analyzer analyzer = new Analyzer() {
+      @Override
+      protected TokenStreamComponents createComponents(final String fieldName, final Reader reader) {
+        return new TokenStreamComponents(new BufferedJsonTokenizer(reader, true));
+      }
+    };
+    TokenStream previous = null;
+    for (final String doc : DOCS) {
+      final JsonTokenBuffer buffer = new JsonTokenBuffer();
+      buffer.fill(new ConciseJsonTokenizer(new StringReader(doc)));
+      final List<String> expected = this.consume(new ConciseJsonTokenizer(new StringReader(doc)));
+      final TokenStream stream = analyzer.tokenStream("field", new BufferedJsonTokenizer.BufferReader(buffer));
+      // the tokenizer is reused for each buffer
+      assertTrue(previous == null || previous == stream);
+      assertEquals(expected, this.consume(stream));
+      previous = stream;
+    }
+    analyzer.close();
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testBufferWithoutPaths() throws Exception {
+    final JsonTokenBuffer buffer = new JsonTokenBuffer();
+    buffer.fill(new ExtendedJsonTokenizer(new StringReader("{ \"a\" : \"b\" }")));
+    final Tokenizer tokenizer = new BufferedJsonTokenizer(new BufferedJsonTokenizer.BufferReader(buffer), true);
+    tokenizer.reset();
+  }
+
+  private void assertReplays(final Tokenizer expected, final Tokenizer source) throws Exception {
+    final JsonTokenBuffer buffer = new JsonTokenBuffer();
+    buffer.fill(source);
+    final List<String> tokens = this.consume(expected);
+    assertEquals(tokens.size(), buffer.size());
+    assertEquals(tokens, this.consume(new BufferedJsonTokenizer(buffer)));
+  }
+
+  /**
+   * Returns a textual representation of the attributes of each token.
+   */
+  private List<String> consume(final TokenStream stream) throws Exception {
+    final CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+    final OffsetAttribute offsetAtt = stream.getAttribute(OffsetAttribute.class);
+    final TypeAttribute typeAtt = stream.getAttribute(TypeAttribute.class);
+    final DatatypeAttribute dtypeAtt = stream.getAttribute(DatatypeAttribute.class);
+    final NodeAttribute nodeAtt = stream.getAttribute(NodeAttribute.class);
+    final PathAttribute pathAtt = stream.hasAttribute(PathAttribute.class) ?
+                                  stream.getAttribute(PathAttribute.class) : null;
+
+    final List<String> tokens = new ArrayList<String>();
+    stream.reset();
+    while (stream.incrementToken()) {
+      tokens.add(termAtt.toString() + " " + offsetAtt.startOffset() + "-" + offsetAtt.endOffset() + " " +
+                 typeAtt.type() + " " + new String(dtypeAtt.datatypeURI()) + " " + nodeAtt.node() +
+                 (pathAtt == null ? "" : " " + Arrays.toString(pathAtt.path())));
+    }
+    stream.end();
+    stream.close();
+    return tokens;
+  }
+
+}
@@ -109,4 +109,47 @@ public class TestVIntSirenPayload extends LuceneTestCase {
     }
   }
 
+  @Test
+  public void testNodeWithOffset()
+  throws Exception {
+    final IntsRef ints = new IntsRef(new int[] { 7, 12, 43, 5 }, 1, 2);
+    final int pos = 3;
+    final BytesRef bytes = codec.encode(ints, pos);
+    assertEquals(3, bytes.length);
+    codec.decode(bytes);
+
+    final IntsRef node = codec.getNode();
+    assertEquals(2, node.length);
+    assertEquals(12, node.ints[node.offset]);
+    assertEquals(43, node.ints[node.offset + 1]);
+    assertEquals(pos, codec.getPosition());
+  }
+
+  @Test
+  public void testDecodeIfNewNode()
+  throws Exception {
+    final VIntPayloadCodec decoder = new VIntPayloadCodec();
+
+    assertTrue(decoder.decodeIfNewNode(BytesRef.deepCopyOf(codec.encode(new IntsRef(new int[] { 1, 2 }, 0, 2), 0))));
+    assertEquals(new IntsRef(new int[] { 1, 2 }, 0, 2), decoder.getNode());
+    assertEquals(0, decoder.getPosition());
+
+    // same node, different position
+    assertFalse(decoder.decodeIfNewNode(BytesRef.deepCopyOf(codec.encode(new IntsRef(new int[] { 1, 2 }, 0, 2), 300))));
+    assertEquals(new IntsRef(new int[] { 1, 2 }, 0, 2), decoder.getNode());
+    assertEquals(300, decoder.getPosition());
+
+    // node prefix and node with a multi-byte id
+    assertTrue(decoder.decodeIfNewNode(BytesRef.deepCopyOf(codec.encode(new IntsRef(new int[] { 1 }, 0, 1), 1))));
+    assertEquals(new IntsRef(new int[] { 1 }, 0, 1), decoder.getNode());
+    assertTrue(decoder.decodeIfNewNode(BytesRef.deepCopyOf(codec.encode(new IntsRef(new int[] { 1, 200 }, 0, 2), 1))));
+    assertEquals(new IntsRef(new int[] { 1, 200 }, 0, 2), decoder.getNode());
+
+    // the same node is decoded again after a reset
+    decoder.resetLastNode();
+    assertTrue(decoder.decodeIfNewNode(BytesRef.deepCopyOf(codec.encode(new IntsRef(new int[] { 1, 200 }, 0, 2), 2))));
+    assertEquals(new IntsRef(new int[] { 1, 200 }, 0, 2), decoder.getNode());
+    assertEquals(2, decoder.getPosition());
+  }
+
 }
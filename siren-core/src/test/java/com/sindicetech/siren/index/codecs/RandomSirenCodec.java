@@ -50,6 +50,8 @@ public class RandomSirenCodec extends Lucene49Codec {
 
   private static final int[] BLOCK_SIZES = new int[] {1, 2, 16, 32, 64, 128, 256, 512, 1024};
 
+  private static final int[] PULSE_THRESHOLDS = new int[] {0, 1, 2, 4};
+
   public enum PostingsFormatType {
     RANDOM, SIREN_10
   }
@@ -108,14 +110,15 @@ public class RandomSirenCodec extends Lucene49Codec {
 
   private static PostingsFormat newSiren10PostingsFormat(final Random random) {
     final int blockSize = newRandomBlockSize(random);
+    final int pulseThreshold = PULSE_THRESHOLDS[random.nextInt(PULSE_THRESHOLDS.length)];
     final int i = random.nextInt(2);
     switch (i) {
 
       case 0:
-        return new Siren10VIntPostingsFormat(blockSize);
+        return new Siren10VIntPostingsFormat(blockSize, pulseThreshold);
 
       case 1:
-        return new Siren10AForPostingsFormat(blockSize);
+        return new Siren10AForPostingsFormat(blockSize, pulseThreshold);
 
       default:
         throw new InvalidParameterException();
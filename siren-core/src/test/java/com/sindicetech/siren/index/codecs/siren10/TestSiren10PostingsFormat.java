@@ -23,21 +23,33 @@ import static com.sindicetech.siren.analysis.MockSirenToken.node;
 import static com.sindicetech.siren.analysis.MockSirenToken.token;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.SlowCompositeReaderWrapper;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.LuceneTestCase;
 import org.junit.Test;
 
 import com.sindicetech.siren.analysis.MockSirenDocument;
+import com.sindicetech.siren.analysis.MockSirenToken;
 import com.sindicetech.siren.index.DocsAndNodesIterator;
+import com.sindicetech.siren.index.DocsNodesAndPositionsEnum;
+import com.sindicetech.siren.index.PathDictionary;
+import com.sindicetech.siren.index.SirenDocsEnum;
 import com.sindicetech.siren.index.codecs.RandomSirenCodec.PostingsFormatType;
+import com.sindicetech.siren.index.codecs.block.DecodedBlockCache;
 import com.sindicetech.siren.index.codecs.siren10.Siren10VIntPostingsFormat;
 import com.sindicetech.siren.index.codecs.siren10.Siren10PostingsReader.Siren10DocsEnum;
-import com.sindicetech.siren.index.codecs.siren10.Siren10PostingsReader.Siren10DocsNodesAndPositionsEnum;
 import com.sindicetech.siren.util.BasicSirenTestCase;
 
 public class TestSiren10PostingsFormat extends BasicSirenTestCase {
@@ -59,7 +71,7 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
     final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, "aaa"));
     assertTrue(docsEnum instanceof Siren10DocsEnum);
-    final Siren10DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
     assertEquals(-1, e.doc());
     assertEquals(0, e.nodeFreqInDoc());
     assertTrue(e.nextDocument());
@@ -90,7 +102,7 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
     final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
     assertTrue(docsEnum instanceof Siren10DocsEnum);
-    final Siren10DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
 
     // first skip in skiplist is at 512
     assertTrue(e.skipTo(502));
@@ -122,7 +134,7 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
     final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
     assertTrue(docsEnum instanceof Siren10DocsEnum);
-    final Siren10DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
     assertEquals(-1, e.doc());
     assertEquals(0, e.nodeFreqInDoc());
     assertEquals(node(-1), e.node());
@@ -168,7 +180,7 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
     final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
     assertTrue(docsEnum instanceof Siren10DocsEnum);
-    final Siren10DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
     assertEquals(-1, e.doc());
     assertEquals(0, e.nodeFreqInDoc());
 
@@ -197,7 +209,7 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
     final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
     assertTrue(docsEnum instanceof Siren10DocsEnum);
-    final Siren10DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
 
     // first skip in skiplist is at 512
     assertTrue(e.skipTo(502));
@@ -239,6 +251,72 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
 
   }
 
+  @Test
+  public void testSkipBlock() throws IOException {
+    // reduce block size to have many blocks but no skip list
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+
+    final MockSirenDocument[] docs = new MockSirenDocument[64];
+    for (int i = 0; i < 64; i += 2) {
+      docs[i] = doc(token("aaa", node(1)), token("aaa", node(1)), token("aaa", node(2)));
+      docs[i + 1] = doc(token("bbb", node(1,0)), token("aaa", node(5,3,6)));
+    }
+    this.addDocuments(docs);
+
+    final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+    final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
+    assertTrue(docsEnum instanceof Siren10DocsEnum);
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+
+    // skip blocks from the start of the posting list
+    assertTrue(e.skipTo(10));
+    assertEquals(10, e.doc());
+    assertEquals(2, e.nodeFreqInDoc());
+    // partially scan nodes and positions
+    assertTrue(e.nextNode());
+    assertEquals(node(1), e.node());
+    assertEquals(2, e.termFreqInNode());
+    assertTrue(e.nextPosition());
+    assertEquals(0, e.pos());
+
+    // skip to the next doc in the same block
+    assertTrue(e.skipTo(11));
+    assertEquals(11, e.doc());
+    assertEquals(1, e.nodeFreqInDoc());
+
+    // skip the remaining docs of the current block and several other blocks
+    assertTrue(e.skipTo(29));
+    assertEquals(29, e.doc());
+    assertEquals(1, e.nodeFreqInDoc());
+    assertTrue(e.nextNode());
+    assertEquals(node(5,3,6), e.node());
+    assertEquals(1, e.termFreqInNode());
+    assertTrue(e.nextPosition());
+    assertEquals(0, e.pos());
+    assertFalse(e.nextNode());
+
+    // skip to the first doc of a block
+    assertTrue(e.skipTo(32));
+    assertEquals(32, e.doc());
+    assertEquals(2, e.nodeFreqInDoc());
+    assertTrue(e.nextNode());
+    assertEquals(node(1), e.node());
+    assertTrue(e.nextNode());
+    assertEquals(node(2), e.node());
+    assertEquals(1, e.termFreqInNode());
+    assertTrue(e.nextPosition());
+    assertEquals(0, e.pos());
+
+    // skip to the last doc
+    assertTrue(e.skipTo(63));
+    assertEquals(63, e.doc());
+    assertTrue(e.nextNode());
+    assertEquals(node(5,3,6), e.node());
+
+    assertFalse(e.skipTo(64));
+    assertEquals(DocsAndNodesIterator.NO_MORE_DOC, e.doc());
+  }
+
   @Test
   public void testSimpleNextPosition() throws IOException {
     this.addDocuments(
@@ -250,7 +328,7 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
     final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
     assertTrue(docsEnum instanceof Siren10DocsEnum);
-    final Siren10DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
     assertEquals(-1, e.doc());
     assertEquals(0, e.nodeFreqInDoc());
     assertEquals(node(-1), e.node());
@@ -307,7 +385,7 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
     final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
     assertTrue(docsEnum instanceof Siren10DocsEnum);
-    final Siren10DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
     assertEquals(-1, e.doc());
 
     // freqs should be set to 0 at the beginning
@@ -362,7 +440,7 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
     final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
     assertTrue(docsEnum instanceof Siren10DocsEnum);
-    final Siren10DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
 
     assertTrue(e.nextDocument());
     assertEquals(0, e.doc());
@@ -408,6 +486,213 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     this.forceMerge();
   }
 
+  @Test
+  public void testMergeRawBlocks() throws IOException {
+    // reduce block size to have segments made of several full blocks
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+
+    // segment sizes chosen so that some segments start with an empty pending
+    // block and some do not
+    this.assertMergeRawBlocks(new int[] { 8, 10, 6, 13, 32 });
+  }
+
+  @Test
+  public void testMergeUnalignedRawBlocks() throws IOException {
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+
+    // the first segment leaves a partial block: the full blocks of the second
+    // segment are not aligned and are decoded, until the third segment
+    // completes the pending block and the raw copy resumes
+    this.assertMergeRawBlocks(new int[] { 5, 8, 3, 8, 12 });
+  }
+
+  /**
+   * Merges segments of the given sizes, and checks the merged postings and
+   * their skip data.
+   */
+  private void assertMergeRawBlocks(final int[] segmentSizes) throws IOException {
+    int nDocs = 0;
+    for (final int size : segmentSizes) {
+      final MockSirenDocument[] docs = new MockSirenDocument[size];
+      for (int i = 0; i < size; i++) {
+        docs[i] = this.getMergeDocument(nDocs + i);
+      }
+      this.addDocuments(docs);
+      nDocs += size;
+    }
+
+    this.forceMerge();
+    assertEquals(nDocs, reader.numDocs());
+
+    final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+    DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
+    assertTrue(docsEnum instanceof Siren10DocsEnum);
+    DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+
+    for (int i = 0; i < nDocs; i++) {
+      assertTrue(e.nextDocument());
+      this.assertMergeDocument(i, e);
+    }
+    assertFalse(e.nextDocument());
+
+    // skip data must have been shifted with the doc ids
+    docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
+    e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    for (int i = 3; i < nDocs; i += 7) {
+      assertTrue(e.skipTo(i));
+      this.assertMergeDocument(i, e);
+    }
+    assertFalse(e.skipTo(nDocs));
+  }
+
+  private MockSirenDocument getMergeDocument(final int i) {
+    if (i % 2 == 0) {
+      return doc(token("aaa", node(1, i)), token("aaa", node(1, i)), token("bbb", node(2)));
+    }
+    return doc(token("bbb", node(1)), token("aaa", node(3, i)), token("aaa", node(4)));
+  }
+
+  private void assertMergeDocument(final int i, final DocsNodesAndPositionsEnum e)
+  throws IOException {
+    assertEquals(i, e.doc());
+    if (i % 2 == 0) {
+      assertEquals(1, e.nodeFreqInDoc());
+      assertTrue(e.nextNode());
+      assertEquals(node(1, i), e.node());
+      assertEquals(2, e.termFreqInNode());
+      assertTrue(e.nextPosition());
+      assertEquals(0, e.pos());
+      assertTrue(e.nextPosition());
+      assertEquals(1, e.pos());
+    }
+    else {
+      assertEquals(2, e.nodeFreqInDoc());
+      assertTrue(e.nextNode());
+      assertEquals(node(3, i), e.node());
+      assertTrue(e.nextNode());
+      assertEquals(node(4), e.node());
+      assertEquals(1, e.termFreqInNode());
+      assertTrue(e.nextPosition());
+      assertEquals(0, e.pos());
+    }
+    assertFalse(e.nextNode());
+  }
+
+  @Test
+  public void testBulkRead() throws IOException {
+    // reduce block size to have many blocks
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+
+    final int nDocs = 50;
+    final MockSirenDocument[] docs = new MockSirenDocument[nDocs];
+    for (int i = 0; i < nDocs; i++) {
+      docs[i] = this.getMergeDocument(i);
+    }
+    this.addDocuments(docs);
+
+    final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+    final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
+    assertTrue(docsEnum instanceof Siren10DocsEnum);
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+
+    final int[] bulkDocs = new int[3];
+    final int[] bulkFreqs = new int[3];
+    int expected = 0;
+    int n;
+    while ((n = e.read(bulkDocs, bulkFreqs)) > 0) {
+      assertTrue(n <= 3);
+      for (int i = 0; i < n; i++, expected++) {
+        assertEquals(expected, bulkDocs[i]);
+        assertEquals(expected % 2 == 0 ? 1 : 2, bulkFreqs[i]);
+      }
+      // the enum is positioned on the last doc read
+      if (expected % 3 != 0) {
+        this.assertMergeDocument(expected - 1, e);
+      }
+      // mix with the iteration of the next doc
+      if (expected % 5 == 0 && e.nextDocument()) {
+        this.assertMergeDocument(expected++, e);
+      }
+    }
+    assertEquals(nDocs, expected);
+    assertEquals(DocsAndNodesIterator.NO_MORE_DOC, e.doc());
+    assertEquals(0, e.read(bulkDocs, bulkFreqs));
+  }
+
+  @Test
+  public void testBulkReadDeletedDocs() throws IOException {
+    // reduce block size to have many blocks
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+
+    final int nDocs = 64;
+    final MockSirenDocument[] docs = new MockSirenDocument[nDocs];
+    for (int i = 0; i < nDocs; i++) {
+      docs[i] = this.getMergeDocument(i);
+    }
+    this.addDocuments(docs);
+
+    // delete the docs 8 to 15, which fill two blocks, and every third doc
+    final FixedBitSet liveDocs = new FixedBitSet(nDocs);
+    for (int i = 0; i < nDocs; i++) {
+      if (i % 3 != 2 && (i < 8 || i > 15)) {
+        liveDocs.set(i);
+      }
+    }
+
+    final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+    final TermsEnum termsEnum = aReader.terms(DEFAULT_TEST_FIELD).iterator(null);
+    assertTrue(termsEnum.seekExact(new BytesRef("aaa")));
+    final DocsNodesAndPositionsEnum e = SirenDocsEnum.map(termsEnum.docsAndPositions(liveDocs, null));
+
+    final int[] bulkDocs = new int[5];
+    final int[] bulkFreqs = new int[5];
+    int expected = liveDocs.nextSetBit(0);
+    int n;
+    while ((n = e.read(bulkDocs, bulkFreqs)) > 0) {
+      for (int i = 0; i < n; i++) {
+        assertEquals(expected, bulkDocs[i]);
+        assertEquals(expected % 2 == 0 ? 1 : 2, bulkFreqs[i]);
+        expected = expected + 1 < nDocs ? liveDocs.nextSetBit(expected + 1) : -1;
+      }
+      this.assertMergeDocument(bulkDocs[n - 1], e);
+    }
+    assertEquals(-1, expected);
+  }
+
+  @Test
+  public void testBulkReadMultipleSegments() throws IOException {
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+
+    final int[] segmentSizes = { 7, 1, 12 };
+    int nDocs = 0;
+    for (final int size : segmentSizes) {
+      final MockSirenDocument[] docs = new MockSirenDocument[size];
+      for (int i = 0; i < size; i++) {
+        docs[i] = this.getMergeDocument(nDocs + i);
+      }
+      this.addDocuments(docs);
+      nDocs += size;
+    }
+
+    final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+    final DocsNodesAndPositionsEnum e = SirenDocsEnum.map(
+      aReader.termPositionsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa"))));
+
+    final int[] bulkDocs = new int[4];
+    final int[] bulkFreqs = new int[4];
+    int expected = 0;
+    int n;
+    while ((n = e.read(bulkDocs, bulkFreqs)) > 0) {
+      for (int i = 0; i < n; i++, expected++) {
+        assertEquals(expected, bulkDocs[i]);
+      }
+      assertEquals(expected - 1, e.doc());
+      this.assertMergeDocument(expected - 1, e);
+    }
+    assertEquals(nDocs, expected);
+    assertEquals(DocsAndNodesIterator.NO_MORE_DOC, e.doc());
+  }
+
   @Test
   public void testStressMerge() throws IOException {
     this.addDocuments(
@@ -427,7 +712,7 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
     final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
     assertTrue(docsEnum instanceof Siren10DocsEnum);
-    final Siren10DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
 
     for (int i = 0; i < reader.numDocs(); i++) {
       assertTrue(e.nextDocument());
@@ -481,7 +766,7 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
     final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
     assertTrue(docsEnum instanceof Siren10DocsEnum);
-    final Siren10DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
 
     for (int i = 0; i < 2048; i += 2) {
       assertTrue(e.nextDocument());
@@ -503,4 +788,514 @@ public class TestSiren10PostingsFormat extends BasicSirenTestCase {
     }
   }
 
+  @Test
+  public void testSkipToNode() throws IOException {
+    // large documents, with node skip data, interleaved with small documents
+    final MockSirenDocument[] docs = new MockSirenDocument[12];
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] = this.getSkipToNodeDocument(i % 3 == 1 ? 5 : 300 + i * 50);
+    }
+    this.addDocuments(docs);
+    this.assertSkipToNode(docs.length);
+  }
+
+  @Test
+  public void testSkipToNodeAfterMerge() throws IOException {
+    // reduce block size to have segments made of several full blocks which
+    // are copied raw during the merge
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+    for (int i = 0; i < 12; i += 6) {
+      final MockSirenDocument[] docs = new MockSirenDocument[6];
+      for (int j = 0; j < docs.length; j++) {
+        docs[j] = this.getSkipToNodeDocument((i + j) % 3 == 1 ? 5 : 300 + (i + j) * 50);
+      }
+      this.addDocuments(docs);
+    }
+    this.forceMerge();
+    this.assertSkipToNode(12);
+  }
+
+  /**
+   * Create a document with the given number of nodes, of variable length,
+   * for the term "aaa". Every third node has a term frequency of 2.
+   */
+  private MockSirenDocument getSkipToNodeDocument(final int nNodes) {
+    final List<MockSirenToken> tokens = new ArrayList<MockSirenToken>();
+    for (int i = 0; i < nNodes; i++) {
+      tokens.add(token("aaa", this.getSkipToNodeLabel(i)));
+      if (i % 3 == 0) {
+        tokens.add(token("aaa", this.getSkipToNodeLabel(i)));
+      }
+    }
+    return doc(tokens.toArray(new MockSirenToken[tokens.size()]));
+  }
+
+  private IntsRef getSkipToNodeLabel(final int i) {
+    return i % 5 == 0 ? node(i / 8, i % 8, 2) : node(i / 8, i % 8);
+  }
+
+  private void assertSkipToNode(final int nDocs) throws IOException {
+    final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+    final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
+    assertTrue(docsEnum instanceof Siren10DocsEnum);
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+
+    for (int d = 0; d < nDocs; d++) {
+      assertTrue(e.nextDocument());
+      final int nNodes = d % 3 == 1 ? 5 : 300 + d * 50;
+      assertEquals(nNodes, e.nodeFreqInDoc());
+
+      // skip by increasing steps, to targets matching a node or falling between two nodes
+      boolean exhausted = false;
+      for (int i = 0, step = 1; !exhausted && i + step < nNodes; step += 7) {
+        i += step;
+        final boolean between = (step % 2) == 0;
+        final IntsRef target = between ? node(i / 8, i % 8, 1) : this.getSkipToNodeLabel(i);
+        // node(i/8, i%8, 1) falls between node(i/8, i%8) and node(i/8, i%8, 2)
+        final int expected = between && i % 5 != 0 ? i + 1 : i;
+        if (expected == nNodes) {
+          assertFalse(e.skipToNode(target));
+          exhausted = true;
+          break;
+        }
+        assertTrue(e.skipToNode(target));
+        assertEquals(this.getSkipToNodeLabel(expected), e.node());
+        assertEquals(expected % 3 == 0 ? 2 : 1, e.termFreqInNode());
+        assertTrue(e.nextPosition());
+        assertEquals(0, e.pos());
+        // a node lower than the current one does not move the enum
+        assertTrue(e.skipToNode(node(0, 0)));
+        assertEquals(this.getSkipToNodeLabel(expected), e.node());
+        i = expected;
+      }
+      if (!exhausted) {
+        assertFalse(e.skipToNode(node(nNodes, 0)));
+      }
+      assertEquals(DocsAndNodesIterator.NO_MORE_NOD, e.node());
+    }
+    assertFalse(e.nextDocument());
+  }
+
+
+  @Test
+  public void testBlockImpacts() throws IOException {
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+    final MockSirenDocument[] docs = new MockSirenDocument[10];
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] = this.getImpactDocument(i);
+    }
+    this.addDocuments(docs);
+
+    final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+    final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+
+    for (int block = 0; block < 3; block++) {
+      final int first = block * 4;
+      final int last = Math.min(first + 3, docs.length - 1);
+      // move to the block without decoding it
+      assertEquals(last, e.advanceShallow(first + 1));
+      int maxNodeFreq = 0, maxTermFreqInNode = 0, maxTermFreqInDoc = 0;
+      for (int i = first; i <= last; i++) {
+        maxNodeFreq = Math.max(maxNodeFreq, i + 1);
+        maxTermFreqInNode = Math.max(maxTermFreqInNode, i % 3 + 1);
+        maxTermFreqInDoc = Math.max(maxTermFreqInDoc, i + i % 3 + 1);
+      }
+      assertEquals(maxNodeFreq, e.blockMaxNodeFreq());
+      assertEquals(maxTermFreqInNode, e.blockMaxTermFreqInNode());
+      assertEquals(maxTermFreqInDoc, e.blockMaxTermFreqInDoc());
+
+      // the documents of the block are then decoded
+      assertTrue(e.skipTo(first + 1));
+      assertEquals(first + 1, e.doc());
+      assertEquals(first + 2, e.nodeFreqInDoc());
+      // a target lower than the current document returns the current block
+      assertEquals(last, e.advanceShallow(first));
+    }
+    assertEquals(DocsAndNodesIterator.NO_MORE_DOC, e.advanceShallow(docs.length));
+    assertEquals(DocsAndNodesIterator.NO_MORE_DOC, e.doc());
+  }
+
+  /**
+   * Create a document with i + 1 nodes for the term "aaa". The first node has
+   * a term frequency of i % 3 + 1, the other nodes a term frequency of 1.
+   */
+  private MockSirenDocument getImpactDocument(final int i) {
+    final List<MockSirenToken> tokens = new ArrayList<MockSirenToken>();
+    for (int j = 0; j < i % 3 + 1; j++) {
+      tokens.add(token("aaa", node(0)));
+    }
+    for (int j = 1; j <= i; j++) {
+      tokens.add(token("aaa", node(j)));
+    }
+    return doc(tokens.toArray(new MockSirenToken[tokens.size()]));
+  }
+
+
+  @Test
+  public void testPulsedPostings() throws IOException {
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4, 2));
+    this.addDocuments(
+      doc(token("aaa", node(1)), token("bbb", node(1,0)), token("aaa", node(2)), token("aaa", node(2))),
+      doc(token("bbb", node(1))),
+      doc(token("bbb", node(5,3,6)), token("aaa", node(5,3,6,3)))
+    );
+
+    final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+    // bbb exceeds the pulse threshold
+    DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("bbb")));
+    assertTrue(((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum() instanceof Siren10PostingsReader.Siren10DocsNodesAndPositionsEnum);
+
+    docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    assertTrue(e instanceof Siren10PulsedDocsNodesAndPositionsEnum);
+    assertEquals(-1, e.doc());
+    assertEquals(node(-1), e.node());
+
+    // the pulsed postings form a single block
+    assertEquals(2, e.advanceShallow(0));
+    assertEquals(2, e.blockMaxNodeFreq());
+    assertEquals(2, e.blockMaxTermFreqInNode());
+    assertEquals(3, e.blockMaxTermFreqInDoc());
+
+    assertTrue(e.nextDocument());
+    assertEquals(0, e.doc());
+    assertEquals(2, e.nodeFreqInDoc());
+    assertTrue(e.nextNode());
+    assertEquals(node(1), e.node());
+    assertEquals(1, e.termFreqInNode());
+    assertTrue(e.nextNode());
+    assertEquals(node(2), e.node());
+    assertEquals(2, e.termFreqInNode());
+    assertTrue(e.nextPosition());
+    assertEquals(0, e.pos());
+    assertTrue(e.nextPosition());
+    assertEquals(1, e.pos());
+    assertFalse(e.nextPosition());
+    assertFalse(e.nextNode());
+
+    assertTrue(e.skipTo(1));
+    assertEquals(2, e.doc());
+    assertEquals(1, e.nodeFreqInDoc());
+    assertTrue(e.skipToNode(node(5,3,6,3)));
+    assertEquals(node(5,3,6,3), e.node());
+    assertTrue(e.nextPosition());
+    assertEquals(0, e.pos());
+
+    assertFalse(e.nextDocument());
+    assertEquals(DocsAndNodesIterator.NO_MORE_DOC, e.doc());
+    assertEquals(DocsAndNodesIterator.NO_MORE_NOD, e.node());
+  }
+
+  @Test
+  public void testPulsedPostingsMerge() throws IOException {
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4, 2));
+    this.addDocuments(
+      doc(token("aaa", node(1))),
+      doc(token("bbb", node(1)))
+    );
+    this.addDocuments(
+      doc(token("aaa", node(2)), token("aaa", node(2))),
+      doc(token("aaa", node(3)), token("ccc", node(3)))
+    );
+    this.forceMerge();
+
+    final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+    // bbb is still pulsed
+    DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("bbb")));
+    DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    assertTrue(e instanceof Siren10PulsedDocsNodesAndPositionsEnum);
+    assertTrue(e.nextDocument());
+    assertEquals(1, e.doc());
+    assertFalse(e.nextDocument());
+
+    // the pulsed postings of aaa have been written to the blocks during the merge
+    docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
+    e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    assertTrue(e instanceof Siren10PostingsReader.Siren10DocsNodesAndPositionsEnum);
+    final int[] docs = new int[] { 0, 2, 3 };
+    final int[] nodes = new int[] { 1, 2, 3 };
+    for (int i = 0; i < docs.length; i++) {
+      assertTrue(e.nextDocument());
+      assertEquals(docs[i], e.doc());
+      assertEquals(1, e.nodeFreqInDoc());
+      assertTrue(e.nextNode());
+      assertEquals(node(nodes[i]), e.node());
+      assertEquals(i == 1 ? 2 : 1, e.termFreqInNode());
+      assertTrue(e.nextPosition());
+      assertEquals(0, e.pos());
+    }
+    assertFalse(e.nextDocument());
+  }
+
+  @Test
+  public void testNodesOnly() throws IOException {
+    // small block size and pulse threshold to have pulsed and block postings
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4, 2, false));
+    this.addDocuments(
+      doc(token("bbb", node(1))),
+      doc(token("aaa", node(1)), token("aaa", node(1)), token("aaa", node(2)))
+    );
+    // several segments of full blocks, which are copied as raw blocks
+    final MockSirenDocument[] docs = new MockSirenDocument[16];
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] = doc(token("aaa", node(1, i)), token("aaa", node(1, i)), token("ccc", node(2)));
+    }
+    this.addDocuments(Arrays.copyOfRange(docs, 0, 8));
+    this.addDocuments(Arrays.copyOfRange(docs, 8, 16));
+    this.forceMerge();
+
+    // the positions are not written
+    for (final String file : directory.listAll()) {
+      assertFalse(file.endsWith("." + Siren10PostingsFormat.POS_EXTENSION));
+    }
+
+    final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+    DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("bbb")));
+    DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    assertTrue(e instanceof Siren10PulsedDocsNodesAndPositionsEnum);
+    assertTrue(e.nextDocument());
+    assertTrue(e.nextNode());
+    assertEquals(node(1), e.node());
+    assertEquals(1, e.termFreqInNode());
+    assertNoPositions(e);
+    assertFalse(e.nextDocument());
+
+    docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
+    e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    assertTrue(e instanceof Siren10PostingsReader.Siren10DocsNodesAndPositionsEnum);
+    assertTrue(e.nextDocument());
+    assertEquals(1, e.doc());
+    assertEquals(2, e.nodeFreqInDoc());
+    assertTrue(e.nextNode());
+    assertEquals(node(1), e.node());
+    assertEquals(2, e.termFreqInNode());
+    assertNoPositions(e);
+    assertTrue(e.nextNode());
+    assertEquals(1, e.termFreqInNode());
+    assertFalse(e.nextNode());
+    for (int i = 0; i < docs.length; i += 3) {
+      assertTrue(e.skipTo(i + 2));
+      assertEquals(i + 2, e.doc());
+      assertTrue(e.nextNode());
+      assertEquals(node(1, i), e.node());
+      assertEquals(2, e.termFreqInNode());
+      assertNoPositions(e);
+    }
+
+    // the frequency is still computed from the term frequency in node
+    docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
+    assertEquals(1, docsEnum.nextDoc());
+    assertEquals(3, docsEnum.freq());
+  }
+
+  private static void assertNoPositions(final DocsNodesAndPositionsEnum e) throws IOException {
+    assertFalse(e.hasPositions());
+    try {
+      e.nextPosition();
+      fail("Expected an IllegalStateException");
+    }
+    catch (final IllegalStateException ex) {
+      // positions are not indexed
+    }
+  }
+
+  @Test
+  public void testDecodedBlockCache() throws IOException {
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+    final MockSirenDocument[] docs = new MockSirenDocument[20];
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] = i == 0 ? doc(token("aaa", node(1, i)), token("bbb", node(1)))
+                       : doc(token("aaa", node(1, i)), token("aaa", node(1, i)), token("aaa", node(2)));
+    }
+    this.addDocuments(docs);
+    this.forceMerge();
+
+    final DecodedBlockCache cache = new DecodedBlockCache(Long.MAX_VALUE, 8);
+    final DirectoryReader dirReader = DecodedBlockCacheDirectoryReader.wrap(writer.getReader(), cache);
+    try {
+      // bbb is not a hot term
+      final List<String> expected = this.readPostings(dirReader, "bbb");
+      assertEquals(0, cache.getMissCount());
+      assertEquals(0, cache.size());
+
+      // the blocks of aaa are decoded and cached on the first read
+      final List<String> postings = this.readPostings(dirReader, "aaa");
+      assertEquals(0, cache.getHitCount());
+      assertTrue(cache.getMissCount() > 0);
+      assertEquals(cache.getMissCount(), cache.size());
+      assertTrue(cache.ramBytesUsed() > 0);
+
+      // and they are served from the cache on the next reads
+      final long misses = cache.getMissCount();
+      assertEquals(postings, this.readPostings(dirReader, "aaa"));
+      assertEquals(misses, cache.getMissCount());
+      assertEquals(misses, cache.getHitCount());
+      assertEquals(expected, this.readPostings(dirReader, "bbb"));
+
+      // the readers which are not wrapped do not use the cache
+      assertEquals(postings, this.readPostings(reader, "aaa"));
+      assertEquals(misses, cache.getMissCount());
+      assertEquals(misses, cache.getHitCount());
+
+      // skipping within the cached blocks
+      final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(dirReader);
+      final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef("aaa")));
+      final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+      for (int i = 1; i < docs.length; i += 5) {
+        assertTrue(e.skipTo(i));
+        assertEquals(i, e.doc());
+        assertTrue(e.skipToNode(node(2)));
+        assertEquals(node(2), e.node());
+        assertTrue(e.nextPosition());
+        assertEquals(0, e.pos());
+      }
+    }
+    finally {
+      dirReader.close();
+    }
+    // the entries are removed when the segment is closed
+    reader.close();
+    reader = null;
+    writer.close();
+    writer = null;
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.ramBytesUsed());
+  }
+
+  @Test
+  public void testDecodedBlockCacheEviction() throws IOException {
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+    final MockSirenDocument[] docs = new MockSirenDocument[40];
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] = doc(token("aaa", node(1, i)), token("bbb", node(2, i)));
+    }
+    this.addDocuments(docs);
+    this.forceMerge();
+
+    // a budget of a few blocks only
+    final DecodedBlockCache cache = new DecodedBlockCache(512, 1);
+    final DirectoryReader dirReader = DecodedBlockCacheDirectoryReader.wrap(writer.getReader(), cache);
+    try {
+      final List<String> postings = this.readPostings(dirReader, "aaa");
+      assertEquals(postings, this.readPostings(dirReader, "aaa"));
+      assertTrue(cache.getEvictionCount() > 0);
+      assertTrue(cache.ramBytesUsed() <= 512);
+    }
+    finally {
+      dirReader.close();
+    }
+  }
+
+  @Test
+  public void testDecodedBlockCacheConcurrency() throws Exception {
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+    final MockSirenDocument[] docs = new MockSirenDocument[100];
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] = doc(token("aaa", node(1, i)), token("bbb", node(2, i)), token("bbb", node(3)));
+    }
+    this.addDocuments(docs);
+    this.forceMerge();
+
+    final List<String> expectedAaa = this.readPostings(reader, "aaa");
+    final List<String> expectedBbb = this.readPostings(reader, "bbb");
+
+    // a budget smaller than the blocks of the two terms, so that the threads
+    // read, cache and evict blocks concurrently
+    final DecodedBlockCache cache = new DecodedBlockCache(4096, 1);
+    final DirectoryReader dirReader = DecodedBlockCacheDirectoryReader.wrap(writer.getReader(), cache);
+    try {
+      final Thread[] threads = new Thread[4];
+      final Throwable[] failures = new Throwable[threads.length];
+      for (int i = 0; i < threads.length; i++) {
+        final int id = i;
+        threads[i] = new Thread() {
+          @Override
+          public void run() {
+            try {
+              for (int j = 0; j < 20; j++) {
+                assertEquals(expectedAaa, TestSiren10PostingsFormat.this.readPostings(dirReader, "aaa"));
+                assertEquals(expectedBbb, TestSiren10PostingsFormat.this.readPostings(dirReader, "bbb"));
+              }
+            }
+            catch (final Throwable t) {
+              failures[id] = t;
+            }
+          }
+        };
+        threads[i].start();
+      }
+      for (final Thread thread : threads) {
+        thread.join();
+      }
+      for (final Throwable failure : failures) {
+        if (failure != null) {
+          throw new AssertionError(failure);
+        }
+      }
+      assertTrue(cache.getEvictionCount() > 0);
+      assertTrue(cache.ramBytesUsed() <= 4096);
+    }
+    finally {
+      dirReader.close();
+    }
+  }
+
+  /**
+   * Read all the postings of a term as a list of strings
+   */
+  private List<String> readPostings(final IndexReader reader, final String term) throws IOException {
+    final AtomicReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+    final DocsEnum docsEnum = aReader.termDocsEnum(new Term(DEFAULT_TEST_FIELD, new BytesRef(term)));
+    final DocsNodesAndPositionsEnum e = ((Siren10DocsEnum) docsEnum).getDocsNodesAndPositionsEnum();
+    final List<String> postings = new ArrayList<String>();
+    while (e.nextDocument()) {
+      while (e.nextNode()) {
+        while (e.nextPosition()) {
+          postings.add(e.doc() + ":" + e.node() + ":" + e.termFreqInNode() + ":" + e.pos());
+        }
+      }
+    }
+    return postings;
+  }
+
+  @Test
+  public void testPathDictionary() throws IOException {
+    this.addDocuments(
+      doc(token("a:x", node(1)), token("a:y", node(1)), token("b:x", node(2))),
+      doc(token("a:x", node(1)), token("nopath", node(1))),
+      doc(token("a.b:z", node(1,0)), token(":x", node(2)))
+    );
+    this.addDocuments(
+      doc(token("a:x", node(1)), token("a:y", node(1)), token("b:z", node(2)))
+    );
+    // the dictionaries of the segments are rebuilt during the merge
+    this.forceMerge();
+
+    final DirectoryReader dirReader = writer.getReader();
+    try {
+      final AtomicReader segmentReader = getOnlySegmentReader(dirReader);
+      final PathDictionary dictionary = PathDictionary.get(segmentReader, DEFAULT_TEST_FIELD);
+      assertNotNull(dictionary);
+      // the sum of the document frequencies is bounded by the number of documents
+      assertEquals(4, dictionary.docCount(new BytesRef("a")));
+      assertEquals(2, dictionary.docCount(new BytesRef("b")));
+      assertEquals(1, dictionary.docCount(new BytesRef("a.b")));
+      assertEquals(1, dictionary.docCount(new BytesRef("")));
+      assertEquals(0, dictionary.docCount(new BytesRef("c")));
+      assertEquals(0, dictionary.docCount(new BytesRef("nopath")));
+      assertNull(PathDictionary.get(segmentReader, "unknown"));
+    }
+    finally {
+      dirReader.close();
+    }
+  }
+
+  @Test
+  public void testGetPath() {
+    assertEquals(new BytesRef("a"), PathDictionary.getPath(new BytesRef("a:b:c")));
+    assertEquals(new BytesRef(""), PathDictionary.getPath(new BytesRef(":b")));
+    assertNull(PathDictionary.getPath(new BytesRef("abc")));
+  }
+
 }
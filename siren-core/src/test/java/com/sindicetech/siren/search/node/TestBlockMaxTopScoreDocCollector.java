@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import static com.sindicetech.siren.search.AbstractTestSirenScorer.BooleanClauseBuilder.should;
+import static com.sindicetech.siren.search.AbstractTestSirenScorer.NodeBooleanQueryBuilder.nbq;
+import static com.sindicetech.siren.search.AbstractTestSirenScorer.NodeTermQueryBuilder.ntq;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.junit.Test;
+
+import com.sindicetech.siren.index.codecs.siren10.Siren10VIntPostingsFormat;
+import com.sindicetech.siren.search.AbstractTestSirenScorer;
+
+public class TestBlockMaxTopScoreDocCollector extends AbstractTestSirenScorer {
+
+  @Override
+  protected void configure() throws IOException {
+    this.setAnalyzer(AnalyzerType.TUPLE);
+    // small blocks to have many block impacts
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4));
+  }
+
+  @Test
+  public void testEmptyIndex() throws IOException {
+    this.addDocument("\"ccc\" . ");
+    final Query query = nbq(should("aaa"), should("bbb")).getLuceneProxyQuery();
+    final BlockMaxTopScoreDocCollector collector = BlockMaxTopScoreDocCollector.create(10);
+    searcher.search(query, collector);
+    assertEquals(0, collector.getTotalHits());
+    assertEquals(0, collector.topDocs().scoreDocs.length);
+  }
+
+  @Test
+  public void testSkipNonCompetitiveDocuments() throws IOException {
+    final List<String> docs = new ArrayList<String>();
+    // a few high-scoring documents first, then many low-scoring documents
+    for (int i = 0; i < 5; i++) {
+      docs.add("\"aaa aaa bbb\" \"aaa\" . \"bbb bbb\" \"aaa ccc\" . ");
+    }
+    for (int i = 0; i < 500; i++) {
+      docs.add(i % 2 == 0 ? "\"aaa ddd\" . " : "\"bbb ddd\" \"ccc\" . ");
+    }
+    this.addNoNormsDocuments(docs);
+
+    final Query query = nbq(should("aaa"), should("bbb"), should("ccc")).getLuceneProxyQuery();
+    final TopDocs expected = searcher.search(query, 5);
+    final BlockMaxTopScoreDocCollector collector = BlockMaxTopScoreDocCollector.create(5);
+    searcher.search(query, collector);
+    this.assertTopDocs(expected, collector.topDocs());
+    // the low-scoring blocks have been skipped
+    assertTrue(collector.getTotalHits() < expected.totalHits);
+  }
+
+  @Test
+  public void testRandomDocuments() throws IOException {
+    final String[] terms = new String[] { "aaa", "bbb", "ccc", "ddd" };
+    final List<String> docs = new ArrayList<String>();
+    for (int i = 0; i < 300; i++) {
+      final StringBuilder builder = new StringBuilder();
+      final int nTuples = random().nextInt(3) + 1;
+      for (int t = 0; t < nTuples; t++) {
+        for (int n = 0; n < 2; n++) {
+          builder.append('"');
+          final int nTokens = random().nextInt(4) + 1;
+          for (int k = 0; k < nTokens; k++) {
+            builder.append(terms[random().nextInt(terms.length)]).append(' ');
+          }
+          builder.append("\" ");
+        }
+        builder.append(". ");
+      }
+      docs.add(builder.toString());
+    }
+    this.addNoNormsDocuments(docs);
+
+    final Query query = nbq(should("aaa"), should("bbb"), should("ccc")).getLuceneProxyQuery();
+    for (final int k : new int[] { 1, 10, 50, 1000 }) {
+      final TopDocs expected = searcher.search(query, k);
+      final BlockMaxTopScoreDocCollector collector = BlockMaxTopScoreDocCollector.create(k);
+      searcher.search(query, collector);
+      this.assertTopDocs(expected, collector.topDocs());
+    }
+  }
+
+  @Test
+  public void testWithNorms() throws IOException {
+    // without block impacts, all the matching documents are scored
+    this.addDocuments("\"aaa aaa bbb\" . ", "\"bbb\" \"ccc\" . ", "\"ddd\" . ", "\"aaa\" . ");
+
+    final Query query = nbq(should("aaa"), should("bbb")).getLuceneProxyQuery();
+    final TopDocs expected = searcher.search(query, 2);
+    final BlockMaxTopScoreDocCollector collector = BlockMaxTopScoreDocCollector.create(2);
+    searcher.search(query, collector);
+    this.assertTopDocs(expected, collector.topDocs());
+    assertEquals(expected.totalHits, collector.getTotalHits());
+  }
+
+  @Test
+  public void testBooleanQueryOfProxies() throws IOException {
+    final List<String> docs = new ArrayList<String>();
+    for (int i = 0; i < 5; i++) {
+      docs.add("\"aaa aaa bbb\" \"aaa\" . \"bbb bbb\" \"aaa ccc\" . ");
+    }
+    for (int i = 0; i < 500; i++) {
+      docs.add(i % 2 == 0 ? "\"aaa ddd\" . " : "\"bbb ddd\" \"ccc\" . ");
+    }
+    this.addNoNormsDocuments(docs);
+
+    // the disjunction built by the keyword query parser, scored with the
+    // coordination factor of a boolean query
+    final BooleanQuery expectedQuery = new BooleanQuery();
+    final BooleanQuery query = new BlockMaxBooleanQuery();
+    for (final String term : new String[] { "aaa", "bbb", "ccc", "eee" }) {
+      expectedQuery.add(ntq(term).getLuceneProxyQuery(), BooleanClause.Occur.SHOULD);
+      query.add(ntq(term).getLuceneProxyQuery(), BooleanClause.Occur.SHOULD);
+    }
+    assertEquals(expectedQuery, query);
+
+    final TopDocs expected = searcher.search(expectedQuery, 5);
+    assertEquals(expected.totalHits, searcher.search(query, 5).totalHits);
+
+    final BlockMaxTopScoreDocCollector collector = BlockMaxTopScoreDocCollector.create(5);
+    searcher.search(query, collector);
+    this.assertTopDocs(expected, collector.topDocs());
+    // the low-scoring blocks have been skipped
+    assertTrue(collector.getTotalHits() < expected.totalHits);
+  }
+
+  @Test
+  public void testWrappingCollector() throws IOException {
+    final List<String> docs = new ArrayList<String>();
+    for (int i = 0; i < 5; i++) {
+      docs.add("\"aaa aaa bbb\" \"aaa\" . \"bbb bbb\" \"aaa ccc\" . ");
+    }
+    for (int i = 0; i < 500; i++) {
+      docs.add(i % 2 == 0 ? "\"aaa ddd\" . " : "\"bbb ddd\" \"ccc\" . ");
+    }
+    this.addNoNormsDocuments(docs);
+
+    final Query query = nbq(should("aaa"), should("bbb"), should("ccc")).getLuceneProxyQuery();
+    final TopDocs expected = searcher.search(query, 5);
+
+    // a wrapper which does not forward the threshold disables the skipping
+    BlockMaxTopScoreDocCollector collector = BlockMaxTopScoreDocCollector.create(5);
+    final CountingCollector counting = new CountingCollector(collector);
+    searcher.search(query, counting);
+    this.assertTopDocs(expected, collector.topDocs());
+    assertEquals(expected.totalHits, collector.getTotalHits());
+    assertEquals(expected.totalHits, counting.count);
+
+    // a wrapper which forwards the threshold keeps it enabled
+    collector = BlockMaxTopScoreDocCollector.create(5);
+    final CountingCollector forwarding = new BlockMaxCountingCollector(collector);
+    searcher.search(query, forwarding);
+    this.assertTopDocs(expected, collector.topDocs());
+    assertTrue(collector.getTotalHits() < expected.totalHits);
+    assertEquals(collector.getTotalHits(), forwarding.count);
+  }
+
+  private void assertTopDocs(final TopDocs expected, final TopDocs actual) {
+    assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+    // the scores of a document may slightly differ as the node scores are
+    // not summed in the same order, the documents of equal scores may then
+    // be swapped
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      final ScoreDoc e = expected.scoreDocs[i];
+      final ScoreDoc a = actual.scoreDocs[i];
+      assertEquals(e.score, a.score, 0.0001f);
+    }
+  }
+
+  private void addNoNormsDocuments(final List<String> data) throws IOException {
+    final FieldType ft = newStoredFieldType();
+    ft.setOmitNorms(true);
+    final List<Document> docs = new ArrayList<Document>();
+    for (final String d : data) {
+      final Document doc = new Document();
+      doc.add(new Field(DEFAULT_TEST_FIELD, d, ft));
+      docs.add(doc);
+    }
+    this.addDocuments(docs);
+  }
+
+  /**
+   * A collector which counts the collected documents before forwarding them
+   * to another collector.
+   */
+  private static class CountingCollector extends Collector {
+
+    protected final Collector in;
+    int count = 0;
+
+    CountingCollector(final Collector in) {
+      this.in = in;
+    }
+
+    @Override
+    public void setScorer(final Scorer scorer) throws IOException {
+      in.setScorer(scorer);
+    }
+
+    @Override
+    public void collect(final int doc) throws IOException {
+      count++;
+      in.collect(doc);
+    }
+
+    @Override
+    public void setNextReader(final AtomicReaderContext context) throws IOException {
+      in.setNextReader(context);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+      return in.acceptsDocsOutOfOrder();
+    }
+
+  }
+
+  /**
+   * A {@link CountingCollector} which forwards the minimum competitive score of
+   * the wrapped collector.
+   */
+  private static class BlockMaxCountingCollector extends CountingCollector
+  implements BlockMaxCollector {
+
+    BlockMaxCountingCollector(final BlockMaxTopScoreDocCollector in) {
+      super(in);
+    }
+
+    @Override
+    public float minCompetitiveScore() {
+      return ((BlockMaxTopScoreDocCollector) in).minCompetitiveScore();
+    }
+
+  }
+
+}
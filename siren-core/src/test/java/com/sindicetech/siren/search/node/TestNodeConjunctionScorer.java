@@ -172,6 +172,94 @@ public class TestNodeConjunctionScorer extends AbstractTestSirenScorer {
     assertEndOfStream(scorer);
   }
 
+  @Test
+  public void testCost() throws Exception {
+    final ArrayList<String> docs = new ArrayList<String>();
+    for (int i = 0; i < 32; i++) {
+      docs.add("<http://sindice.com/test/name> \"Renaud Delbru\" . ");
+      docs.add("<http://sindice.com/test/name> \"Renaud\" . ");
+    }
+    this.addDocuments(docs);
+
+    assertEquals(64, this.getScorer(nbq(must("renaud"))).cost());
+    assertEquals(32, this.getScorer(nbq(must("delbru"))).cost());
+    // the cost of a conjunction is the cost of its least costly scorer
+    assertEquals(32, this.getScorer(nbq(must("renaud"), must("delbru"))).cost());
+    assertEquals(32, this.getScorer(nbq(must("delbru"), must("renaud"))).cost());
+  }
+
+  /**
+   * The least costly scorer leads the conjunction, whatever the order of the
+   * clauses.
+   */
+  @Test
+  public void testRareTermLeadsConjunction() throws Exception {
+    final ArrayList<String> docs = new ArrayList<String>();
+    for (int i = 0; i < 64; i++) {
+      if (i == 5 || i == 40) {
+        docs.add("<http://sindice.com/test/name> \"Renaud Delbru\" . ");
+      }
+      else {
+        docs.add("<http://sindice.com/test/name> \"Renaud\" . ");
+      }
+    }
+    this.addDocuments(docs);
+
+    for (final NodeBooleanQueryBuilder builder : new NodeBooleanQueryBuilder[] {
+      nbq(must("renaud"), must("name"), must("delbru")),
+      nbq(must("delbru"), must("name"), must("renaud"))
+    }) {
+      final NodeScorer scorer = this.getScorer(builder);
+      assertTrue(scorer.nextCandidateDocument());
+      assertEquals(5, scorer.doc());
+      assertFalse(scorer.nextNode());
+      assertTrue(scorer.nextCandidateDocument());
+      assertEquals(40, scorer.doc());
+      assertEndOfStream(scorer);
+    }
+
+    final NodeScorer scorer = this.getScorer(nbq(must("renaud"), must("delbru")));
+    assertTrue(scorer.skipToCandidate(6));
+    assertEquals(40, scorer.doc());
+    assertTrue(scorer.nextNode());
+    assertEquals(node(0,1), scorer.node());
+    assertEndOfStream(scorer);
+  }
+
+  /**
+   * In a large document, the frequent term skips to the nodes of the rare term
+   * using the node skip data.
+   */
+  @Test
+  public void testSkipToNodeInLargeDocument() throws Exception {
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      builder.append(i % 97 == 3 ? "\"aaa bbb\" . " : "\"aaa\" . ");
+    }
+    this.addDocument(builder.toString());
+
+    NodeScorer scorer = this.getScorer(nbq(must("aaa"), must("bbb")));
+    assertTrue(scorer.nextCandidateDocument());
+    for (int i = 3; i < 500; i += 97) {
+      assertTrue(scorer.nextNode());
+      assertEquals(node(i,0), scorer.node());
+    }
+    assertFalse(scorer.nextNode());
+    assertEndOfStream(scorer);
+
+    scorer = this.getScorer(nbq(must("aaa"), must("bbb")));
+    assertTrue(scorer.nextCandidateDocument());
+    assertTrue(scorer.skipToNode(node(101,0)));
+    assertEquals(node(197,0), scorer.node());
+    assertTrue(scorer.skipToNode(node(197,0)));
+    assertEquals(node(197,0), scorer.node());
+    assertTrue(scorer.skipToNode(node(400,0)));
+    assertEquals(node(488,0), scorer.node());
+    assertFalse(scorer.skipToNode(node(489,0)));
+    assertEquals(DocsAndNodesIterator.NO_MORE_NOD, scorer.node());
+    assertEndOfStream(scorer);
+  }
+
   /**
    * The score increases, even though the frequency of each term remains the same.
    * This is due to the length of the document which gets longer.
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import static com.sindicetech.siren.analysis.MockSirenDocument.doc;
+import static com.sindicetech.siren.analysis.MockSirenToken.node;
+import static com.sindicetech.siren.analysis.MockSirenToken.token;
+import static com.sindicetech.siren.search.AbstractTestSirenScorer.BooleanClauseBuilder.must;
+import static com.sindicetech.siren.search.AbstractTestSirenScorer.NodeTermQueryBuilder.ntq;
+import static com.sindicetech.siren.search.AbstractTestSirenScorer.TwigQueryBuilder.twq;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.Test;
+
+import com.sindicetech.siren.index.codecs.RandomSirenCodec.PostingsFormatType;
+import com.sindicetech.siren.search.AbstractTestSirenScorer;
+
+public class TestNodeConstantScoreQuery extends AbstractTestSirenScorer {
+
+  @Override
+  protected void configure() throws IOException {
+    this.setAnalyzer(AnalyzerType.MOCK);
+    this.setPostingsFormat(PostingsFormatType.RANDOM);
+  }
+
+  private void addTestDocuments() throws IOException {
+    this.addDocuments(
+      doc(token("aaa", node(1)), token("bbb", node(1,0)), token("ccc", node(2))),
+      doc(token("aaa", node(1,0)), token("bbb", node(1,0,1,0))),
+      doc(token("bbb", node(1)), token("aaa", node(1,0)), token("ccc", node(2))),
+      doc(token("aaa", node(1)), token("bbb", node(1,0))),
+      doc(token("aaa", node(1)), token("ccc", node(2)))
+    );
+  }
+
+  /**
+   * A filter accepting a fixed set of documents
+   */
+  private static class DocsFilter extends Filter {
+
+    private final int[] docs;
+
+    DocsFilter(final int ... docs) {
+      this.docs = docs;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(final AtomicReaderContext context, final Bits acceptDocs) {
+      final int maxDoc = context.reader().maxDoc();
+      final FixedBitSet set = new FixedBitSet(maxDoc);
+      for (final int doc : docs) {
+        if (doc >= context.docBase && doc < context.docBase + maxDoc) {
+          set.set(doc - context.docBase);
+        }
+      }
+      return BitsFilteredDocIdSet.wrap(set, acceptDocs);
+    }
+
+  }
+
+  @Test
+  public void testFilter() throws IOException {
+    this.addTestDocuments();
+
+    NodeConstantScoreQuery q = new NodeConstantScoreQuery(ntq("aaa").getQuery(), new DocsFilter(1, 3, 4));
+    q.setLevelConstraint(1);
+    this.checkHits(q, 3, 4);
+
+    // empty filter
+    q = new NodeConstantScoreQuery(ntq("aaa").getQuery(), new DocsFilter());
+    this.checkHits(q);
+
+    // filter matching documents beyond the matches of the query
+    q = new NodeConstantScoreQuery(ntq("ccc").getQuery(), new DocsFilter(1, 3));
+    this.checkHits(q);
+  }
+
+  @Test
+  public void testFilterInTwig() throws IOException {
+    this.addTestDocuments();
+
+    // the filter is pushed down into a child clause of the twig
+    final NodeConstantScoreQuery filtered = new NodeConstantScoreQuery(ntq("bbb").getQuery(), new DocsFilter(0, 1, 2));
+    final TwigQuery twig = (TwigQuery) twq(1, must("aaa")).getQuery();
+    twig.addChild(filtered, NodeBooleanClause.Occur.MUST);
+    this.checkHits(twig, 0);
+  }
+
+  @Test
+  public void testCachedNodeQueryFilter() throws IOException {
+    this.addTestDocuments();
+
+    final Filter filter = new CachingWrapperFilter(new NodeQueryWrapperFilter(ntq("ccc").getQuery()));
+    final NodeConstantScoreQuery q = new NodeConstantScoreQuery(ntq("aaa").getQuery(), filter);
+    this.checkHits(q, 0, 2, 4);
+    // the second execution uses the cached doc id sets
+    this.checkHits(q, 0, 2, 4);
+    assertTrue(((CachingWrapperFilter) filter).ramBytesUsed() > 0);
+  }
+
+  @Test
+  public void testEquality() throws IOException {
+    final Filter filter = new NodeQueryWrapperFilter(ntq("ccc").getQuery());
+    final NodeConstantScoreQuery q1 = new NodeConstantScoreQuery(ntq("aaa").getQuery(), filter);
+    final NodeConstantScoreQuery q2 = new NodeConstantScoreQuery(ntq("aaa").getQuery(),
+      new NodeQueryWrapperFilter(ntq("ccc").getQuery()));
+    assertEquals(q1, q2);
+    assertEquals(q1.hashCode(), q2.hashCode());
+    assertFalse(q1.equals(new NodeConstantScoreQuery(ntq("aaa").getQuery())));
+  }
+
+}
@@ -31,6 +31,7 @@ import org.apache.lucene.search.Weight;
 import org.junit.Test;
 
 import com.sindicetech.siren.index.codecs.RandomSirenCodec.PostingsFormatType;
+import com.sindicetech.siren.index.codecs.siren10.Siren10VIntPostingsFormat;
 import com.sindicetech.siren.util.BasicSirenTestCase;
 
 public class TestNodePhraseQuery extends BasicSirenTestCase {
@@ -77,6 +78,18 @@ public class TestNodePhraseQuery extends BasicSirenTestCase {
     assertEquals("reverse not exact", 0, hits.totalHits);
   }
 
+  /**
+   * Ensures a phrase query fails on a field indexed without the positions
+   */
+  @Test(expected=IllegalStateException.class)
+  public void testNodesOnlyField() throws Exception {
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4, 2, false));
+    this.addDocuments("\"Renaud Delbru\" . ");
+
+    final Weight w = searcher.createNormalizedWeight(npq("renaud", "delbru").getQuery());
+    w.scorer((AtomicReaderContext) reader.getContext(), null);
+  }
+
   /**
    * Ensures slop of 0 works for exact matches, but not in separate cells or
    * tuples
@@ -75,4 +75,42 @@ public class TestNodePrefixQuery extends BasicSirenTestCase {
     assertEquals("All documents in /computers category and below in node 0", 3, hits.length);
   }
 
+  /**
+   * Checks that the filter rewrite matches the same nodes than the boolean
+   * rewrite, including when node constraints are set by an ancestor.
+   */
+  public void testFilterRewrite() throws Exception {
+    this.addDocument("</computers> </computers/mac> </computers/windows>");
+    this.addDocument("</computers/mac> </computers/mac/air> </phones>");
+    this.addDocument("</phones> </computers>");
+    this.addDocument("</phones> </tablets>");
+
+    for (final int node : new int[] { -1, 0, 1, 2 }) {
+      final NodePrefixQuery filter = new NodePrefixQuery(new Term(DEFAULT_TEST_FIELD, "/computers"));
+      filter.setRewriteMethod(MultiNodeTermQuery.CONSTANT_SCORE_FILTER_REWRITE);
+      final NodePrefixQuery bool = new NodePrefixQuery(new Term(DEFAULT_TEST_FIELD, "/computers"));
+      bool.setRewriteMethod(MultiNodeTermQuery.CONSTANT_SCORE_BOOLEAN_QUERY_REWRITE);
+      if (node != -1) {
+        filter.setNodeConstraint(node);
+        bool.setNodeConstraint(node);
+      }
+      this.assertSameHits(filter, bool);
+
+      final TwigQuery filterTwig = new TwigQuery();
+      filterTwig.addChild(filter, NodeBooleanClause.Occur.MUST);
+      final TwigQuery boolTwig = new TwigQuery();
+      boolTwig.addChild(bool, NodeBooleanClause.Occur.MUST);
+      this.assertSameHits(filterTwig, boolTwig);
+    }
+  }
+
+  private void assertSameHits(final NodeQuery q1, final NodeQuery q2) throws Exception {
+    final ScoreDoc[] hits1 = searcher.search(dq(q1), null, 1000).scoreDocs;
+    final ScoreDoc[] hits2 = searcher.search(dq(q2), null, 1000).scoreDocs;
+    assertEquals(hits2.length, hits1.length);
+    for (int i = 0; i < hits1.length; i++) {
+      assertEquals(hits2[i].doc, hits1[i].doc);
+    }
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.search.node;
+
+import static com.sindicetech.siren.analysis.MockSirenDocument.doc;
+import static com.sindicetech.siren.analysis.MockSirenToken.node;
+import static com.sindicetech.siren.analysis.MockSirenToken.token;
+import static com.sindicetech.siren.search.AbstractTestSirenScorer.BooleanClauseBuilder.must;
+import static com.sindicetech.siren.search.AbstractTestSirenScorer.NodeTermQueryBuilder.ntq;
+import static com.sindicetech.siren.search.AbstractTestSirenScorer.TwigChildBuilder.child;
+import static com.sindicetech.siren.search.AbstractTestSirenScorer.TwigQueryBuilder.twq;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.sindicetech.siren.index.codecs.RandomSirenCodec.PostingsFormatType;
+import com.sindicetech.siren.search.AbstractTestSirenScorer;
+
+public class TestNodeQueryCache extends AbstractTestSirenScorer {
+
+  @Override
+  protected void configure() throws IOException {
+    this.setAnalyzer(AnalyzerType.MOCK);
+    this.setPostingsFormat(PostingsFormatType.RANDOM);
+  }
+
+  private void addTestDocuments() throws IOException {
+    this.addDocuments(
+      doc(token("aaa", node(1)), token("bbb", node(1,0)), token("aaa", node(2))),
+      doc(token("aaa", node(1,0)), token("bbb", node(1,0,1,0))),
+      doc(token("bbb", node(1)), token("aaa", node(1,0)), token("ccc", node(2)))
+    );
+  }
+
+  @Test
+  public void testConstantScoreQuery() throws IOException {
+    this.addTestDocuments();
+    final NodeQueryCache cache = new NodeQueryCache(16, Long.MAX_VALUE);
+
+    final NodeConstantScoreQuery q1 = new NodeConstantScoreQuery(ntq("aaa").getQuery());
+    q1.setLevelConstraint(1);
+    q1.setNodeQueryCache(cache);
+    this.checkHits(q1, 0);
+    assertEquals(1, cache.getMissCount());
+    assertEquals(0, cache.getHitCount());
+    assertEquals(1, cache.size());
+
+    // an equal query with a different boost must reuse the entry
+    final NodeConstantScoreQuery q2 = new NodeConstantScoreQuery(ntq("aaa").getQuery());
+    q2.setLevelConstraint(1);
+    q2.setBoost(2.0f);
+    q2.setNodeQueryCache(cache);
+    this.checkHits(q2, 0);
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.size());
+
+    // a different constraint must not reuse the entry
+    final NodeConstantScoreQuery q3 = new NodeConstantScoreQuery(ntq("aaa").getQuery());
+    q3.setLevelConstraint(2);
+    q3.setNodeQueryCache(cache);
+    this.checkHits(q3, 1, 2);
+    assertEquals(2, cache.getMissCount());
+    assertEquals(2, cache.size());
+    assertTrue(cache.ramBytesUsed() > 0);
+  }
+
+  @Test
+  public void testTwigQuery() throws IOException {
+    this.addTestDocuments();
+    final NodeQueryCache cache = new NodeQueryCache(16, Long.MAX_VALUE);
+
+    // constant score child clause
+    final NodeConstantScoreQuery filter = new NodeConstantScoreQuery(ntq("aaa").getQuery());
+    filter.setNodeQueryCache(cache);
+    TwigQuery twig = (TwigQuery) twq(1, must("bbb")).getQuery();
+    twig.addChild(filter, NodeBooleanClause.Occur.MUST);
+    this.checkHits(twig, 2);
+    this.checkHits(twig, 2);
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getHitCount());
+
+    // the same clause under a different root level must not reuse the entry
+    twig = (TwigQuery) twq(2, must("bbb")).getQuery();
+    twig.addChild(filter, NodeBooleanClause.Occur.MUST);
+    this.checkHits(twig);
+    assertEquals(2, cache.getMissCount());
+
+    // prohibited clause
+    cache.clear();
+    twig = (TwigQuery) twq(1).root(ntq("aaa")).without(child(must("bbb"))).getQuery();
+    twig.setNodeQueryCache(cache);
+    this.checkHits(twig, 0);
+    this.checkHits(twig, 0);
+    assertEquals(1, cache.size());
+    assertEquals(2, cache.getHitCount());
+  }
+
+  /**
+   * The constraints of a clause are modified in place by its parent. Reusing
+   * the clause under another parent must not alter the entries of the cache.
+   */
+  @Test
+  public void testReusedClause() throws IOException {
+    this.addTestDocuments();
+    final NodeQueryCache cache = new NodeQueryCache(16, Long.MAX_VALUE);
+
+    final NodeConstantScoreQuery filter = new NodeConstantScoreQuery(ntq("aaa").getQuery());
+    filter.setNodeQueryCache(cache);
+    TwigQuery twig = (TwigQuery) twq(1, must("bbb")).getQuery();
+    twig.addChild(filter, NodeBooleanClause.Occur.MUST);
+    this.checkHits(twig, 2);
+
+    // the clause is now at level 3
+    twig = (TwigQuery) twq(2, must("bbb")).getQuery();
+    twig.addChild(filter, NodeBooleanClause.Occur.MUST);
+    this.checkHits(twig);
+    assertEquals(2, cache.getMissCount());
+
+    // an equal clause at level 2 must find the first entry
+    final NodeConstantScoreQuery other = new NodeConstantScoreQuery(ntq("aaa").getQuery());
+    other.setNodeQueryCache(cache);
+    twig = (TwigQuery) twq(1, must("bbb")).getQuery();
+    twig.addChild(other, NodeBooleanClause.Occur.MUST);
+    this.checkHits(twig, 2);
+    assertEquals(2, cache.getMissCount());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    this.addTestDocuments();
+    final NodeQueryCache cache = new NodeQueryCache(1, Long.MAX_VALUE);
+
+    final NodeConstantScoreQuery q1 = new NodeConstantScoreQuery(ntq("aaa").getQuery());
+    q1.setNodeQueryCache(cache);
+    final NodeConstantScoreQuery q2 = new NodeConstantScoreQuery(ntq("bbb").getQuery());
+    q2.setNodeQueryCache(cache);
+
+    this.checkHits(q1, 0, 1, 2);
+    this.checkHits(q2, 0, 1, 2);
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+
+    // q1 has been evicted
+    this.checkHits(q1, 0, 1, 2);
+    assertEquals(3, cache.getMissCount());
+    assertEquals(2, cache.getEvictionCount());
+
+    final NodeQueryCache tiny = new NodeQueryCache(16, 1);
+    q1.setNodeQueryCache(tiny);
+    this.checkHits(q1, 0, 1, 2);
+    assertEquals(0, tiny.size());
+    assertEquals(0, tiny.ramBytesUsed());
+  }
+
+  @Test
+  public void testClosedSegment() throws IOException {
+    this.addTestDocuments();
+    final NodeQueryCache cache = new NodeQueryCache(16, Long.MAX_VALUE);
+
+    final NodeConstantScoreQuery q = new NodeConstantScoreQuery(ntq("ccc").getQuery());
+    q.setNodeQueryCache(cache);
+    this.checkHits(q, 2);
+    assertEquals(1, cache.size());
+
+    // entries of closed segments must be removed
+    this.deleteAll();
+    assertEquals(0, cache.size());
+    this.checkHits(q);
+  }
+
+}
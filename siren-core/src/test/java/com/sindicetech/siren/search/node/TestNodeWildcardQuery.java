@@ -27,7 +27,6 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.PrefixTermsEnum;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
-import org.junit.Test;
 
 import com.sindicetech.siren.analysis.AnyURIAnalyzer;
 import com.sindicetech.siren.analysis.TupleAnalyzer;
@@ -84,18 +83,28 @@ public class TestNodeWildcardQuery extends BasicSirenTestCase {
   }
 
   /**
-   * Tests if the ConstantScore filter rewrite return an exception
+   * Tests if the ConstantScore filter rewrite returns a
+   * {@link NodeConstantScoreQuery} over a {@link MultiNodeTermFilterQuery}.
+   * The boost should be preserved.
    */
-  @Test(expected=UnsupportedOperationException.class)
   public void testFilterRewrite() throws IOException {
-    this.addDocument("<nowildcard> <nowildcardx>");
+    this.addDocuments("<nowildcard> <nowildcardx>", "<nowildcardx> <nowildcard>", "<wildcard>");
 
-    final MultiNodeTermQuery wq = new NodeWildcardQuery(new Term(DEFAULT_TEST_FIELD, "nowildcard"));
-    this.assertMatches(searcher, wq, 1);
+    final MultiNodeTermQuery wq = new NodeWildcardQuery(new Term(DEFAULT_TEST_FIELD, "nowildcard*"));
+    this.assertMatches(searcher, wq, 2);
 
     wq.setRewriteMethod(MultiNodeTermQuery.CONSTANT_SCORE_FILTER_REWRITE);
     wq.setBoost(0.2F);
-    searcher.rewrite(wq);
+    final Query q = searcher.rewrite(wq);
+    assertTrue(q instanceof NodeConstantScoreQuery);
+    assertTrue(((NodeConstantScoreQuery) q).getQuery() instanceof MultiNodeTermFilterQuery);
+    assertEquals(q.getBoost(), wq.getBoost(), 0);
+    this.assertMatches(searcher, wq, 2);
+
+    wq.setNodeConstraint(1);
+    this.assertMatches(searcher, wq, 2);
+    wq.setNodeConstraint(2);
+    this.assertMatches(searcher, wq, 0);
   }
 
   /**
@@ -162,7 +171,11 @@ public class TestNodeWildcardQuery extends BasicSirenTestCase {
     expected.setBoost(wq.getBoost());
     assertEquals(searcher.rewrite(expected), searcher.rewrite(wq));
 
-    wq.setRewriteMethod(MultiNodeTermQuery.CONSTANT_SCORE_AUTO_REWRITE_DEFAULT);
+    // disable the document cutoff, otherwise the filter rewrite is always
+    // selected on such a small index
+    final NodeConstantScoreAutoRewrite autoRewrite = new NodeConstantScoreAutoRewrite();
+    autoRewrite.setDocCountPercent(Integer.MAX_VALUE);
+    wq.setRewriteMethod(autoRewrite);
     wq.setBoost(0.3F);
     expected.setRewriteMethod(wq.getRewriteMethod());
     expected.setBoost(wq.getBoost());
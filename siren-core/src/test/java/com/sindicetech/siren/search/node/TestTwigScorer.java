@@ -25,6 +25,7 @@ import static com.sindicetech.siren.search.AbstractTestSirenScorer.BooleanClause
 import static com.sindicetech.siren.search.AbstractTestSirenScorer.BooleanClauseBuilder.not;
 import static com.sindicetech.siren.search.AbstractTestSirenScorer.BooleanClauseBuilder.should;
 import static com.sindicetech.siren.search.AbstractTestSirenScorer.NodeBooleanQueryBuilder.nbq;
+import static com.sindicetech.siren.search.AbstractTestSirenScorer.NodeTermQueryBuilder.ntq;
 import static com.sindicetech.siren.search.AbstractTestSirenScorer.TwigChildBuilder.child;
 import static com.sindicetech.siren.search.AbstractTestSirenScorer.TwigDescendantBuilder.desc;
 import static com.sindicetech.siren.search.AbstractTestSirenScorer.TwigQueryBuilder.twq;
@@ -32,6 +33,10 @@ import static com.sindicetech.siren.search.AbstractTestSirenScorer.TwigQueryBuil
 import java.io.IOException;
 import java.util.Collection;
 
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer.ChildScorer;
 import org.junit.Test;
@@ -685,6 +690,214 @@ public class TestTwigScorer extends AbstractTestSirenScorer {
     assertEndOfStream(scorer);
   }
 
+  @Test
+  public void testTwigStackScorer() throws Exception {
+    this.addDocuments(
+      doc(token("aaa", node(1,0)), token("bbb", node(1,0,1)), token("bbb", node(1,0,3)),
+          token("ccc", node(1,0,3,0)), token("aaa", node(1,2)), token("bbb", node(1,2,0)),
+          token("ccc", node(1,2,0,1)), token("eee", node(1,2,4)), token("fff", node(1,2,4,1))),
+      doc(token("aaa", node(1,0)), token("bbb", node(1,0,1)), token("ccc", node(1,1,1,0)))
+    );
+
+    NodeScorer scorer = this.getScorer(
+      twq(2, must("aaa")).with(child(must(
+                                twq(3, must("bbb")).with(child(must("ccc")))
+                               )))
+    );
+    assertTrue(scorer instanceof TwigStackScorer);
+
+    assertTrue(scorer.nextCandidateDocument());
+    assertEquals(0, scorer.doc());
+    assertEquals(node(-1), scorer.node());
+    assertTrue(scorer.nextNode());
+    assertEquals(node(1,0), scorer.node());
+    assertTrue(scorer.scoreInNode() > 0);
+    // the root, and the matching nested twig with its descendant
+    assertEquals(3, scorer.freqInNode());
+    assertTrue(scorer.nextNode());
+    assertEquals(node(1,2), scorer.node());
+    assertFalse(scorer.nextNode());
+    assertEquals(DocsAndNodesIterator.NO_MORE_NOD, scorer.node());
+
+    // candidate document whose descendants are not below the same ancestor
+    assertTrue(scorer.nextCandidateDocument());
+    assertEquals(1, scorer.doc());
+    assertFalse(scorer.nextNode());
+    assertEquals(DocsAndNodesIterator.NO_MORE_NOD, scorer.node());
+
+    assertEndOfStream(scorer);
+
+    scorer = this.getScorer(
+      twq(2, must("aaa")).with(child(must(
+                                twq(3, must("bbb")).with(child(must("ccc")))
+                               )))
+                         .with(child(must(
+                                twq(3, must("eee")).with(child(must("fff")))
+                               )))
+    );
+    // the nested twig is more selective than the root: pairwise evaluation
+    assertTrue(scorer instanceof TwigScorer);
+    assertTrue(scorer.nextCandidateDocument());
+    assertEquals(0, scorer.doc());
+    assertTrue(scorer.skipToNode(node(1,1)));
+    assertEquals(node(1,2), scorer.node());
+    assertFalse(scorer.nextNode());
+    assertEndOfStream(scorer);
+
+    // empty roots
+    scorer = this.getScorer(
+      twq(2).with(child(must(
+                    twq(3, must("bbb")).with(child(must("ccc")))
+                  )))
+            .with(child(must("eee")))
+    );
+    assertTrue(scorer instanceof TwigStackScorer);
+    assertTrue(scorer.nextCandidateDocument());
+    assertEquals(0, scorer.doc());
+    assertTrue(scorer.nextNode());
+    assertEquals(node(1,2), scorer.node());
+    assertFalse(scorer.nextNode());
+    assertEndOfStream(scorer);
+
+    // three levels of nesting
+    scorer = this.getScorer(
+      twq(1).with(child(must(
+                    twq(2, must("aaa")).with(child(must(
+                                                twq(3, must("bbb")).with(child(must("ccc")))
+                                              )))
+                  )))
+            .with(child(must("aaa")))
+    );
+    assertTrue(scorer instanceof TwigStackScorer);
+    assertTrue(scorer.nextCandidateDocument());
+    assertEquals(0, scorer.doc());
+    assertTrue(scorer.nextNode());
+    assertEquals(node(1), scorer.node());
+    assertTrue(scorer.scoreInNode() > 0);
+    assertFalse(scorer.nextNode());
+    assertTrue(scorer.nextCandidateDocument());
+    assertEquals(1, scorer.doc());
+    assertFalse(scorer.nextNode());
+    assertEndOfStream(scorer);
+
+    // an optional clause falls back to the twig scorer
+    scorer = this.getScorer(
+      twq(2, must("aaa")).with(child(must(
+                                twq(3, must("bbb")).with(child(must("ccc")))
+                               )))
+                         .optional(child(must("eee")))
+    );
+    assertTrue(scorer instanceof TwigScorer);
+  }
+
+  @Test
+  public void testTwigStackScorerScores() throws Exception {
+    this.addDocuments(
+      doc(token("aaa", node(1,0)), token("bbb", node(1,0,1)), token("ccc", node(1,0,1,0)),
+          token("ccc", node(1,0,1,2)), token("bbb", node(1,0,3)), token("ccc", node(1,0,3,0)),
+          token("ddd", node(1,0,4)), token("ddd", node(1,0,5)), token("ddd", node(1,0,6))),
+      doc(token("aaa", node(1,0)), token("bbb", node(1,0,1)), token("ccc", node(1,0,1,0)),
+          token("ddd", node(1,0,2)), token("aaa", node(1,2)), token("bbb", node(1,2,0)),
+          token("bbb", node(1,2,1)), token("ccc", node(1,2,1,3)), token("ddd", node(1,2,2))),
+      doc(token("aaa", node(1,0)), token("bbb", node(1,0,1)), token("ddd", node(1,0,2)),
+          token("ccc", node(1,1,1,0)))
+    );
+
+    final NodeQueryBuilder builder =
+      twq(2, must("aaa")).with(child(must(
+                                twq(3, must("bbb")).with(child(must("ccc")))
+                               )))
+                         .with(child(must("ddd")));
+    final NodeScorer scorer = this.getScorer(builder);
+    assertTrue(scorer instanceof TwigStackScorer);
+
+    // the root node is returned once, and counts all its matching descendants
+    assertTrue(scorer.nextCandidateDocument());
+    assertEquals(0, scorer.doc());
+    assertTrue(scorer.nextNode());
+    assertEquals(node(1,0), scorer.node());
+    assertEquals(9, scorer.freqInNode());
+    final float score = scorer.scoreInNode();
+    assertTrue(score > 0);
+    // the score is computed once
+    assertEquals(score, scorer.scoreInNode(), 0f);
+    assertEquals(9, scorer.freqInNode());
+    assertFalse(scorer.nextNode());
+
+    // a descendant of the second root node does not match the nested twig
+    assertTrue(scorer.nextCandidateDocument());
+    assertEquals(1, scorer.doc());
+    assertTrue(scorer.nextNode());
+    assertEquals(node(1,0), scorer.node());
+    assertEquals(4, scorer.freqInNode());
+    assertTrue(scorer.nextNode());
+    assertEquals(node(1,2), scorer.node());
+    assertEquals(4, scorer.freqInNode());
+    assertFalse(scorer.nextNode());
+
+    assertTrue(scorer.nextCandidateDocument());
+    assertEquals(2, scorer.doc());
+    assertFalse(scorer.nextNode());
+    assertEndOfStream(scorer);
+
+    // the root nodes are not scored
+    this.assertSameDocuments(builder);
+    this.assertSameDocuments(
+      twq(2).with(child(must(
+                    twq(3, must("bbb")).with(child(must("ccc")))
+                  )))
+            .with(child(must("ddd")))
+    );
+    this.assertSameDocuments(
+      twq(1).with(child(must(
+                    twq(2, must("aaa")).with(child(must(
+                                                twq(3, must("bbb")).with(child(must("ccc")))
+                                              )))
+                  )))
+            .with(child(must("aaa")))
+    );
+  }
+
+  /**
+   * Asserts that the {@link TwigStackScorer} of the query returns the same
+   * documents and root nodes as its {@link TwigScorer}.
+   */
+  private void assertSameDocuments(final NodeQueryBuilder builder) throws IOException {
+    final TwigQuery.TwigWeight weight = (TwigQuery.TwigWeight) searcher.createNormalizedWeight(builder.getQuery());
+    final AtomicReaderContext context = (AtomicReaderContext) searcher.getTopReaderContext();
+    final NodeScorer actual = (NodeScorer) weight.scorer(context, context.reader().getLiveDocs());
+    final NodeScorer expected = weight.twigScorer(context, context.reader().getLiveDocs());
+    assertTrue(actual instanceof TwigStackScorer);
+    assertTrue(expected instanceof TwigScorer);
+
+    int nDocs = 0;
+    while (this.nextMatchingDocument(expected)) {
+      assertTrue(this.nextMatchingDocument(actual));
+      assertEquals(expected.doc(), actual.doc());
+      // the twig scorer returns a root node once per combination of matching
+      // descendants
+      do {
+        if (!expected.node().equals(actual.node())) {
+          assertTrue(actual.nextNode());
+          assertEquals(expected.node(), actual.node());
+        }
+      } while (expected.nextNode());
+      assertFalse(actual.nextNode());
+      nDocs++;
+    }
+    assertFalse(this.nextMatchingDocument(actual));
+    assertTrue(nDocs > 0);
+  }
+
+  private boolean nextMatchingDocument(final NodeScorer scorer) throws IOException {
+    while (scorer.nextCandidateDocument()) {
+      if (scorer.nextNode()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Test
   public void testNodeConstraints() throws Exception {
     this.addDocuments(
@@ -786,4 +999,56 @@ public class TestTwigScorer extends AbstractTestSirenScorer {
     assertEquals(0, searcher.search(query, 100).totalHits);
   }
 
+  @Test
+  public void testPathDictionaryPruning() throws Exception {
+    this.setPostingsFormat(PostingsFormatType.SIREN_10);
+    this.addDocuments(
+      doc(token("a:", node(1)), token("b:x", node(1,0)), token("c:y", node(1,1))),
+      doc(token("a:", node(1)), token("b:z", node(1,0)), token("nopath", node(1,1)))
+    );
+    this.forceMerge();
+
+    final DirectoryReader dirReader = writer.getReader();
+    try {
+      final AtomicReader segmentReader = getOnlySegmentReader(dirReader);
+      final IndexSearcher segmentSearcher = new IndexSearcher(segmentReader);
+
+      // the path d does not occur in the segment
+      NodeQuery query = twq(1).root(ntq("a:")).with(child(must("d:x"))).getQuery();
+      assertEquals(0, query.pathDocCount(segmentReader));
+      assertNull(this.getScorer(segmentSearcher, query));
+
+      // prohibited and optional clauses do not prune the twig
+      query = twq(1).root(ntq("a:"))
+                    .without(child(must("d:x")))
+                    .optional(child(should("c:y"))).getQuery();
+      assertEquals(2, query.pathDocCount(segmentReader));
+      final NodeScorer scorer = this.getScorer(segmentSearcher, query);
+      assertTrue(scorer.nextCandidateDocument());
+      assertEquals(0, scorer.doc());
+      assertTrue(scorer.nextCandidateDocument());
+      assertEquals(1, scorer.doc());
+      assertFalse(scorer.nextCandidateDocument());
+
+      // a conjunction is bounded by its most selective clause, a disjunction by
+      // the sum of its clauses
+      assertEquals(1, nbq(must("b:x"), must("c:y")).getQuery().pathDocCount(segmentReader));
+      assertEquals(2, nbq(should("b:x"), should("d:x")).getQuery().pathDocCount(segmentReader));
+      assertEquals(0, nbq(should("d:x"), should("e:x")).getQuery().pathDocCount(segmentReader));
+      assertNull(this.getScorer(segmentSearcher, nbq(should("d:x"), should("e:x")).getQuery()));
+      // the count is unknown for a term without path
+      assertEquals(-1, ntq("nopath").getQuery().pathDocCount(segmentReader));
+      assertEquals(-1, nbq(should("b:x"), should("nopath")).getQuery().pathDocCount(segmentReader));
+    }
+    finally {
+      dirReader.close();
+    }
+  }
+
+  private NodeScorer getScorer(final IndexSearcher searcher, final Query query)
+  throws IOException {
+    final AtomicReaderContext context = (AtomicReaderContext) searcher.getTopReaderContext();
+    return (NodeScorer) searcher.createNormalizedWeight(query).scorer(context, null);
+  }
+
 }
@@ -156,6 +156,32 @@ public class TestTermNearSpanQuery extends BasicSirenTestCase {
     assertEquals(1, hits.totalHits);
   }
 
+  @Test
+  public void testNearManyClauses() throws Exception {
+    this.addDocuments(
+      doc(token("aaa", node(1)), token("bbb", node(1)), token("ccc", node(1)), token("ddd", node(1)), token("eee", node(1))),
+      doc(token("aaa", node(1)), token("bbb", node(1)), token("ccc", node(1)), token("ddd", node(1)), token("eee", node(2))),
+      doc(token("aaa", node(1)), token("bbb", node(1)), token("ddd", node(1)), token("eee", node(1))),
+      doc(token("eee", node(1)), token("ddd", node(1)), token("ccc", node(1)), token("bbb", node(1)), token("aaa", node(1))),
+      doc(token("aaa", node(1)), token("eee", node(2)), token("aaa", node(1, 0)), token("bbb", node(1, 0)),
+          token("ccc", node(1, 0)), token("ddd", node(1, 0)), token("eee", node(1, 0)))
+    );
+
+    final SpanQuery[] clauses = new SpanQuery[5];
+    final String[] terms = new String[] { "aaa", "bbb", "ccc", "ddd", "eee" };
+    for (int i = 0; i < terms.length; i++) {
+      clauses[i] = new TermSpanQuery(new Term(DEFAULT_TEST_FIELD, terms[i]));
+    }
+
+    NearSpanQuery spanQuery = new NearSpanQuery(clauses, 0, true);
+    TopDocs hits = searcher.search(new LuceneProxyNodeQuery(spanQuery), 100);
+    assertEquals(2, hits.totalHits);
+
+    spanQuery = new NearSpanQuery(clauses, 0, false);
+    hits = searcher.search(new LuceneProxyNodeQuery(spanQuery), 100);
+    assertEquals(3, hits.totalHits);
+  }
+
   @Test
   public void testNearExactOrderedAfterInvalidSpan() throws IOException {
     this.addDocuments(doc(token("aaa", node(2)), token("bbb", node(2), 2), token("aaa", node(2)), token("bbb", node(2))));
@@ -18,14 +18,17 @@
  */
 package com.sindicetech.siren.search.spans;
 
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.QueryUtils;
+import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.English;
 import org.junit.Test;
 
 import com.sindicetech.siren.analysis.MockSirenDocument;
 import com.sindicetech.siren.analysis.MockSirenToken;
 import com.sindicetech.siren.index.codecs.RandomSirenCodec;
+import com.sindicetech.siren.index.codecs.siren10.Siren10VIntPostingsFormat;
 import com.sindicetech.siren.search.spans.NearSpanQuery;
 import com.sindicetech.siren.search.spans.NotSpanQuery;
 import com.sindicetech.siren.search.spans.OrSpanQuery;
@@ -67,6 +70,16 @@ public class TestTermSpansBasics extends BasicSirenTestCase {
     return docs;
   }
 
+  @Test(expected=IllegalStateException.class)
+  public void testNodesOnlyField() throws Exception {
+    this.setPostingsFormat(new Siren10VIntPostingsFormat(4, 2, false));
+    this.addDocuments(this.generateDocuments(10));
+
+    final TermSpanQuery query = new TermSpanQuery(new Term(DEFAULT_TEST_FIELD, "seven"));
+    final Weight w = searcher.createNormalizedWeight(query);
+    w.scorer((AtomicReaderContext) reader.getContext(), null);
+  }
+
   @Test
   public void testSpanNearExact() throws Exception {
     this.addDocuments(this.generateDocuments(500));
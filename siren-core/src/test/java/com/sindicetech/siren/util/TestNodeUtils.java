@@ -65,6 +65,11 @@ public class TestNodeUtils {
     n1 = node(1, 1);
     n2 = node(1, 1, 0);
     assertTrue(NodeUtils.compareAncestor(n1, n2) == 0);
+
+    // the offset of the nodes must be taken into account
+    n1 = node(1, 1);
+    n2 = new IntsRef(new int[] { 5, 1, 1, 0 }, 1, 3);
+    assertTrue(NodeUtils.compareAncestor(n1, n2) == 0);
   }
 
   @Test
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.util;
+
+import com.sindicetech.siren.analysis.ConciseJsonTokenizer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestUTF8ByteArrayReader extends LuceneTestCase {
+
+  @Test
+  public void testValidUTF8() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      final String s = TestUtil.randomRealisticUnicodeString(random(), 0, 200);
+      final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      assertEquals(s, this.read(new UTF8ByteArrayReader(bytes)));
+    }
+  }
+
+  @Test
+  public void testSupplementaryCharacters() throws Exception {
+    final String s = "a😀b𝄞";
+    final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    // a buffer of one char splits the surrogate pairs across reads
+    assertEquals(s, this.read(new UTF8ByteArrayReader(bytes), 1));
+  }
+
+  @Test
+  public void testMalformedUTF8() throws Exception {
+    // truncated sequence, overlong encoding, surrogate and truncated input
+    final byte[] bytes = new byte[] { 'a', (byte) 0xE2, (byte) 0x82, 'b', (byte) 0xC0, (byte) 0xAF,
+                                      (byte) 0xED, (byte) 0xA0, (byte) 0x80, (byte) 0xF0, (byte) 0x9F };
+    assertEquals("a\uFFFDb\uFFFD\uFFFD\uFFFD\uFFFD\uFFFD\uFFFD", this.read(new UTF8ByteArrayReader(bytes)));
+
+    // the valid characters around random bytes are preserved
+    for (int i = 0; i < 100; i++) {
+      final byte[] random = new byte[random().nextInt(50)];
+      random().nextBytes(random);
+      final String decoded = this.read(new UTF8ByteArrayReader(random));
+      final byte[] wrapped = new byte[random.length + 2];
+      wrapped[0] = '[';
+      System.arraycopy(random, 0, wrapped, 1, random.length);
+      wrapped[wrapped.length - 1] = ']';
+      assertEquals("[" + decoded + "]", this.read(new UTF8ByteArrayReader(wrapped)));
+    }
+  }
+
+  @Test
+  public void testOffsetAndReset() throws Exception {
+    final byte[] bytes = "xxétéyy".getBytes(StandardCharsets.UTF_8);
+    final UTF8ByteArrayReader reader = new UTF8ByteArrayReader(bytes, 2, bytes.length - 4);
+    assertEquals("été", this.read(reader));
+    reader.reset(bytes);
+    assertEquals("xxétéyy", this.read(reader));
+  }
+
+  @Test
+  public void testJsonTokenizer() throws Exception {
+    final String json = "{ \"naïve\" : [ \"café\", \"😀\", 12 ], \"b\" : { \"c\" : true } }";
+    final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    assertEquals(this.tokenize(new StringReader(json)), this.tokenize(new UTF8ByteArrayReader(bytes)));
+  }
+
+  private String read(final Reader reader) throws Exception {
+    return this.read(reader, 1 + random().nextInt(16));
+  }
+
+  private String read(final Reader reader, final int bufferSize) throws Exception {
+    final StringBuilder builder = new StringBuilder();
+    final char[] buffer = new char[bufferSize];
+    int n;
+    while ((n = reader.read(buffer, 0, buffer.length)) != -1) {
+      builder.append(buffer, 0, n);
+    }
+    return builder.toString();
+  }
+
+  private List<String> tokenize(final Reader reader) throws Exception {
+    final Tokenizer tokenizer = new ConciseJsonTokenizer(reader);
+    final CharTermAttribute termAtt = tokenizer.getAttribute(CharTermAttribute.class);
+    final OffsetAttribute offsetAtt = tokenizer.getAttribute(OffsetAttribute.class);
+    final List<String> tokens = new ArrayList<String>();
+    tokenizer.reset();
+    while (tokenizer.incrementToken()) {
+      tokens.add(termAtt.toString() + " " + offsetAtt.startOffset() + "-" + offsetAtt.endOffset());
+    }
+    tokenizer.end();
+    tokenizer.close();
+    assertFalse(tokens.isEmpty());
+    return tokens;
+  }
+
+}
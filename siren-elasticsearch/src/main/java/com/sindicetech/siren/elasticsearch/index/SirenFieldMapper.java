@@ -17,10 +17,10 @@
  */
 package com.sindicetech.siren.elasticsearch.index;
 
+import static org.elasticsearch.common.xcontent.support.XContentMapValues.nodeBooleanValue;
 import static org.elasticsearch.index.mapper.core.TypeParsers.parseField;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
 
@@ -28,13 +28,16 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.index.IndexableField;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.index.analysis.NamedAnalyzer;
 import org.elasticsearch.index.codec.docvaluesformat.DocValuesFormatProvider;
 import org.elasticsearch.index.codec.postingsformat.PostingsFormatProvider;
 import org.elasticsearch.index.fielddata.FieldDataType;
 import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.FieldMappers;
 import org.elasticsearch.index.mapper.InternalMapper;
 import org.elasticsearch.index.mapper.Mapper;
 import org.elasticsearch.index.mapper.MapperParsingException;
@@ -43,10 +46,27 @@ import org.elasticsearch.index.mapper.RootMapper;
 import org.elasticsearch.index.mapper.core.AbstractFieldMapper;
 import org.elasticsearch.index.similarity.SimilarityProvider;
 
+import com.sindicetech.siren.index.codecs.siren10.Siren10AForNodesPostingsFormat;
+import com.sindicetech.siren.index.codecs.siren10.Siren10AForPostingsFormat;
+import com.sindicetech.siren.util.UTF8ByteArrayReader;
+
 /**
  * <p>
  * When a document is posted for indexing, copies the "_source" field to the new
  * {@value #SIREN_SOURCE} field in the {@link #preParse(ParseContext)} method.
+ * The field reads the UTF-8 bytes of the source directly through a
+ * {@link UTF8ByteArrayReader}: the source is not copied into a {@link String},
+ * and the chars are decoded on the fly into the buffer of the JSON tokenizer.
+ *
+ * <p>
+ * The {@value #SIREN_SOURCE} field is configured either by its own mapping in the
+ * properties of the document type, or by this mapper when the {@value #INDEX_POSITIONS}
+ * parameter is set. In the latter case, the {@value #SIREN_SOURCE} field must not be
+ * mapped in the properties: this mapper becomes the mapper of the field, with its
+ * <code>analyzer</code>, and selects the postings format {@value Siren10AForPostingsFormat#NAME}
+ * when the parameter is true, or {@value Siren10AForNodesPostingsFormat#NAME}, which
+ * indexes only the documents and the nodes of the terms, when it is false. An explicit
+ * <code>postings_format</code> is then ignored.
  *
  * <p>
  * The rest of the class is only boilerplate to get a rootMapper registered:
@@ -62,9 +82,15 @@ public class SirenFieldMapper extends AbstractFieldMapper<Void> implements Inter
 
   public static final String SIREN_SOURCE = "_siren_source";
   public static String NAME = "_siren";
+  public static final String INDEX_POSITIONS = "index_positions";
+
+  /** Whether the positions are indexed, or null if the source field is mapped in the properties */
+  private Boolean indexPositions;
 
   public static class Builder extends AbstractFieldMapper.Builder<Builder, SirenFieldMapper> {
 
+    private Boolean indexPositions;
+
     public Builder() {
       super(NAME, new FieldType(Defaults.FIELD_TYPE));
       builder = this;
@@ -77,9 +103,16 @@ public class SirenFieldMapper extends AbstractFieldMapper<Void> implements Inter
       fieldType.setIndexed(true);
       fieldType.setTokenized(true);
 
-      return new SirenFieldMapper(name, fieldType, indexAnalyzer, searchAnalyzer, true, true,
-          postingsProvider, docValuesProvider, similarity, normsLoading, fieldDataSettings,
-          context.indexSettings());
+      // the mapper of the source field when the positions are configured here
+      String fieldIndexName = indexPositions == null ? name : SIREN_SOURCE;
+      return new SirenFieldMapper(new Names(name, fieldIndexName, fieldIndexName, name), indexPositions,
+          fieldType, indexAnalyzer, searchAnalyzer, postingsProvider, docValuesProvider, similarity,
+          normsLoading, fieldDataSettings, context.indexSettings());
+    }
+
+    public Builder indexPositions(boolean indexPositions) {
+      this.indexPositions = indexPositions;
+      return this;
     }
   }
 
@@ -91,6 +124,13 @@ public class SirenFieldMapper extends AbstractFieldMapper<Void> implements Inter
         throws MapperParsingException {
       SirenFieldMapper.Builder builder = new Builder();
       parseField(builder, builder.name, node, parserContext);
+      Object indexPositions = node.get(INDEX_POSITIONS);
+      if (indexPositions != null) {
+        boolean value = nodeBooleanValue(indexPositions);
+        String format = value ? Siren10AForPostingsFormat.NAME : Siren10AForNodesPostingsFormat.NAME;
+        builder.indexPositions(value);
+        builder.postingsFormat(parserContext.postingFormatService().get(format));
+      }
       return builder;
     }
   }
@@ -123,14 +163,14 @@ public class SirenFieldMapper extends AbstractFieldMapper<Void> implements Inter
         null, null, null, null, null, ImmutableSettings.EMPTY, ImmutableSettings.EMPTY);
   }
 
-  protected SirenFieldMapper(String name, FieldType fieldType, NamedAnalyzer indexAnalyzer,
-                             NamedAnalyzer searchAnalyzer, boolean enabled, boolean autoBoost,
+  protected SirenFieldMapper(Names names, @Nullable Boolean indexPositions, FieldType fieldType,
+                             NamedAnalyzer indexAnalyzer, NamedAnalyzer searchAnalyzer,
                              PostingsFormatProvider postingsProvider, DocValuesFormatProvider docValuesProvider,
                              SimilarityProvider similarity, Loading normsLoading, @Nullable Settings fieldDataSettings,
                              Settings indexSettings) {
-    super(new Names(name, name, name, name), 1.0f, fieldType, null, indexAnalyzer, searchAnalyzer,
-        postingsProvider, docValuesProvider, similarity, normsLoading, fieldDataSettings,
-        indexSettings);
+    super(names, 1.0f, fieldType, null, indexAnalyzer, searchAnalyzer, postingsProvider,
+        docValuesProvider, similarity, normsLoading, fieldDataSettings, indexSettings);
+    this.indexPositions = indexPositions;
   }
 
   @Override
@@ -140,11 +180,21 @@ public class SirenFieldMapper extends AbstractFieldMapper<Void> implements Inter
 
   @Override
   public void preParse(ParseContext context) throws IOException {
+    if (indexPositions != null) {
+      // the postings format would depend on the order of the mappers
+      FieldMappers mappers = context.docMapper().mappers().indexName(SIREN_SOURCE);
+      if (mappers.mappers().size() > 1) {
+        throw new MapperParsingException("The field [" + SIREN_SOURCE + "] must not be mapped when ["
+            + INDEX_POSITIONS + "] is set on [" + NAME + "]");
+      }
+    }
     //copy _source field to a new SIREN_SOURCE field
     FieldType fieldType = new FieldType();
     fieldType.setIndexed(true);
-    IndexableField field = new Field(SIREN_SOURCE, new String(context.source().toBytes(),
-        Charset.forName("UTF-8")), fieldType);
+    // the bytes are not copied if the source is backed by a single array
+    BytesArray source = context.source().toBytesArray();
+    IndexableField field = new Field(SIREN_SOURCE, new UTF8ByteArrayReader(source.array(),
+        source.arrayOffset(), source.length()), fieldType);
     context.doc().add(field);
   }
 
@@ -172,6 +222,14 @@ public class SirenFieldMapper extends AbstractFieldMapper<Void> implements Inter
   protected void parseCreateField(ParseContext context, List<Field> fields) throws IOException {
   }
 
+  @Override
+  protected void doXContentBody(XContentBuilder builder, boolean includeDefaults, Params params) throws IOException {
+    super.doXContentBody(builder, includeDefaults, params);
+    if (indexPositions != null) {
+      builder.field(INDEX_POSITIONS, indexPositions);
+    }
+  }
+
   @Override
   protected String contentType() {
     return NAME;
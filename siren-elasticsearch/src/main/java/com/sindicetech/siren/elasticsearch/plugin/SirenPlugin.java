@@ -21,6 +21,7 @@ import java.util.Collection;
 
 import org.elasticsearch.common.collect.Lists;
 import org.elasticsearch.common.inject.Module;
+import org.elasticsearch.index.CloseableIndexComponent;
 import org.elasticsearch.index.analysis.AnalysisModule;
 import org.elasticsearch.index.codec.CodecModule;
 import org.elasticsearch.index.query.IndexQueryParserModule;
@@ -31,9 +32,12 @@ import com.sindicetech.siren.elasticsearch.analysis.AnalyzerModule;
 import com.sindicetech.siren.elasticsearch.analysis.NumericAnalyzerBinderProcessor;
 import com.sindicetech.siren.elasticsearch.analysis.RegisterDatatypeModule;
 import com.sindicetech.siren.elasticsearch.index.SirenFieldModule;
+import com.sindicetech.siren.elasticsearch.index.SirenNodesPostingsProvider;
 import com.sindicetech.siren.elasticsearch.index.SirenPostingsProvider;
 import com.sindicetech.siren.elasticsearch.query.TreeParserModule;
+import com.sindicetech.siren.elasticsearch.query.TreeQueryParserIndexComponent;
 import com.sindicetech.siren.elasticsearch.query.TreeQueryParserProcessor;
+import com.sindicetech.siren.index.codecs.siren10.Siren10AForNodesPostingsFormat;
 import com.sindicetech.siren.index.codecs.siren10.Siren10AForPostingsFormat;
 
 /**
@@ -61,6 +65,14 @@ public class SirenPlugin extends AbstractPlugin {
     return modules;
   }
 
+  @Override
+  public Collection<Class<? extends CloseableIndexComponent>> indexServices() {
+    Collection<Class<? extends CloseableIndexComponent>> services = Lists.newArrayList();
+    // closes the tree query parser of the index
+    services.add(TreeQueryParserIndexComponent.class);
+    return services;
+  }
+
   public void onModule(AnalysisModule module) {
     module.addProcessor(new AnalyzerBinderProcessor());
     module.addProcessor(new NumericAnalyzerBinderProcessor());
@@ -68,6 +80,7 @@ public class SirenPlugin extends AbstractPlugin {
 
   public void onModule(CodecModule module) {
     module.addPostingFormat(Siren10AForPostingsFormat.NAME, SirenPostingsProvider.class);
+    module.addPostingFormat(Siren10AForNodesPostingsFormat.NAME, SirenNodesPostingsProvider.class);
   }
 
   public void onModule(IndexQueryParserModule module) {
@@ -55,6 +55,29 @@
  *  to use. Note that the preferred SIREn model is "concise".
  *  </p>
  *
+ *  <p>The postings format can be set to "Siren10AForNodes" to index only the documents
+ *  and the nodes of the terms, without their positions. This reduces the size of the index
+ *  and the indexing time, and the queries are still scored with the term frequency in the
+ *  node, but the phrase and span queries fail with an IllegalStateException.
+ *  </p>
+ *
+ *  <p>Alternatively, the <b>_siren_source</b> field can be left out of the properties and
+ *  configured by the <b>_siren</b> field, whose <em>index_positions</em> parameter selects
+ *  the "Siren10AFor" or the "Siren10AForNodes" postings format:
+ *  <pre>
+ *  {@code
+ *  {
+ *    "myDocType" : {
+ *      "_siren" : {
+ *        "analyzer" : "concise",
+ *        "index_positions" : false
+ *      }
+ *    }
+ *  }
+ *  }
+ *  </pre>
+ *  </p>
+ *
  *  <h3>How it works</h3>
  *  The root field <b>_siren</b> makes the SIREn plugin copy the _source field to the
  *  <b>_siren_source</b> field during posting of documents to Elasticsearch.
@@ -43,4 +43,12 @@ public abstract class AbstractQueryParserIndexComponent extends AbstractIndexCom
 
     return result;
   }
+
+  /**
+   * Returns the maximum number of parsed queries cached by the query parsers, set by
+   * <code>siren.query.cache_size</code>. A size of 0 disables the cache.
+   */
+  public static int extractQueryCacheSize(Settings settings) {
+    return settings.getAsInt("siren.query.cache_size", TreeQueryParser.DEFAULT_QUERY_CACHE_SIZE);
+  }
 }
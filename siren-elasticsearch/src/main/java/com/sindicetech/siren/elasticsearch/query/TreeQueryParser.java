@@ -20,6 +20,7 @@ package com.sindicetech.siren.elasticsearch.query;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.CloseableThreadLocal;
 import org.elasticsearch.common.jackson.core.JsonFactory;
 import org.elasticsearch.common.jackson.core.JsonGenerator;
 import org.elasticsearch.common.xcontent.XContentParser;
@@ -38,25 +39,50 @@ import com.sindicetech.siren.elasticsearch.index.SirenFieldMapper;
 import com.sindicetech.siren.qparser.keyword.config.ExtendedKeywordQueryConfigHandler;
 import com.sindicetech.siren.qparser.tree.ConciseTreeQueryParser;
 import com.sindicetech.siren.qparser.tree.ExtendedTreeQueryParser;
+import com.sindicetech.siren.qparser.util.ParsedQueryCache;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Wrapper of SIREn's {@link com.sindicetech.siren.qparser.tree.ExtendedTreeQueryParser} for ElasticSearch that will use
  * {@link SirenFieldMapper#SIREN_SOURCE} as default search field
+ * <p>
+ * The parsed queries are cached in a {@link ParsedQueryCache}, keyed by the normalised JSON query, the field, the
+ * analyzers and the qnames. On a cache miss, the query is parsed by a thread-local
+ * {@link ExtendedTreeQueryParser} which is configured only once per thread, instead of a new parser per request.
+ * <p>
+ * The thread-local parsers hold the analyzers of the index, and are released by {@link #close()} when the index is
+ * closed.
  */
-public class TreeQueryParser implements QueryParser {
+public class TreeQueryParser implements QueryParser, Closeable {
 
   public static final String NAME = "tree";
 
+  /**
+   * The default maximum number of parsed queries in the cache
+   */
+  public static final int DEFAULT_QUERY_CACHE_SIZE = 1000;
+
   private final JsonFactory jsonFactory = new JsonFactory();
 
-  private Properties qnames;
+  private volatile Properties qnames;
+
+  private volatile ParsedQueryCache queryCache = new ParsedQueryCache(DEFAULT_QUERY_CACHE_SIZE);
+
+  private CloseableThreadLocal<PooledParser> parsers = new CloseableThreadLocal<PooledParser>();
+
+  /**
+   * Guards the replacement of the thread-local parsers by {@link #close()}
+   */
+  private final ReadWriteLock parsersLock = new ReentrantReadWriteLock();
 
   @Override
   public Query parse(QueryParseContext parseContext) throws IOException, QueryParsingException {
@@ -123,23 +149,57 @@ public class TreeQueryParser implements QueryParser {
   }
 
   protected Query parse(final String field, final String query, final AnalysisService analysisService, final MapperService mapperService, final Index index) {
+    final Analyzer analyzer = this.getIndexAnalyzer(mapperService);
+    final Analyzer datatypeAnalyzer = analysisService.analyzer(ExtendedJsonAnalyzer.NAME).analyzer();
+    final Properties qnames = this.qnames;
+
+    final ParsedQueryCache cache = this.queryCache;
+    ParsedQueryCache.Key key = null;
+    if (cache != null) {
+      key = ParsedQueryCache.key(query, field, analyzer, datatypeAnalyzer, qnames);
+      final Query cached = cache.get(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
     try {
-      ExtendedTreeQueryParser jsonParser = this.getJsonQueryParser(mapperService);
+      PooledParser pooled;
+      parsersLock.readLock().lock();
+      try {
+        pooled = parsers.get();
+        if (pooled == null || !pooled.isConfiguredFor(analyzer, datatypeAnalyzer, qnames)) {
+          final ExtendedTreeQueryParser jsonParser = this.getJsonQueryParser(mapperService);
+          registerCustomDatatypes(jsonParser, analysisService);
+          if (qnames != null) {
+            jsonParser.getKeywordQueryParser().setQNames(qnames);
+          }
+          pooled = new PooledParser(jsonParser, analyzer, datatypeAnalyzer, qnames);
+          parsers.set(pooled);
+        }
+      }
+      finally {
+        parsersLock.readLock().unlock();
+      }
 
-      registerCustomDatatypes(jsonParser, analysisService);
-      if (qnames != null) {
-        jsonParser.getKeywordQueryParser().setQNames(qnames);
+      final Query q = pooled.parser.parse(query, field);
+      if (cache != null) {
+        cache.put(key, q);
       }
-      return jsonParser.parse(query, field);
+      return q;
     }
     catch (QueryNodeException e) {
       throw new QueryParsingException(index, "Error parsing JSON query", e);
     }
   }
 
+  private Analyzer getIndexAnalyzer(MapperService mapperService) {
+    return ((NamedAnalyzer)mapperService.name(SirenFieldMapper.SIREN_SOURCE).mapper().indexAnalyzer()).analyzer();
+  }
+
   protected ExtendedTreeQueryParser getJsonQueryParser(MapperService mapperService) {
     ExtendedTreeQueryParser parser;
-    Analyzer analyzer = ((NamedAnalyzer)mapperService.name(SirenFieldMapper.SIREN_SOURCE).mapper().indexAnalyzer()).analyzer();
+    Analyzer analyzer = this.getIndexAnalyzer(mapperService);
     if (analyzer instanceof ExtendedJsonAnalyzer) {
       ExtendedJsonAnalyzer jsonAnalyzer = (ExtendedJsonAnalyzer) analyzer;
       if (analyzer instanceof ConciseJsonAnalyzer) {
@@ -154,9 +214,7 @@ public class TreeQueryParser implements QueryParser {
   }
 
   /**
-   * Helper method for now.
-   *
-   * TODO: when GH-9 is implemented (thread-local parsers) then this would be done for each thread-local parser only once.
+   * Registers the datatype analyzers in the parser. This is done only once for each thread-local parser.
    *
    * @param jsonParser
    * @param analysisService
@@ -179,8 +237,67 @@ public class TreeQueryParser implements QueryParser {
     this.qnames = qnames;
   }
 
+  /**
+   * Sets the maximum number of parsed queries in the cache. A size of 0 disables the cache.
+   */
+  public void setQueryCacheSize(int size) {
+    this.queryCache = size > 0 ? new ParsedQueryCache(size) : null;
+  }
+
+  /**
+   * Returns the cache of the parsed queries, or null if it is disabled.
+   */
+  public ParsedQueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  /**
+   * Releases the thread-local parsers and the cached queries. The parser stays usable, e.g., through the registry of
+   * the query parsers shared by the indices: the next queries build new thread-local parsers.
+   */
+  @Override
+  public void close() {
+    parsersLock.writeLock().lock();
+    try {
+      parsers.close();
+      parsers = new CloseableThreadLocal<PooledParser>();
+    }
+    finally {
+      parsersLock.writeLock().unlock();
+    }
+    final ParsedQueryCache cache = this.queryCache;
+    if (cache != null) {
+      cache.clear();
+    }
+  }
+
   @Override
   public String[] names() {
     return new String[] { NAME };
   }
+
+  /**
+   * A parser of a thread with the configuration it was built with.
+   */
+  private static class PooledParser {
+
+    private final ExtendedTreeQueryParser parser;
+    private final Analyzer analyzer;
+    private final Analyzer datatypeAnalyzer;
+    private final Properties qnames;
+
+    private PooledParser(ExtendedTreeQueryParser parser, Analyzer analyzer, Analyzer datatypeAnalyzer,
+                         Properties qnames) {
+      this.parser = parser;
+      this.analyzer = analyzer;
+      this.datatypeAnalyzer = datatypeAnalyzer;
+      this.qnames = qnames;
+    }
+
+    private boolean isConfiguredFor(Analyzer analyzer, Analyzer datatypeAnalyzer, Properties qnames) {
+      return this.analyzer == analyzer && this.datatypeAnalyzer == datatypeAnalyzer && this.qnames == qnames;
+    }
+
+  }
+
 }
@@ -31,10 +31,12 @@ import java.util.Properties;
  */
 public class TreeQueryParserFactory implements QueryParserFactory {
   private Properties qnames;
+  private int queryCacheSize;
   
   @Inject
   public TreeQueryParserFactory(@IndexSettings Settings settings, MapperService mapperService) {
     this.qnames = AbstractQueryParserIndexComponent.extractQnames(settings);
+    this.queryCacheSize = AbstractQueryParserIndexComponent.extractQueryCacheSize(settings);
   }
 
   @Override
@@ -42,6 +44,7 @@ public class TreeQueryParserFactory implements QueryParserFactory {
     if (TreeQueryParser.NAME.equals(name)) {
       TreeQueryParser parser = new TreeQueryParser();
       parser.setQnames(qnames);
+      parser.setQueryCacheSize(queryCacheSize);
       return parser;
     }
 
@@ -17,25 +17,36 @@
  */
 package com.sindicetech.siren.elasticsearch.query;
 
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.CloseableIndexComponent;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.indices.query.IndicesQueriesRegistry;
 
 /**
- * Registers the {@link TreeQueryParser}.
+ * Registers the {@link TreeQueryParser}, and closes it when the index is closed.
  *
  */
-public class TreeQueryParserIndexComponent extends AbstractQueryParserIndexComponent {
+public class TreeQueryParserIndexComponent extends AbstractQueryParserIndexComponent implements CloseableIndexComponent {
+
+  private final TreeQueryParser parser;
 
   @Inject
   protected TreeQueryParserIndexComponent(Index index, Settings indexSettings, IndicesQueriesRegistry indicesQueriesRegistry,
                                           TreeQueryParser parser, MapperService mapperService) {
     super(index, indexSettings);
     parser.setQnames(extractQnames(indexSettings));
+    parser.setQueryCacheSize(extractQueryCacheSize(indexSettings));
     
     indicesQueriesRegistry.addQueryParser(parser);
+    this.parser = parser;
+  }
+
+  @Override
+  public void close() throws ElasticsearchException {
+    parser.close();
   }
 }
 
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sindicetech.siren.elasticsearch;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.DocumentMapperParser;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.mapper.ParsedDocument;
+import org.elasticsearch.test.ElasticsearchSingleNodeTest;
+import org.junit.Test;
+
+import com.sindicetech.siren.elasticsearch.index.SirenFieldMapper;
+import com.sindicetech.siren.elasticsearch.index.SirenNodesPostingsProvider;
+import com.sindicetech.siren.elasticsearch.index.SirenPostingsProvider;
+
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+public class SirenFieldMapperTest extends ElasticsearchSingleNodeTest {
+
+  private String mapping(Boolean indexPositions, boolean mapSource) throws IOException {
+    XContentBuilder builder = XContentFactory.jsonBuilder()
+      .startObject()
+        .startObject("json")
+          .startObject("properties");
+    if (mapSource) {
+      builder.startObject(SirenFieldMapper.SIREN_SOURCE)
+          .field("analyzer", "concise")
+          .field("postings_format", "Siren10AFor")
+          .field("type", "string")
+        .endObject();
+    }
+    builder.endObject()
+          .startObject(SirenFieldMapper.NAME);
+    if (indexPositions != null) {
+      builder.field("analyzer", "concise").field(SirenFieldMapper.INDEX_POSITIONS, indexPositions);
+    }
+    return builder.endObject()
+        .endObject()
+      .endObject().string();
+  }
+
+  private FieldMapper<?> sourceMapper(DocumentMapper mapper) {
+    return mapper.mappers().indexName(SirenFieldMapper.SIREN_SOURCE).mapper();
+  }
+
+  @Test
+  public void testSourceMappedInProperties() throws IOException {
+    DocumentMapperParser parser = createIndex("test").mapperService().documentMapperParser();
+    DocumentMapper mapper = parser.parse(this.mapping(null, true));
+    assertThat(this.sourceMapper(mapper).postingsFormatProvider(), instanceOf(SirenPostingsProvider.class));
+    assertThat(mapper.mappers().indexName(SirenFieldMapper.NAME).mapper(), instanceOf(SirenFieldMapper.class));
+  }
+
+  @Test
+  public void testIndexPositions() throws IOException {
+    DocumentMapperParser parser = createIndex("test").mapperService().documentMapperParser();
+    DocumentMapper mapper = parser.parse(this.mapping(true, false));
+    assertThat(this.sourceMapper(mapper), instanceOf(SirenFieldMapper.class));
+    assertThat(this.sourceMapper(mapper).postingsFormatProvider(), instanceOf(SirenPostingsProvider.class));
+    assertThat(mapper.mappers().indexName(SirenFieldMapper.NAME), nullValue());
+  }
+
+  @Test
+  public void testNoIndexPositions() throws IOException {
+    DocumentMapperParser parser = createIndex("test").mapperService().documentMapperParser();
+    DocumentMapper mapper = parser.parse(this.mapping(false, false));
+    assertThat(this.sourceMapper(mapper), instanceOf(SirenFieldMapper.class));
+    assertThat(this.sourceMapper(mapper).postingsFormatProvider(), instanceOf(SirenNodesPostingsProvider.class));
+
+    // the parameter is kept when the mapping is serialised and parsed again
+    DocumentMapper reparsed = parser.parse(mapper.mappingSource().string());
+    assertThat(this.sourceMapper(reparsed).postingsFormatProvider(), instanceOf(SirenNodesPostingsProvider.class));
+    assertThat(reparsed.mappingSource().string().contains("\"" + SirenFieldMapper.INDEX_POSITIONS + "\":false"), is(true));
+
+    // the source is indexed in the field of the mapper
+    ParsedDocument doc = mapper.parse("json", "1", new BytesArray("{\"name\":\"SIREn\"}"));
+    assertThat(doc.rootDoc().getField(SirenFieldMapper.SIREN_SOURCE), notNullValue());
+  }
+
+  @Test(expected = MapperParsingException.class)
+  public void testIndexPositionsWithSourceMappedInProperties() throws IOException {
+    DocumentMapperParser parser = createIndex("test").mapperService().documentMapperParser();
+    DocumentMapper mapper = parser.parse(this.mapping(false, true));
+    mapper.parse("json", "1", new BytesArray("{\"name\":\"SIREn\"}"));
+  }
+
+}
@@ -31,6 +31,7 @@ import org.apache.lucene.util.Version;
 
 import com.sindicetech.siren.qparser.keyword.ConciseKeywordQueryParser;
 import com.sindicetech.siren.qparser.tree.ConciseTreeQueryParser;
+import com.sindicetech.siren.search.node.BlockMaxTopScoreDocCollector;
 import com.sindicetech.siren.util.JSONDatatype;
 import com.sindicetech.siren.util.XSDDatatype;
 
@@ -64,7 +65,12 @@ public class SimpleSearcher {
   public String[] search(final Query q, final int n) throws IOException {
     IndexSearcher searcher = mgr.acquire();
     try {
-      final ScoreDoc[] results = searcher.search(q, null, n).scoreDocs;
+      // only the top documents are needed, so let the block-max scorers skip
+      // the non-competitive blocks: the skipped documents are not counted, and
+      // the total number of hits of the collector is only a lower bound
+      final BlockMaxTopScoreDocCollector collector = BlockMaxTopScoreDocCollector.create(n);
+      searcher.search(q, collector);
+      final ScoreDoc[] results = collector.topDocs().scoreDocs;
       final String[] ids = new String[results.length];
 
       for (int i = 0; i < results.length; i++) {
@@ -36,9 +36,13 @@ import org.apache.lucene.search.BooleanQuery.TooManyClauses;
 import org.apache.lucene.search.Query;
 
 import com.sindicetech.siren.qparser.keyword.nodes.DatatypeQueryNode;
+import com.sindicetech.siren.search.node.BlockMaxBooleanQuery;
 
 /**
  * Builds a {@link BooleanQuery} object from a {@link BooleanQueryNode} object.
+ * The query is a {@link BlockMaxBooleanQuery}, so that a disjunction of terms
+ * can skip the non-competitive documents when collected by a
+ * {@link com.sindicetech.siren.search.node.BlockMaxCollector}.
  *
  * <p>
  *
@@ -56,7 +60,7 @@ public class BooleanQueryNodeBuilder implements StandardQueryBuilder {
   public Query build(final QueryNode queryNode) throws QueryNodeException {
     final BooleanQueryNode booleanNode = (BooleanQueryNode) queryNode;
 
-    final BooleanQuery bQuery = new BooleanQuery();
+    final BooleanQuery bQuery = new BlockMaxBooleanQuery();
     final List<QueryNode> children = booleanNode.getChildren();
 
     if (children != null) {
@@ -34,6 +34,7 @@ import com.sindicetech.siren.qparser.tree.nodes.TopLevelQueryNode;
 import com.sindicetech.siren.qparser.tree.parser.InOrderPropertyParser;
 import com.sindicetech.siren.qparser.tree.parser.RangePropertyParser;
 import com.sindicetech.siren.qparser.tree.parser.SlopPropertyParser;
+import com.sindicetech.siren.search.node.BlockMaxBooleanQuery;
 import com.sindicetech.siren.search.node.LuceneProxyNodeQuery;
 import com.sindicetech.siren.search.node.NodeBooleanClause;
 import com.sindicetech.siren.search.node.NodeQuery;
@@ -110,8 +111,8 @@ public class BooleanQueryNodeBuilder implements ExtendedTreeQueryBuilder {
   }
 
   private final BooleanQuery buildBooleanQuery(BooleanQueryNode booleanNode) throws QueryNodeException {
-    // build the query and add clauses
-    final BooleanQuery bq = new BooleanQuery(true);
+    // build the query and add clauses, a disjunction of terms can be scored with block-max WAND
+    final BooleanQuery bq = new BlockMaxBooleanQuery(true);
 
     for (final QueryNode child : booleanNode.getChildren()) {
       final Object obj = child.getTag(QueryTreeBuilder.QUERY_TREE_BUILDER_TAGID);
@@ -59,22 +59,8 @@ public class ConciseNodeQuery extends NodeQuery {
       ((ConciseKeywordQueryParser) parser).setAttribute(attribute);
     }
 
-    final com.sindicetech.siren.search.node.NodeQuery query = (com.sindicetech.siren.search.node.NodeQuery) parser.parse(booleanExpression, "");
-    if (this.hasLevel()) {
-      query.setLevelConstraint(this.getLevel());
-    }
-    if (this.hasRange()) {
-      query.setNodeConstraint(this.getLowerBound(), this.getUpperBound());
-    }
-    if (this.hasBoost()) {
-      query.setBoost(this.getBoost());
-    }
-
-    // should we wrap the query into a lucene proxy
-    if (proxy) {
-      return new LuceneProxyNodeQuery(query);
-    }
-    return query;
+    // the boolean expression or the typed expression is compiled with the attribute
+    return super.toQuery(proxy);
   }
 
   @Override
@@ -56,4 +56,45 @@ public class ConciseQueryBuilder extends QueryBuilder {
     return twig;
   }
 
+  /**
+   * Create a new node query with the specified typed boolean expression.
+   * <p>
+   * As with {@link #newNode(String)}, the attribute set with
+   * {@link ConciseNodeQuery#setAttribute(String)} is prepended to the analyzed
+   * terms of the expression.
+   */
+  @Override
+  public ConciseNodeQuery newNode(final NodeExpression expression) {
+    final ConciseNodeQuery node = new ConciseNodeQuery(mapper, (ConciseKeywordQueryParser) parser);
+    node.setExpression(expression);
+    return node;
+  }
+
+  /**
+   * Create a new twig query with the specified typed expression as root query.
+   * <p>
+   * As with {@link #newTwig(String)}, the root of a twig is an attribute in
+   * the concise model: the expression must be a term or a phrase expression,
+   * whose text is the attribute.
+   *
+   * @throws IllegalArgumentException If the expression is a boolean expression
+   */
+  @Override
+  public ConciseTwigQuery newTwig(final NodeExpression rootExpression) {
+    final String attribute;
+    if (rootExpression instanceof TermExpression) {
+      attribute = ((TermExpression) rootExpression).getText();
+    }
+    else if (rootExpression instanceof PhraseExpression) {
+      attribute = ((PhraseExpression) rootExpression).getText();
+    }
+    else {
+      throw new IllegalArgumentException("The root of a twig must be a single attribute in the concise model: " +
+        rootExpression.toKeywordExpression());
+    }
+    final ConciseTwigQuery twig = new ConciseTwigQuery(mapper, (ConciseKeywordQueryParser) parser);
+    twig.setRoot(attribute);
+    return twig;
+  }
+
 }
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.qparser.tree.dsl;
+
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.queryparser.flexible.core.config.QueryConfigHandler;
+
+import com.sindicetech.siren.search.node.NodeBooleanClause;
+import com.sindicetech.siren.search.node.NodeBooleanQuery;
+import com.sindicetech.siren.search.node.NodeQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class that represents a boolean combination of node boolean expressions.
+ * It is converted into a {@link NodeBooleanQuery}.
+ */
+public class NodeBooleanExpression extends NodeExpression {
+
+  private final List<NodeExpression> expressions = new ArrayList<NodeExpression>();
+  private final List<NodeBooleanClause.Occur> occurs = new ArrayList<NodeBooleanClause.Occur>();
+
+  NodeBooleanExpression() {}
+
+  /**
+   * Adds a clause with a {@link NodeBooleanClause.Occur#MUST} operator.
+   */
+  public NodeBooleanExpression must(final NodeExpression expression) {
+    return this.add(expression, NodeBooleanClause.Occur.MUST);
+  }
+
+  /**
+   * Adds a clause with a {@link NodeBooleanClause.Occur#MUST_NOT} operator.
+   */
+  public NodeBooleanExpression not(final NodeExpression expression) {
+    return this.add(expression, NodeBooleanClause.Occur.MUST_NOT);
+  }
+
+  /**
+   * Adds a clause with a {@link NodeBooleanClause.Occur#SHOULD} operator.
+   */
+  public NodeBooleanExpression should(final NodeExpression expression) {
+    return this.add(expression, NodeBooleanClause.Occur.SHOULD);
+  }
+
+  private NodeBooleanExpression add(final NodeExpression expression, final NodeBooleanClause.Occur occur) {
+    expressions.add(expression);
+    occurs.add(occur);
+    return this;
+  }
+
+  @Override
+  NodeQuery toNodeQuery(final String field, final String datatype, final QueryConfigHandler config)
+  throws QueryNodeException {
+    final NodeBooleanQuery query = new NodeBooleanQuery();
+    for (int i = 0; i < expressions.size(); i++) {
+      query.add(expressions.get(i).toNodeQuery(field, datatype, config), occurs.get(i));
+    }
+    return query;
+  }
+
+  @Override
+  String toKeywordExpression() {
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < expressions.size(); i++) {
+      if (i > 0) {
+        builder.append(' ');
+      }
+      switch (occurs.get(i)) {
+        case MUST:
+          builder.append('+');
+          break;
+
+        case MUST_NOT:
+          builder.append('-');
+          break;
+
+        default:
+          break;
+      }
+      final NodeExpression expression = expressions.get(i);
+      if (expression instanceof NodeBooleanExpression) {
+        builder.append('(').append(expression.toKeywordExpression()).append(')');
+      }
+      else {
+        builder.append(expression.toKeywordExpression());
+      }
+    }
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.qparser.tree.dsl;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.queryparser.flexible.core.config.QueryConfigHandler;
+import org.apache.lucene.queryparser.flexible.core.messages.QueryParserMessages;
+import org.apache.lucene.queryparser.flexible.messages.MessageImpl;
+
+import com.sindicetech.siren.analysis.filter.PathEncodingFilter;
+import com.sindicetech.siren.qparser.keyword.config.ConciseKeywordQueryConfigHandler.ConciseKeywordConfigurationKeys;
+import com.sindicetech.siren.qparser.keyword.config.ExtendedKeywordQueryConfigHandler.KeywordConfigurationKeys;
+import com.sindicetech.siren.search.node.NodeQuery;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Abstract class that represents a typed node boolean expression, i.e., the
+ * content of a node query or of the root of a twig query.
+ * <p>
+ * A node expression is compiled directly into a
+ * {@link com.sindicetech.siren.search.node.NodeQuery}: its text is analyzed
+ * with the analyzer associated with the datatype in the
+ * {@link KeywordConfigurationKeys#DATATYPES_ANALYZERS} of the keyword query
+ * parser configuration, but it is never serialised to and re-parsed by the
+ * {@link com.sindicetech.siren.qparser.keyword.ExtendedKeywordQueryParser}.
+ * <p>
+ * In the concise model, the attribute set in the configuration is prepended
+ * to the analyzed terms, as done by the
+ * {@link com.sindicetech.siren.qparser.keyword.ConciseKeywordQueryParser}.
+ *
+ * @see QueryBuilder#newNode(NodeExpression)
+ * @see QueryBuilder#newTwig(NodeExpression)
+ */
+public abstract class NodeExpression {
+
+  NodeExpression() {}
+
+  /**
+   * Build the node query of this expression.
+   *
+   * @param field The field of the query
+   * @param datatype The datatype used to analyze the text of the expression
+   * @param config The configuration of the keyword query parser
+   */
+  abstract NodeQuery toNodeQuery(String field, String datatype, QueryConfigHandler config)
+  throws QueryNodeException;
+
+  /**
+   * Return the expression in the syntax of the
+   * {@link com.sindicetech.siren.qparser.keyword.ExtendedKeywordQueryParser}.
+   * It is only used for the JSON representation of the query.
+   */
+  abstract String toKeywordExpression();
+
+  /**
+   * Analyze the text with the analyzer associated with the datatype.
+   *
+   * @throws QueryNodeException If no analyzer is associated with the datatype,
+   * or if the analyzer does not return any term outside of an attribute of the
+   * concise model.
+   */
+  static AnalyzedText analyze(final String field, final String text,
+                              final String datatype, final QueryConfigHandler config)
+  throws QueryNodeException {
+    final Map<String, Analyzer> analyzers = config.get(KeywordConfigurationKeys.DATATYPES_ANALYZERS);
+    final Analyzer analyzer = analyzers == null ? null : analyzers.get(datatype);
+    if (analyzer == null) {
+      throw new QueryNodeException(new MessageImpl(
+        QueryParserMessages.INVALID_SYNTAX, "No analyzer associated with " + datatype));
+    }
+
+    final AnalyzedText analyzed = new AnalyzedText();
+    try {
+      final TokenStream stream = analyzer.tokenStream(field, new StringReader(text));
+      try {
+        final CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+        final PositionIncrementAttribute posIncrAtt = stream.addAttribute(PositionIncrementAttribute.class);
+        stream.reset();
+        while (stream.incrementToken()) {
+          analyzed.terms.add(termAtt.toString());
+          if (posIncrAtt.getPositionIncrement() != 0) {
+            analyzed.positionCount += posIncrAtt.getPositionIncrement();
+          }
+          else {
+            analyzed.severalTermsAtSamePosition = true;
+          }
+        }
+        stream.end();
+      }
+      finally {
+        stream.close();
+      }
+    }
+    catch (final IOException e) {
+      throw new QueryNodeException(e);
+    }
+
+    if (analyzed.terms.isEmpty() && config.has(ConciseKeywordConfigurationKeys.ATTRIBUTE)) {
+      // in the concise model, the query matches the nodes of the attribute, as with the
+      // ConciseMatchNoDocsQueryNodeBuilder of the keyword query parser
+      analyzed.terms.add("");
+      analyzed.positionCount = 1;
+    }
+    else if (analyzed.terms.isEmpty()) {
+      throw new QueryNodeException(new MessageImpl(
+        QueryParserMessages.INVALID_SYNTAX, "No term found by the analyzer of " + datatype + " in: " + text));
+    }
+    return analyzed;
+  }
+
+  /**
+   * Create the term of an analyzed text. The attribute of the concise model is
+   * prepended to the text if it is set in the configuration.
+   */
+  static Term newTerm(final String field, final String text, final QueryConfigHandler config) {
+    if (config.has(ConciseKeywordConfigurationKeys.ATTRIBUTE)) {
+      final String attribute = config.get(ConciseKeywordConfigurationKeys.ATTRIBUTE);
+      return new Term(field, attribute + PathEncodingFilter.PATH_DELIMITER + text);
+    }
+    return new Term(field, text);
+  }
+
+  /**
+   * The terms returned by the analyzer and some statistics about their
+   * positions.
+   */
+  static class AnalyzedText {
+
+    final List<String> terms = new ArrayList<String>();
+    int positionCount = 0;
+    boolean severalTermsAtSamePosition = false;
+
+  }
+
+}
@@ -19,12 +19,14 @@
 package com.sindicetech.siren.qparser.tree.dsl;
 
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.queryparser.flexible.core.config.QueryConfigHandler;
 import org.apache.lucene.search.Query;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.node.ArrayNode;
 import org.codehaus.jackson.node.ObjectNode;
 
 import com.sindicetech.siren.qparser.keyword.ExtendedKeywordQueryParser;
+import com.sindicetech.siren.qparser.keyword.config.ExtendedKeywordQueryConfigHandler.KeywordConfigurationKeys;
 import com.sindicetech.siren.qparser.tree.parser.BoostPropertyParser;
 import com.sindicetech.siren.qparser.tree.parser.LevelPropertyParser;
 import com.sindicetech.siren.qparser.tree.parser.NodePropertyParser;
@@ -41,6 +43,8 @@ public class NodeQuery extends AbstractNodeQuery {
 
   protected String booleanExpression;
 
+  protected NodeExpression expression;
+
   NodeQuery(final ObjectMapper mapper, final ExtendedKeywordQueryParser parser) {
     super(mapper);
     this.parser = parser;
@@ -50,6 +54,10 @@ public class NodeQuery extends AbstractNodeQuery {
     this.booleanExpression = booleanExpression;
   }
 
+  void setExpression(final NodeExpression expression) {
+    this.expression = expression;
+  }
+
   @Override
   public NodeQuery setLevel(final int level) {
     return (NodeQuery) super.setLevel(level);
@@ -67,7 +75,15 @@ public class NodeQuery extends AbstractNodeQuery {
 
   @Override
   public Query toQuery(final boolean proxy) throws QueryNodeException {
-    final com.sindicetech.siren.search.node.NodeQuery query = (com.sindicetech.siren.search.node.NodeQuery) parser.parse(booleanExpression, "");
+    final com.sindicetech.siren.search.node.NodeQuery query;
+    if (expression != null) {
+      // compile the typed expression directly, using the datatype analyzers of the keyword parser
+      final QueryConfigHandler config = parser.getQueryConfigHandler();
+      query = expression.toNodeQuery("", config.get(KeywordConfigurationKeys.DEFAULT_DATATYPE), config);
+    }
+    else {
+      query = (com.sindicetech.siren.search.node.NodeQuery) parser.parse(booleanExpression, "");
+    }
     if (this.hasLevel()) {
       query.setLevelConstraint(this.getLevel());
     }
@@ -89,7 +105,7 @@ public class NodeQuery extends AbstractNodeQuery {
   public ObjectNode toJson() {
     final ObjectNode obj = mapper.createObjectNode();
     final ObjectNode node = obj.putObject(NodePropertyParser.NODE_PROPERTY);
-    node.put(QueryPropertyParser.QUERY_PROPERTY, booleanExpression);
+    node.put(QueryPropertyParser.QUERY_PROPERTY, expression != null ? expression.toKeywordExpression() : booleanExpression);
     if (this.hasLevel()) {
       node.put(LevelPropertyParser.LEVEL_PROPERTY, this.getLevel());
     }
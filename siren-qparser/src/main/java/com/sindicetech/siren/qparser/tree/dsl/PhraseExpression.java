@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.qparser.tree.dsl;
+
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.queryparser.flexible.core.config.QueryConfigHandler;
+import org.apache.lucene.queryparser.flexible.core.messages.QueryParserMessages;
+import org.apache.lucene.queryparser.flexible.messages.MessageImpl;
+
+import com.sindicetech.siren.search.node.NodePhraseQuery;
+import com.sindicetech.siren.search.node.NodeQuery;
+import com.sindicetech.siren.search.node.NodeTermQuery;
+
+/**
+ * Class that represents a phrase of a node boolean expression.
+ * <p>
+ * The text is analyzed and converted into a {@link NodePhraseQuery}, or into a
+ * {@link NodeTermQuery} if the analyzer returns only one term. As in the
+ * {@link com.sindicetech.siren.qparser.keyword.ExtendedKeywordQueryParser},
+ * a {@link QueryNodeException} is thrown if the analyzer returns several terms
+ * at the same position.
+ */
+public class PhraseExpression extends NodeExpression {
+
+  private final String text;
+
+  PhraseExpression(final String text) {
+    this.text = text;
+  }
+
+  @Override
+  NodeQuery toNodeQuery(final String field, final String datatype, final QueryConfigHandler config)
+  throws QueryNodeException {
+    final AnalyzedText analyzed = analyze(field, text, datatype, config);
+
+    if (analyzed.terms.size() == 1) {
+      final NodeTermQuery query = new NodeTermQuery(newTerm(field, analyzed.terms.get(0), config));
+      query.setDatatype(datatype);
+      return query;
+    }
+
+    if (analyzed.severalTermsAtSamePosition) {
+      throw new QueryNodeException(new MessageImpl(QueryParserMessages.INVALID_SYNTAX, "Cannot build a MultiPhraseQuery"));
+    }
+
+    final NodePhraseQuery query = new NodePhraseQuery();
+    for (int i = 0; i < analyzed.terms.size(); i++) {
+      query.add(newTerm(field, analyzed.terms.get(i), config), i);
+    }
+    query.setDatatype(datatype);
+    return query;
+  }
+
+  /**
+   * Returns the text of the phrase
+   */
+  String getText() {
+    return text;
+  }
+
+  @Override
+  String toKeywordExpression() {
+    return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+}
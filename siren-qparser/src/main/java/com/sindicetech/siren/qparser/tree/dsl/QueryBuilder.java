@@ -37,6 +37,14 @@ import com.sindicetech.siren.qparser.tree.config.ExtendedTreeQueryConfigHandler.
  * converted into a JSON representation using the method
  * {@link AbstractQuery#toString()} or into a {@link Query} using the method
  * {@link AbstractQuery#toQuery(boolean)}.
+ * <p>
+ * The boolean expressions of the node and twig queries can be given either as
+ * a string in the syntax of the
+ * {@link com.sindicetech.siren.qparser.keyword.ExtendedKeywordQueryParser},
+ * or as a typed {@link NodeExpression} created with {@link #newTerm(String)},
+ * {@link #newPhrase(String)} and {@link #newNodeBoolean()}. A typed expression
+ * is compiled directly into a node query, without being parsed by the keyword
+ * query parser.
  *
  * @see com.sindicetech.siren.qparser.tree.ExtendedTreeQueryParser
  */
@@ -67,6 +75,18 @@ public class QueryBuilder {
     return node;
   }
 
+  /**
+   * Create a new node query with the specified typed boolean expression.
+   * <p>
+   * The expression is compiled directly into a node query, using the datatype
+   * analyzers and the default datatype of the keyword query parser.
+   */
+  public NodeQuery newNode(final NodeExpression expression) {
+    final NodeQuery node = new NodeQuery(mapper, parser);
+    node.setExpression(expression);
+    return node;
+  }
+
   /**
    * Create a new boolean query.
    */
@@ -93,4 +113,38 @@ public class QueryBuilder {
     return twig;
   }
 
+  /**
+   * Create a new twig query with the specified typed boolean expression as
+   * root query.
+   * <p>
+   * The expression is compiled directly into a node query, using the datatype
+   * analyzer of {@link com.sindicetech.siren.util.JSONDatatype#JSON_FIELD}.
+   */
+  public TwigQuery newTwig(final NodeExpression rootExpression) {
+    final TwigQuery twig = new TwigQuery(mapper, parser);
+    twig.setRoot(rootExpression);
+    return twig;
+  }
+
+  /**
+   * Create a new term expression.
+   */
+  public TermExpression newTerm(final String text) {
+    return new TermExpression(text);
+  }
+
+  /**
+   * Create a new phrase expression.
+   */
+  public PhraseExpression newPhrase(final String text) {
+    return new PhraseExpression(text);
+  }
+
+  /**
+   * Create a new boolean expression.
+   */
+  public NodeBooleanExpression newNodeBoolean() {
+    return new NodeBooleanExpression();
+  }
+
 }
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.qparser.tree.dsl;
+
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.queryparser.flexible.core.config.QueryConfigHandler;
+import org.apache.lucene.queryparser.flexible.standard.QueryParserUtil;
+
+import com.sindicetech.siren.search.node.NodeBooleanClause;
+import com.sindicetech.siren.search.node.NodeBooleanQuery;
+import com.sindicetech.siren.search.node.NodePhraseQuery;
+import com.sindicetech.siren.search.node.NodeQuery;
+import com.sindicetech.siren.search.node.NodeTermQuery;
+
+import java.util.regex.Pattern;
+
+/**
+ * Class that represents a term of a node boolean expression.
+ * <p>
+ * The text is analyzed as a single keyword term of the
+ * {@link com.sindicetech.siren.qparser.keyword.ExtendedKeywordQueryParser}:
+ * <ul>
+ * <li> if the analyzer returns one term, a {@link NodeTermQuery} is created;
+ * <li> if the analyzer returns several terms at the same position, a
+ * {@link NodeBooleanQuery} of optional {@link NodeTermQuery}s is created;
+ * <li> otherwise, a {@link NodePhraseQuery} is created.
+ * </ul>
+ */
+public class TermExpression extends NodeExpression {
+
+  private static final Pattern WHITESPACE = Pattern.compile("\\s");
+
+  private final String text;
+
+  TermExpression(final String text) {
+    this.text = text;
+  }
+
+  @Override
+  NodeQuery toNodeQuery(final String field, final String datatype, final QueryConfigHandler config)
+  throws QueryNodeException {
+    final AnalyzedText analyzed = analyze(field, text, datatype, config);
+
+    if (analyzed.terms.size() == 1) {
+      return newTermQuery(field, analyzed.terms.get(0), datatype, config);
+    }
+
+    // query expansion: perform a OR between the terms
+    if (analyzed.severalTermsAtSamePosition && analyzed.positionCount == 1) {
+      final NodeBooleanQuery query = new NodeBooleanQuery();
+      for (final String term : analyzed.terms) {
+        query.add(newTermQuery(field, term, datatype, config), NodeBooleanClause.Occur.SHOULD);
+      }
+      return query;
+    }
+
+    final NodePhraseQuery query = new NodePhraseQuery();
+    for (int i = 0; i < analyzed.terms.size(); i++) {
+      query.add(newTerm(field, analyzed.terms.get(i), config), i);
+    }
+    query.setDatatype(datatype);
+    return query;
+  }
+
+  private static NodeTermQuery newTermQuery(final String field, final String term, final String datatype,
+                                            final QueryConfigHandler config) {
+    final NodeTermQuery query = new NodeTermQuery(newTerm(field, term, config));
+    query.setDatatype(datatype);
+    return query;
+  }
+
+  /**
+   * Returns the text of the expression
+   */
+  String getText() {
+    return text;
+  }
+
+  @Override
+  String toKeywordExpression() {
+    // a text with whitespaces is tokenised by the keyword query parser, it is kept as a phrase instead
+    if (WHITESPACE.matcher(text).find()) {
+      return new PhraseExpression(text).toKeywordExpression();
+    }
+    return QueryParserUtil.escape(text);
+  }
+
+}
@@ -43,6 +43,7 @@ public class TwigQuery extends AbstractNodeQuery {
 
   protected boolean hasRoot = false;
   protected String rootBooleanExpression;
+  protected NodeExpression rootExpression;
 
   protected final List<QueryClause> clauses;
 
@@ -79,6 +80,16 @@ public class TwigQuery extends AbstractNodeQuery {
     this.hasRoot = true;
   }
 
+  /**
+   * Set the typed node boolean expression for the root of the twig.
+   *
+   * @see com.sindicetech.siren.search.node.TwigQuery#addRoot(NodeQuery)
+   */
+  void setRoot(final NodeExpression expression) {
+    this.rootExpression = expression;
+    this.hasRoot = true;
+  }
+
   /**
    * Adds a child clause with a
    * {@link NodeBooleanClause.Occur#MUST} operator.
@@ -207,7 +218,11 @@ public class TwigQuery extends AbstractNodeQuery {
    * Parses the root boolean expression and add it to the twig query.
    */
   protected void processRoot(final com.sindicetech.siren.search.node.TwigQuery query) throws QueryNodeException {
-    if (hasRoot) {
+    if (hasRoot && rootExpression != null) {
+      // compile the typed expression directly, with json:field as datatype for the root
+      query.addRoot(rootExpression.toNodeQuery("", JSONDatatype.JSON_FIELD, parser.getQueryConfigHandler()));
+    }
+    else if (hasRoot) {
       // save default datatype
       String defaultDatatype = parser.getQueryConfigHandler().get(ExtendedKeywordQueryConfigHandler.KeywordConfigurationKeys.DEFAULT_DATATYPE);
       // assign json:field as default datatype for the root
@@ -226,7 +241,7 @@ public class TwigQuery extends AbstractNodeQuery {
     final ObjectNode twig = obj.putObject(TwigPropertyParser.TWIG_PROPERTY);
 
     if (hasRoot) {
-      twig.put(RootPropertyParser.ROOT_PROPERTY, rootBooleanExpression);
+      twig.put(RootPropertyParser.ROOT_PROPERTY, rootExpression != null ? rootExpression.toKeywordExpression() : rootBooleanExpression);
     }
 
     if (this.hasLevel()) {
@@ -0,0 +1,646 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sindicetech.siren.qparser.tree.storage;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.MissingNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sindicetech.siren.search.node.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * A projection of JSON documents compiled from the variables and the twig filters of a query.
+ * </p>
+ * <p>
+ * The query is analysed once by {@link #compile(Query)}: the paths of the variables are split
+ * into segments, and the term, prefix and numeric range queries found in twig children are
+ * compiled into a tree of filters keyed by field name. {@link #project(String)} then extracts
+ * the projected values from a document in a single streaming pass over the JSON, without
+ * building the tree of the document. Only the projected values are materialised. A value which
+ * does not match its filter discards the enclosing array element, or the whole document at the
+ * top level.
+ * </p>
+ * <p>
+ * thread safe
+ * </p>
+ */
+public class JsonProjection {
+
+  private static final Logger logger = LoggerFactory.getLogger(JsonProjection.class);
+
+  private static final ObjectMapper mapper = new ObjectMapper(); // ObjectMapper is thread-safe
+
+  private static final JsonNodeFactory factory = JsonNodeFactory.instance;
+
+  /**
+   * Returned by {@link #walk} when a value does not match its filter
+   */
+  private static final JsonNode FILTERED = MissingNode.getInstance();
+
+  /**
+   * The segments of the path of each variable
+   */
+  private final String[][] paths;
+
+  /**
+   * The field name of the projected value of each variable
+   */
+  private final String[] keys;
+
+  /**
+   * The root of the filters, or null if the query has no filter
+   */
+  private final Filter filter;
+
+  private JsonProjection(final String[][] paths, final String[] keys, final Filter filter) {
+    this.paths = paths;
+    this.keys = keys;
+    this.filter = filter;
+  }
+
+  /**
+   * Compiles the variables and the twig filters of the query.
+   *
+   * @throws ProjectionException if the query contains unsupported constructs
+   */
+  public static JsonProjection compile(final Query query) throws ProjectionException {
+    final Filter root = new Filter();
+    final List<String> variablesPaths = new ArrayList<String>();
+    discoverRequiredJSONfieldsAndQueries(query, new LinkedList<String>(), variablesPaths, root);
+
+    final String[][] paths = new String[variablesPaths.size()][];
+    final String[] keys = new String[variablesPaths.size()];
+    for (int i = 0; i < paths.length; i++) {
+      String path = variablesPaths.get(i);
+      if (path.endsWith(".")) {
+        path = path.substring(0, path.length() - 1);
+      }
+      paths[i] = path.isEmpty() ? new String[0] : path.split("\\.");
+      keys[i] = lastPartOfPath(path);
+    }
+    return new JsonProjection(paths, keys, root.isEmpty() ? null : root);
+  }
+
+  /**
+   * Returns true if the query contains at least one variable.
+   */
+  public boolean hasVariables() {
+    return paths.length > 0;
+  }
+
+  /**
+   * @param json document in JSON format
+   *
+   * @return JSON (as String) with the projected values, or the input document if the query has
+   * no variable
+   * @throws ProjectionException if the document cannot be parsed
+   */
+  public String project(final String json) throws ProjectionException {
+    if (!this.hasVariables()) {
+      return json;
+    }
+
+    final JsonNode[] results = new JsonNode[paths.length];
+    final List<Cursor> cursors = new ArrayList<Cursor>(paths.length);
+    for (int i = 0; i < paths.length; i++) {
+      cursors.add(new Cursor(i, 0, null));
+    }
+
+    JsonParser parser = null;
+    try {
+      parser = mapper.getJsonFactory().createJsonParser(json);
+      if (parser.nextToken() == null) {
+        throw new ProjectionException("empty JSON document");
+      }
+      if (this.walk(parser, filter, cursors, results, false) == FILTERED) {
+        // the document does not match the filters: nothing is projected
+        Arrays.fill(results, null);
+      }
+      return mapper.writeValueAsString(this.assemble(results));
+    }
+    catch (IOException e) {
+      throw new ProjectionException(e);
+    }
+    finally {
+      if (parser != null) {
+        try {
+          parser.close();
+        }
+        catch (IOException e) {
+          logger.debug("failed to close the JSON parser", e);
+        }
+      }
+    }
+  }
+
+  private JsonNode assemble(final JsonNode[] results) {
+    if (results.length == 1 && results[0] instanceof ArrayNode) {
+      return results[0];
+    }
+    // wrap to object
+    final ObjectNode newRoot = factory.objectNode();
+    for (int i = 0; i < results.length; i++) {
+      newRoot.put(keys[i], results[i]);
+    }
+    return newRoot;
+  }
+
+  /**
+   * Consumes the value on which the parser is positioned, and leaves the parser on its last token.
+   *
+   * @param filter the filter of the value, or null
+   * @param cursors the variables whose path leads to this value
+   * @param capture if true, a copy of the value is returned
+   * @return {@link #FILTERED} if the value does not match its filter, otherwise the copy of the
+   * value if it is captured, or null
+   */
+  private JsonNode walk(final JsonParser parser, final Filter filter, final List<Cursor> cursors,
+                        final JsonNode[] results, boolean capture)
+  throws IOException, ProjectionException {
+    // the variables whose path ends on this value capture it, the others go further down
+    List<Cursor> completed = null;
+    List<Cursor> active = null;
+    for (final Cursor cursor : cursors) {
+      if (cursor.depth == paths[cursor.var].length) {
+        completed = completed == null ? new ArrayList<Cursor>(2) : completed;
+        completed.add(cursor);
+      }
+      else {
+        active = active == null ? new ArrayList<Cursor>(2) : active;
+        active.add(cursor);
+      }
+    }
+    capture |= completed != null;
+
+    final JsonNode node;
+    switch (parser.getCurrentToken()) {
+      case START_OBJECT:
+        node = this.walkObject(parser, filter, active, results, capture);
+        break;
+
+      case START_ARRAY:
+        node = this.walkArray(parser, filter, active, results, capture);
+        break;
+
+      default:
+        if (filter != null) {
+          if (!filter.hasQuery()) {
+            throw new IllegalStateException("leaf of json and queries does not match");
+          }
+          if (!filter.matches(parser)) {
+            return FILTERED;
+          }
+        }
+        node = capture ? copyValue(parser) : null;
+    }
+
+    if (node == FILTERED) {
+      return FILTERED;
+    }
+    if (completed != null) {
+      for (final Cursor cursor : completed) {
+        cursor.set(node, results);
+      }
+    }
+    return node;
+  }
+
+  private JsonNode walkObject(final JsonParser parser, final Filter filter, final List<Cursor> active,
+                              final JsonNode[] results, final boolean capture)
+  throws IOException, ProjectionException {
+    final ObjectNode node = capture ? factory.objectNode() : null;
+
+    while (parser.nextToken() != JsonToken.END_OBJECT) {
+      final String fieldName = parser.getCurrentName();
+      parser.nextToken();
+
+      final Filter childFilter = filter == null ? null : filter.getChild(fieldName);
+      List<Cursor> childCursors = Collections.emptyList();
+      if (active != null) {
+        for (final Cursor cursor : active) {
+          if (paths[cursor.var][cursor.depth].equals(fieldName)) {
+            childCursors = childCursors.isEmpty() ? new ArrayList<Cursor>(2) : childCursors;
+            childCursors.add(cursor.next());
+          }
+        }
+      }
+
+      // nothing to project or filter below this field
+      if (childFilter == null && childCursors.isEmpty() && !capture) {
+        parser.skipChildren();
+        continue;
+      }
+
+      final JsonNode child = this.walk(parser, childFilter, childCursors, results, capture);
+      if (child == FILTERED) {
+        skipRemainingFields(parser);
+        return FILTERED;
+      }
+      if (capture) {
+        node.put(fieldName, child);
+      }
+    }
+
+    return node;
+  }
+
+  private JsonNode walkArray(final JsonParser parser, final Filter filter, final List<Cursor> active,
+                             final JsonNode[] results, final boolean capture)
+  throws IOException, ProjectionException {
+    final ArrayNode node = capture ? factory.arrayNode() : null;
+
+    // each element is projected into its own object
+    final ArrayNode[] projected = active == null ? null : new ArrayNode[active.size()];
+    if (active != null) {
+      for (int i = 0; i < projected.length; i++) {
+        projected[i] = factory.arrayNode();
+        active.get(i).set(projected[i], results);
+      }
+    }
+
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (filter == null && active == null && !capture) {
+        parser.skipChildren();
+        continue;
+      }
+
+      List<Cursor> elementCursors = Collections.emptyList();
+      if (active != null) {
+        elementCursors = new ArrayList<Cursor>(active.size());
+        for (final Cursor cursor : active) {
+          final ObjectNode element = factory.objectNode();
+          element.put(keys[cursor.var], (JsonNode) null);
+          elementCursors.add(new Cursor(cursor.var, cursor.depth, element));
+        }
+      }
+
+      final JsonNode child = this.walk(parser, filter, elementCursors, results, capture);
+      if (child == FILTERED) {
+        // the element is discarded
+        continue;
+      }
+      for (int i = 0; projected != null && i < projected.length; i++) {
+        projected[i].add(elementCursors.get(i).element);
+      }
+      if (capture) {
+        node.add(child);
+      }
+    }
+
+    return node;
+  }
+
+  /**
+   * Consumes the remaining fields of the current object, up to its end.
+   */
+  private static void skipRemainingFields(final JsonParser parser) throws IOException {
+    JsonToken token;
+    while ((token = parser.nextToken()) != JsonToken.END_OBJECT) {
+      if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private static JsonNode copyValue(final JsonParser parser) throws IOException {
+    switch (parser.getCurrentToken()) {
+      case VALUE_STRING:
+        return factory.textNode(parser.getText());
+
+      case VALUE_NUMBER_INT:
+        switch (parser.getNumberType()) {
+          case INT:
+            return factory.numberNode(parser.getIntValue());
+          case LONG:
+            return factory.numberNode(parser.getLongValue());
+          default:
+            return factory.numberNode(parser.getBigIntegerValue());
+        }
+
+      case VALUE_NUMBER_FLOAT:
+        return factory.numberNode(parser.getDoubleValue());
+
+      case VALUE_TRUE:
+        return factory.booleanNode(true);
+
+      case VALUE_FALSE:
+        return factory.booleanNode(false);
+
+      case VALUE_NULL:
+        return factory.nullNode();
+
+      default:
+        throw new IllegalStateException("unexpected JSON token " + parser.getCurrentToken());
+    }
+  }
+
+  private static String lastPartOfPath(final String path) {
+    final int lastDotPosition = path.lastIndexOf('.');
+    if (lastDotPosition == -1) {
+      return path;
+    } else {
+      return path.substring(lastDotPosition + 1);
+    }
+  }
+
+  private static String getRoot(final TwigQuery twigQuery) {
+    if (twigQuery.getRoot() != null && !(twigQuery.getRoot() instanceof TwigQuery.EmptyRootQuery)) {
+      final Set<Term> terms = new HashSet<Term>();
+      twigQuery.getRoot().extractTerms(terms);
+      return terms.iterator().next().text();
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * It traverses through the query tree searching for "variable" and "query" clauses in a twig
+   * child. When the variable close is find, its path is stored. When query is find, query with the
+   * path is stored.
+   */
+  private static void discoverRequiredJSONfieldsAndQueries(final Query inspectedQueryNode,
+      final LinkedList<String> actualJsonPath, final List<String> variablesPaths, final Filter queries)
+      throws ProjectionException {
+
+    if (inspectedQueryNode instanceof TwigQuery) {
+      final TwigQuery twigQuery = (TwigQuery) inspectedQueryNode;
+      final String fName = getRoot(twigQuery);
+      if (fName != null) {
+        actualJsonPath.add(fName);
+      } else {
+        actualJsonPath.add(".");
+      }
+      for (final NodeBooleanClause clause : twigQuery.getClauses()) {
+        discoverRequiredJSONfieldsAndQueries(clause.getQuery(), actualJsonPath, variablesPaths,
+            queries);
+      }
+
+      actualJsonPath.removeLast();
+      return;
+    }
+
+    if (inspectedQueryNode instanceof NodeBooleanQuery) {
+      final NodeBooleanQuery nodeBooleanQuery = (NodeBooleanQuery) inspectedQueryNode;
+      for (final NodeBooleanClause booleanClose : nodeBooleanQuery.clauses()) {
+        discoverRequiredJSONfieldsAndQueries(booleanClose.getQuery(), actualJsonPath,
+            variablesPaths, queries);
+      }
+      return;
+    }
+
+    if (inspectedQueryNode instanceof BooleanQuery) {
+      final BooleanQuery nodeBooleanQuery = (BooleanQuery) inspectedQueryNode;
+      for (final BooleanClause booleanClose : nodeBooleanQuery.clauses()) {
+        discoverRequiredJSONfieldsAndQueries(booleanClose.getQuery(), actualJsonPath,
+            variablesPaths, queries);
+      }
+      return;
+    }
+
+    if (inspectedQueryNode instanceof NodeVariableQuery) {
+      if (actualJsonPath.size() > 0) {
+        final String actalPathAsString = concatanatePath(actualJsonPath);
+        variablesPaths.add(actalPathAsString);
+        logger.debug("variable found for field {}", actalPathAsString);
+      } else {
+        logger.warn("variable found but JSON field name is empty");
+      }
+      return;
+    }
+
+    // nothing interesting in following NodeQueries
+    if (inspectedQueryNode instanceof NodeTermQuery
+        || inspectedQueryNode instanceof NodePhraseQuery
+        || inspectedQueryNode instanceof NodeNumericRangeQuery<?>
+        || inspectedQueryNode instanceof NodePrefixQuery) {
+      queries.insert(actualJsonPath, (NodeQuery) inspectedQueryNode);
+      logger.debug("query found for field {}", concatanatePath(actualJsonPath));
+      return;
+    }
+
+    if (inspectedQueryNode instanceof LuceneProxyNodeQuery) {
+      discoverRequiredJSONfieldsAndQueries(
+          ((LuceneProxyNodeQuery) inspectedQueryNode).getNodeQuery(), actualJsonPath,
+          variablesPaths, queries);
+      return;
+    }
+    // unsupported query type
+    logger.error("unsupported query type {}", inspectedQueryNode.getClass().getCanonicalName());
+    throw new ProjectionException("unsupported query type"
+        + inspectedQueryNode.getClass().getCanonicalName());
+  }
+
+  private static String concatanatePath(final List<String> parts) {
+    final StringBuilder sb = new StringBuilder();
+    for (final String part : parts) {
+      sb.append(part);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * A variable whose path leads to the value being parsed, and where to put its projected value:
+   * in the projected object of an array element, or in the results if the path does not
+   * cross any array.
+   */
+  private final class Cursor {
+
+    final int var;
+    final int depth;
+    final ObjectNode element;
+
+    Cursor(final int var, final int depth, final ObjectNode element) {
+      this.var = var;
+      this.depth = depth;
+      this.element = element;
+    }
+
+    Cursor next() {
+      return new Cursor(var, depth + 1, element);
+    }
+
+    void set(final JsonNode value, final JsonNode[] results) {
+      if (element == null) {
+        results[var] = value;
+      }
+      else {
+        element.put(keys[var], value);
+      }
+    }
+
+  }
+
+  /**
+   * The filters of a field, compiled from the queries found in twig children
+   */
+  private static final class Filter {
+
+    private final Map<String, Filter> children = new HashMap<String, Filter>();
+    private NodeQuery query;
+    private Pattern termPattern;
+
+    Filter getChild(final String key) {
+      return children.get(key);
+    }
+
+    boolean isEmpty() {
+      return children.isEmpty();
+    }
+
+    boolean hasQuery() {
+      return query != null;
+    }
+
+    void insert(final List<String> keys, final NodeQuery query) {
+      Filter activeNode = this;
+      for (final String subpath : keys) {
+        if (!subpath.equals(".")) {
+          Filter child = activeNode.getChild(subpath);
+          if (child == null) {
+            child = new Filter();
+            activeNode.children.put(subpath, child);
+          }
+          activeNode = child;
+        }
+      }
+      activeNode.setQuery(query);
+    }
+
+    private void setQuery(final NodeQuery query) {
+      this.query = query;
+      this.termPattern = null;
+      if (query instanceof NodeTermQuery) {
+        termPattern = Pattern.compile(((NodeTermQuery) query).getTerm().text(),
+            Pattern.CASE_INSENSITIVE);
+      } else if (query instanceof NodePrefixQuery) {
+        termPattern = Pattern.compile(((NodePrefixQuery) query).getPrefix().text() + ".*",
+            Pattern.CASE_INSENSITIVE);
+      }
+    }
+
+    /**
+     * Evaluates the query against the primitive value on which the parser is positioned.
+     */
+    boolean matches(final JsonParser parser) throws IOException, ProjectionException {
+      if (termPattern != null) {
+        return termPattern.matcher(asText(parser)).matches();
+      } else if (query instanceof NodeNumericRangeQuery<?>) {
+        return evaluateNumericRangeQuery(parser, (NodeNumericRangeQuery<?>) query);
+      }
+      return false;
+    }
+
+    /**
+     * Returns the textual representation of the value, as {@link JsonNode#asText()}.
+     */
+    private static String asText(final JsonParser parser) throws IOException {
+      switch (parser.getCurrentToken()) {
+        case VALUE_NUMBER_INT:
+          switch (parser.getNumberType()) {
+            case INT:
+              return Integer.toString(parser.getIntValue());
+            case LONG:
+              return Long.toString(parser.getLongValue());
+            default:
+              return parser.getBigIntegerValue().toString();
+          }
+
+        case VALUE_NUMBER_FLOAT:
+          return Double.toString(parser.getDoubleValue());
+
+        default:
+          return parser.getText();
+      }
+    }
+
+    private static <T extends Number> boolean evaluateNumericRangeQuery(final JsonParser parser,
+        final NodeNumericRangeQuery<T> termOrRangeQuery) throws IOException, ProjectionException {
+      if (parser.getCurrentToken() != JsonToken.VALUE_NUMBER_INT &&
+          parser.getCurrentToken() != JsonToken.VALUE_NUMBER_FLOAT) {
+        throw new ProjectionException("numering range used on not numeric field");
+      }
+
+      final Number value = parser.getNumberValue();
+      switch (parser.getNumberType()) {
+        case LONG :
+          if (termOrRangeQuery.getMin() != null
+              && termOrRangeQuery.getMin().longValue() > value.longValue()) {
+            return false;
+          }
+          if (termOrRangeQuery.getMax() != null
+              && termOrRangeQuery.getMax().longValue() < value.longValue()) {
+            return false;
+          }
+          break;
+        case INT :
+          if (termOrRangeQuery.getMin() != null
+              && termOrRangeQuery.getMin().intValue() > value.intValue()) {
+            return false;
+          }
+          if (termOrRangeQuery.getMax() != null
+              && termOrRangeQuery.getMax().intValue() < value.intValue()) {
+            return false;
+          }
+          break;
+        case FLOAT :
+          if (termOrRangeQuery.getMin() != null
+              && termOrRangeQuery.getMin().floatValue() > value.floatValue()) {
+            return false;
+          }
+          if (termOrRangeQuery.getMax() != null
+              && termOrRangeQuery.getMax().floatValue() < value.floatValue()) {
+            return false;
+          }
+          break;
+        case DOUBLE :
+          if (termOrRangeQuery.getMin() != null
+              && termOrRangeQuery.getMin().doubleValue() > value.doubleValue()) {
+            return false;
+          }
+          if (termOrRangeQuery.getMax() != null
+              && termOrRangeQuery.getMax().doubleValue() < value.doubleValue()) {
+            return false;
+          }
+          break;
+        default :
+          // should never happen
+          throw new IllegalArgumentException("Invalid numeric NumericType");
+      }
+      return true;
+    }
+
+  }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.qparser.util;
+
+import org.apache.lucene.search.Query;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of parsed queries, shared by the threads of a query parser
+ * plugin.
+ *
+ * <p>
+ *
+ * A query is cached under a {@link Key} built from the query string and the
+ * configuration used to parse it, e.g., the field, the analyzers and the
+ * qnames. The analyzers are compared by identity, so a query parsed with a
+ * new analyzer configuration is not served from the cache. The least recently
+ * used queries are evicted once the maximum size is reached.
+ *
+ * <p>
+ *
+ * As a {@link Query} is mutable, e.g., its boost can be modified by the
+ * caller, the cache stores and returns clones of the queries.
+ */
+public class ParsedQueryCache {
+
+  private final int maxSize;
+
+  private final Map<Key, Query> cache;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  public ParsedQueryCache(final int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be > 0, got " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.cache = new LinkedHashMap<Key, Query>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key, Query> eldest) {
+        return this.size() > ParsedQueryCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns a clone of the query cached under the given key, or null.
+   */
+  public Query get(final Key key) {
+    final Query query;
+    synchronized (cache) {
+      query = cache.get(key);
+    }
+    if (query == null) {
+      missCount.incrementAndGet();
+      return null;
+    }
+    hitCount.incrementAndGet();
+    return query.clone();
+  }
+
+  /**
+   * Caches a clone of the query under the given key.
+   */
+  public void put(final Key key, final Query query) {
+    final Query clone = query.clone();
+    synchronized (cache) {
+      cache.put(key, clone);
+    }
+  }
+
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Creates a key from the query string and the configuration used to parse
+   * it. The configuration objects are compared with their
+   * {@link Object#equals(Object)} method, i.e., by identity for the analyzers.
+   */
+  public static Key key(final String query, final Object... config) {
+    return new Key(query, config);
+  }
+
+  /**
+   * The key of a query in a {@link ParsedQueryCache}.
+   */
+  public static final class Key {
+
+    private final String query;
+    private final Object[] config;
+    private final int hashCode;
+
+    private Key(final String query, final Object[] config) {
+      this.query = query;
+      this.config = config;
+      this.hashCode = 31 * query.hashCode() + Arrays.hashCode(config);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return hashCode == other.hashCode &&
+             query.equals(other.query) &&
+             Arrays.equals(config, other.config);
+    }
+
+    @Override
+    public String toString() {
+      return query;
+    }
+
+  }
+
+}
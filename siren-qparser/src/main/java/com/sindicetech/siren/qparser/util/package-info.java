@@ -0,0 +1,6 @@
+/**
+ * Utilities shared by the SIREn's query parsers and their integrations, e.g.,
+ * a cache of parsed queries.
+ *
+ */
+package com.sindicetech.siren.qparser.util;
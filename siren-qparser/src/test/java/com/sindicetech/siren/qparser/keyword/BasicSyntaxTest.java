@@ -544,6 +544,8 @@ public class BasicSyntaxTest extends BaseKeywordQueryParserTest {
       should(ntq("http://hello.world#me").setDatatype("uri"))
     ).getQuery();
     this._assertSirenQuery(config, q, "uri('http://www.google.com' 'http://hello.world#me')");
+    // the disjunction of terms can be scored with block-max WAND
+    assertTrue(this.parse(config, "uri('http://www.google.com' 'http://hello.world#me')") instanceof BlockMaxBooleanQuery);
   }
 
   @Test
@@ -66,6 +66,64 @@ public class ConciseTreeQueryParserTest {
     assertParser(twig);
   }
 
+  @Test
+  public void testNodeWithTermExpression() throws QueryNodeException {
+    final ConciseQueryBuilder build = new ConciseQueryBuilder();
+    final NodeQuery node = build.newNode(build.newTerm("bbb")).setAttribute("aaa");
+    assertEquals(build.newNode("bbb").setAttribute("aaa").toQuery(true), node.toQuery(true));
+    assertParser(node);
+  }
+
+  @Test
+  public void testNodeWithTermExpressionNoAttribute() throws QueryNodeException {
+    final ConciseQueryBuilder build = new ConciseQueryBuilder();
+    final NodeQuery node = build.newNode(build.newTerm("aaa"));
+    assertEquals(build.newNode("aaa").toQuery(true), node.toQuery(true));
+    assertParser(node);
+  }
+
+  @Test
+  public void testNodeWithBooleanExpression() throws QueryNodeException {
+    final ConciseQueryBuilder build = new ConciseQueryBuilder();
+    final NodeQuery node = build.newNode(build.newNodeBoolean()
+                                              .must(build.newTerm("bbb"))
+                                              .not(build.newPhrase("ccc ddd"))
+                                              .must(build.newNodeBoolean()
+                                                         .should(build.newTerm("eee"))
+                                                         .should(build.newTerm("fff"))))
+                                .setAttribute("aaa");
+    final NodeQuery expected = build.newNode("+bbb -\"ccc ddd\" +(eee OR fff)").setAttribute("aaa");
+    assertEquals(expected.toQuery(true), node.toQuery(true));
+    assertParser(node);
+  }
+
+  @Test
+  public void testTwigWithExpressions() throws QueryNodeException {
+    final ConciseQueryBuilder build = new ConciseQueryBuilder();
+    final TwigQuery twig = build.newTwig(build.newTerm("funding"))
+                                .with(build.newNode(build.newTerm("a")).setAttribute("round"))
+                                .with(build.newNode(build.newTerm("2006")));
+    final TwigQuery expected = build.newTwig("funding")
+                                    .with(build.newNode("a").setAttribute("round"))
+                                    .with(build.newNode("2006"));
+    assertEquals(expected.toQuery(true), twig.toQuery(true));
+    assertParser(twig);
+  }
+
+  @Test
+  public void testTwigWithPhraseRootExpression() throws QueryNodeException {
+    final ConciseQueryBuilder build = new ConciseQueryBuilder();
+    final TwigQuery twig = build.newTwig(build.newPhrase("first name"));
+    assertEquals(build.newTwig("first name").toQuery(true), twig.toQuery(true));
+    assertParser(twig);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testTwigWithBooleanRootExpression() throws QueryNodeException {
+    final ConciseQueryBuilder build = new ConciseQueryBuilder();
+    build.newTwig(build.newNodeBoolean().should(build.newTerm("aaa")).should(build.newTerm("bbb")));
+  }
+
   /**
    * Checks that a keyword query that returns an {@link org.apache.lucene.queryparser.flexible.core.nodes.MatchNoDocsQueryNode}
    * is converted into an empty {@link com.sindicetech.siren.search.node.NodeBooleanQuery}.
@@ -32,6 +32,7 @@ import com.sindicetech.siren.search.node.LuceneProxyNodeQuery;
 import com.sindicetech.siren.search.node.NodeBooleanClause;
 import com.sindicetech.siren.search.node.NodeVariableQuery;
 import com.sindicetech.siren.search.node.NodeBooleanClause.Occur;
+import com.sindicetech.siren.search.node.NodePhraseQuery;
 import com.sindicetech.siren.util.XSDDatatype;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
@@ -339,6 +340,64 @@ public class ExtendedTreeQueryParserTest {
     assertParser(bool);
   }
 
+  @Test
+  public void testNodeWithTermExpression() throws QueryNodeException {
+    final QueryBuilder build = new QueryBuilder();
+    final NodeQuery node = build.newNode(build.newTerm("AAA")).setLevel(1).setRange(1, 2);
+    assertEquals(build.newNode("AAA").setLevel(1).setRange(1, 2).toQuery(true), node.toQuery(true));
+    assertParser(node);
+  }
+
+  @Test
+  public void testNodeWithTokenizedTermExpression() throws QueryNodeException {
+    final QueryBuilder build = new QueryBuilder();
+    final NodeQuery node = build.newNode(build.newTerm("aaa bbb ccc"));
+    assertThat(node.toQuery(false), instanceOf(NodePhraseQuery.class));
+    assertParser(node);
+  }
+
+  @Test
+  public void testNodeWithPhraseExpression() throws QueryNodeException {
+    final QueryBuilder build = new QueryBuilder();
+    final NodeQuery node = build.newNode(build.newPhrase("aaa \"bbb\" ccc"));
+    assertEquals(build.newNode("\"aaa \\\"bbb\\\" ccc\"").toQuery(true), node.toQuery(true));
+    assertParser(node);
+  }
+
+  @Test
+  public void testNodeWithBooleanExpression() throws QueryNodeException {
+    final QueryBuilder build = new QueryBuilder();
+    final NodeQuery node = build.newNode(build.newNodeBoolean()
+                                              .must(build.newTerm("aaa"))
+                                              .not(build.newPhrase("bbb ccc"))
+                                              .must(build.newNodeBoolean()
+                                                         .should(build.newTerm("ddd"))
+                                                         .should(build.newTerm("eee"))));
+    assertEquals(build.newNode("+aaa -\"bbb ccc\" +(ddd OR eee)").toQuery(true), node.toQuery(true));
+    assertParser(node);
+  }
+
+  @Test
+  public void testTwigWithExpressions() throws QueryNodeException {
+    final QueryBuilder build = new QueryBuilder();
+    final TwigQuery twig = build.newTwig(build.newTerm("aaa"))
+                                .with(build.newNode(build.newTerm("bbb")))
+                                .optional(build.newTwig(build.newTerm("ccc"))
+                                               .without(build.newNode(build.newPhrase("ddd eee"))), 2);
+    final TwigQuery expected = build.newTwig("aaa")
+                                    .with(build.newNode("bbb"))
+                                    .optional(build.newTwig("ccc")
+                                                   .without(build.newNode("\"ddd eee\"")), 2);
+    assertEquals(expected.toQuery(true), twig.toQuery(true));
+    assertParser(twig);
+  }
+
+  @Test(expected=QueryNodeException.class)
+  public void testTermExpressionWithoutTerm() throws QueryNodeException {
+    final QueryBuilder build = new QueryBuilder();
+    build.newNode(build.newTerm(" ")).toQuery(true);
+  }
+
   private static void assertParser(final AbstractQuery query) throws QueryNodeException {
     final ExtendedTreeQueryParser parser = new ExtendedTreeQueryParser();
     final Query output = parser.parse(query.toString(), "");
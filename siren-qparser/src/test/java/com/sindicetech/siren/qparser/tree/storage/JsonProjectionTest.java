@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sindicetech.siren.qparser.tree.storage;
+
+import com.sindicetech.siren.qparser.tree.ExtendedTreeQueryParser;
+import com.sindicetech.siren.util.JSONDatatype;
+import com.sindicetech.siren.util.XSDDatatype;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.util.Version;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonProjectionTest {
+
+  private final ExtendedTreeQueryParser parser = new ExtendedTreeQueryParser();
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  /**
+   * Variable on the actors whose first name matches
+   */
+  private static final String QUERY = "{"
+      + "\"twig\" : { "
+        + "\"root\" : \"actors\","
+         + "\"child\" : [{\"occur\":\"MUST\","
+                    + "\"twig\": {"
+                         + "\"child\":[{\"occur\":\"MUST\","
+                            + "\"twig\": {"
+                                 + "\"root\":\"first_name\","
+                                + "\"child\":["
+                                      + "{\"occur\":\"MUST\","
+                                            + "\"node\" : { \"query\" : \"Clint\" } "
+                                       + "}"
+                                        + "]"
+                                     + "}"
+                                   + "}"
+                                   + ", {\"occur\" : \"MUST\", \"variable\" : {}}"
+                                  + "]"
+                             + "}"
+                     + "}"
+                    + "]"
+                + "}"
+      + "}";
+
+  @Before
+  public void init() {
+    Map<String,Analyzer> analyzers = new HashMap<String,Analyzer>();
+    analyzers.put(XSDDatatype.XSD_STRING, new StandardAnalyzer(Version.LUCENE_46));
+    analyzers.put(JSONDatatype.JSON_FIELD, new WhitespaceAnalyzer(Version.LUCENE_46));
+    parser.getKeywordQueryParser().setDatatypeAnalyzers(analyzers);
+  }
+
+  @Test
+  public void testNoVariable() throws QueryNodeException, ProjectionException {
+    final JsonProjection projection = JsonProjection.compile(parser.parse("{ \"node\" : { \"query\" : \"Clint\" } }", ""));
+    assertFalse(projection.hasVariables());
+    final String json = "{ \"a\" : \"Clint\" }";
+    assertEquals(json, projection.project(json));
+  }
+
+  @Test
+  public void testCompileOnce() throws QueryNodeException, ProjectionException, IOException {
+    final JsonProjection projection = JsonProjection.compile(parser.parse(QUERY, ""));
+    assertTrue(projection.hasVariables());
+
+    assertEquals(mapper.readTree("[{\"first_name\":\"Clint\",\"role\":\"Munny\"}]"),
+      mapper.readTree(projection.project("{\"actors\":[{\"first_name\":\"Clint\",\"role\":\"Munny\"}," +
+        "{\"first_name\":\"Gene\",\"role\":\"Dagget\"}]}")));
+
+    assertEquals(mapper.readTree("[{\"first_name\":\"clint\",\"age\":[1,2.5,true,null]}]"),
+      mapper.readTree(projection.project("{\"title\":{\"a\":[1,2]},\"actors\":[{\"first_name\":\"Morgan\"}," +
+        "{\"first_name\":\"clint\",\"age\":[1,2.5,true,null]}]}")));
+
+    assertEquals(mapper.readTree("[]"),
+      mapper.readTree(projection.project("{\"actors\":[{\"first_name\":\"Gene\"}]}")));
+  }
+
+  /**
+   * A value which does not match its filter outside of an array discards the whole document.
+   */
+  @Test
+  public void testFilteredDocument() throws QueryNodeException, ProjectionException, IOException {
+    final String query = "{"
+        + "\"twig\" : { "
+          + "\"root\" : \"director\","
+           + "\"child\" : [{\"occur\":\"MUST\","
+                      + "\"twig\": {"
+                           + "\"child\":[{\"occur\":\"MUST\","
+                              + "\"twig\": {"
+                                   + "\"root\":\"first_name\","
+                                  + "\"child\":["
+                                        + "{\"occur\":\"MUST\","
+                                              + "\"node\" : { \"query\" : \"Clint\" } "
+                                         + "}"
+                                          + "]"
+                                       + "}"
+                                     + "}"
+                                    + "]"
+                               + "}"
+                       + "}"
+                       + ", {\"occur\" : \"MUST\", \"variable\" : {}}"
+                      + "]"
+                  + "}"
+        + "}";
+    final JsonProjection projection = JsonProjection.compile(parser.parse(query, ""));
+
+    assertEquals(mapper.readTree("{\"director\":{\"first_name\":\"Clint\",\"last_name\":\"Eastwood\"}}"),
+      mapper.readTree(projection.project("{\"director\":{\"first_name\":\"Clint\",\"last_name\":\"Eastwood\"}}")));
+    assertEquals(mapper.readTree("{\"director\":null}"),
+      mapper.readTree(projection.project("{\"director\":{\"first_name\":\"Gene\",\"last_name\":\"Hackman\"}}")));
+  }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * SIREn is a free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * SIREn is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sindicetech.siren.qparser.util;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+import com.sindicetech.siren.qparser.tree.ExtendedTreeQueryParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class ParsedQueryCacheTest {
+
+  private static final String QUERY = "{\"node\":{\"query\":\"aaa\"}}";
+
+  private Query parse(final String query) throws QueryNodeException {
+    return new ExtendedTreeQueryParser().parse(query, "field");
+  }
+
+  @Test
+  public void testGetReturnsClone() throws QueryNodeException {
+    final ParsedQueryCache cache = new ParsedQueryCache(10);
+    final ParsedQueryCache.Key key = ParsedQueryCache.key(QUERY, "field");
+    assertNull(cache.get(key));
+
+    final Query query = this.parse(QUERY);
+    cache.put(key, query);
+    final Query cached = cache.get(ParsedQueryCache.key(QUERY, "field"));
+    assertEquals(query, cached);
+    assertNotSame(query, cached);
+
+    // the cached query is not affected by the modifications of the caller
+    cached.setBoost(2.0f);
+    query.setBoost(3.0f);
+    assertEquals(1.0f, cache.get(key).getBoost(), 0f);
+
+    assertEquals(2, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void testKeyConfiguration() throws QueryNodeException {
+    final ParsedQueryCache cache = new ParsedQueryCache(10);
+    final WhitespaceAnalyzer analyzer = new WhitespaceAnalyzer(Version.LUCENE_4_9);
+    cache.put(ParsedQueryCache.key(QUERY, "field", analyzer), this.parse(QUERY));
+
+    assertNotEquals(null, cache.get(ParsedQueryCache.key(QUERY, "field", analyzer)));
+    assertNull(cache.get(ParsedQueryCache.key(QUERY, "other", analyzer)));
+    // the analyzers are compared by identity
+    assertNull(cache.get(ParsedQueryCache.key(QUERY, "field", new WhitespaceAnalyzer(Version.LUCENE_4_9))));
+  }
+
+  @Test
+  public void testEviction() throws QueryNodeException {
+    final ParsedQueryCache cache = new ParsedQueryCache(2);
+    final String q1 = "{\"node\":{\"query\":\"aaa\"}}";
+    final String q2 = "{\"node\":{\"query\":\"bbb\"}}";
+    final String q3 = "{\"node\":{\"query\":\"ccc\"}}";
+    cache.put(ParsedQueryCache.key(q1), this.parse(q1));
+    cache.put(ParsedQueryCache.key(q2), this.parse(q2));
+    // access q1 so that q2 is the least recently used
+    assertNotEquals(null, cache.get(ParsedQueryCache.key(q1)));
+    cache.put(ParsedQueryCache.key(q3), this.parse(q3));
+
+    assertEquals(2, cache.size());
+    assertNotEquals(null, cache.get(ParsedQueryCache.key(q1)));
+    assertNull(cache.get(ParsedQueryCache.key(q2)));
+    assertNotEquals(null, cache.get(ParsedQueryCache.key(q3)));
+
+    cache.clear();
+    assertEquals(0, cache.size());
+  }
+
+}
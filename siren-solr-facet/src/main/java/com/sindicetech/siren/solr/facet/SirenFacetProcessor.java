@@ -17,28 +17,25 @@
  */
 package com.sindicetech.siren.solr.facet;
 
-import static org.apache.solr.common.SolrException.ErrorCode.BAD_REQUEST;
-
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.schema.IndexSchema;
-import org.apache.solr.schema.SchemaField;
 import org.apache.solr.update.AddUpdateCommand;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sindicetech.siren.solr.schema.SchemaFieldsAccumulator;
+
 /**
  * Enriches each {@link SolrInputDocument} with fields generated by the {@link SirenFieldFacetExtractor} for
- * the document. Updates Schema accordingly.
+ * the document. Updates Schema accordingly. The new fields are added through a {@link SchemaFieldsAccumulator}
+ * shared by all the processors of the core, so that the fields of concurrent requests are added in one schema update.
  * 
  * See {@link SirenFacetProcessorFactory} for how to configure the processor to be used during
  * indexing.
@@ -54,10 +51,20 @@ public class SirenFacetProcessor extends UpdateRequestProcessor {
 
   protected List<TypeMapping> typeMappings;
 
-  public SirenFacetProcessor(UpdateRequestProcessor next, List<TypeMapping> typeMappings) {
+  private final SchemaFieldsAccumulator schemaFields;
+
+  /**
+   * The new fields of the documents processed by this processor
+   */
+  private final SchemaFieldsAccumulator.Batch newFields;
+
+  public SirenFacetProcessor(UpdateRequestProcessor next, List<TypeMapping> typeMappings,
+                             SchemaFieldsAccumulator schemaFields) {
     super(next);
 
     this.typeMappings = typeMappings;
+    this.schemaFields = schemaFields;
+    this.newFields = schemaFields.newBatch();
   }
 
   @Override
@@ -65,23 +72,18 @@ public class SirenFacetProcessor extends UpdateRequestProcessor {
     SolrCore core = cmd.getReq().getCore();
     IndexSchema schema = core.getLatestSchema();
 
-    if (!schema.isMutable()) {
-      throw new SolrException(BAD_REQUEST, String.format(
-          "This IndexSchema, of core %s, is not mutable.", core.getName()));
-    }
-
     SolrInputDocument doc = cmd.getSolrInputDocument();
 
     extractor.setSchema(schema);
-    List<SirenFacetEntry> entries = extractor.extractFacets(doc);
+    // the parsed SIREn fields are shared with the analysis of the fields
+    List<SirenFacetEntry> entries = extractor.extractFacets(doc, cmd.getReq());
 
     // update schema
-    // use Sets so that we add a fieldname only once even if it is generated multiple times (for
-    // multiple paths)
-    Set<SchemaField> newFields = new HashSet<SchemaField>();
+    // the accumulator adds a fieldname only once even if it is generated multiple times (for
+    // multiple paths), and skips the fields already in the schema without a schema lookup
     for (SirenFacetEntry entry : entries) {
       // skip entry if the field is already in the schema
-      if (schema.getFieldOrNull(entry.toFieldName()) != null) {
+      if (schemaFields.exists(core, entry.toFieldName())) {
         continue;
       }
 
@@ -105,12 +107,9 @@ public class SirenFacetProcessor extends UpdateRequestProcessor {
       newFields.add(schema.newField(entry.toFieldName(), fieldTypeName, options));
     }
 
-    if (!newFields.isEmpty()) {
-      IndexSchema newSchema = schema.addFields(newFields);
-      cmd.getReq().getCore().setLatestSchema(newSchema);
-      cmd.getReq().updateSchemaToLatest();
-      logger.debug("Successfully added field(s) to the schema.");
-    }
+    // add the pending fields, including the ones of concurrent requests, in one schema update
+    newFields.flush(core);
+    cmd.getReq().updateSchemaToLatest();
 
     // update document
     for (SirenFacetEntry entry : entries) {
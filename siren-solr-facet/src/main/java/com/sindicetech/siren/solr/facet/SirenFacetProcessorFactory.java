@@ -31,6 +31,8 @@ import org.apache.solr.update.processor.AddSchemaFieldsUpdateProcessorFactory;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
 
+import com.sindicetech.siren.solr.schema.SchemaFieldsAccumulator;
+
 /**
  * <p>A simple factory that simply instantiates the {@link SirenFacetProcessor}.
  * 
@@ -187,7 +189,8 @@ public class SirenFacetProcessorFactory extends UpdateRequestProcessorFactory {
   public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp,
       UpdateRequestProcessor next) {
 
-    return new SirenFacetProcessor(next, typeMappings);
+    // the accumulator is shared with the other components adding fields to the schema of the core
+    return new SirenFacetProcessor(next, typeMappings, SchemaFieldsAccumulator.getInstance(req.getCore()));
   }
 
 }
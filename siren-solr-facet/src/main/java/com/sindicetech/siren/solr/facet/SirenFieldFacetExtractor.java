@@ -25,30 +25,28 @@
  */
 package com.sindicetech.siren.solr.facet;
 
+import com.sindicetech.siren.analysis.AbstractJsonTokenizer;
+import com.sindicetech.siren.analysis.JsonTokenBuffer;
 import com.sindicetech.siren.analysis.NumericAnalyzer;
 import com.sindicetech.siren.analysis.NumericAnalyzer.NumericParser;
 import com.sindicetech.siren.solr.schema.Datatype;
 import com.sindicetech.siren.solr.schema.ExtendedJsonField;
 import com.sindicetech.siren.solr.schema.TrieDatatype;
+import com.sindicetech.siren.util.JSONDatatype;
+import com.sindicetech.siren.util.XSDDatatype;
 import org.apache.commons.lang.NullArgumentException;
+import org.apache.lucene.util.IntsRef;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.IndexSchema;
-import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.JsonProcessingException;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.node.ArrayNode;
-import org.codehaus.jackson.node.ObjectNode;
-import org.codehaus.jackson.node.ValueNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
 
 /**
  * <p>Given a json document ({@link SolrInputDocument}), generates a {@link SirenFacetEntry}
@@ -59,7 +57,6 @@ import java.util.Map.Entry;
 public class SirenFieldFacetExtractor implements FacetExtractor {
   private final Logger logger = LoggerFactory.getLogger(this.getClass());
   private IndexSchema schema;
-  private static final ObjectMapper mapper = new ObjectMapper(); // ObjectMapper is thread-safe
 
   /**
    * Constructs SirenFieldFacetExtractor without setting the IndexSchema.
@@ -88,13 +85,32 @@ public class SirenFieldFacetExtractor implements FacetExtractor {
 
   /**
    * The main entry point of this class. Generates a list of {@link SirenFacetEntry} for
-   * the given {@link SolrInputDocument} by performing a DFS through the doc.
+   * the given {@link SolrInputDocument}.
    *
    * @param doc The document for which to generate facet entries
    * @throws IllegalStateException if IndexSchema was not set (either in constructor or via {@link #setSchema(IndexSchema)}
+   * @see #extractFacets(SolrInputDocument, SolrQueryRequest)
    */
   @Override
   public List<SirenFacetEntry> extractFacets(SolrInputDocument doc) throws FacetException {
+    return this.extractFacets(doc, null);
+  }
+
+  /**
+   * Generates a list of {@link SirenFacetEntry} for the given {@link SolrInputDocument}.
+   *
+   * <p>
+   *
+   * Each value of a SIREn field is parsed once by the tokenizer of its field type into a {@link JsonTokenBuffer}, and a facet
+   * entry is generated for each leaf of the buffer. If a request is given, the buffers are shared in its context with
+   * {@link ExtendedJsonField#shareBuffer(SolrQueryRequest, String, String, JsonTokenBuffer)}, so that the
+   * analysis of the fields replays them instead of parsing the JSON values again.
+   *
+   * @param doc The document for which to generate facet entries
+   * @param req The request in which to share the parsed fields, or null
+   * @throws IllegalStateException if IndexSchema was not set (either in constructor or via {@link #setSchema(IndexSchema)}
+   */
+  public List<SirenFacetEntry> extractFacets(SolrInputDocument doc, SolrQueryRequest req) throws FacetException {
     if (schema == null) {
       throw new IllegalStateException(
           "Schema field is null - probably the default constructor was used without calling setSchema() later.");
@@ -105,16 +121,22 @@ public class SirenFieldFacetExtractor implements FacetExtractor {
     for (String fieldName : doc.getFieldNames()) {
       FieldType ft = schema.getFieldOrNull(fieldName).getType();
       if (ft instanceof ExtendedJsonField) {
-        String sirenField = (String) doc.getFieldValue(fieldName);
-        try {
-          JsonNode sirenNode = mapper.readTree(sirenField);
-
-          generateFacetsForLeaves(sirenNode, fieldName, (ExtendedJsonField) ft, "", facets);
-
-        } catch (JsonProcessingException e) {
-          throw new FacetException("Could not parse siren field " + fieldName + ": " + e.getMessage(), e);
-        } catch (IOException e) {
-          throw new FacetException("I/O problem while parsing siren field " + fieldName + ": " + e.getMessage(), e);
+        ExtendedJsonField sirenField = (ExtendedJsonField) ft;
+        for (Object fieldValue : doc.getFieldValues(fieldName)) {
+          String value = (String) fieldValue;
+          try {
+            JsonTokenBuffer buffer = sirenField.parse(value);
+
+            generateFacetsForLeaves(buffer, fieldName, sirenField, facets);
+
+            if (req != null) {
+              ExtendedJsonField.shareBuffer(req, fieldName, value, buffer);
+            }
+          } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new FacetException("Could not parse siren field " + fieldName + ": " + e.getMessage(), e);
+          } catch (IOException e) {
+            throw new FacetException("I/O problem while parsing siren field " + fieldName + ": " + e.getMessage(), e);
+          }
         }
       }
     }
@@ -123,136 +145,153 @@ public class SirenFieldFacetExtractor implements FacetExtractor {
   }
 
   /**
-   * The entry point of the generateFacetsForLeaves() methods.
+   * Generates a {@link SirenFacetEntry} for each leaf of the JSON tree recorded in the buffer.
    *
-   * DFS through the sirenNode JsonNode. Generates a {@link SirenFacetEntry} for each
-   * leaf.
+   * <p>
    *
-   * @param sirenNode The Json to walk through.
-   * @param fieldName The name of the ExtendedJsonField of the original SolrDocument the value of which is sirenNode.
-   * @param path The path currently visited by the DFS algorithms. Should be an empty String "" in the initial call.
+   * The path of a leaf is taken from the buffer if the tokenizer provides it, e.g., the
+   * {@link com.sindicetech.siren.analysis.ConciseJsonTokenizer}. Otherwise, it is built from the field tokens which
+   * are ancestors of the leaf in the tree, e.g., with the {@link com.sindicetech.siren.analysis.ExtendedJsonTokenizer}.
+   *
+   * @param buffer The parsed JSON value of the field.
+   * @param fieldName The name of the ExtendedJsonField of the original SolrDocument.
    * @param facets The entries generated for the leaves. Should be an not null list.
    *
-   * @throws NullArgumentException if path or facets are null.
+   * @throws NullArgumentException if facets is null.
    */
-  protected void generateFacetsForLeaves(JsonNode sirenNode, String fieldName, ExtendedJsonField field, String path,
+  protected void generateFacetsForLeaves(JsonTokenBuffer buffer, String fieldName, ExtendedJsonField sirenField,
       List<SirenFacetEntry> facets) {
     if (facets == null) {
       throw new NullArgumentException("Parameter facets must not be null");
     }
-    if (path == null) {
-      throw new NullArgumentException("Parameter path must not be null");
-    }
 
-    if (sirenNode.isValueNode()) {
-      generateFacetsForLeaves((ValueNode) sirenNode, fieldName, field, path, facets);
-    }
+    // the stack of the field tokens which are ancestors of the current token
+    int[] fields = new int[buffer.size()];
+    int depth = 0;
 
-    if (sirenNode.isArray()) {
-      generateFacetsForLeaves((ArrayNode) sirenNode, fieldName, field, path, facets);
-    }
+    for (int i = 0; i < buffer.size(); i++) {
+      if (buffer.hasPaths()) {
+        // the concise model has a token for a nested object, which is not a leaf
+        if (buffer.termLength(i) == 0 && i + 1 < buffer.size() && isAncestor(buffer, i, i + 1)) {
+          continue;
+        }
+        generateFacetForLeaf(buffer, i, fieldName, sirenField, getPath(buffer, i), facets);
+        continue;
+      }
 
-    if (sirenNode.isObject()) {
-      generateFacetsForLeaves((ObjectNode) sirenNode, fieldName, field, path, facets);
+      while (depth > 0 && !isAncestor(buffer, fields[depth - 1], i)) {
+        depth--;
+      }
+      if (JSONDatatype.JSON_FIELD.equals(new String(buffer.datatypeURI(i)))) {
+        fields[depth++] = i;
+      } else {
+        generateFacetForLeaf(buffer, i, fieldName, sirenField, getPath(buffer, fields, depth), facets);
+      }
     }
   }
 
   /**
-   * The generateFacetsForLeaves() method for processing ValueNode, that is leaves.
-   * Ends recursion and generates a new {@link SirenFacetEntry}.
+   * Returns true if the node of the token <code>ancestor</code> is an ancestor of the node of the token
+   * <code>i</code>.
    */
-  private void generateFacetsForLeaves(ValueNode value, String fieldName, ExtendedJsonField field, String path,
-      List<SirenFacetEntry> facets) {
-    SirenFacetEntry entry = new SirenFacetEntry();
-    entry.fieldName = fieldName;
-    entry.path = path;
-
-    if (value.isNull()) {
-      entry.value = value.asText();
-      entry.datatype = FacetDatatype.NULL;
-    } else if (value.isInt()) {
-      entry.value = value.asInt();
-      entry.datatype = FacetDatatype.LONG;
-    } else if (value.isLong()) {
-      entry.value = value.asLong();
-      entry.datatype = FacetDatatype.LONG;
-    } else if (value.isDouble()) {
-      entry.value = value.asDouble();
-      entry.datatype = FacetDatatype.DOUBLE;
-    } else if (value.isBoolean()) {
-      entry.value = value.asBoolean();
-      entry.datatype = FacetDatatype.BOOLEAN;
-    } else {
-      entry.value = value.asText();
-      entry.datatype = FacetDatatype.STRING;
+  private static boolean isAncestor(JsonTokenBuffer buffer, int ancestor, int i) {
+    // the node returned by the buffer is reused, but its array is shared by all the nodes
+    IntsRef node = buffer.node(i);
+    int offset = node.offset;
+    int length = node.length;
+    node = buffer.node(ancestor);
+    if (node.length >= length) {
+      return false;
     }
-
-    facets.add(entry);
+    for (int k = 0; k < node.length; k++) {
+      if (node.ints[node.offset + k] != node.ints[offset + k]) {
+        return false;
+      }
+    }
+    return true;
   }
 
-  /**
-   * The generateFacetsForLeaves() method for processing json arrays, simply delegates for each array element.
-   */
-  private void generateFacetsForLeaves(ArrayNode array, String fieldName, ExtendedJsonField field, String path,
-      List<SirenFacetEntry> facets) {
-    Iterator<JsonNode> iterator = array.getElements();
-
-    while (iterator.hasNext()) {
-      JsonNode node = iterator.next();
+  private static String getPath(JsonTokenBuffer buffer, int i) {
+    StringBuilder path = new StringBuilder();
+    for (int j = 0; j < buffer.pathLength(i); j++) {
+      if (j > 0) {
+        path.append('.');
+      }
+      path.append(buffer.pathField(i, j));
+    }
+    return path.toString();
+  }
 
-      generateFacetsForLeaves(node, fieldName, field, path, facets);
+  private static String getPath(JsonTokenBuffer buffer, int[] fields, int depth) {
+    StringBuilder path = new StringBuilder();
+    for (int j = 0; j < depth; j++) {
+      if (j > 0) {
+        path.append('.');
+      }
+      path.append(buffer.term(fields[j]));
     }
+    return path.toString();
   }
 
   /**
-   * The generateFacetsForLeaves() method for processing json objects, delegates for each field and constructs path.
+   * Generates a new {@link SirenFacetEntry} for the i-th token of the buffer.
    */
-  private void generateFacetsForLeaves(ObjectNode object, String fieldName, ExtendedJsonField sirenField, String path,
-      List<SirenFacetEntry> facets) {
-    Iterator<Entry<String, JsonNode>> iterator = object.getFields();
-
-    while (iterator.hasNext()) {
-      Entry<String, JsonNode> entry = iterator.next();
-      String field = entry.getKey();
-      JsonNode value = entry.getValue();
-
-      if (field.equals("_datatype_") || field.equals("_value_")) {
-        generateFacetsForCustomDatatypeLeaf(object, fieldName, sirenField, path, facets);
-        return;
-      }
+  private void generateFacetForLeaf(JsonTokenBuffer buffer, int i, String fieldName, ExtendedJsonField sirenField,
+      String path, List<SirenFacetEntry> facets) {
+    SirenFacetEntry entry = new SirenFacetEntry();
+    entry.fieldName = fieldName;
+    entry.path = path;
 
-      generateFacetsForLeaves(value, fieldName, sirenField, path.isEmpty() ? field : path + "." + field, facets);
-    }
-  }
+    String term = buffer.term(i);
+    String datatype = new String(buffer.datatypeURI(i));
 
-  private void generateFacetsForCustomDatatypeLeaf(ObjectNode object, String fieldName,
-      ExtendedJsonField sirenField, String path, List<SirenFacetEntry> facets) {
-    Iterator<Entry<String, JsonNode>> iterator = object.getFields();
+    switch (buffer.type(i)) {
+      case AbstractJsonTokenizer.NULL:
+        entry.value = term;
+        entry.datatype = FacetDatatype.NULL;
+        break;
 
-    String datatype = null;
-    String value = null;
+      case AbstractJsonTokenizer.TRUE:
+      case AbstractJsonTokenizer.FALSE:
+        entry.value = buffer.type(i) == AbstractJsonTokenizer.TRUE;
+        entry.datatype = FacetDatatype.BOOLEAN;
+        break;
 
-    while (iterator.hasNext()) {
-      Entry<String, JsonNode> entry = iterator.next();
-      if ("_datatype_".equals(entry.getKey())) {
-        datatype = entry.getValue().asText();
-      } else if ("_value_".equals(entry.getKey())) {
-        value = entry.getValue().asText();
-      } else {
-        logger.warn("Unexpected field {} in custom datatype object: {}", entry.getKey(), object.asText());
-        continue;
-      }
-    }
+      case AbstractJsonTokenizer.NUMBER:
+        try {
+          if (XSDDatatype.XSD_DOUBLE.equals(datatype)) {
+            entry.value = Double.parseDouble(term);
+            entry.datatype = FacetDatatype.DOUBLE;
+          } else {
+            entry.value = Long.parseLong(term);
+            entry.datatype = FacetDatatype.LONG;
+          }
+        } catch (NumberFormatException e) {
+          // e.g., an integer out of the range of a long
+          entry.value = term;
+          entry.datatype = FacetDatatype.STRING;
+        }
+        break;
 
-    if (datatype == null || value == null) {
-      logger.warn("Unexpected form of custom datatype object: {}. Not generating facets for this nested object.", object.asText());
-      return;
+      default:
+        if (XSDDatatype.XSD_STRING.equals(datatype)) {
+          entry.value = term;
+          entry.datatype = FacetDatatype.STRING;
+        } else if (!setCustomDatatypeValue(entry, sirenField, datatype, term)) {
+          return;
+        }
     }
 
-    SirenFacetEntry entry = new SirenFacetEntry();
-    entry.fieldName = fieldName;
-    entry.path = path;
+    facets.add(entry);
+  }
 
+  /**
+   * Sets the value and the datatype of the entry for a value of a custom datatype.
+   *
+   * @return false if the value could not be parsed, in which case no facet should be generated.
+   */
+  private boolean setCustomDatatypeValue(SirenFacetEntry entry, ExtendedJsonField sirenField, String datatype,
+      String value) {
     Datatype customDatatype = sirenField.getDatatypes().get(datatype);
     if (customDatatype instanceof TrieDatatype) {
       NumericAnalyzer analyzer = (NumericAnalyzer) customDatatype.getAnalyzer();
@@ -266,18 +305,17 @@ public class SirenFieldFacetExtractor implements FacetExtractor {
           entry.datatype = FacetDatatype.LONG;
           entry.value = number.longValue();
         } else {
-          logger.warn("Unknown number type {} in custom datatype in nested object {}. Not creating facet field.", number.getClass().getCanonicalName(), object.asText());
-          return;
+          logger.warn("Unknown number type {} in custom datatype {} with value {}. Not creating facet field.", number.getClass().getCanonicalName(), datatype, value);
+          return false;
         }
       } catch (IOException e) {
-        logger.warn("Problem parsing custom datatype {} in nested object {}: " + e.getMessage(), datatype, object.asText());
-        return;
+        logger.warn("Problem parsing custom datatype {} with value {}: " + e.getMessage(), datatype, value);
+        return false;
       }
     } else {
       entry.datatype = FacetDatatype.STRING;
       entry.value = value;
     }
-
-    facets.add(entry);
+    return true;
   }
 }
@@ -20,91 +20,129 @@ package com.sindicetech.siren.solr.facet;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
-import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.JsonProcessingException;
-import org.codehaus.jackson.map.ObjectMapper;
+import org.apache.lucene.analysis.Tokenizer;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
-import com.sindicetech.siren.solr.facet.FacetDatatype;
-import com.sindicetech.siren.solr.facet.SirenFacetEntry;
-import com.sindicetech.siren.solr.facet.SirenFieldFacetExtractor;
+import com.sindicetech.siren.analysis.ConciseJsonTokenizer;
+import com.sindicetech.siren.analysis.ExtendedJsonTokenizer;
+import com.sindicetech.siren.analysis.JsonTokenBuffer;
+import com.sindicetech.siren.solr.schema.ExtendedJsonField;
 
 public class TestSirenFieldFacetExtractor {
-  static ObjectMapper mapper;
   static SirenFieldFacetExtractor extractor;
+  /** A field type without any custom datatype */
+  static ExtendedJsonField field;
 
   @BeforeClass
   public static void beforeClass() throws Exception {
-    mapper = new ObjectMapper();
     extractor = new SirenFieldFacetExtractor(null);
+    field = new ExtendedJsonField();
   }
-  
-  private void printToFieldName(List<SirenFacetEntry> list) {
-    System.out.print("[");
-    Iterator<SirenFacetEntry> it = list.iterator();
-    
-    while (it.hasNext()) {
-      SirenFacetEntry entry = it.next();
-      System.out.print(entry.toFieldName());
-      if (it.hasNext()) {
-        System.out.print(", ");
-      }
+
+  private List<SirenFacetEntry> extended(String json) throws IOException {
+    return this.generateFacets(new ExtendedJsonTokenizer(new StringReader(json)));
+  }
+
+  private List<SirenFacetEntry> concise(String json) throws IOException {
+    return this.generateFacets(new ConciseJsonTokenizer(new StringReader(json)));
+  }
+
+  /**
+   * Returns the entries generated for the extended and for the concise models, which must be identical.
+   */
+  private List<List<SirenFacetEntry>> extendedAndConcise(String json) throws IOException {
+    List<List<SirenFacetEntry>> lists = new ArrayList<List<SirenFacetEntry>>();
+    lists.add(extended(json));
+    lists.add(concise(json));
+    return lists;
+  }
+
+  private List<SirenFacetEntry> generateFacets(Tokenizer tokenizer) throws IOException {
+    JsonTokenBuffer buffer = new JsonTokenBuffer();
+    buffer.fill(tokenizer);
+    List<SirenFacetEntry> list = new ArrayList<SirenFacetEntry>();
+    extractor.generateFacetsForLeaves(buffer, "FIELDNAME", field, list);
+    return list;
+  }
+
+  private void assertEntry(SirenFacetEntry entry, FacetDatatype datatype, String path, Object value) {
+    assertEquals(datatype, entry.datatype);
+    assertEquals(path, entry.path);
+    assertEquals(value, entry.value);
+  }
+
+  @Test
+  public void testPathGenerating() throws IOException {
+    String json = "{\"knows\": [{\"name\":\"josef\"}, {\"name\":\"szymon\"}]}";
+    for (List<SirenFacetEntry> list : extendedAndConcise(json)) {
+      assertEquals(2, list.size());
+      assertEntry(list.get(0), FacetDatatype.STRING, "knows.name", "josef");
+      assertEntry(list.get(1), FacetDatatype.STRING, "knows.name", "szymon");
+    }
+
+    json = "{\"knows\": [{\"name\": null}]}";
+    for (List<SirenFacetEntry> list : extendedAndConcise(json)) {
+      assertEquals(1, list.size());
+      assertEntry(list.get(0), FacetDatatype.NULL, "knows.name", "null");
+    }
+
+    json = "{\"knows\": {\"name\": true}}";
+    for (List<SirenFacetEntry> list : extendedAndConcise(json)) {
+      assertEquals(1, list.size());
+      assertEntry(list.get(0), FacetDatatype.BOOLEAN, "knows.name", true);
+      assertEquals("boolean.FIELDNAME.knows.name", list.get(0).toFieldName());
+    }
+
+    json = "{\"knows\": {\"age\": 32}}";
+    for (List<SirenFacetEntry> list : extendedAndConcise(json)) {
+      assertEquals(1, list.size());
+      assertEntry(list.get(0), FacetDatatype.LONG, "knows.age", 32L);
+      assertEquals("long.FIELDNAME.knows.age", list.get(0).toFieldName());
     }
-    System.out.println("]");
   }
-  
+
   @Test
-  public void testPathGenerating() throws JsonProcessingException, IOException {
-    JsonNode node = mapper.readTree("{\"knows\": [{\"name\":\"josef\"}, {\"name\":\"szymon\"}]}");
-    
-    List<SirenFacetEntry> list = new ArrayList<SirenFacetEntry>();
-    extractor.generateFacetsForLeaves(node, "FIELDNAME", null, "", list);
-    //printToFieldName(list);
-    
-    assertEquals(2, list.size());
-
-    
-    node = mapper.readTree("{\"knows\": [{\"name\": null}]}");
-    list.clear();
-    
-    extractor.generateFacetsForLeaves(node, "FIELDNAME", null, "", list);
-    assertEquals(1, list.size());
-    assertEquals(FacetDatatype.NULL, list.get(0).datatype);
-    assertEquals("knows.name", list.get(0).path);
-    assertEquals("null", list.get(0).value);
-    //printToFieldName(list);
-    
-    
-    node = mapper.readTree("{\"knows\": {\"name\": true}}");
-    list.clear();
-    
-    extractor.generateFacetsForLeaves(node, "FIELDNAME", null, "", list);
-    assertEquals(1, list.size());
-    assertEquals(FacetDatatype.BOOLEAN, list.get(0).datatype);
-    assertEquals("knows.name", list.get(0).path);
-    assertEquals(true, list.get(0).value);
-    assertEquals("boolean.FIELDNAME.knows.name", list.get(0).toFieldName());
-    //printToFieldName(list);
-    
-
-    node = mapper.readTree("{\"knows\": {\"age\": 32}}");
-    list.clear();
-    
-    extractor.generateFacetsForLeaves(node, "FIELDNAME", null, "", list);
-    assertEquals(1, list.size());
-    assertEquals(FacetDatatype.LONG, list.get(0).datatype);
-    assertEquals("knows.age", list.get(0).path);
-    assertEquals(32, list.get(0).value);
-    assertEquals("long.FIELDNAME.knows.age", list.get(0).toFieldName());
-    
-    
-    //printToFieldName(list);
+  public void testNestedObjects() throws IOException {
+    String json = "{\"a\": {\"b\": {\"c\": \"d\"}, \"e\": \"f\"}, \"g\": \"h\"}";
+    for (List<SirenFacetEntry> list : extendedAndConcise(json)) {
+      assertEquals(3, list.size());
+      assertEntry(list.get(0), FacetDatatype.STRING, "a.b.c", "d");
+      assertEntry(list.get(1), FacetDatatype.STRING, "a.e", "f");
+      assertEntry(list.get(2), FacetDatatype.STRING, "g", "h");
+    }
   }
 
-}
+  @Test
+  public void testArrays() throws IOException {
+    String json = "{\"a\": [[\"b\", \"c\"], [], {\"d\": [1, 2]}], \"e\": []}";
+    for (List<SirenFacetEntry> list : extendedAndConcise(json)) {
+      assertEquals(4, list.size());
+      assertEntry(list.get(0), FacetDatatype.STRING, "a", "b");
+      assertEntry(list.get(1), FacetDatatype.STRING, "a", "c");
+      assertEntry(list.get(2), FacetDatatype.LONG, "a.d", 1L);
+      assertEntry(list.get(3), FacetDatatype.LONG, "a.d", 2L);
+    }
+  }
 
+  @Test
+  public void testDatatypes() throws IOException {
+    String json = "{\"a\": 2.5, \"b\": false, \"c\": 12345678901234567890, \"d\": \"e\", " +
+                  "\"f\": {\"_datatype_\": \"custom\", \"_value_\": \"g\"}}";
+    for (List<SirenFacetEntry> list : extendedAndConcise(json)) {
+      assertEquals(5, list.size());
+      assertEntry(list.get(0), FacetDatatype.DOUBLE, "a", 2.5);
+      assertEntry(list.get(1), FacetDatatype.BOOLEAN, "b", false);
+      // out of the range of a long
+      assertEntry(list.get(2), FacetDatatype.STRING, "c", "12345678901234567890");
+      assertEntry(list.get(3), FacetDatatype.STRING, "d", "e");
+      // a value of an unknown custom datatype is a string
+      assertEntry(list.get(4), FacetDatatype.STRING, "f", "g");
+    }
+  }
+
+}
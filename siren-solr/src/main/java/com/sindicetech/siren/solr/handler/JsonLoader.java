@@ -21,21 +21,25 @@ package com.sindicetech.siren.solr.handler;
 import com.sindicetech.siren.solr.handler.mapper.FieldMappers;
 import com.sindicetech.siren.solr.handler.mapper.FieldMappersHandler;
 import com.sindicetech.siren.solr.handler.mapper.IdFieldMapper;
+import com.sindicetech.siren.solr.schema.ExtendedJsonField;
+import com.sindicetech.siren.solr.schema.SchemaFieldsAccumulator;
 import org.apache.commons.io.IOUtils;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.ContentStream;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.handler.loader.ContentStreamLoader;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.update.AddUpdateCommand;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
-import org.codehaus.jackson.JsonParser;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.UUID;
@@ -46,22 +50,47 @@ import static org.apache.solr.common.SolrException.ErrorCode.BAD_REQUEST;
  * A loader for JSON document used by {@link com.sindicetech.siren.solr.handler.SirenUpdateRequestHandler}. It will
  * be in charge of parsing the JSON document, performs the field mapping, creates a Solr document and send it
  * for indexing.
+ * <p>
+ * In bulk mode, the content stream is a sequence of JSON documents, e.g., newline-delimited JSON. The documents are
+ * parsed and indexed one at a time, without buffering the content stream. A document which is rejected, e.g., because
+ * of a missing required field, does not abort the request: its position in the stream and the error message are
+ * reported in the <code>errors</code> entry of the response. The new fields of a batch of documents are added to the
+ * schema in one update, see {@link SchemaFieldsAccumulator}. A syntax error in the content stream aborts the request,
+ * since the boundary of the next document cannot be found.
+ * <p>
+ * The documents are parsed here with Jackson, independently of the tokenizers of the SIREn fields. This pass is kept
+ * separate since it maps the top-level fields, and the node numbering of the tokenizers would have to be duplicated
+ * to derive the tokens from it. Only the scan of the SIREn fields can be shared between the facet extraction and the
+ * analysis, see {@link ExtendedJsonField#shareBuffer}.
  */
 public class JsonLoader extends ContentStreamLoader {
 
   private static final Logger logger = LoggerFactory.getLogger(JsonLoader.class);
 
-  private static final ObjectMapper mapper = new ObjectMapper(); // ObjectMapper is thread-safe
-
   public static final String SOURCE_FIELDNAME = "_source_";
 
+  /**
+   * The number of documents of a bulk request whose new fields are added to the schema in one update
+   */
+  static final int BATCH_SIZE = 100;
+
   /**
    * After its initialisation, this should be thread-safe
    */
   private final FieldMappers fieldMappers;
 
+  /**
+   * If true, the content stream may contain more than one document
+   */
+  private final boolean bulk;
+
   JsonLoader(FieldMappers fieldMappers) {
+    this(fieldMappers, false);
+  }
+
+  JsonLoader(FieldMappers fieldMappers, boolean bulk) {
     this.fieldMappers = fieldMappers;
+    this.bulk = bulk;
   }
 
   @Override
@@ -75,47 +104,168 @@ public class JsonLoader extends ContentStreamLoader {
     Reader reader = null;
     try {
       reader = stream.getReader();
-      // keep a copy of the body for the source entry
-      // TODO: instead of reading the stream to make a copy, try to create a copy of the json
-      // while parsing it in the JsonReader
-      String body = IOUtils.toString(reader);
 
-      FieldMappersHandler mappersHandler = new FieldMappersHandler(fieldMappers, req.getCore());
-      DocumentBuilder docBuilder = new DocumentBuilder();
+      // the reader keeps the original text of each document for the source entry
+      JsonReader jreader = new JsonReader(reader, true);
+      // the accumulator is shared with the other components adding fields to the schema of the core
+      FieldMappersHandler mappersHandler = new FieldMappersHandler(fieldMappers, req.getCore(),
+        SchemaFieldsAccumulator.getInstance(req.getCore()));
 
-      // Add the source field entry
-      FieldEntry source = new FieldEntry(SOURCE_FIELDNAME, body);
-      docBuilder.add(mappersHandler.map(source));
+      if (bulk) {
+        this.loadBulk(req, rsp, jreader, mappersHandler, processor);
+      }
+      else {
+        if (!jreader.nextDocument()) {
+          throw new IllegalArgumentException("Illegal input: JSON document must start with an object.");
+        }
+        AddUpdateCommand cmd = this.buildDocument(req, jreader, mappersHandler);
+        this.updateSchema(req, mappersHandler);
+        this.processAdd(req, cmd, processor);
+      }
+    }
+    finally {
+      IOUtils.closeQuietly(reader);
+    }
+  }
 
-      // Add the id field initialised with a UUID. It will be overwritten if an id field exist in the JSON document.
-      FieldEntry id = new FieldEntry(IdFieldMapper.INPUT_FIELD, UUID.randomUUID().toString().toLowerCase(Locale.ROOT));
-      docBuilder.add(mappersHandler.map(id));
+  /**
+   * Loads the documents by batch of {@link #BATCH_SIZE}. The new fields of a batch are added to the schema in one
+   * update before the documents of the batch are processed.
+   */
+  private void loadBulk(final SolrQueryRequest req, final SolrQueryResponse rsp, final JsonReader jreader,
+                        final FieldMappersHandler mappersHandler, final UpdateRequestProcessor processor)
+  throws IOException {
+    NamedList<Object> errors = new NamedList<>();
+    List<AddUpdateCommand> batch = new ArrayList<>(BATCH_SIZE);
+    List<Integer> positions = new ArrayList<>(BATCH_SIZE);
+    int position = 0;
+    int added = 0;
 
-      JsonParser parser = mapper.getJsonFactory().createJsonParser(new StringReader(body));
-      JsonReader jreader = new JsonReader(parser);
+    while (jreader.nextDocument()) {
+      try {
+        batch.add(this.buildDocument(req, jreader, mappersHandler));
+        positions.add(position);
+      }
+      catch (SolrException | IllegalArgumentException e) {
+        this.addError(errors, position, e);
+      }
+      position++;
 
-      FieldEntry entry;
-      while ((entry = jreader.next()) != null) {
-        docBuilder.add(mappersHandler.map(entry));
+      if (batch.size() == BATCH_SIZE) {
+        added += this.processBatch(req, batch, positions, errors, mappersHandler, processor);
       }
+    }
+    added += this.processBatch(req, batch, positions, errors, mappersHandler, processor);
 
-      // the index schema might have changed
-      req.updateSchemaToLatest();
+    rsp.add("added", added);
+    if (errors.size() > 0) {
+      rsp.add("errors", errors);
+    }
+  }
 
-      // check that we have seen all the required field mappers
-      Set<String> missingRequiredMappers = mappersHandler.getMissingRequiredMappers();
-      if (!missingRequiredMappers.isEmpty()) {
-        throw new SolrException(BAD_REQUEST, "Document is missing the following required fields: " + missingRequiredMappers);
+  /**
+   * Updates the schema with the new fields of the batch, processes its documents and clears it.
+   *
+   * @return the number of documents added.
+   */
+  private int processBatch(final SolrQueryRequest req, final List<AddUpdateCommand> batch,
+                           final List<Integer> positions, final NamedList<Object> errors,
+                           final FieldMappersHandler mappersHandler, final UpdateRequestProcessor processor)
+  throws IOException {
+    if (batch.isEmpty()) {
+      return 0;
+    }
+
+    int added = 0;
+    try {
+      this.updateSchema(req, mappersHandler);
+    }
+    catch (SolrException e) {
+      // none of the documents of the batch can be indexed
+      for (int position : positions) {
+        this.addError(errors, position, e);
+      }
+      batch.clear();
+      positions.clear();
+      return 0;
+    }
+
+    for (int i = 0; i < batch.size(); i++) {
+      try {
+        this.processAdd(req, batch.get(i), processor);
+        added++;
       }
+      catch (SolrException | IllegalArgumentException e) {
+        this.addError(errors, positions.get(i), e);
+      }
+    }
+
+    batch.clear();
+    positions.clear();
+    return added;
+  }
 
-      // Create and process the Add command
-      AddUpdateCommand cmd = new AddUpdateCommand(req);
-      cmd.solrDoc = docBuilder.getSolrInputDocument();
+  /**
+   * Processes the command. The JSON token buffers shared by the update processors and not replayed for the document
+   * are then released, see {@link ExtendedJsonField#clearSharedBuffers(SolrQueryRequest)}.
+   */
+  private void processAdd(final SolrQueryRequest req, final AddUpdateCommand cmd,
+                          final UpdateRequestProcessor processor) throws IOException {
+    try {
       processor.processAdd(cmd);
     }
     finally {
-      IOUtils.closeQuietly(reader);
+      ExtendedJsonField.clearSharedBuffers(req);
     }
   }
 
+  private void addError(final NamedList<Object> errors, final int position, final Exception e) {
+    logger.debug("Document {} of the stream has been rejected: {}", position, e.getMessage());
+    SimpleOrderedMap<Object> error = new SimpleOrderedMap<>();
+    error.add("position", position);
+    error.add("msg", e.getMessage());
+    errors.add("error", error);
+  }
+
+  private void updateSchema(final SolrQueryRequest req, final FieldMappersHandler mappersHandler) {
+    mappersHandler.updateSchema();
+    // the index schema might have changed
+    req.updateSchemaToLatest();
+  }
+
+  /**
+   * Maps the current document of the reader to a Solr document. Its new fields are registered in the schema
+   * accumulator, and must be added to the schema before processing the returned command.
+   */
+  private AddUpdateCommand buildDocument(final SolrQueryRequest req, final JsonReader jreader,
+                                         final FieldMappersHandler mappersHandler)
+  throws IOException {
+    mappersHandler.reset();
+    DocumentBuilder docBuilder = new DocumentBuilder();
+
+    // Add the id field initialised with a UUID. It will be overwritten if an id field exist in the JSON document.
+    FieldEntry id = new FieldEntry(IdFieldMapper.INPUT_FIELD, UUID.randomUUID().toString().toLowerCase(Locale.ROOT));
+    docBuilder.add(mappersHandler.map(id));
+
+    FieldEntry entry;
+    while ((entry = jreader.next()) != null) {
+      docBuilder.add(mappersHandler.map(entry));
+    }
+
+    // Add the source field entry, kept verbatim by the reader while parsing the document
+    FieldEntry source = new FieldEntry(SOURCE_FIELDNAME, jreader.getSource());
+    docBuilder.add(mappersHandler.map(source));
+
+    // check that we have seen all the required field mappers
+    Set<String> missingRequiredMappers = mappersHandler.getMissingRequiredMappers();
+    if (!missingRequiredMappers.isEmpty()) {
+      throw new SolrException(BAD_REQUEST, "Document is missing the following required fields: " + missingRequiredMappers);
+    }
+
+    // Create the Add command
+    AddUpdateCommand cmd = new AddUpdateCommand(req);
+    cmd.solrDoc = docBuilder.getSolrInputDocument();
+    return cmd;
+  }
+
 }
@@ -19,10 +19,13 @@
 package com.sindicetech.siren.solr.handler;
 
 import com.sindicetech.siren.analysis.AbstractJsonTokenizer;
+import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
 
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayDeque;
 import java.util.Deque;
 
@@ -31,29 +34,98 @@ import java.util.Deque;
  * This parser will flatten paths found in the JSON input, including nested arrays, mixed arrays, and nested objects in
  * arrays. It will also recognise the special nested datatype object from the SIREn syntax.<br/>
  *
- * TODO: Reconstruct the JSON input while parsing, in order to create a copy for SIREn indexing
+ * The parser may contain a stream of JSON documents, e.g., newline-delimited JSON. The reader is moved from one
+ * document to the next one with {@link #nextDocument()}. If requested, the reader keeps the characters of the current
+ * document while parsing it, in order to create a verbatim copy for SIREn indexing without buffering the whole input.
  */
 public class JsonReader {
 
+  private static final JsonFactory factory = new JsonFactory(); // JsonFactory is thread-safe
+
   private final JsonParser parser;
   private final Deque<JsonToken> states = new ArrayDeque<>();
   private final Deque<String> path = new ArrayDeque<>();
 
+  /**
+   * The recorder of the characters read by the parser, or null if the source is not copied
+   */
+  private final SourceRecorder source;
+
+  /**
+   * The character offsets of the current document in the input, its end being known once the document is read
+   */
+  private long sourceStart, sourceEnd = -1;
+
+  /**
+   * Creates a reader positioned on the first JSON document of the parser.
+   */
   public JsonReader(JsonParser parser) throws IOException {
     this.parser = parser;
+    this.source = null;
+    if (!this.nextDocument()) {
+      throw new IllegalArgumentException("Illegal input: JSON document must start with an object.");
+    }
+  }
+
+  /**
+   * Creates a reader over a stream of JSON documents. {@link #nextDocument()} must be called to position the reader
+   * on the first document.
+   *
+   * @param copySource If true, the original text of each document is kept while parsing it. It is available through
+   *                   {@link #getSource()}.
+   */
+  public JsonReader(Reader input, boolean copySource) throws IOException {
+    this.source = copySource ? new SourceRecorder(input) : null;
+    this.parser = factory.createJsonParser(copySource ? source : input);
+  }
+
+  /**
+   * Moves the reader to the next JSON document of the stream. The remaining entries of the current document, if any,
+   * are skipped.
+   *
+   * @return false if the end of the stream is reached.
+   */
+  public boolean nextDocument() throws IOException {
+    this.skipDocument();
+    states.clear();
+    path.clear();
 
     JsonToken start = parser.nextToken();
+    if (start == null) {
+      return false;
+    }
     if (start != JsonToken.START_OBJECT) {
       throw new IllegalArgumentException("Illegal input: JSON document must start with an object.");
     }
+
+    if (source != null) {
+      // the characters of the previous documents are not needed anymore
+      sourceStart = parser.getTokenLocation().getCharOffset();
+      sourceEnd = -1;
+      source.discard(sourceStart);
+    }
     states.push(start);
+    return true;
+  }
+
+  /**
+   * Returns the original text of the current document. It is available once {@link #next()} has returned null.
+   */
+  public String getSource() {
+    if (source == null) {
+      throw new IllegalStateException("The reader does not copy the source of the documents.");
+    }
+    if (sourceEnd == -1) {
+      throw new IllegalStateException("The current document has not been entirely read.");
+    }
+    return source.getText(sourceStart, sourceEnd);
   }
 
   public FieldEntry next() throws IOException {
     JsonToken token = null;
     FieldEntry entry = null;
 
-    while ((token = parser.nextToken()) != null) {
+    while (!states.isEmpty() && (token = parser.nextToken()) != null) {
 
       switch (token) {
         case START_OBJECT:
@@ -108,6 +180,9 @@ public class JsonReader {
           if (states.poll() != JsonToken.START_OBJECT) {
             throw new IllegalArgumentException("Illegal input: JSON object not properly closed.");
           }
+          if (states.isEmpty() && source != null) { // end of the document
+            sourceEnd = parser.getTokenLocation().getCharOffset() + 1;
+          }
           if (states.peek() != JsonToken.START_ARRAY) { // if we are in a nested array, we must not pop the path
             path.poll();
           }
@@ -140,4 +215,95 @@ public class JsonReader {
     }
   }
 
+  /**
+   * Consumes the remaining tokens of the current document, e.g., after a failure while processing one of its
+   * entries.
+   */
+  private void skipDocument() throws IOException {
+    int depth = states.size();
+    JsonToken token;
+    while (depth > 0 && (token = parser.nextToken()) != null) {
+      switch (token) {
+        case START_OBJECT:
+        case START_ARRAY:
+          depth++;
+          continue;
+
+        case END_OBJECT:
+        case END_ARRAY:
+          depth--;
+          continue;
+      }
+    }
+  }
+
+  /**
+   * Records the characters read from the input, so that the text of a document can be extracted from its character
+   * offsets. The characters preceding the current document are discarded.
+   */
+  private static class SourceRecorder extends FilterReader {
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    /**
+     * The offset in the input of the first character of the buffer
+     */
+    private long offset = 0;
+
+    SourceRecorder(final Reader in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int c = super.read();
+      if (c != -1) {
+        buffer.append((char) c);
+      }
+      return c;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+      final int n = super.read(cbuf, off, len);
+      if (n > 0) {
+        buffer.append(cbuf, off, n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      // skipped characters must be recorded as well
+      final char[] skipped = new char[(int) Math.min(n, 1024)];
+      final int read = this.read(skipped, 0, skipped.length);
+      return read == -1 ? 0 : read;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void mark(final int readAheadLimit) throws IOException {
+      throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+      throw new IOException("reset() not supported");
+    }
+
+    void discard(final long upTo) {
+      buffer.delete(0, (int) (upTo - offset));
+      offset = upTo;
+    }
+
+    String getText(final long start, final long end) {
+      return buffer.substring((int) (start - offset), (int) (end - offset));
+    }
+
+  }
+
 }
@@ -91,6 +91,11 @@ import static org.apache.solr.common.SolrException.ErrorCode.SERVER_ERROR;
  *     &lt;str name="fieldType"&gt;text&lt;/str&gt;
  *   &lt;/lst&gt;
  * &lt;/requestHandler&gt;</pre>
+ * <p>
+ * Documents can be indexed in bulk by sending a stream of newline-delimited JSON documents with the content type
+ * 'application/x-ndjson'. The documents are indexed one at a time while the stream is read, and the documents
+ * which are rejected are reported in the response.
+ * </p>
  */
 public class SirenUpdateRequestHandler extends UpdateRequestHandler {
 
@@ -254,6 +259,7 @@ public class SirenUpdateRequestHandler extends UpdateRequestHandler {
     Map<String,ContentStreamLoader> registry = new HashMap<>();
     registry.put("application/json", new JsonLoader(fieldMappers).init(p));
     registry.put("text/json", registry.get("application/json") );
+    registry.put("application/x-ndjson", new JsonLoader(fieldMappers, true).init(p));
     return registry;
   }
 
@@ -18,25 +18,24 @@
 package com.sindicetech.siren.solr.handler.mapper;
 
 import com.sindicetech.siren.solr.handler.FieldEntry;
-import org.apache.solr.common.SolrException;
+import com.sindicetech.siren.solr.schema.SchemaFieldsAccumulator;
 import org.apache.solr.common.SolrInputField;
 import org.apache.solr.core.SolrCore;
-import org.apache.solr.schema.IndexSchema;
-import org.apache.solr.schema.ManagedIndexSchema;
-import org.apache.solr.schema.SchemaField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashSet;
 import java.util.Set;
 
-import static org.apache.solr.common.SolrException.ErrorCode.BAD_REQUEST;
-
 /**
  * Handles the field mapping logic and add automatically new fields to the schema.
  * It first tries to find a path-based field mapper, then a datatype-based field
  * mapper and finally fall-back to the default mapper
  * if no assocaited mappers were found.
+ * <p>
+ * The new fields are not added to the schema immediately, but collected by a
+ * {@link com.sindicetech.siren.solr.schema.SchemaFieldsAccumulator} until {@link #updateSchema()} is called.
+ * This must be done before indexing the mapped documents.
  */
 public class FieldMappersHandler {
 
@@ -46,11 +45,20 @@ public class FieldMappersHandler {
 
   private final SolrCore core;
 
+  private final SchemaFieldsAccumulator schemaFields;
+
+  /**
+   * The new fields of the documents mapped by this handler
+   */
+  private final SchemaFieldsAccumulator.Batch newFields;
+
   private static final Logger logger = LoggerFactory.getLogger(FieldMappersHandler.class);
 
-  public FieldMappersHandler(FieldMappers mappers, SolrCore core) {
+  public FieldMappersHandler(FieldMappers mappers, SolrCore core, SchemaFieldsAccumulator schemaFields) {
     this.mappers = mappers;
     this.core = core;
+    this.schemaFields = schemaFields;
+    this.newFields = schemaFields.newBatch();
   }
 
   public SolrInputField map(FieldEntry entry) {
@@ -85,38 +93,30 @@ public class FieldMappersHandler {
     return mapper.map(entry);
   }
 
+  /**
+   * Registers the target field of the entry in the schema accumulator if it does not exist yet. The field is
+   * added to the schema by {@link #updateSchema()}.
+   */
   private void addSchemaField(FieldMapper mapper, FieldEntry entry) {
-    if (!core.getLatestSchema().isMutable()) {
-      final String message = "This IndexSchema is not mutable.";
-      throw new SolrException(BAD_REQUEST, message);
+    final String fieldname = mapper.getTargetFieldname(entry);
+    if (schemaFields.exists(core, fieldname)) {
+      return; // the field already exists in the schema
     }
+    newFields.add(mapper.getSchemaField(core.getLatestSchema(), entry));
+  }
 
-    for (;;) {
-      final IndexSchema oldSchema = core.getLatestSchema();
-      if (oldSchema.getFieldTypeNoEx(mapper.getTargetFieldname(entry)) != null) {
-        return; // the field already exists in the schema
-      }
-
-      try {
-        SchemaField field = mapper.getSchemaField(core.getLatestSchema(), entry);
-        IndexSchema newSchema = oldSchema.addField(field);
-        if (newSchema != null) {
-          core.setLatestSchema(newSchema);
-          logger.debug("Successfully added field '{}' to the schema.", field.getName());
-          return; // success - exit from the retry loop
-        } else {
-          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Failed to add fields.");
-        }
-      }
-      catch(ManagedIndexSchema.FieldExistsException e) {
-        logger.debug("The field to be added already exists in the schema - retrying.");
-        // No action: at least one field to be added already exists in the schema, so retry
-        // We should never get here, since oldSchema.getFieldTypeNoEx(field) will exclude already existing fields
-      }
-      catch(ManagedIndexSchema.SchemaChangedInZkException e) {
-        logger.debug("Schema changed while processing request - retrying.");
-      }
-    }
+  /**
+   * Adds to the schema all the new fields of the documents mapped so far, in one schema update.
+   */
+  public void updateSchema() {
+    newFields.flush(core);
+  }
+
+  /**
+   * Resets the triggered mappers before the processing of a new document.
+   */
+  public void reset() {
+    processedMappers.clear();
   }
 
   /**
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sindicetech.siren.solr.qparser;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ToStringUtils;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.handler.component.MergeStrategy;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.CursorMark;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.search.RankQuery;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SyntaxError;
+
+import com.sindicetech.siren.search.node.BlockMaxTopScoreDocCollector;
+
+/**
+ * Plugin for the <code>rq</code> parameter that collects the top documents of
+ * the main query with a {@link BlockMaxTopScoreDocCollector}.
+ * <p>
+ * The collector lets the block-max scorers of the SIREn's disjunctions skip
+ * the blocks that cannot enter the top documents. The ranking is unchanged, but
+ * <code>numFound</code> becomes a lower bound of the number of matching
+ * documents. The plugin is therefore opt-in, e.g.:
+ *
+ * <pre>
+ *   /keyword?q=aaa bbb&df=json&rq={!blockmax}
+ * </pre>
+ *
+ * When the request is sorted by a field, the documents are collected as usual,
+ * and <code>numFound</code> is exact. A collector wrapping the one of this plugin,
+ * e.g., for the <code>timeAllowed</code> parameter, disables the skipping, as
+ * it does not implement {@link com.sindicetech.siren.search.node.BlockMaxCollector}.
+ */
+public class BlockMaxQParserPlugin extends QParserPlugin {
+
+  public static final String NAME = "blockmax";
+
+  @Override
+  public void init(final NamedList args) {}
+
+  @Override
+  public QParser createParser(final String qstr, final SolrParams localParams,
+                              final SolrParams params, final SolrQueryRequest req) {
+    return new QParser(qstr, localParams, params, req) {
+      @Override
+      public Query parse() throws SyntaxError {
+        return new BlockMaxQuery(null);
+      }
+    };
+  }
+
+  /**
+   * A {@link RankQuery} that delegates the matching and the scoring to the
+   * main query.
+   */
+  protected static class BlockMaxQuery extends RankQuery {
+
+    private final Query mainQuery;
+
+    public BlockMaxQuery(final Query mainQuery) {
+      this.mainQuery = mainQuery;
+    }
+
+    public Query getMainQuery() {
+      return mainQuery;
+    }
+
+    @Override
+    public RankQuery wrap(final Query mainQuery) {
+      final BlockMaxQuery query = new BlockMaxQuery(mainQuery);
+      query.setBoost(this.getBoost());
+      return query;
+    }
+
+    @Override
+    public MergeStrategy getMergeStrategy() {
+      return null;
+    }
+
+    @Override
+    public TopDocsCollector getTopDocsCollector(final int len,
+                                                final SolrIndexSearcher.QueryCommand cmd,
+                                                final IndexSearcher searcher)
+    throws IOException {
+      final Sort sort = cmd.getSort();
+      if (sort == null) {
+        return BlockMaxTopScoreDocCollector.create(len);
+      }
+      final boolean needScores = (cmd.getFlags() & SolrIndexSearcher.GET_SCORES) != 0;
+      final CursorMark cursor = cmd.getCursorMark();
+      final FieldDoc searchAfter = cursor == null ? null : cursor.getSearchAfterFieldDoc();
+      return TopFieldCollector.create(sort.rewrite(searcher), len, searchAfter,
+        false, needScores, needScores, true);
+    }
+
+    @Override
+    public Query rewrite(final IndexReader reader) throws IOException {
+      final Query rewritten = mainQuery.rewrite(reader);
+      if (rewritten != mainQuery) {
+        return this.wrap(rewritten);
+      }
+      return this;
+    }
+
+    @Override
+    public Weight createWeight(final IndexSearcher searcher) throws IOException {
+      return mainQuery.createWeight(searcher);
+    }
+
+    @Override
+    public String toString(final String field) {
+      return "{!" + NAME + " mainQuery='" + mainQuery.toString(field) + "'}" +
+        ToStringUtils.boost(this.getBoost());
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof BlockMaxQuery)) {
+        return false;
+      }
+      final BlockMaxQuery other = (BlockMaxQuery) o;
+      return this.getBoost() == other.getBoost() &&
+        (mainQuery == null ? other.mainQuery == null : mainQuery.equals(other.mainQuery));
+    }
+
+    @Override
+    public int hashCode() {
+      return Float.floatToIntBits(this.getBoost()) ^
+        (mainQuery == null ? 0 : mainQuery.hashCode()) ^ NAME.hashCode();
+    }
+
+  }
+
+}
@@ -32,4 +32,7 @@ public class SirenParams {
   /** Param for allowing leading wildcard */
   public static String ALLOW_LEADING_WILDCARD = "allowLeadingWildcard";
 
+  /** Init param for the maximum number of parsed queries in the cache */
+  public static String QUERY_CACHE_SIZE = "queryCacheSize";
+
 }
@@ -18,6 +18,7 @@
 
 package com.sindicetech.siren.solr.qparser;
 
+import com.sindicetech.siren.qparser.util.ParsedQueryCache;
 import com.sindicetech.siren.search.node.NodeBooleanQuery;
 import com.sindicetech.siren.search.node.TwigQuery;
 import com.sindicetech.siren.solr.schema.Datatype;
@@ -63,6 +64,8 @@ public abstract class SirenQParser extends QParser {
   protected boolean allowLeadingWildcard;
   protected Properties qnames;
 
+  private ParsedQueryCache queryCache;
+
   private static final Logger logger = LoggerFactory.getLogger(SirenQParser.class);
 
   public SirenQParser(final String qstr, final SolrParams localParams,
@@ -83,6 +86,13 @@ public abstract class SirenQParser extends QParser {
     this.qnames = qnames;
   }
 
+  /**
+   * Set the cache of the parsed queries, or null to disable it.
+   */
+  public void setQueryCache(final ParsedQueryCache queryCache) {
+    this.queryCache = queryCache;
+  }
+
   /**
    * Enable or disable leading wildcard
    */
@@ -116,7 +126,7 @@ public abstract class SirenQParser extends QParser {
     BooleanQuery bq = new BooleanQuery(true); // combine the main query for each field in a nested boolean query
     for (final String field : boosts.keySet()) {
       final Map<String, Analyzer> datatypeConfig = this.getDatatypeConfig(field);
-      final Query q = this.parse(field, qstr, datatypeConfig);
+      final Query q = this.parseCached(field, qstr, datatypeConfig);
       if (boosts.get(field) != null) {
         q.setBoost(boosts.get(field));
       }
@@ -143,6 +153,36 @@ public abstract class SirenQParser extends QParser {
                                  final Map<String, Analyzer> datatypeConfig)
   throws SyntaxError;
 
+  /**
+   * Returns the form of the query string under which its parsed query is
+   * cached, so that the query strings parsed into the same query share the
+   * same entry. By default, the query string itself.
+   */
+  protected String normalise(final String qstr) {
+    return qstr;
+  }
+
+  /**
+   * Returns the query from the cache if it was already parsed with the same
+   * configuration, or parses and caches it otherwise. The cached queries are
+   * cloned, so the returned query can be modified.
+   */
+  private Query parseCached(final String field, final String qstr,
+                            final Map<String, Analyzer> datatypeConfig)
+  throws SyntaxError {
+    if (queryCache == null) {
+      return this.parse(field, qstr, datatypeConfig);
+    }
+    final ParsedQueryCache.Key key = ParsedQueryCache.key(this.normalise(qstr), this.getClass(), field,
+      req.getSchema().getFieldType(field), datatypeConfig, this.getDefaultOperator(), qnames, allowLeadingWildcard);
+    Query q = queryCache.get(key);
+    if (q == null) {
+      q = this.parse(field, qstr, datatypeConfig);
+      queryCache.put(key, q);
+    }
+    return q;
+  }
+
   /**
    * Create a new QParser for parsing an embedded nested query.
    * <p>
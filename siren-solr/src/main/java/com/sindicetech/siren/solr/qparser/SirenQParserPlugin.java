@@ -17,6 +17,7 @@
  */
 package com.sindicetech.siren.solr.qparser;
 
+import com.sindicetech.siren.qparser.util.ParsedQueryCache;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.analysis.util.ResourceLoaderAware;
 import org.apache.solr.common.SolrException;
@@ -38,6 +39,8 @@ import java.util.Properties;
  * <ul>
  * <li>qnames - The name of the file containing the qnames mapping for use in
  *              the {@link com.sindicetech.siren.qparser.keyword.StandardExtendedKeywordQueryParser}.
+ * <li>queryCacheSize - The maximum number of parsed queries in the
+ *              {@link ParsedQueryCache} of the plugin. A size of 0 disables the cache.
  * </ul>
  */
 public abstract class SirenQParserPlugin extends QParserPlugin implements ResourceLoaderAware {
@@ -48,6 +51,13 @@ public abstract class SirenQParserPlugin extends QParserPlugin implements Resour
 
   private Properties qnames;
 
+  /**
+   * The default maximum number of parsed queries in the cache
+   */
+  public static final int DEFAULT_QUERY_CACHE_SIZE = 1000;
+
+  private ParsedQueryCache queryCache = new ParsedQueryCache(DEFAULT_QUERY_CACHE_SIZE);
+
   private static final Logger
   logger = LoggerFactory.getLogger(SirenQParserPlugin.class);
 
@@ -59,6 +69,13 @@ public abstract class SirenQParserPlugin extends QParserPlugin implements Resour
     return this.allowLeadingWildcard;
   }
 
+  /**
+   * Returns the cache of the parsed queries shared by the parsers of this plugin, or null if it is disabled.
+   */
+  protected ParsedQueryCache getQueryCache() {
+    return queryCache;
+  }
+
   @Override
   public void init(final NamedList args) {
     qnamesFile = (String) args.get(SirenParams.QNAMES);
@@ -66,6 +83,10 @@ public abstract class SirenQParserPlugin extends QParserPlugin implements Resour
     if (args.get(SirenParams.ALLOW_LEADING_WILDCARD) != null) {
       allowLeadingWildcard = args.getBooleanArg(SirenParams.ALLOW_LEADING_WILDCARD);
     }
+    if (args.get(SirenParams.QUERY_CACHE_SIZE) != null) {
+      final int size = Integer.parseInt(args.get(SirenParams.QUERY_CACHE_SIZE).toString());
+      queryCache = size > 0 ? new ParsedQueryCache(size) : null;
+    }
   }
 
   public void inform(final ResourceLoader loader) throws IOException {
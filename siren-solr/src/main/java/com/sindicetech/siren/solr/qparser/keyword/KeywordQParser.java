@@ -23,6 +23,7 @@ import com.sindicetech.siren.solr.qparser.SirenQParser;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.CloseableThreadLocal;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.request.SolrQueryRequest;
@@ -39,15 +40,25 @@ import java.util.Map;
  */
 public class KeywordQParser extends SirenQParser {
 
+  private CloseableThreadLocal<StandardExtendedKeywordQueryParser> parsers;
+
   public KeywordQParser(final String qstr, final SolrParams localParams,
                         final SolrParams params, final SolrQueryRequest req) {
     super(qstr, localParams, params, req);
   }
 
+  /**
+   * Set the thread-local pool of pre-built parsers. If not set, a new parser
+   * is built for each query.
+   */
+  public void setParsers(final CloseableThreadLocal<StandardExtendedKeywordQueryParser> parsers) {
+    this.parsers = parsers;
+  }
+
   @Override
   protected Query parse(final String field, final String qstr,
                         final Map<String, Analyzer> datatypeConfig) {
-    final StandardExtendedKeywordQueryParser parser = new StandardExtendedKeywordQueryParser();
+    final StandardExtendedKeywordQueryParser parser = parsers != null ? parsers.get() : new StandardExtendedKeywordQueryParser();
     parser.setDefaultOperator(this.getDefaultOperator());
     parser.setQNames(qnames);
     parser.setDatatypeAnalyzers(datatypeConfig);
@@ -17,23 +17,37 @@
  */
 package com.sindicetech.siren.solr.qparser.keyword;
 
+import org.apache.lucene.util.CloseableThreadLocal;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.QParser;
 
+import com.sindicetech.siren.qparser.keyword.StandardExtendedKeywordQueryParser;
 import com.sindicetech.siren.solr.qparser.SirenQParserPlugin;
 
 /**
  * Implementation of {@link SirenQParserPlugin} for the {@link KeywordQParser}.
+ * <p>
+ * The keyword query parsers are built once per thread and reused across
+ * requests.
  */
 public class KeywordQParserPlugin extends SirenQParserPlugin {
 
+  private final CloseableThreadLocal<StandardExtendedKeywordQueryParser> parsers = new CloseableThreadLocal<StandardExtendedKeywordQueryParser>() {
+    @Override
+    protected StandardExtendedKeywordQueryParser initialValue() {
+      return new StandardExtendedKeywordQueryParser();
+    }
+  };
+
   @Override
   public QParser createParser(final String qstr, final SolrParams localParams,
                               final SolrParams params, final SolrQueryRequest req) {
     final KeywordQParser qparser = new KeywordQParser(qstr, localParams, params, req);
     qparser.setQNames(this.getQNames());
     qparser.setAllowLeadingWildcard(this.getAllowLeadingWildcard());
+    qparser.setQueryCache(this.getQueryCache());
+    qparser.setParsers(parsers);
     return qparser;
   }
 
@@ -136,6 +136,27 @@
  *
  * </p>
  *
+ * <h2>Block-Max Ranking</h2>
+ *
+ * <p>
+ * The disjunctions of terms built by the SIREn's parsers can skip the blocks of documents that cannot enter the top
+ * documents. This is enabled per request through the rank query
+ * {@link com.sindicetech.siren.solr.qparser.BlockMaxQParserPlugin}, which must be registered as follows:
+ *
+ * <pre style="overflow:auto;">{@code
+ * <queryParser name="blockmax" class="com.sindicetech.siren.solr.qparser.BlockMaxQParserPlugin"/>
+ * }</pre>
+ *
+ * and is then requested with the parameter <code>rq</code>:
+ *
+ * <pre>
+ *   /keyword?q=lucene solr&df=json&rq={!blockmax}
+ * </pre>
+ *
+ * The ranking of the top documents is unchanged, but <code>numFound</code> becomes a lower bound of the number of
+ * matching documents.
+ * </p>
+ *
  * <h2>Nested Queries</h2>
  *
  * <p>
@@ -16,16 +16,20 @@ import com.sindicetech.siren.solr.schema.ExtendedJsonField;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.CloseableThreadLocal;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.search.SyntaxError;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
 
 import com.sindicetech.siren.qparser.tree.ConciseTreeQueryParser;
 import com.sindicetech.siren.qparser.tree.ExtendedTreeQueryParser;
 import com.sindicetech.siren.solr.qparser.SirenQParser;
 
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -39,11 +43,46 @@ import java.util.Map;
  */
 public class TreeQParser extends SirenQParser {
 
+  /**
+   * Reads the query strings as the JSON syntax parser does, to normalise them
+   */
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private CloseableThreadLocal<ExtendedTreeQueryParser> extendedParsers;
+  private CloseableThreadLocal<ConciseTreeQueryParser> conciseParsers;
+
   public TreeQParser(final String qstr, final SolrParams localParams,
                      final SolrParams params, final SolrQueryRequest req) {
     super(qstr, localParams, params, req);
   }
 
+  /**
+   * Set the thread-local pools of pre-built parsers. If not set, a new parser
+   * is built for each query.
+   */
+  public void setParsers(final CloseableThreadLocal<ExtendedTreeQueryParser> extendedParsers,
+                         final CloseableThreadLocal<ConciseTreeQueryParser> conciseParsers) {
+    this.extendedParsers = extendedParsers;
+    this.conciseParsers = conciseParsers;
+  }
+
+  /**
+   * Returns the JSON tree of the query string serialised again, without the
+   * insignificant whitespaces and with the same escaping of the strings. The
+   * order of the properties is kept, as the parser depends on it. A query
+   * string which is not valid JSON is returned as is, and fails at parsing.
+   */
+  @Override
+  protected String normalise(final String qstr) {
+    try {
+      final JsonNode node = mapper.readTree(qstr);
+      return node == null ? qstr : node.toString();
+    }
+    catch (final IOException e) {
+      return qstr;
+    }
+  }
+
   @Override
   protected Query parse(final String field, final String qstr,
                         final Map<String, Analyzer> datatypeConfig)
@@ -52,9 +91,9 @@ public class TreeQParser extends SirenQParser {
 
     FieldType fieldType = req.getSchema().getField(field).getType();
     if (fieldType instanceof ConciseJsonField) {
-      parser = new ConciseTreeQueryParser();
+      parser = conciseParsers != null ? conciseParsers.get() : new ConciseTreeQueryParser();
     } else if (fieldType instanceof ExtendedJsonField) {
-      parser = new ExtendedTreeQueryParser();
+      parser = extendedParsers != null ? extendedParsers.get() : new ExtendedTreeQueryParser();
     } else {
       throw new RuntimeException(String.format("Field %s is of type %s which is neither %s nor %s which are the only " +
           "supported.",
@@ -17,26 +17,47 @@
  */
 package com.sindicetech.siren.solr.qparser.tree;
 
+import org.apache.lucene.util.CloseableThreadLocal;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.QParser;
 
-import com.sindicetech.siren.solr.qparser.SirenQParser;
+import com.sindicetech.siren.qparser.tree.ConciseTreeQueryParser;
+import com.sindicetech.siren.qparser.tree.ExtendedTreeQueryParser;
 import com.sindicetech.siren.solr.qparser.SirenQParserPlugin;
 
 /**
  * Implementation of {@link com.sindicetech.siren.solr.qparser.SirenQParserPlugin} for the
  * {@link TreeQParser}.
+ * <p>
+ * The tree query parsers, with their processor pipelines and builders, are
+ * built once per thread and reused across requests.
  */
 public class TreeQParserPlugin extends SirenQParserPlugin {
 
+  private final CloseableThreadLocal<ExtendedTreeQueryParser> extendedParsers = new CloseableThreadLocal<ExtendedTreeQueryParser>() {
+    @Override
+    protected ExtendedTreeQueryParser initialValue() {
+      return new ExtendedTreeQueryParser();
+    }
+  };
+
+  private final CloseableThreadLocal<ConciseTreeQueryParser> conciseParsers = new CloseableThreadLocal<ConciseTreeQueryParser>() {
+    @Override
+    protected ConciseTreeQueryParser initialValue() {
+      return new ConciseTreeQueryParser();
+    }
+  };
+
   @Override
   public QParser createParser(final String qstr, final SolrParams localParams,
                               final SolrParams params, final SolrQueryRequest req) {
 
-    SirenQParser parser = new TreeQParser(qstr, localParams, params, req);
+    TreeQParser parser = new TreeQParser(qstr, localParams, params, req);
     parser.setQNames(this.getQNames());
     parser.setAllowLeadingWildcard(this.getAllowLeadingWildcard());
+    parser.setQueryCache(this.getQueryCache());
+    parser.setParsers(extendedParsers, conciseParsers);
 
     return parser;
   }
@@ -25,8 +25,8 @@
  */
 package com.sindicetech.siren.solr.response;
 
+import com.sindicetech.siren.qparser.tree.storage.JsonProjection;
 import com.sindicetech.siren.qparser.tree.storage.ProjectionException;
-import com.sindicetech.siren.qparser.tree.storage.SimpleJsonByQueryExtractor;
 import com.sindicetech.siren.solr.schema.ExtendedJsonField;
 import org.apache.lucene.search.Query;
 import org.apache.solr.common.SolrDocument;
@@ -51,9 +51,14 @@ import java.io.IOException;
  *  For more information about DocTrasnformers, see for example:
  *   - https://wiki.apache.org/solr/DocTransformers
  *   - http://solr.pl/en/2011/12/05/solr-4-0-doctransformers-first-look/
+ *
+ *  An instance is created for each request. The query is compiled into a {@link JsonProjection}
+ *  once, when the first document is transformed.
  */
 public class SirenProjectionTransformer extends TransformerWithContext {
 
+  private JsonProjection projection;
+
   @Override
   public String getName() {
     return this.getClass().getSimpleName();
@@ -61,24 +66,23 @@ public class SirenProjectionTransformer extends TransformerWithContext {
 
   @Override
   public void transform(SolrDocument doc, int docid) throws IOException {
-    Query query = context.query;
-
-    SimpleJsonByQueryExtractor extractor = new SimpleJsonByQueryExtractor();
-
     try {
+      if (projection == null) {
+        Query query = context.query;
+        projection = JsonProjection.compile(query);
+      }
+      if (!projection.hasVariables()) {
+        // query doesn't contain variables, no transformation is necessary
+        return;
+      }
+
       IndexSchema schema = context.req.getSchema();
 
       for (String fieldName : doc.getFieldNames()) {
         FieldType ft = schema.getFieldOrNull(fieldName).getType();
         if (ft instanceof ExtendedJsonField) {
           String sirenField = (String) doc.getFieldValue(fieldName);
-          String json = extractor.extractAsString(sirenField, query);
-          if (json == null) {
-            // query doesn't contain variables, no transformation is necessary
-            continue;
-          }
-
-          doc.setField(fieldName, json);
+          doc.setField(fieldName, projection.project(sirenField));
         }
       }
     } catch (ProjectionException e) {
@@ -33,11 +33,13 @@ import org.apache.solr.response.transform.TransformerWithContext;
  */
 public class SirenProjectionTransformerFactory extends TransformerFactory
 {
-  private static SirenProjectionTransformer transformer = new SirenProjectionTransformer();
-
+  /**
+   * Returns a new transformer for each request, since the transformer holds the context and the
+   * compiled projection of the request.
+   */
   @Override
   public TransformerWithContext create(String field, SolrParams params, SolrQueryRequest req) {
-    return transformer;
+    return new SirenProjectionTransformer();
   }
 }
 
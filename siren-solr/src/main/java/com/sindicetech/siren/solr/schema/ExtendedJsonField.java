@@ -18,12 +18,19 @@
 
 package com.sindicetech.siren.solr.schema;
 
+import com.sindicetech.siren.analysis.BufferedJsonTokenizer;
+import com.sindicetech.siren.analysis.JsonTokenBuffer;
+import com.sindicetech.siren.analysis.attributes.PathAttribute;
+import com.sindicetech.siren.index.codecs.siren10.Siren10AForNodesPostingsFormat;
 import com.sindicetech.siren.index.codecs.siren10.Siren10AForPostingsFormat;
 import com.sindicetech.siren.solr.analysis.DatatypeAnalyzerFilterFactory;
 import com.sindicetech.siren.solr.analysis.ExtendedJsonTokenizerFactory;
 import com.sindicetech.siren.solr.analysis.PositionAttributeFilterFactory;
 import com.sindicetech.siren.solr.analysis.SirenPayloadFilterFactory;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.analysis.util.*;
 import org.apache.lucene.index.FieldInfo.IndexOptions;
 import org.apache.lucene.index.IndexableField;
@@ -33,6 +40,8 @@ import org.apache.lucene.util.Version;
 import org.apache.solr.analysis.TokenizerChain;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.TextResponseWriter;
 import org.apache.solr.schema.FieldProperties;
 import org.apache.solr.schema.IndexSchema;
@@ -44,6 +53,7 @@ import org.xml.sax.InputSource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
@@ -63,8 +73,12 @@ import java.util.concurrent.atomic.AtomicReference;
  * by throwing a {@link SolrException} if the field type does not set properly
  * the properties. By default all the properties are set properly, i.e.,
  * a user should not modify these properties. This field type enforces also
- * the <code>postingsFormat</code> to <code>Siren10Afor</code>. The list of
- * enforced field properties are:
+ * the <code>postingsFormat</code> to <code>Siren10Afor</code>, or to
+ * <code>Siren10AForNodes</code> if the parameter <code>indexPositions</code> is
+ * set to <code>false</code>. In the latter case, only the documents and the
+ * nodes of the terms are indexed: the queries are still scored with the term
+ * frequency in the node, but the phrase and span queries fail with an
+ * {@link IllegalStateException}. The list of enforced field properties are:
  * <ul>
  * <li> indexed = true
  * <li> tokenized = true
@@ -86,6 +100,22 @@ import java.util.concurrent.atomic.AtomicReference;
  *
  * This field type extends {@link TextField} to have the
  * {@link FieldProperties#OMIT_TF_POSITIONS} set to false by default.
+ *
+ * <p>
+ *
+ * A JSON value can be parsed once with {@link #parse(String)}, and the
+ * resulting {@link JsonTokenBuffer} shared in the context of the request with
+ * {@link #shareBuffer(SolrQueryRequest, String, String, JsonTokenBuffer)}. The
+ * field created for this value then replays the buffer with a
+ * {@link BufferedJsonTokenizer} instead of scanning the JSON value again. The
+ * tokenizer and the token filters of the replay are reused per thread, as the
+ * ones of the index analyzer. The buffers which are not replayed must be
+ * removed with {@link #clearSharedBuffers(SolrQueryRequest)} once the document
+ * is processed.
+ * This shares the scan of the value between the facet extraction and the
+ * analysis only: the update handler still parses the documents with Jackson
+ * beforehand, in order to map their top-level fields, see
+ * {@link com.sindicetech.siren.solr.handler.JsonLoader}.
  */
 public class ExtendedJsonField extends TextField implements ResourceLoaderAware {
 
@@ -97,6 +127,18 @@ public class ExtendedJsonField extends TextField implements ResourceLoaderAware
 
   public static String DATATYPECONFIG_KEY = "datatypeConfig";
 
+  public static String INDEXPOSITIONS_KEY = "indexPositions";
+
+  /**
+   * The key of the shared JSON token buffers in the context of a request
+   */
+  private static final String SHARED_BUFFERS_KEY = ExtendedJsonField.class.getName() + ".sharedBuffers";
+
+  /**
+   * The analyzer which replays the shared buffers, created on first use
+   */
+  private volatile ReplayAnalyzer replayAnalyzer;
+
   @Override
   protected void init(final IndexSchema schema, final Map<String,String> args) {
     // first call TextField.init to set omitTermFreqAndPositions to false
@@ -110,8 +152,14 @@ public class ExtendedJsonField extends TextField implements ResourceLoaderAware
                               "ExtendedJsonField types require a '"+DATATYPECONFIG_KEY+"' parameter: " + this.typeName);
     }
 
-    // set the posting format
-    args.put("postingsFormat", Siren10AForPostingsFormat.NAME);
+    // set the posting format, without positions if requested
+    final String indexPositions = args.remove(INDEXPOSITIONS_KEY);
+    if (indexPositions == null || Boolean.parseBoolean(indexPositions)) {
+      args.put("postingsFormat", Siren10AForPostingsFormat.NAME);
+    }
+    else {
+      args.put("postingsFormat", Siren10AForNodesPostingsFormat.NAME);
+    }
 
     this.luceneDefaultVersion = schema.getDefaultLuceneMatchVersion();
 
@@ -190,7 +238,197 @@ public class ExtendedJsonField extends TextField implements ResourceLoaderAware
                               "ExtendedJsonField instances can not store term vectors: " +
                               field.getName());
     }
-    return super.createField(field, value, boost);
+    return this.replaySharedBuffer(field.getName(), value, super.createField(field, value, boost));
+  }
+
+  /**
+   * Parses the JSON value with the char filters and the tokenizer of the index
+   * analyzer into a {@link JsonTokenBuffer}.
+   */
+  public JsonTokenBuffer parse(final String value) throws IOException {
+    final TokenizerChain chain = (TokenizerChain) this.getIndexAnalyzer();
+    Reader reader = new StringReader(value);
+    for (final CharFilterFactory charFilterFactory : chain.getCharFilterFactories()) {
+      reader = charFilterFactory.create(reader);
+    }
+    final JsonTokenBuffer buffer = new JsonTokenBuffer();
+    buffer.fill(chain.getTokenizerFactory().create(reader));
+    return buffer;
+  }
+
+  /**
+   * Shares the buffer of a JSON value of a field in the context of the request.
+   * The buffers are keyed by the field name and by the value, so that each
+   * value of a multi-valued field, or of several documents of the same request,
+   * has its own buffer. The next field created with this name and this value
+   * during the request replays the buffer. If the same value is shared several
+   * times, it is replayed as many times.
+   *
+   * @see #parse(String)
+   */
+  public static void shareBuffer(final SolrQueryRequest req, final String fieldName,
+                                 final String value, final JsonTokenBuffer buffer) {
+    @SuppressWarnings("unchecked")
+    Map<SharedBufferKey, SharedBuffer> buffers = (Map<SharedBufferKey, SharedBuffer>) req.getContext().get(SHARED_BUFFERS_KEY);
+    if (buffers == null) {
+      buffers = new HashMap<SharedBufferKey, SharedBuffer>();
+      req.getContext().put(SHARED_BUFFERS_KEY, buffers);
+    }
+    final SharedBufferKey key = new SharedBufferKey(fieldName, value);
+    final SharedBuffer shared = buffers.get(key);
+    if (shared == null) {
+      buffers.put(key, new SharedBuffer(buffer));
+    }
+    else {
+      // the buffers of a same value are identical, one is enough
+      shared.pending++;
+    }
+  }
+
+  /**
+   * Replaces the field by a field which replays the buffer shared for this
+   * field and this value in the current request, if any.
+   */
+  private IndexableField replaySharedBuffer(final String fieldName, final Object value,
+                                            final IndexableField field) {
+    final SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
+    if (!(field instanceof Field) || info == null || value == null) {
+      return field;
+    }
+    @SuppressWarnings("unchecked")
+    final Map<SharedBufferKey, SharedBuffer> buffers = (Map<SharedBufferKey, SharedBuffer>) info.getReq().getContext().get(SHARED_BUFFERS_KEY);
+    if (buffers == null) {
+      return field;
+    }
+    // the value might have been modified by another update processor, in
+    // which case no buffer is found for it
+    final SharedBufferKey key = new SharedBufferKey(fieldName, value.toString());
+    final SharedBuffer shared = buffers.get(key);
+    if (shared == null) {
+      return field;
+    }
+    // release the buffer once all its values are indexed
+    if (--shared.pending == 0) {
+      buffers.remove(key);
+    }
+    return new BufferedJsonField((Field) field, this.getReplayAnalyzer(), shared.buffer);
+  }
+
+  /**
+   * Removes the buffers shared in the context of the request which have not
+   * been replayed, e.g., because their value was modified by an update
+   * processor. This should be called after each document is processed.
+   */
+  public static void clearSharedBuffers(final SolrQueryRequest req) {
+    req.getContext().remove(SHARED_BUFFERS_KEY);
+  }
+
+  /**
+   * Returns the analyzer which replays the buffers through the token filters
+   * of the index analyzer.
+   */
+  private ReplayAnalyzer getReplayAnalyzer() {
+    final TokenizerChain chain = (TokenizerChain) this.getIndexAnalyzer();
+    ReplayAnalyzer analyzer = replayAnalyzer;
+    if (analyzer == null || analyzer.chain != chain) {
+      analyzer = replayAnalyzer = new ReplayAnalyzer(chain);
+    }
+    return analyzer;
+  }
+
+  /**
+   * An analyzer with the token filters of a {@link TokenizerChain} on top of a
+   * {@link BufferedJsonTokenizer}. As any analyzer, it reuses its components
+   * per thread: the buffer to replay is given as the reader of
+   * {@link #tokenStream(String, Reader)}.
+   */
+  private static class ReplayAnalyzer extends Analyzer {
+
+    private final TokenizerChain chain;
+
+    private final boolean hasPaths;
+
+    private ReplayAnalyzer(final TokenizerChain chain) {
+      this.chain = chain;
+      // the replayed buffers have the attributes of the tokenizer of the chain
+      this.hasPaths = chain.getTokenizerFactory().create(new StringReader("")).hasAttribute(PathAttribute.class);
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(final String fieldName, final Reader reader) {
+      final Tokenizer source = new BufferedJsonTokenizer(reader, hasPaths);
+      TokenStream stream = source;
+      for (final TokenFilterFactory filterFactory : chain.getTokenFilterFactories()) {
+        stream = filterFactory.create(stream);
+      }
+      return new TokenStreamComponents(source, stream);
+    }
+
+  }
+
+  /**
+   * A field whose token stream replays a {@link JsonTokenBuffer} with a
+   * {@link ReplayAnalyzer}. The token stream is only requested when the field
+   * is indexed, so that the fields of a document can reuse the same components.
+   */
+  static class BufferedJsonField extends Field {
+
+    private final ReplayAnalyzer analyzer;
+
+    private final JsonTokenBuffer buffer;
+
+    private BufferedJsonField(final Field field, final ReplayAnalyzer analyzer,
+                              final JsonTokenBuffer buffer) {
+      super(field.name(), field.stringValue(), field.fieldType());
+      this.setBoost(field.boost());
+      this.analyzer = analyzer;
+      this.buffer = buffer;
+    }
+
+    @Override
+    public TokenStream tokenStream(final Analyzer analyzer, final TokenStream reuse)
+    throws IOException {
+      return this.analyzer.tokenStream(this.name(), new BufferedJsonTokenizer.BufferReader(buffer));
+    }
+
+  }
+
+  private static class SharedBuffer {
+
+    private final JsonTokenBuffer buffer;
+
+    /** The number of fields which have yet to replay the buffer */
+    private int pending = 1;
+
+    private SharedBuffer(final JsonTokenBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+  }
+
+  private static class SharedBufferKey {
+
+    private final String fieldName;
+    private final String value;
+
+    private SharedBufferKey(final String fieldName, final String value) {
+      this.fieldName = fieldName;
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (!(o instanceof SharedBufferKey)) return false;
+      final SharedBufferKey other = (SharedBufferKey) o;
+      return fieldName.equals(other.fieldName) && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * fieldName.hashCode() + value.hashCode();
+    }
+
   }
 
   @Override
@@ -0,0 +1,313 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sindicetech.siren.solr.schema;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.ManagedIndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.apache.solr.common.SolrException.ErrorCode.BAD_REQUEST;
+import static org.apache.solr.common.SolrException.ErrorCode.SERVER_ERROR;
+
+/**
+ * Accumulates the new fields to be added to the schema of a core, and adds them with a single copy-on-write
+ * update of the schema.
+ * <p>
+ * Each update of a managed schema copies and persists the schema, and is serialised across the indexing threads.
+ * Instead of updating the schema for each new field, each caller collects its fields in a {@link Batch}, obtained
+ * with {@link #newBatch()}, across a batch of documents. The fields of all the batches are pending in the current
+ * generation of the accumulator. {@link Batch#flush(SolrCore)} closes the generations holding the fields of the batch
+ * and adds all their fields, including the ones of concurrent callers, in one
+ * {@link IndexSchema#addFields(java.util.Collection)} call. The outcome of the update is recorded in the generation,
+ * so that every caller having contributed to a failed update gets the failure when it flushes its own batch. The
+ * names of the fields known to exist in the schema are cached, so that checking an existing field does not need a
+ * schema lookup. The cache is cleared when a schema which was not published by the accumulator becomes the latest
+ * schema of the core, e.g., after an update through the schema REST API.
+ * <p>
+ * An instance must be used with a single core. The components adding fields to the schema of a core share the
+ * instance returned by {@link #getInstance(SolrCore)}, so that their fields are added in the same updates. This
+ * class is thread-safe, while a {@link Batch} must be used by a single thread.
+ */
+public class SchemaFieldsAccumulator {
+
+  private static final Logger logger = LoggerFactory.getLogger(SchemaFieldsAccumulator.class);
+
+  /**
+   * The accumulator of each open core
+   */
+  private static final ConcurrentMap<SolrCore, SchemaFieldsAccumulator> instances = new ConcurrentHashMap<>();
+
+  /**
+   * The names of the fields known to exist in {@link #knownSchema}.
+   */
+  private final Set<String> knownFields = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * The schema in which the {@link #knownFields} exist
+   */
+  private volatile IndexSchema knownSchema;
+
+  /**
+   * The generation collecting the new fields, guarded by this accumulator
+   */
+  private Generation current = new Generation();
+
+  /**
+   * Returns the accumulator shared by the components of the core. It is released when the core is closed.
+   */
+  public static SchemaFieldsAccumulator getInstance(final SolrCore core) {
+    SchemaFieldsAccumulator accumulator = instances.get(core);
+    if (accumulator == null) {
+      final SchemaFieldsAccumulator newAccumulator = new SchemaFieldsAccumulator();
+      accumulator = instances.putIfAbsent(core, newAccumulator);
+      if (accumulator == null) {
+        accumulator = newAccumulator;
+        core.addCloseHook(new CloseHook() {
+
+          @Override
+          public void preClose(final SolrCore core) {}
+
+          @Override
+          public void postClose(final SolrCore core) {
+            instances.remove(core);
+          }
+
+        });
+      }
+    }
+    return accumulator;
+  }
+
+  /**
+   * Returns true if the field, or a matching dynamic field, exists in the latest schema of the core.
+   */
+  public boolean exists(final SolrCore core, final String fieldname) {
+    final IndexSchema schema = core.getLatestSchema();
+    if (schema != knownSchema) {
+      this.resetKnownFields(schema);
+    }
+    if (knownFields.contains(fieldname)) {
+      return true;
+    }
+    if (schema.getFieldOrNull(fieldname) != null) {
+      knownFields.add(fieldname);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Clears the known fields if they were checked against another schema than the given one.
+   */
+  private synchronized void resetKnownFields(final IndexSchema schema) {
+    if (schema != knownSchema) {
+      knownFields.clear();
+      knownSchema = schema;
+    }
+  }
+
+  /**
+   * Records the schema published by an update of the accumulator, which only adds the given fields to the previous
+   * schema: the known fields remain valid unless another schema was published in between.
+   */
+  private synchronized void published(final IndexSchema oldSchema, final IndexSchema newSchema,
+                                      final Set<String> fieldnames) {
+    if (oldSchema != knownSchema) {
+      knownFields.clear();
+    }
+    knownFields.addAll(fieldnames);
+    knownSchema = newSchema;
+  }
+
+  /**
+   * Creates a batch collecting the new fields of a caller, e.g., of a request.
+   */
+  public Batch newBatch() {
+    return new Batch();
+  }
+
+  private synchronized Generation add(final SchemaField field) {
+    current.add(field);
+    return current;
+  }
+
+  /**
+   * Adds the fields of the generations to the schema, unless this has already been done by another caller.
+   *
+   * @throws SolrException if the update of one of the generations failed, possibly during the flush of another
+   * caller.
+   */
+  private synchronized void flush(final SolrCore core, final Set<Generation> generations) {
+    RuntimeException failure = null;
+    for (Generation generation : generations) {
+      if (!generation.isDone()) {
+        if (generation == current) { // the fields added from now on go to the next update
+          current = new Generation();
+        }
+        generation.apply(core);
+      }
+      if (failure == null) {
+        failure = generation.getFailure();
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * The new fields of a caller. It records the generations its fields were added to, so that {@link #flush(SolrCore)}
+   * waits for their update and reports their failure, without touching the fields of the other generations.
+   */
+  public final class Batch {
+
+    private final Set<Generation> generations = new LinkedHashSet<>();
+
+    private Batch() {}
+
+    /**
+     * Adds a field to the pending fields. It will be added to the schema at the latest by the next call to
+     * {@link #flush(SolrCore)}.
+     */
+    public void add(final SchemaField field) {
+      generations.add(SchemaFieldsAccumulator.this.add(field));
+    }
+
+    /**
+     * Adds all the pending fields of the batch to the schema of the core, in one update together with the fields
+     * pending from the other callers. Once this method returns, every field passed to {@link #add(SchemaField)}
+     * before the call exists in the latest schema of the core.
+     *
+     * @throws SolrException if the update adding one of the fields failed. The fields are not retried by the next
+     * flush of the batch.
+     */
+    public void flush(final SolrCore core) {
+      if (generations.isEmpty()) {
+        return;
+      }
+      try {
+        SchemaFieldsAccumulator.this.flush(core, generations);
+      }
+      finally {
+        generations.clear();
+      }
+    }
+
+  }
+
+  /**
+   * The fields added to the schema by one update, and the outcome of the update. Guarded by the accumulator.
+   */
+  private final class Generation {
+
+    private final Map<String, SchemaField> fields = new LinkedHashMap<>();
+
+    private boolean done = false;
+
+    /**
+     * The failure of the update, or null if the fields have been added
+     */
+    private RuntimeException failure;
+
+    void add(final SchemaField field) {
+      if (!fields.containsKey(field.getName())) {
+        fields.put(field.getName(), field);
+      }
+    }
+
+    boolean isDone() {
+      return done;
+    }
+
+    RuntimeException getFailure() {
+      return failure;
+    }
+
+    void apply(final SolrCore core) {
+      try {
+        this.addFields(core);
+      }
+      catch (RuntimeException e) {
+        // the fields of a failed update are not retried by the next generation
+        failure = e;
+      }
+      finally {
+        done = true;
+        fields.clear();
+      }
+    }
+
+    private void addFields(final SolrCore core) {
+      if (!core.getLatestSchema().isMutable()) {
+        final String message = "This IndexSchema is not mutable.";
+        throw new SolrException(BAD_REQUEST, message);
+      }
+
+      for (;;) {
+        final IndexSchema oldSchema = core.getLatestSchema();
+
+        // exclude the fields that have been added by someone else
+        final List<SchemaField> newFields = new ArrayList<>(fields.size());
+        for (SchemaField field : fields.values()) {
+          if (oldSchema.getFieldOrNull(field.getName()) == null) {
+            newFields.add(field);
+          }
+        }
+        if (newFields.isEmpty()) {
+          return;
+        }
+
+        try {
+          IndexSchema newSchema = oldSchema.addFields(newFields);
+          if (newSchema != null) {
+            core.setLatestSchema(newSchema);
+            SchemaFieldsAccumulator.this.published(oldSchema, newSchema, fields.keySet());
+            logger.debug("Successfully added {} field(s) to the schema.", newFields.size());
+            return; // success - exit from the retry loop
+          }
+          else {
+            throw new SolrException(SERVER_ERROR, "Failed to add fields.");
+          }
+        }
+        catch (ManagedIndexSchema.FieldExistsException e) {
+          logger.debug("A field to be added already exists in the schema - retrying.");
+        }
+        catch (ManagedIndexSchema.SchemaChangedInZkException e) {
+          logger.debug("Schema changed while processing request - retrying.");
+        }
+      }
+    }
+
+  }
+
+}
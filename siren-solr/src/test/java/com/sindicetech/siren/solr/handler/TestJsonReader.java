@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sindicetech.siren.solr.handler;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+public class TestJsonReader extends LuceneTestCase {
+
+  private void consume(final JsonReader reader) throws IOException {
+    while (reader.next() != null) {}
+  }
+
+  /**
+   * Check that the source of a document is a verbatim copy of the input, including number literals, escaped
+   * characters and whitespaces.
+   */
+  @Test
+  public void testSourceIsVerbatim() throws IOException {
+    final String input = "{ \"aaa\" : 1.10, \"bbb\" : [ 1e3, -0.0, 12345678901234567890.123456789 ], " +
+                         "\"ccc\" : { \"_datatype_\" : \"uri\", \"_value_\" : \"caf\\u00e9\" },\n" +
+                         "  \"ddd\":true,\"eee\" : null }";
+
+    final JsonReader reader = new JsonReader(new StringReader(input), true);
+    assertTrue(reader.nextDocument());
+    this.consume(reader);
+    assertEquals(input, reader.getSource());
+    assertFalse(reader.nextDocument());
+  }
+
+  /**
+   * Check that the source of each document of a stream is a verbatim copy of its input.
+   */
+  @Test
+  public void testSourceOfDocumentStream() throws IOException {
+    final String doc1 = "{ \"aaa\" : 2.50E+2 }";
+    final String doc2 = "{\"bbb\":[{\"ccc\":0.1000}]}";
+    final StringBuilder doc3 = new StringBuilder("{ \"ddd\" : \"");
+    for (int i = 0; i < 10000; i++) { // larger than the buffer of the parser
+      doc3.append('e');
+    }
+    doc3.append("\" }");
+
+    final String input = doc1 + "\n" + doc2 + "\r\n  " + doc3 + "\n";
+    final JsonReader reader = new JsonReader(new StringReader(input), true);
+
+    assertTrue(reader.nextDocument());
+    this.consume(reader);
+    assertEquals(doc1, reader.getSource());
+
+    assertTrue(reader.nextDocument());
+    this.consume(reader);
+    assertEquals(doc2, reader.getSource());
+
+    assertTrue(reader.nextDocument());
+    this.consume(reader);
+    assertEquals(doc3.toString(), reader.getSource());
+
+    assertFalse(reader.nextDocument());
+  }
+
+  /**
+   * Check that the source of a document is not available before the document is entirely read.
+   */
+  @Test(expected=IllegalStateException.class)
+  public void testSourceOfPartiallyReadDocument() throws IOException {
+    final JsonReader reader = new JsonReader(new StringReader("{ \"aaa\" : \"bbb\", \"ccc\" : \"ddd\" }"), true);
+    assertTrue(reader.nextDocument());
+    reader.next();
+    reader.getSource();
+  }
+
+}
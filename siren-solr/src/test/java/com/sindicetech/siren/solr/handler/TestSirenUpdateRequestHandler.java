@@ -26,6 +26,9 @@ import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.UpdateParams;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.request.SolrRequestHandler;
 import org.apache.solr.servlet.DirectSolrConnection;
@@ -87,6 +90,23 @@ public class TestSirenUpdateRequestHandler extends SolrServerTestCase {
     }
   }
 
+  private String sendBulkUpdateRequest(String input) {
+    try (SolrCore core = h.getCoreInc()) {
+      DirectSolrConnection connection = new DirectSolrConnection(core);
+      SolrRequestHandler handler = core.getRequestHandler(HANDLER_NAME);
+      ModifiableSolrParams params = new ModifiableSolrParams();
+      params.set(UpdateParams.ASSUME_CONTENT_TYPE, "application/x-ndjson");
+      params.set(CommonParams.WT, "json");
+      return connection.request(handler, params, input);
+    }
+    catch (SolrException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, e);
+    }
+  }
+
   /**
    * Check that a UUID is generated for JSON documents with no 'id' attribute.
    */
@@ -384,4 +404,72 @@ public class TestSirenUpdateRequestHandler extends SolrServerTestCase {
     assertEquals(1, found);
   }
 
+  /**
+   * Check that a stream of newline-delimited JSON documents is indexed in bulk.
+   */
+  @Test
+  public void testBulk() throws QueryNodeException, IOException, SolrServerException {
+    String input = "{ \"id\" : \"1\", \"aaa\" : \"bbb\" }\n" +
+                   "{ \"id\" : \"2\", \"aaa\" : \"ccc\", \"bbb\" : { \"_datatype_\" : \"uri\", \"_value_\" : \"ddd\" } }\n" +
+                   "{ \"id\" : \"3\", \"aaa\" : \"bbb\" }\n";
+
+    this.sendBulkUpdateRequest(input);
+    this.commit();
+
+    SolrQuery query = new SolrQuery();
+    final ConciseQueryBuilder b = new ConciseQueryBuilder();
+    query.setQuery(b.newNode("bbb").setAttribute("aaa").toString());
+    query.setRequestHandler("tree");
+    assertEquals(2, this.search(query).getNumFound());
+
+    query = new SolrQuery();
+    query.setParam("nested", "{!lucene} bbb:ddd");
+    query.setRequestHandler("tree");
+    assertEquals(1, this.search(query).getNumFound());
+  }
+
+  /**
+   * Check that a rejected document does not abort the indexing of the other documents of the stream, and that it is
+   * reported in the response.
+   */
+  @Test
+  public void testBulkWithRejectedDocument() throws QueryNodeException, IOException, SolrServerException {
+    String input = "{ \"id\" : \"1\", \"aaa\" : \"bbb\" }\n" +
+                   "{ \"id\" : \"2\", \"ccc\" : { \"ddd\" : [ \"eee\" ] } }\n" +
+                   "{ \"id\" : \"3\", \"aaa\" : \"bbb\" }\n";
+
+    String response = this.sendBulkUpdateRequest(input);
+    assertTrue(response.contains("\"added\":2"));
+    assertTrue(response.contains("\"position\":1"));
+    this.commit();
+
+    SolrQuery query = new SolrQuery();
+    final ConciseQueryBuilder b = new ConciseQueryBuilder();
+    query.setQuery(b.newNode("bbb").setAttribute("aaa").toString());
+    query.setRequestHandler("tree");
+    assertEquals(2, this.search(query).getNumFound());
+  }
+
+  /**
+   * Check that the new fields of the documents of a bulk request spanning several batches are added to the schema.
+   */
+  @Test
+  public void testBulkNewFields() throws IOException, SolrServerException {
+    StringBuilder input = new StringBuilder();
+    int numDocs = JsonLoader.BATCH_SIZE + JsonLoader.BATCH_SIZE / 2;
+    for (int i = 0; i < numDocs; i++) {
+      input.append("{ \"id\" : \"").append(i).append("\", \"aaa\" : null, \"field").append(i).append("\" : \"bbb\" }\n");
+    }
+
+    this.sendBulkUpdateRequest(input.toString());
+    this.commit();
+
+    for (int i : new int[] { 0, JsonLoader.BATCH_SIZE - 1, JsonLoader.BATCH_SIZE, numDocs - 1 }) {
+      SolrQuery query = new SolrQuery();
+      query.setParam("nested", "{!lucene} field" + i + ":bbb");
+      query.setRequestHandler("tree");
+      assertEquals(1, this.search(query).getNumFound());
+    }
+  }
+
 }
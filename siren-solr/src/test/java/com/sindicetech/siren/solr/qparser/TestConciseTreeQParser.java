@@ -24,6 +24,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.sindicetech.siren.qparser.tree.dsl.ConciseQueryBuilder;
+import com.sindicetech.siren.qparser.util.ParsedQueryCache;
 import com.sindicetech.siren.qparser.tree.dsl.TwigQuery;
 import com.sindicetech.siren.solr.SolrServerTestCase;
 
@@ -69,6 +70,27 @@ public class TestConciseTreeQParser extends SolrServerTestCase {
     assertEquals(0, results.length);
   }
 
+  /**
+   * Checks that two query strings of the same JSON tree share the same cached query.
+   */
+  @Test
+  public void testQueryCacheKeyIsNormalised()
+  throws IOException, SolrServerException, QueryNodeException {
+    this.addJsonString("1", "concise", "{ \"aaa\" :  { \"bbb\" : \"normalised\" } }");
+    final ParsedQueryCache cache = ((SirenQParserPlugin) h.getCore().getQueryPlugin("tree")).getQueryCache();
+
+    SolrQuery query = new SolrQuery();
+    query.setQuery("{\"node\":{\"attribute\":\"bbb\",\"query\":\"normalised\"}}");
+    query.setRequestHandler("tree");
+    query.set("qf", "concise");
+    assertEquals(1, this.search(query, ID_FIELD).length);
+    final long hits = cache.getHitCount();
+
+    query.setQuery("{ \"node\" : {\n \"attribute\" : \"bbb\", \"query\" : \"\\u006eormalised\" } }");
+    assertEquals(1, this.search(query, ID_FIELD).length);
+    assertTrue(cache.getHitCount() > hits);
+  }
+
   @Test
   public void testConciseTreeAttributeWildcard()
   throws IOException, SolrServerException, QueryNodeException {
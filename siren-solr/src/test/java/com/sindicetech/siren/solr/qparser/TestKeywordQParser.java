@@ -19,6 +19,7 @@ package com.sindicetech.siren.solr.qparser;
 
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
 import org.junit.Test;
 
@@ -71,4 +72,28 @@ public class TestKeywordQParser extends BaseSolrServerTestCase {
     assertEquals(1, results.length);
   }
 
+  @Test
+  public void testBlockMaxRankQuery()
+  throws SolrServerException, IOException {
+    this.addJsonString("1", "{ \"aaa\" : \"bbb ccc\" }");
+    this.addJsonString("2", "{ \"aaa\" : \"bbb bbb ccc\" }");
+    this.addJsonString("3", "{ \"aaa\" : \"ccc\" }");
+    this.addJsonString("4", "{ \"aaa\" : \"ddd\" }");
+
+    SolrQuery query = new SolrQuery();
+    query.setQuery("bbb OR ccc");
+    query.setRequestHandler("keyword");
+    final String[] expected = this.search(query, ID_FIELD);
+    assertEquals(3, expected.length);
+
+    query = new SolrQuery();
+    query.setQuery("bbb OR ccc");
+    query.setRequestHandler("keyword");
+    query.set("rq", "{!blockmax}");
+    assertArrayEquals(expected, this.search(query, ID_FIELD));
+
+    final SolrDocumentList docs = this.search(query);
+    assertTrue(docs.getNumFound() <= expected.length);
+  }
+
 }
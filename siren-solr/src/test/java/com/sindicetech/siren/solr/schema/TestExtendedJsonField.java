@@ -24,14 +24,22 @@ import com.sindicetech.siren.solr.analysis.DatatypeAnalyzerFilterFactory;
 import com.sindicetech.siren.solr.analysis.ExtendedJsonTokenizerFactory;
 import com.sindicetech.siren.solr.analysis.PositionAttributeFilterFactory;
 import com.sindicetech.siren.solr.analysis.SirenPayloadFilterFactory;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.core.WhitespaceTokenizerFactory;
 import org.apache.lucene.analysis.standard.UAX29URLEmailTokenizerFactory;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType.NumericType;
+import org.apache.lucene.index.IndexableField;
 import org.apache.solr.analysis.TokenizerChain;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.request.LukeRequest;
 import org.apache.solr.client.solrj.response.LukeResponse;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
@@ -39,6 +47,8 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class TestExtendedJsonField extends SolrServerTestCase {
 
@@ -134,6 +144,62 @@ public class TestExtendedJsonField extends SolrServerTestCase {
     assertEquals(NumericType.INT, a.getNumericParser().getNumericType());
   }
 
+  @Test
+  public void testSharedBuffers() throws Exception {
+    final SchemaField field = h.getCore().getLatestSchema().getField(JSON_FIELD);
+    final ExtendedJsonField type = (ExtendedJsonField) field.getType();
+    final String value1 = "{ \"a\" : \"b\" }";
+    final String value2 = "{ \"a\" : \"c\" }";
+
+    final SolrQueryRequest req = req();
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, new SolrQueryResponse()));
+    try {
+      // the buffers of two documents of the same request
+      ExtendedJsonField.shareBuffer(req, JSON_FIELD, value1, type.parse(value1));
+      ExtendedJsonField.shareBuffer(req, JSON_FIELD, value2, type.parse(value2));
+      ExtendedJsonField.shareBuffer(req, JSON_FIELD, value1, type.parse(value1));
+
+      // each value replays its own buffer, as many times as it was shared
+      final Analyzer analyzer = type.getIndexAnalyzer();
+      final IndexableField field2 = type.createField(field, value2, 1.0f);
+      assertTrue(field2 instanceof ExtendedJsonField.BufferedJsonField);
+      final TokenStream stream2 = field2.tokenStream(analyzer, null);
+      assertEquals(this.terms(analyzer.tokenStream(JSON_FIELD, value2)), this.terms(stream2));
+      final IndexableField field1 = type.createField(field, value1, 1.0f);
+      assertTrue(field1 instanceof ExtendedJsonField.BufferedJsonField);
+      final TokenStream stream1 = field1.tokenStream(analyzer, null);
+      // the replay reuses the same token stream
+      assertSame(stream2, stream1);
+      assertEquals(this.terms(analyzer.tokenStream(JSON_FIELD, value1)), this.terms(stream1));
+      assertTrue(type.createField(field, value1, 1.0f) instanceof ExtendedJsonField.BufferedJsonField);
+
+      // the buffers are released once replayed
+      assertFalse(type.createField(field, value1, 1.0f) instanceof ExtendedJsonField.BufferedJsonField);
+      assertFalse(type.createField(field, value2, 1.0f) instanceof ExtendedJsonField.BufferedJsonField);
+
+      // or once the document is processed
+      ExtendedJsonField.shareBuffer(req, JSON_FIELD, value1, type.parse(value1));
+      ExtendedJsonField.clearSharedBuffers(req);
+      assertFalse(type.createField(field, value1, 1.0f) instanceof ExtendedJsonField.BufferedJsonField);
+    }
+    finally {
+      SolrRequestInfo.clearRequestInfo();
+      req.close();
+    }
+  }
+
+  private List<String> terms(final TokenStream stream) throws IOException {
+    final CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+    final List<String> terms = new ArrayList<>();
+    stream.reset();
+    while (stream.incrementToken()) {
+      terms.add(termAtt.toString());
+    }
+    stream.end();
+    stream.close();
+    return terms;
+  }
+
   @Test
   public void testLukeRequest() throws IOException, SolrServerException {
     LukeRequest req = new LukeRequest();
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2014, Sindice Limited. All Rights Reserved.
+ *
+ * This file is part of the SIREn project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sindicetech.siren.solr.schema;
+
+import com.sindicetech.siren.solr.SolrServerTestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+
+public class TestSchemaFieldsAccumulator extends SolrServerTestCase {
+
+  private static final String collection = "collection1";
+  private static final String confDir = collection + "/conf";
+
+  private void initManagedSchemaCore() throws Exception {
+    File tmpSolrHome = createTempDir();
+    File tmpConfDir = new File(tmpSolrHome, confDir);
+    File testHomeConfDir = new File(SOLR_HOME, confDir);
+    for (String file : new String[] { "solrconfig-update.xml", "schema-update.xml", "qnames.txt", "datatypes.xml", "stopwords.txt" }) {
+      FileUtils.copyFileToDirectory(new File(testHomeConfDir, file), tmpConfDir);
+    }
+    initCore("solrconfig-update.xml", "schema-update.xml", tmpSolrHome.getPath());
+  }
+
+  @After
+  @Override
+  public void tearDown() throws Exception {
+    super.tearDown();
+    deleteCore();
+  }
+
+  private SchemaField newField(final SolrCore core, final String name) {
+    return new SchemaField(name, core.getLatestSchema().getFieldTypeByName("string"));
+  }
+
+  /**
+   * Check that the flush of a batch does not drop the pending fields of another batch.
+   */
+  @Test
+  public void testConcurrentBatches() throws Exception {
+    this.initManagedSchemaCore();
+    final SchemaFieldsAccumulator accumulator = new SchemaFieldsAccumulator();
+    final SolrCore core = h.getCore();
+
+    final SchemaFieldsAccumulator.Batch batch1 = accumulator.newBatch();
+    final SchemaFieldsAccumulator.Batch batch2 = accumulator.newBatch();
+    batch1.add(this.newField(core, "aaa"));
+    batch2.add(this.newField(core, "bbb"));
+
+    // the fields of both batches are added by the same update
+    batch2.flush(core);
+    assertNotNull(core.getLatestSchema().getFieldOrNull("aaa"));
+    assertNotNull(core.getLatestSchema().getFieldOrNull("bbb"));
+
+    // a field added after the update is not lost by the flush of the first batch
+    batch2.add(this.newField(core, "ccc"));
+    batch1.flush(core);
+    assertNull(core.getLatestSchema().getFieldOrNull("ccc"));
+    batch2.flush(core);
+    assertNotNull(core.getLatestSchema().getFieldOrNull("ccc"));
+
+    assertTrue(accumulator.exists(core, "aaa"));
+    assertFalse(accumulator.exists(core, "ddd"));
+  }
+
+  /**
+   * Check that the components of a core share the same accumulator, which is released with the core.
+   */
+  @Test
+  public void testInstancePerCore() throws Exception {
+    this.initManagedSchemaCore();
+    final SchemaFieldsAccumulator accumulator = SchemaFieldsAccumulator.getInstance(h.getCore());
+    assertSame(accumulator, SchemaFieldsAccumulator.getInstance(h.getCore()));
+
+    deleteCore();
+    this.initManagedSchemaCore();
+    assertNotSame(accumulator, SchemaFieldsAccumulator.getInstance(h.getCore()));
+  }
+
+  /**
+   * Check that the known fields are not trusted once another schema has been published.
+   */
+  @Test
+  public void testNewSchemaClearsKnownFields() throws Exception {
+    this.initManagedSchemaCore();
+    final SchemaFieldsAccumulator accumulator = new SchemaFieldsAccumulator();
+    final SolrCore core = h.getCore();
+    final IndexSchema oldSchema = core.getLatestSchema();
+
+    final SchemaFieldsAccumulator.Batch batch = accumulator.newBatch();
+    batch.add(this.newField(core, "aaa"));
+    batch.flush(core);
+    assertTrue(accumulator.exists(core, "aaa"));
+
+    // a schema without the field is published by someone else
+    core.setLatestSchema(oldSchema);
+    assertFalse(accumulator.exists(core, "aaa"));
+  }
+
+  /**
+   * Check that the failure of an update is reported to every batch having contributed to it.
+   */
+  @Test
+  public void testFailureSeenByEveryContributor() throws Exception {
+    initCore("solrconfig.xml", "schema.xml", SOLR_HOME); // the schema is not mutable
+    final SchemaFieldsAccumulator accumulator = new SchemaFieldsAccumulator();
+    final SolrCore core = h.getCore();
+
+    final SchemaFieldsAccumulator.Batch batch1 = accumulator.newBatch();
+    final SchemaFieldsAccumulator.Batch batch2 = accumulator.newBatch();
+    batch1.add(this.newField(core, "aaa"));
+    batch2.add(this.newField(core, "bbb"));
+
+    try {
+      batch1.flush(core);
+      fail("The update of an immutable schema must fail");
+    }
+    catch (SolrException e) {
+      // expected
+    }
+
+    try {
+      batch2.flush(core);
+      fail("The failure of the update must be reported to the second batch");
+    }
+    catch (SolrException e) {
+      // expected
+    }
+
+    // the failed fields are not retried
+    batch1.flush(core);
+    batch2.flush(core);
+  }
+
+}